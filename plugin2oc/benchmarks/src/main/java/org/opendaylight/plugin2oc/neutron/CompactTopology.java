@@ -0,0 +1,517 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import net.juniper.contrail.api.ApiConnector;
+import net.juniper.contrail.api.ApiObjectBase;
+import net.juniper.contrail.api.ApiPropertyBase;
+import net.juniper.contrail.api.ObjectReference;
+import net.juniper.contrail.api.types.FloatingIp;
+import net.juniper.contrail.api.types.InstanceIp;
+import net.juniper.contrail.api.types.LogicalRouter;
+import net.juniper.contrail.api.types.Project;
+import net.juniper.contrail.api.types.VirtualMachineInterface;
+import net.juniper.contrail.api.types.VirtualNetwork;
+import net.juniper.contrail.api.types.VnSubnetsType;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable graph of the topology held in primitive arrays, for deployments
+ * too large to keep the Contrail objects on the heap: a port with its
+ * instance IP costs about a hundred bytes instead of several kilobytes.
+ *
+ * UUIDs are interned to int ids, numbered in the order first seen, and kept
+ * as two longs per node. Every node has a kind and at most one parent, the
+ * hierarchy project, network, subnet or port, instance IP or floating IP.
+ * Other relations, the subnets of a port and the interfaces of a router, are
+ * references. Children, references and their reverse are stored in
+ * compressed sparse row layout: the edges of node i are the entries
+ * offsets[i] to offsets[i + 1] of one int array, grouped by kind. Queries
+ * return {@link Node} views over these arrays and copy nothing.
+ *
+ * Graphs are built with a {@link Builder}, or loaded from Contrail by
+ * {@link #load(ApiConnector)}; a changed topology is loaded again.
+ *
+ * The handlers do not use it and keep answering from {@link Topology}; it
+ * lives with the benchmarks, where {@link TopologyFootprint} measures its
+ * heap per port.
+ */
+public final class CompactTopology {
+    /**
+     * Logger instance.
+     */
+    static final Logger LOGGER = LoggerFactory.getLogger(CompactTopology.class);
+
+    /**
+     * Kinds of nodes. Nodes only referred to have no kind.
+     */
+    public enum Kind {
+        PROJECT, NETWORK, SUBNET, PORT, INSTANCE_IP, FLOATING_IP, ROUTER
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final byte NO_KIND = (byte) KINDS.length;
+
+    private final int size;
+    private final long[] uuids;
+    private final int[] table;
+    private final byte[] kinds;
+    private final int[] parents;
+    private final int[] childOffsets;
+    private final int[] children;
+    private final int[] refOffsets;
+    private final int[] refs;
+    private final int[] referrerOffsets;
+    private final int[] referrers;
+
+    private CompactTopology(Builder builder) {
+        size = builder.size;
+        uuids = Arrays.copyOf(builder.uuids, 2 * size);
+        table = builder.table;
+        kinds = Arrays.copyOf(builder.kinds, size);
+        parents = Arrays.copyOf(builder.parents, size);
+        int childCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (parents[i] >= 0) {
+                childCount++;
+            }
+        }
+        int[] childFrom = new int[childCount];
+        int[] childTo = new int[childCount];
+        for (int i = 0, edge = 0; i < size; i++) {
+            if (parents[i] >= 0) {
+                childFrom[edge] = parents[i];
+                childTo[edge++] = i;
+            }
+        }
+        childOffsets = new int[size + 1];
+        children = csr(childFrom, childTo, childCount, childOffsets);
+        refOffsets = new int[size + 1];
+        refs = csr(builder.refFrom, builder.refTo, builder.refCount, refOffsets);
+        referrerOffsets = new int[size + 1];
+        referrers = csr(builder.refTo, builder.refFrom, builder.refCount, referrerOffsets);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Invoked to load the graph of the objects existing in Contrail. Makes a
+     * call per object.
+     */
+    public static CompactTopology load(ApiConnector apiConnector) throws IOException {
+        long start = System.nanoTime();
+        Builder builder = builder();
+        Map<String, List<VnSubnetsType.IpamSubnetType>> subnets = new HashMap<String, List<VnSubnetsType.IpamSubnetType>>();
+        for (ApiObjectBase project : list(apiConnector, Project.class)) {
+            builder.node(Kind.PROJECT, project.getUuid(), null);
+        }
+        for (ApiObjectBase listed : list(apiConnector, VirtualNetwork.class)) {
+            VirtualNetwork virtualNetwork = (VirtualNetwork) apiConnector.findById(VirtualNetwork.class, listed.getUuid());
+            if (virtualNetwork == null) {
+                continue;
+            }
+            builder.node(Kind.NETWORK, virtualNetwork.getUuid(), virtualNetwork.getParentUuid());
+            subnets.put(virtualNetwork.getUuid(), ReferenceIndex.subnets(virtualNetwork));
+            for (VnSubnetsType.IpamSubnetType subnet : subnets.get(virtualNetwork.getUuid())) {
+                if (subnet.getSubnetUuid() != null) {
+                    builder.node(Kind.SUBNET, subnet.getSubnetUuid(), virtualNetwork.getUuid());
+                }
+            }
+        }
+        for (ApiObjectBase listed : list(apiConnector, VirtualMachineInterface.class)) {
+            VirtualMachineInterface virtualMachineInterface = (VirtualMachineInterface) apiConnector.findById(VirtualMachineInterface.class,
+                    listed.getUuid());
+            if (virtualMachineInterface != null) {
+                builder.node(Kind.PORT, virtualMachineInterface.getUuid(), first(virtualMachineInterface.getVirtualNetwork()));
+            }
+        }
+        for (ApiObjectBase listed : list(apiConnector, InstanceIp.class)) {
+            InstanceIp instanceIp = (InstanceIp) apiConnector.findById(InstanceIp.class, listed.getUuid());
+            if (instanceIp == null) {
+                continue;
+            }
+            String port = first(instanceIp.getVirtualMachineInterface());
+            builder.node(Kind.INSTANCE_IP, instanceIp.getUuid(), port);
+            List<VnSubnetsType.IpamSubnetType> networkSubnets = subnets.get(first(instanceIp.getVirtualNetwork()));
+            if (port != null && networkSubnets != null && instanceIp.getAddress() != null) {
+                String subnet = ReferenceIndex.subnetOf(networkSubnets, instanceIp.getAddress());
+                if (subnet != null) {
+                    builder.ref(port, subnet);
+                }
+            }
+        }
+        for (ApiObjectBase listed : list(apiConnector, FloatingIp.class)) {
+            FloatingIp floatingIp = (FloatingIp) apiConnector.findById(FloatingIp.class, listed.getUuid());
+            if (floatingIp != null) {
+                builder.node(Kind.FLOATING_IP, floatingIp.getUuid(), first(floatingIp.getVirtualMachineInterface()));
+            }
+        }
+        for (ApiObjectBase listed : list(apiConnector, LogicalRouter.class)) {
+            LogicalRouter logicalRouter = (LogicalRouter) apiConnector.findById(LogicalRouter.class, listed.getUuid());
+            if (logicalRouter == null) {
+                continue;
+            }
+            builder.node(Kind.ROUTER, logicalRouter.getUuid(), logicalRouter.getParentUuid());
+            if (logicalRouter.getVirtualMachineInterface() != null) {
+                for (ObjectReference<ApiPropertyBase> ref : logicalRouter.getVirtualMachineInterface()) {
+                    builder.ref(logicalRouter.getUuid(), ref.getUuid());
+                }
+            }
+        }
+        CompactTopology topology = builder.build();
+        LOGGER.info("Compact topology loaded with {} nodes, {} bytes, in {} ms", topology.size(), topology.memoryBytes(),
+                (System.nanoTime() - start) / 1000000);
+        return topology;
+    }
+
+    /**
+     * @return The node with the specified UUID, or null.
+     */
+    public Node node(String uuid) {
+        UUID parsed = parse(uuid);
+        if (parsed == null) {
+            return null;
+        }
+        int id = find(table, uuids, parsed.getMostSignificantBits(), parsed.getLeastSignificantBits());
+        return id < 0 ? null : new Node(id);
+    }
+
+    /**
+     * @return Number of nodes, including those only referred to.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Number of nodes of a kind.
+     */
+    public int count(Kind kind) {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (kinds[i] == kind.ordinal()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return Bytes held by the arrays of the graph.
+     */
+    public long memoryBytes() {
+        return 8L * uuids.length + 4L * table.length + kinds.length + 4L
+                * (parents.length + childOffsets.length + children.length + refOffsets.length + refs.length + referrerOffsets.length + referrers.length);
+    }
+
+    /**
+     * View of a node of the graph.
+     */
+    public final class Node {
+        private final int id;
+
+        Node(int id) {
+            this.id = id;
+        }
+
+        /**
+         * @return The kind of the node, or null if it is only referred to.
+         */
+        public Kind getKind() {
+            return kinds[id] == NO_KIND ? null : KINDS[kinds[id]];
+        }
+
+        public String getUuid() {
+            return new UUID(uuids[2 * id], uuids[2 * id + 1]).toString();
+        }
+
+        /**
+         * @return The parent of the node, or null.
+         */
+        public Node getParent() {
+            return parents[id] < 0 ? null : new Node(parents[id]);
+        }
+
+        public List<Node> getChildren() {
+            return new Nodes(children, childOffsets[id], childOffsets[id + 1]);
+        }
+
+        public List<Node> getChildren(Kind kind) {
+            return ofKind(children, childOffsets[id], childOffsets[id + 1], kind);
+        }
+
+        /**
+         * @return The nodes this node refers to.
+         */
+        public List<Node> getRefs() {
+            return new Nodes(refs, refOffsets[id], refOffsets[id + 1]);
+        }
+
+        public List<Node> getRefs(Kind kind) {
+            return ofKind(refs, refOffsets[id], refOffsets[id + 1], kind);
+        }
+
+        /**
+         * @return The nodes referring to this node.
+         */
+        public List<Node> getReferrers() {
+            return new Nodes(referrers, referrerOffsets[id], referrerOffsets[id + 1]);
+        }
+
+        public List<Node> getReferrers(Kind kind) {
+            return ofKind(referrers, referrerOffsets[id], referrerOffsets[id + 1], kind);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Node && ((Node) obj).id == id && ((Node) obj).graph() == CompactTopology.this;
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+
+        @Override
+        public String toString() {
+            return getKind() + " " + getUuid();
+        }
+
+        private CompactTopology graph() {
+            return CompactTopology.this;
+        }
+    }
+
+    /**
+     * List of the nodes in a range of an edge array.
+     */
+    private final class Nodes extends AbstractList<Node> {
+        private final int[] edges;
+        private final int from;
+        private final int to;
+
+        Nodes(int[] edges, int from, int to) {
+            this.edges = edges;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Node get(int index) {
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            return new Node(edges[from + index]);
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+
+    /**
+     * @return The nodes of a kind in a range of an edge array, which is
+     *         sorted by kind.
+     */
+    private List<Node> ofKind(int[] edges, int from, int to, Kind kind) {
+        int start = lowerBound(edges, from, to, kind.ordinal());
+        return new Nodes(edges, start, lowerBound(edges, start, to, kind.ordinal() + 1));
+    }
+
+    private int lowerBound(int[] edges, int from, int to, int kind) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (kinds[edges[middle]] < kind) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return The targets of the edges grouped by source in offsets, and
+     *         sorted by kind for each source.
+     */
+    private int[] csr(int[] from, int[] to, int count, int[] offsets) {
+        // order the edges by the kind of their target, then stably by source
+        int[] kindOffsets = new int[KINDS.length + 2];
+        for (int i = 0; i < count; i++) {
+            kindOffsets[kinds[to[i]] + 1]++;
+        }
+        for (int k = 0; k < KINDS.length + 1; k++) {
+            kindOffsets[k + 1] += kindOffsets[k];
+        }
+        int[] byKind = new int[count];
+        for (int i = 0; i < count; i++) {
+            byKind[kindOffsets[kinds[to[i]]]++] = i;
+        }
+        for (int i = 0; i < count; i++) {
+            offsets[from[i] + 1]++;
+        }
+        for (int i = 0; i < size; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] next = Arrays.copyOf(offsets, size);
+        int[] targets = new int[count];
+        for (int edge : byKind) {
+            targets[next[from[edge]]++] = to[edge];
+        }
+        return targets;
+    }
+
+    private static int find(int[] table, long[] uuids, long high, long low) {
+        int mask = table.length - 1;
+        int slot = hash(high, low) & mask;
+        while (table[slot] != 0) {
+            int id = table[slot] - 1;
+            if (uuids[2 * id] == high && uuids[2 * id + 1] == low) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -slot - 1;
+    }
+
+    private static int hash(long high, long low) {
+        long h = high * 0x9E3779B97F4A7C15L ^ low;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private static UUID parse(String uuid) {
+        if (uuid == null) {
+            return null;
+        }
+        try {
+            return UUID.fromString(uuid);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static List<? extends ApiObjectBase> list(ApiConnector apiConnector, Class<? extends ApiObjectBase> type) throws IOException {
+        List<? extends ApiObjectBase> objects = apiConnector.list(type, null);
+        return objects == null ? Collections.<ApiObjectBase> emptyList() : objects;
+    }
+
+    private static String first(List<ObjectReference<ApiPropertyBase>> refs) {
+        return refs == null || refs.isEmpty() ? null : refs.get(0).getUuid();
+    }
+
+    /**
+     * Builder of a {@link CompactTopology}, not thread safe. Nodes and
+     * references can be added in any order; UUIDs that do not parse are
+     * ignored.
+     */
+    public static final class Builder {
+        private int size;
+        private long[] uuids = new long[2 * 64];
+        private int[] table = new int[128];
+        private byte[] kinds = new byte[64];
+        private int[] parents = new int[64];
+        private int refCount;
+        private int[] refFrom = new int[64];
+        private int[] refTo = new int[64];
+
+        Builder() {
+        }
+
+        /**
+         * Invoked to add a node, or to set the kind and parent of one already
+         * referred to.
+         */
+        public Builder node(Kind kind, String uuid, String parentUuid) {
+            int id = intern(uuid);
+            if (id >= 0) {
+                kinds[id] = (byte) kind.ordinal();
+                parents[id] = intern(parentUuid);
+            }
+            return this;
+        }
+
+        /**
+         * Invoked to add a reference from a node to another.
+         */
+        public Builder ref(String fromUuid, String toUuid) {
+            int from = intern(fromUuid);
+            int to = intern(toUuid);
+            if (from >= 0 && to >= 0) {
+                if (refCount == refFrom.length) {
+                    refFrom = Arrays.copyOf(refFrom, 2 * refCount);
+                    refTo = Arrays.copyOf(refTo, 2 * refCount);
+                }
+                refFrom[refCount] = from;
+                refTo[refCount++] = to;
+            }
+            return this;
+        }
+
+        public CompactTopology build() {
+            return new CompactTopology(this);
+        }
+
+        /**
+         * @return The id of a UUID, or -1 if it does not parse.
+         */
+        private int intern(String uuid) {
+            UUID parsed = parse(uuid);
+            if (parsed == null) {
+                return -1;
+            }
+            long high = parsed.getMostSignificantBits();
+            long low = parsed.getLeastSignificantBits();
+            int slot = find(table, uuids, high, low);
+            if (slot >= 0) {
+                return slot;
+            }
+            int id = size++;
+            if (id == kinds.length) {
+                uuids = Arrays.copyOf(uuids, 4 * id);
+                kinds = Arrays.copyOf(kinds, 2 * id);
+                parents = Arrays.copyOf(parents, 2 * id);
+            }
+            uuids[2 * id] = high;
+            uuids[2 * id + 1] = low;
+            kinds[id] = NO_KIND;
+            parents[id] = -1;
+            table[-slot - 1] = id + 1;
+            if (2 * size > table.length) {
+                rehash(2 * table.length);
+            }
+            return id;
+        }
+
+        private void rehash(int capacity) {
+            table = new int[capacity];
+            for (int id = 0; id < size; id++) {
+                table[-find(table, uuids, uuids[2 * id], uuids[2 * id + 1]) - 1] = id + 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,734 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP server speaking the Contrail API resources used by the plugin,
+ * so that the real ApiConnector built by ApiConnectorFactory can be exercised
+ * without a Contrail cluster.
+ *
+ * It serves create (POST /virtual-networks), read, update and delete
+ * (GET, PUT and DELETE /virtual-network/UUID) and list (GET
+ * /virtual-networks) for every resource type, plus fqname-to-id and
+ * id-to-fqname. Objects are kept as JSON: references are resolved by name,
+ * children are listed on their parent and references show up as back
+ * references on the referred object. Like the API server it answers 404 for
+ * unknown objects, 409 for duplicate names and for deleting objects that
+ * still have children or back references. The default-domain,
+ * default-project and default-network-ipam exist from the start.
+ *
+ * Every request first goes through the {@link FaultProfile} of its endpoint,
+ * which may delay it, fail it, reset its connection or trickle its response.
+ *
+ * java -cp benchmarks.jar org.opendaylight.plugin2oc.neutron.ContrailApiSimulator [port] [faults.properties]
+ */
+public class ContrailApiSimulator {
+    /**
+     * Logger instance.
+     */
+    static final Logger LOGGER = LoggerFactory.getLogger(ContrailApiSimulator.class);
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    static final String FQNAME_TO_ID = "fqname-to-id";
+    static final String ID_TO_FQNAME = "id-to-fqname";
+    static final int SLOW_BODY_PIECES = 16;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, FaultProfile> profiles;
+    private final Random random;
+
+    /**
+     * Objects by type and UUID, guarded by the store lock like the indexes
+     * below.
+     */
+    private final Map<String, Map<String, JsonObject>> objects = new HashMap<String, Map<String, JsonObject>>();
+    private final Map<String, String> uuidsByName = new HashMap<String, String>();
+    private final Map<String, String> typesByUuid = new HashMap<String, String>();
+    private final Object store = new Object();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicLong injectedResets = new AtomicLong();
+    private final AtomicLong slowBodies = new AtomicLong();
+
+    /**
+     * @param port
+     *            Port to listen on, 0 for any free port.
+     * @param threads
+     *            Number of requests served concurrently.
+     * @param faults
+     *            Fault profiles, see {@link FaultProfile}.
+     * @param seed
+     *            Seed of the fault injection, for repeatable runs.
+     */
+    public ContrailApiSimulator(int port, int threads, Properties faults, long seed) throws IOException {
+        profiles = FaultProfile.parse(faults);
+        random = new Random(seed);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("contrail-simulator-%d").setDaemon(true).build());
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        provision("domain", "default-domain");
+        provision("project", "default-domain", "default-project");
+        provision("network-ipam", "default-domain", "default-project", "default-network-ipam");
+    }
+
+    public void start() {
+        server.start();
+        LOGGER.info("Contrail API simulator listening on port {}", getPort());
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    public long getInjectedResets() {
+        return injectedResets.get();
+    }
+
+    public long getSlowBodies() {
+        return slowBodies.get();
+    }
+
+    /**
+     * @return Number of objects of the specified type, e.g. "virtual-network".
+     */
+    public int size(String type) {
+        synchronized (store) {
+            Map<String, JsonObject> byUuid = objects.get(type);
+            return byUuid == null ? 0 : byUuid.size();
+        }
+    }
+
+    /**
+     * A response status and JSON body.
+     */
+    static final class Response {
+        final int status;
+        final String body;
+
+        Response(int status, JsonElement body) {
+            this.status = status;
+            this.body = body.toString();
+        }
+
+        static Response error(int status, String message) {
+            JsonObject body = new JsonObject();
+            body.addProperty("error", message);
+            return new Response(status, body);
+        }
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        String[] segments = path.length() > 1 ? path.substring(1).split("/") : new String[0];
+        String type = segments.length == 0 ? "" : segments[0];
+        if (segments.length == 1 && !FQNAME_TO_ID.equals(type) && !ID_TO_FQNAME.equals(type) && type.endsWith("s")) {
+            type = type.substring(0, type.length() - 1);
+        }
+        FaultProfile profile = FaultProfile.lookup(profiles, method, type);
+        long latency;
+        boolean reset;
+        boolean error;
+        boolean slow;
+        synchronized (random) {
+            latency = profile.latencyMillis(random);
+            reset = random.nextDouble() < profile.resetRate;
+            error = !reset && random.nextDouble() < profile.errorRate;
+            slow = random.nextDouble() < profile.slowBodyRate;
+        }
+        byte[] request = read(exchange.getRequestBody());
+        try {
+            if (latency > 0) {
+                Thread.sleep(latency);
+            }
+            if (reset) {
+                // closing the exchange without a response drops the connection
+                injectedResets.incrementAndGet();
+                return;
+            }
+            Response response;
+            if (error) {
+                injectedErrors.incrementAndGet();
+                response = Response.error(profile.errorStatus, "Injected failure");
+            } else {
+                response = dispatch(method, segments, type, request, exchange.getRequestURI().getRawQuery());
+            }
+            if (slow) {
+                slowBodies.incrementAndGet();
+            }
+            write(exchange, response, slow ? profile.slowBodyMillis : 0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Response dispatch(String method, String[] segments, String type, byte[] request, String query) {
+        try {
+            if (segments.length == 0) {
+                return new Response(200, new JsonObject());
+            }
+            if (segments.length == 1 && "POST".equals(method) && FQNAME_TO_ID.equals(type)) {
+                return fqNameToId(parse(request));
+            }
+            if (segments.length == 1 && "POST".equals(method) && ID_TO_FQNAME.equals(type)) {
+                return idToFqName(parse(request));
+            }
+            if (segments.length == 1 && "POST".equals(method)) {
+                return create(type, parse(request));
+            }
+            if (segments.length == 1 && "GET".equals(method)) {
+                return list(type, parameters(query));
+            }
+            if (segments.length == 2 && "GET".equals(method)) {
+                return read(type, segments[1]);
+            }
+            if (segments.length == 2 && "PUT".equals(method)) {
+                return update(type, segments[1], parse(request));
+            }
+            if (segments.length == 2 && "DELETE".equals(method)) {
+                return delete(type, segments[1]);
+            }
+            return Response.error(404, "No such resource");
+        } catch (JsonParseException e) {
+            return Response.error(400, "Malformed request body: " + e.getMessage());
+        } catch (IllegalStateException e) {
+            return Response.error(400, "Malformed request body: " + e.getMessage());
+        }
+    }
+
+    private Response create(String type, JsonObject request) {
+        JsonElement element = request.get(type);
+        if (element == null || !element.isJsonObject()) {
+            return Response.error(400, "Request body must hold a " + type);
+        }
+        JsonObject obj = element.getAsJsonObject();
+        synchronized (store) {
+            List<String> fqName = fqName(obj);
+            if (fqName == null) {
+                return Response.error(400, "Neither fq_name nor name given");
+            }
+            String name = type + ":" + join(fqName);
+            if (uuidsByName.containsKey(name)) {
+                return Response.error(409, type + " " + join(fqName) + " already exists");
+            }
+            String uuid = string(obj, "uuid");
+            if (uuid == null) {
+                uuid = UUID.randomUUID().toString();
+            } else if (typesByUuid.containsKey(uuid)) {
+                return Response.error(409, "UUID " + uuid + " already in use");
+            }
+            String unresolved = resolveReferences(obj);
+            if (unresolved != null) {
+                return Response.error(404, "Reference not found: " + unresolved);
+            }
+            obj.add("fq_name", array(fqName));
+            obj.addProperty("name", fqName.get(fqName.size() - 1));
+            obj.addProperty("uuid", uuid);
+            obj.addProperty("href", href(type, uuid));
+            objects(type).put(uuid, obj);
+            uuidsByName.put(name, uuid);
+            typesByUuid.put(uuid, type);
+            linkToParent(type, obj, true);
+            linkBackReferences(type, obj, true);
+            JsonObject response = new JsonObject();
+            response.add(type, obj);
+            return new Response(200, response);
+        }
+    }
+
+    private Response read(String type, String uuid) {
+        synchronized (store) {
+            JsonObject obj = objects(type).get(uuid);
+            if (obj == null) {
+                return Response.error(404, type + " " + uuid + " not found");
+            }
+            JsonObject response = new JsonObject();
+            response.add(type, obj);
+            return new Response(200, response);
+        }
+    }
+
+    /**
+     * Properties given in the request replace the stored ones; references
+     * given replace the stored references of the same type, and a null clears
+     * them. Identity, children and back references are left unchanged.
+     */
+    private Response update(String type, String uuid, JsonObject request) {
+        JsonElement element = request.get(type);
+        if (element == null || !element.isJsonObject()) {
+            return Response.error(400, "Request body must hold a " + type);
+        }
+        JsonObject changes = element.getAsJsonObject();
+        synchronized (store) {
+            JsonObject obj = objects(type).get(uuid);
+            if (obj == null) {
+                return Response.error(404, type + " " + uuid + " not found");
+            }
+            String unresolved = resolveReferences(changes);
+            if (unresolved != null) {
+                return Response.error(404, "Reference not found: " + unresolved);
+            }
+            linkBackReferences(type, obj, false);
+            for (Map.Entry<String, JsonElement> change : changes.entrySet()) {
+                String key = change.getKey();
+                if ("uuid".equals(key) || "fq_name".equals(key) || "name".equals(key) || "href".equals(key) || key.startsWith("parent_")
+                        || key.endsWith("_back_refs") || isChildren(key)) {
+                    continue;
+                }
+                if (change.getValue().isJsonNull()) {
+                    obj.remove(key);
+                } else {
+                    obj.add(key, change.getValue());
+                }
+            }
+            linkBackReferences(type, obj, true);
+            JsonObject response = new JsonObject();
+            JsonObject identity = new JsonObject();
+            identity.addProperty("uuid", uuid);
+            identity.addProperty("href", href(type, uuid));
+            response.add(type, identity);
+            return new Response(200, response);
+        }
+    }
+
+    private Response delete(String type, String uuid) {
+        synchronized (store) {
+            JsonObject obj = objects(type).get(uuid);
+            if (obj == null) {
+                return Response.error(404, type + " " + uuid + " not found");
+            }
+            for (Map.Entry<String, JsonElement> member : obj.entrySet()) {
+                boolean inUse = member.getKey().endsWith("_back_refs") || isChildren(member.getKey());
+                if (inUse && member.getValue().isJsonArray() && member.getValue().getAsJsonArray().size() > 0) {
+                    return Response.error(409, "Delete when resource still referred: " + member.getKey());
+                }
+            }
+            objects(type).remove(uuid);
+            uuidsByName.remove(type + ":" + join(strings(obj.getAsJsonArray("fq_name"))));
+            typesByUuid.remove(uuid);
+            linkToParent(type, obj, false);
+            linkBackReferences(type, obj, false);
+            return new Response(200, new JsonObject());
+        }
+    }
+
+    /**
+     * Lists the objects of a type, all of them or those of the parent given
+     * by parent_id or parent_fq_name_str; with detail=true the objects
+     * themselves, otherwise their fq_name, uuid and href.
+     */
+    private Response list(String type, Map<String, String> parameters) {
+        synchronized (store) {
+            String parentFqName = parameters.get("parent_fq_name_str");
+            String parentUuid = parameters.get("parent_id");
+            boolean detail = "true".equalsIgnoreCase(parameters.get("detail"));
+            JsonArray list = new JsonArray();
+            for (JsonObject obj : new TreeMap<String, JsonObject>(objects(type)).values()) {
+                List<String> fqName = strings(obj.getAsJsonArray("fq_name"));
+                String parent = join(fqName.subList(0, fqName.size() - 1));
+                if (parentFqName != null && !parentFqName.equals(parent) || parentUuid != null && !parentUuid.equals(string(obj, "parent_uuid"))) {
+                    continue;
+                }
+                if (detail) {
+                    JsonObject entry = new JsonObject();
+                    entry.add(type, obj);
+                    list.add(entry);
+                } else {
+                    JsonObject entry = new JsonObject();
+                    entry.add("fq_name", obj.get("fq_name"));
+                    entry.add("uuid", obj.get("uuid"));
+                    entry.addProperty("href", href(type, string(obj, "uuid")));
+                    list.add(entry);
+                }
+            }
+            JsonObject response = new JsonObject();
+            response.add(type + "s", list);
+            return new Response(200, response);
+        }
+    }
+
+    private Response fqNameToId(JsonObject request) {
+        String type = string(request, "type");
+        JsonElement fqName = request.get("fq_name");
+        if (type == null || fqName == null || !fqName.isJsonArray()) {
+            return Response.error(400, "type and fq_name are required");
+        }
+        synchronized (store) {
+            String uuid = uuidsByName.get(type + ":" + join(strings(fqName.getAsJsonArray())));
+            if (uuid == null) {
+                return Response.error(404, "Name " + join(strings(fqName.getAsJsonArray())) + " not found");
+            }
+            JsonObject response = new JsonObject();
+            response.addProperty("uuid", uuid);
+            return new Response(200, response);
+        }
+    }
+
+    private Response idToFqName(JsonObject request) {
+        String uuid = string(request, "uuid");
+        synchronized (store) {
+            String type = uuid == null ? null : typesByUuid.get(uuid);
+            if (type == null) {
+                return Response.error(404, "UUID " + uuid + " not found");
+            }
+            JsonObject response = new JsonObject();
+            response.addProperty("type", type);
+            response.add("fq_name", objects(type).get(uuid).get("fq_name"));
+            return new Response(200, response);
+        }
+    }
+
+    private void provision(String type, String... fqName) {
+        JsonObject obj = new JsonObject();
+        obj.add("fq_name", array(Arrays.asList(fqName)));
+        if (fqName.length > 1) {
+            obj.addProperty("parent_type", fqName.length == 2 ? "domain" : "project");
+        }
+        JsonObject request = new JsonObject();
+        request.add(type, obj);
+        create(type, request);
+    }
+
+    /**
+     * @return The fq_name of a new object, or from its parent and name.
+     */
+    private List<String> fqName(JsonObject obj) {
+        JsonElement fqName = obj.get("fq_name");
+        if (fqName != null && fqName.isJsonArray() && fqName.getAsJsonArray().size() > 0) {
+            return strings(fqName.getAsJsonArray());
+        }
+        String name = string(obj, "name");
+        if (name == null) {
+            return null;
+        }
+        List<String> result = new ArrayList<String>();
+        String parentUuid = string(obj, "parent_uuid");
+        String parentType = parentUuid == null ? null : typesByUuid.get(parentUuid);
+        if (parentType != null) {
+            result.addAll(strings(objects(parentType).get(parentUuid).getAsJsonArray("fq_name")));
+        }
+        result.add(name);
+        return result;
+    }
+
+    /**
+     * Invoked to fill in the uuid and href of the references of an object.
+     *
+     * @return The first reference that does not resolve, or null.
+     */
+    private String resolveReferences(JsonObject obj) {
+        for (Map.Entry<String, JsonElement> member : obj.entrySet()) {
+            String key = member.getKey();
+            if (!key.endsWith("_refs") || key.endsWith("_back_refs") || !member.getValue().isJsonArray()) {
+                continue;
+            }
+            String refType = key.substring(0, key.length() - "_refs".length()).replace('_', '-');
+            for (JsonElement element : member.getValue().getAsJsonArray()) {
+                JsonObject ref = element.getAsJsonObject();
+                String uuid = string(ref, "uuid");
+                if (uuid == null && ref.get("to") != null) {
+                    uuid = uuidsByName.get(refType + ":" + join(strings(ref.getAsJsonArray("to"))));
+                }
+                if (uuid == null || objects(refType).get(uuid) == null) {
+                    return refType + " " + (ref.get("to") != null ? ref.get("to") : uuid);
+                }
+                ref.addProperty("uuid", uuid);
+                ref.addProperty("href", href(refType, uuid));
+                ref.add("to", objects(refType).get(uuid).get("fq_name"));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Invoked to add or remove an object from the children listed on its
+     * parent, e.g. the floating_ip_pools of a virtual-network.
+     */
+    private void linkToParent(String type, JsonObject obj, boolean add) {
+        List<String> fqName = strings(obj.getAsJsonArray("fq_name"));
+        String parentType = string(obj, "parent_type");
+        if (fqName.size() < 2 || parentType == null) {
+            return;
+        }
+        String parentUuid = uuidsByName.get(parentType + ":" + join(fqName.subList(0, fqName.size() - 1)));
+        JsonObject parent = parentUuid == null ? null : objects(parentType).get(parentUuid);
+        if (parent == null) {
+            return;
+        }
+        if (add) {
+            obj.addProperty("parent_uuid", parentUuid);
+            obj.addProperty("parent_href", href(parentType, parentUuid));
+        }
+        link(parent, type.replace('-', '_') + "s", reference(type, obj), add);
+    }
+
+    /**
+     * Invoked to add or remove the back references of an object on the
+     * objects it refers to, e.g. the instance_ip_back_refs of a
+     * virtual-machine-interface.
+     */
+    private void linkBackReferences(String type, JsonObject obj, boolean add) {
+        for (Map.Entry<String, JsonElement> member : obj.entrySet()) {
+            String key = member.getKey();
+            if (!key.endsWith("_refs") || key.endsWith("_back_refs") || !member.getValue().isJsonArray()) {
+                continue;
+            }
+            String refType = key.substring(0, key.length() - "_refs".length()).replace('_', '-');
+            for (JsonElement element : member.getValue().getAsJsonArray()) {
+                JsonObject ref = element.getAsJsonObject();
+                JsonObject target = objects(refType).get(string(ref, "uuid"));
+                if (target != null) {
+                    JsonObject backRef = reference(type, obj);
+                    if (ref.get("attr") != null) {
+                        backRef.add("attr", ref.get("attr"));
+                    }
+                    link(target, type.replace('-', '_') + "_back_refs", backRef, add);
+                }
+            }
+        }
+    }
+
+    /**
+     * Invoked to add or remove a reference, by uuid, from a list member of an
+     * object; an emptied list is removed.
+     */
+    private static void link(JsonObject obj, String key, JsonObject ref, boolean add) {
+        JsonArray refs = obj.has(key) && obj.get(key).isJsonArray() ? obj.getAsJsonArray(key) : new JsonArray();
+        JsonArray updated = new JsonArray();
+        String uuid = string(ref, "uuid");
+        Iterator<JsonElement> i = refs.iterator();
+        while (i.hasNext()) {
+            JsonElement element = i.next();
+            if (!uuid.equals(string(element.getAsJsonObject(), "uuid"))) {
+                updated.add(element);
+            }
+        }
+        if (add) {
+            updated.add(ref);
+        }
+        if (updated.size() > 0) {
+            obj.add(key, updated);
+        } else {
+            obj.remove(key);
+        }
+    }
+
+    /**
+     * @return Whether a member holds the children of an object, e.g.
+     *         floating_ip_pools.
+     */
+    private boolean isChildren(String key) {
+        return key.endsWith("s") && objects.containsKey(key.substring(0, key.length() - 1).replace('_', '-'));
+    }
+
+    private JsonObject reference(String type, JsonObject obj) {
+        JsonObject ref = new JsonObject();
+        ref.add("to", obj.get("fq_name"));
+        ref.add("uuid", obj.get("uuid"));
+        ref.addProperty("href", href(type, string(obj, "uuid")));
+        return ref;
+    }
+
+    private Map<String, JsonObject> objects(String type) {
+        Map<String, JsonObject> byUuid = objects.get(type);
+        if (byUuid == null) {
+            byUuid = new HashMap<String, JsonObject>();
+            objects.put(type, byUuid);
+        }
+        return byUuid;
+    }
+
+    private String href(String type, String uuid) {
+        return "http://127.0.0.1:" + getPort() + "/" + type + "/" + uuid;
+    }
+
+    private static String string(JsonObject obj, String key) {
+        JsonElement element = obj.get(key);
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+
+    private static List<String> strings(JsonArray array) {
+        List<String> strings = new ArrayList<String>();
+        if (array != null) {
+            for (JsonElement element : array) {
+                strings.add(element.getAsString());
+            }
+        }
+        return strings;
+    }
+
+    private static JsonArray array(List<String> strings) {
+        JsonArray array = new JsonArray();
+        for (String string : strings) {
+            array.add(new JsonPrimitive(string));
+        }
+        return array;
+    }
+
+    private static String join(List<String> fqName) {
+        StringBuilder name = new StringBuilder();
+        for (String part : fqName) {
+            if (name.length() > 0) {
+                name.append(':');
+            }
+            name.append(part);
+        }
+        return name.toString();
+    }
+
+    private static JsonObject parse(byte[] request) {
+        if (request.length == 0) {
+            return new JsonObject();
+        }
+        return new JsonParser().parse(new String(request, UTF_8)).getAsJsonObject();
+    }
+
+    private static Map<String, String> parameters(String query) {
+        Map<String, String> parameters = new HashMap<String, String>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            try {
+                if (equals > 0) {
+                    parameters.put(URLDecoder.decode(parameter.substring(0, equals), "UTF-8"), URLDecoder.decode(parameter.substring(equals + 1), "UTF-8"));
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Ignoring query parameter {}", parameter);
+            }
+        }
+        return parameters;
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Invoked to send a response, in pieces spread over slowMillis when it is
+     * not 0.
+     */
+    private static void write(HttpExchange exchange, Response response, long slowMillis) throws IOException, InterruptedException {
+        byte[] body = response.body.getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(response.status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        if (slowMillis <= 0) {
+            out.write(body);
+        } else {
+            int piece = Math.max(1, (body.length + SLOW_BODY_PIECES - 1) / SLOW_BODY_PIECES);
+            for (int offset = 0; offset < body.length; offset += piece) {
+                out.write(body, offset, Math.min(piece, body.length - offset));
+                out.flush();
+                Thread.sleep(slowMillis / SLOW_BODY_PIECES);
+            }
+        }
+        out.close();
+    }
+
+    /**
+     * @return The fault profiles of the specified properties file, or none.
+     */
+    static Properties loadFaults(String path) throws IOException {
+        Properties faults = new Properties();
+        if (path != null) {
+            Reader reader = new InputStreamReader(new FileInputStream(path), UTF_8);
+            try {
+                faults.load(reader);
+            } finally {
+                reader.close();
+            }
+        }
+        return faults;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8082;
+        Properties faults = loadFaults(args.length > 1 ? args[1] : null);
+        ContrailApiSimulator simulator = new ContrailApiSimulator(port, Integer.getInteger("plugin2oc.simulator.threads", 16), faults,
+                Long.getLong("plugin2oc.simulator.seed", 1));
+        simulator.start();
+        while (true) {
+            TimeUnit.SECONDS.sleep(60);
+            LOGGER.info("{} requests served, {} errors, {} resets and {} slow bodies injected", simulator.getRequests(),
+                    simulator.getInjectedErrors(), simulator.getInjectedResets(), simulator.getSlowBodies());
+        }
+    }
+}
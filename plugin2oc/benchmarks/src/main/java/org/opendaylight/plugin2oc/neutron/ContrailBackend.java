@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.juniper.contrail.api.types.Project;
+
+import org.opendaylight.controller.networkconfig.neutron.NeutronFloatingIP;
+import org.opendaylight.controller.networkconfig.neutron.NeutronNetwork;
+import org.opendaylight.controller.networkconfig.neutron.NeutronPort;
+import org.opendaylight.controller.networkconfig.neutron.NeutronRouter;
+import org.opendaylight.controller.networkconfig.neutron.NeutronSubnet;
+import org.opendaylight.controller.networkconfig.neutron.NeutronSubnet_IPAllocationPool;
+import org.opendaylight.controller.networkconfig.neutron.Neutron_IPs;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * In-memory Contrail backend shared by the handler benchmarks.
+ *
+ * Every iteration starts from an empty {@link InMemoryApiConnector} holding
+ * only the benchmark tenant, wired into the Activator behind the same
+ * {@link InstrumentedApiConnector} as in production and a
+ * {@link LatencyInjectingApiConnector} adding latencyMicros to every call.
+ * Neutron resources get UUIDs, MAC and IP addresses from a sequence, so runs
+ * are repeatable.
+ */
+@State(Scope.Benchmark)
+public class ContrailBackend {
+    static final String TENANT_ID = "3e1f2a4c-5b6d-4e7f-8a9b-0c1d2e3f4a5b";
+    static final long UUID_PREFIX = 0x706c7567696e326fL;
+
+    @Param({ "0", "500" })
+    public long latencyMicros;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private InMemoryApiConnector store;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        store = new InMemoryApiConnector();
+        Project project = new Project();
+        project.setName("benchmark");
+        project.setDisplayName("benchmark");
+        project.setUuid(TENANT_ID);
+        store.create(project);
+        Activator.apiConnector = new InstrumentedApiConnector(new LatencyInjectingApiConnector(store, latencyMicros));
+    }
+
+    /**
+     * @return The store behind the Activator's connector.
+     */
+    public InMemoryApiConnector getStore() {
+        return store;
+    }
+
+    /**
+     * @return The next value of the resource sequence.
+     */
+    public long next() {
+        return sequence.incrementAndGet();
+    }
+
+    /**
+     * @return A new UUID from the resource sequence.
+     */
+    public String nextUuid() {
+        return new UUID(UUID_PREFIX, next()).toString();
+    }
+
+    public NeutronNetwork network(boolean external) {
+        NeutronNetwork network = new NeutronNetwork();
+        String uuid = nextUuid();
+        network.setID(uuid);
+        network.setNetworkUUID(uuid);
+        network.setNetworkName("network-" + uuid);
+        network.setTenantID(TENANT_ID);
+        network.setShared(false);
+        network.setRouterExternal(external);
+        network.setAdminStateUp(true);
+        return network;
+    }
+
+    /**
+     * @return A /8 subnet of the specified network with a single allocation
+     *         pool, large enough for every port of a run.
+     */
+    public NeutronSubnet subnet(NeutronNetwork network) {
+        NeutronSubnet subnet = new NeutronSubnet();
+        String uuid = nextUuid();
+        subnet.setID(uuid);
+        subnet.setSubnetUUID(uuid);
+        subnet.setNetworkUUID(network.getNetworkUUID());
+        subnet.setName("subnet-" + uuid);
+        subnet.setTenantID(TENANT_ID);
+        subnet.setIpVersion(4);
+        subnet.setCidr("10.0.0.0/8");
+        subnet.setGatewayIP("10.0.0.1");
+        subnet.setEnableDHCP(true);
+        NeutronSubnet_IPAllocationPool pool = new NeutronSubnet_IPAllocationPool();
+        pool.setPoolStart("10.0.0.2");
+        pool.setPoolEnd("10.255.255.254");
+        List<NeutronSubnet_IPAllocationPool> pools = new ArrayList<NeutronSubnet_IPAllocationPool>();
+        pools.add(pool);
+        subnet.setAllocationPools(pools);
+        return subnet;
+    }
+
+    public NeutronPort port(NeutronSubnet subnet) {
+        NeutronPort port = new NeutronPort();
+        long n = next();
+        String uuid = new UUID(UUID_PREFIX, n).toString();
+        port.setID(uuid);
+        port.setPortUUID(uuid);
+        port.setName("port-" + uuid);
+        port.setNetworkUUID(subnet.getNetworkUUID());
+        port.setTenantID(TENANT_ID);
+        port.setDeviceID(nextUuid());
+        port.setAdminStateUp(true);
+        port.setMacAddress(String.format("fa:16:3e:%02x:%02x:%02x", (n >> 16) & 0xff, (n >> 8) & 0xff, n & 0xff));
+        Neutron_IPs ip = new Neutron_IPs();
+        ip.setSubnetUUID(subnet.getSubnetUUID());
+        ip.setIpAddress(address(10, n));
+        List<Neutron_IPs> ips = new ArrayList<Neutron_IPs>();
+        ips.add(ip);
+        port.setFixedIPs(ips);
+        return port;
+    }
+
+    public NeutronRouter router() {
+        NeutronRouter router = new NeutronRouter();
+        String uuid = nextUuid();
+        router.setID(uuid);
+        router.setRouterUUID(uuid);
+        router.setName("router-" + uuid);
+        router.setTenantID(TENANT_ID);
+        router.setAdminStateUp(true);
+        return router;
+    }
+
+    public NeutronFloatingIP floatingIp(NeutronNetwork externalNetwork, NeutronPort port) {
+        NeutronFloatingIP floatingIp = new NeutronFloatingIP();
+        long n = next();
+        String uuid = new UUID(UUID_PREFIX, n).toString();
+        floatingIp.setID(uuid);
+        floatingIp.setFloatingIPUUID(uuid);
+        floatingIp.setFloatingNetworkUUID(externalNetwork.getNetworkUUID());
+        floatingIp.setTenantUUID(TENANT_ID);
+        floatingIp.setFloatingIPAddress(address(172, n));
+        if (port != null) {
+            floatingIp.setPortUUID(port.getPortUUID());
+            floatingIp.setFixedIPAddress(port.getFixedIPs().get(0).getIpAddress());
+        }
+        return floatingIp;
+    }
+
+    private static String address(int firstOctet, long n) {
+        return firstOctet + "." + ((n >> 16) & 0xff) + "." + ((n >> 8) & 0xff) + "." + (n & 0xff);
+    }
+}
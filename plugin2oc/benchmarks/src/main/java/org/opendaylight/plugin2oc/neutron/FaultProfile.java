@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Latency and faults injected by the {@link ContrailApiSimulator} into the
+ * requests of one endpoint.
+ *
+ * Profiles are read from properties named scope.setting, where the scope is
+ * "*" for every request, a method such as "GET", or a method and a resource
+ * type such as "GET/virtual-network" or "POST/fqname-to-id". A scope inherits
+ * the settings of the less specific scopes and overrides some of them:
+ *
+ * <pre>
+ * *.latency=exponential:5
+ * GET/virtual-network.latency=uniform:2-20
+ * POST.errorRate=0.01
+ * *.resetRate=0.001
+ * *.slowBodyRate=0.05
+ * *.slowBodyMillis=2000
+ * </pre>
+ *
+ * Latencies are in milliseconds: "constant:MS", "uniform:MIN-MAX" or
+ * "exponential:MEAN". Error responses have the status errorStatus, 503 by
+ * default. Reset requests get their connection closed without a response and
+ * slow bodies are written in pieces over slowBodyMillis.
+ */
+final class FaultProfile {
+    static final String ANY = "*";
+
+    enum Distribution {
+        CONSTANT, UNIFORM, EXPONENTIAL
+    }
+
+    Distribution distribution = Distribution.CONSTANT;
+    double minMillis;
+    double maxMillis;
+    double errorRate;
+    int errorStatus = 503;
+    double resetRate;
+    double slowBodyRate;
+    long slowBodyMillis = 1000;
+
+    /**
+     * @return The latency to inject into a request, in milliseconds.
+     */
+    long latencyMillis(Random random) {
+        switch (distribution) {
+        case UNIFORM:
+            return Math.round(minMillis + random.nextDouble() * (maxMillis - minMillis));
+        case EXPONENTIAL:
+            return Math.round(-minMillis * Math.log(1 - random.nextDouble()));
+        default:
+            return Math.round(minMillis);
+        }
+    }
+
+    /**
+     * Invoked to apply the settings of one scope, e.g. "latency" to
+     * "exponential:5".
+     */
+    void set(String setting, String value) {
+        value = value.trim();
+        if ("latency".equals(setting)) {
+            int colon = value.indexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("Latency must be constant:MS, uniform:MIN-MAX or exponential:MEAN, not " + value);
+            }
+            distribution = Distribution.valueOf(value.substring(0, colon).toUpperCase());
+            String[] bounds = value.substring(colon + 1).split("-");
+            minMillis = Double.parseDouble(bounds[0]);
+            maxMillis = bounds.length > 1 ? Double.parseDouble(bounds[1]) : minMillis;
+        } else if ("errorRate".equals(setting)) {
+            errorRate = Double.parseDouble(value);
+        } else if ("errorStatus".equals(setting)) {
+            errorStatus = Integer.parseInt(value);
+        } else if ("resetRate".equals(setting)) {
+            resetRate = Double.parseDouble(value);
+        } else if ("slowBodyRate".equals(setting)) {
+            slowBodyRate = Double.parseDouble(value);
+        } else if ("slowBodyMillis".equals(setting)) {
+            slowBodyMillis = Long.parseLong(value);
+        } else {
+            throw new IllegalArgumentException("Unknown fault setting " + setting);
+        }
+    }
+
+    /**
+     * @return The profiles of every scope found in the specified properties,
+     *         always including the "*" scope.
+     */
+    static Map<String, FaultProfile> parse(Properties properties) {
+        Map<String, Map<String, String>> settings = new HashMap<String, Map<String, String>>();
+        for (String key : properties.stringPropertyNames()) {
+            int dot = key.lastIndexOf('.');
+            if (dot <= 0) {
+                throw new IllegalArgumentException("Fault setting must be scope.setting, not " + key);
+            }
+            String scope = key.substring(0, dot);
+            if (!settings.containsKey(scope)) {
+                settings.put(scope, new HashMap<String, String>());
+            }
+            settings.get(scope).put(key.substring(dot + 1), properties.getProperty(key));
+        }
+        Map<String, FaultProfile> profiles = new HashMap<String, FaultProfile>();
+        profiles.put(ANY, build(ANY, settings));
+        for (String scope : settings.keySet()) {
+            profiles.put(scope, build(scope, settings));
+        }
+        return profiles;
+    }
+
+    private static FaultProfile build(String scope, Map<String, Map<String, String>> settings) {
+        FaultProfile profile;
+        if (ANY.equals(scope)) {
+            profile = new FaultProfile();
+        } else {
+            // GET/virtual-network inherits from GET, and */virtual-network and GET from *
+            int slash = scope.indexOf('/');
+            profile = build(slash < 0 ? ANY : scope.substring(0, slash), settings);
+        }
+        Map<String, String> own = settings.get(scope);
+        if (own != null) {
+            for (Map.Entry<String, String> setting : own.entrySet()) {
+                profile.set(setting.getKey(), setting.getValue());
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * @return The profile of a request, from the most specific scope defined.
+     */
+    static FaultProfile lookup(Map<String, FaultProfile> profiles, String method, String type) {
+        FaultProfile profile = profiles.get(method + "/" + type);
+        if (profile == null) {
+            profile = profiles.get(ANY + "/" + type);
+        }
+        if (profile == null) {
+            profile = profiles.get(method);
+        }
+        return profile != null ? profile : profiles.get(ANY);
+    }
+}
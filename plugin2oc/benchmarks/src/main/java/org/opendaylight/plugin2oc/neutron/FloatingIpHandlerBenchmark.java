@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.net.HttpURLConnection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.opendaylight.controller.networkconfig.neutron.NeutronFloatingIP;
+import org.opendaylight.controller.networkconfig.neutron.NeutronNetwork;
+import org.opendaylight.controller.networkconfig.neutron.NeutronPort;
+import org.opendaylight.controller.networkconfig.neutron.NeutronSubnet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of the FloatingIpHandler create, update and delete paths.
+ * Floating IPs are allocated from one external network and associated with
+ * one port; the update benchmark alternates between disassociating and
+ * associating it, and the bulk update benchmark moves BULK floating IPs
+ * between two ports at once.
+ */
+@State(Scope.Thread)
+public class FloatingIpHandlerBenchmark extends HandlerBenchmark {
+    static final int BULK = 64;
+    FloatingIpHandler handler;
+    NeutronNetwork externalNetwork;
+    NeutronPort port;
+    NeutronPort standbyPort;
+    NeutronFloatingIP floatingIp;
+    NeutronFloatingIP delta;
+    Map<String, String> portsByFloatingIp = new LinkedHashMap<String, String>();
+
+    @Setup(Level.Iteration)
+    public void setUp(ContrailBackend backend) {
+        handler = new FloatingIpHandler();
+        externalNetwork = backend.network(true);
+        check(new NetworkHandler().addNetwork(externalNetwork), "addNetwork");
+        NeutronNetwork network = backend.network(false);
+        check(new NetworkHandler().addNetwork(network), "addNetwork");
+        NeutronSubnet subnet = backend.subnet(network);
+        check(new SubnetHandler().addSubnet(subnet), "addSubnet");
+        port = backend.port(subnet);
+        check(new PortHandler().addPort(port), "addPort");
+        floatingIp = backend.floatingIp(externalNetwork, port);
+        check(handler.addFloatingIP(floatingIp), "addFloatingIP");
+        delta = new NeutronFloatingIP();
+        standbyPort = backend.port(subnet);
+        check(new PortHandler().addPort(standbyPort), "addPort");
+        portsByFloatingIp.clear();
+        for (int i = 0; i < BULK; i++) {
+            NeutronFloatingIP associated = backend.floatingIp(externalNetwork, port);
+            check(handler.addFloatingIP(associated), "addFloatingIP");
+            portsByFloatingIp.put(associated.getFloatingIPUUID(), port.getPortUUID());
+        }
+    }
+
+    /**
+     * A floating IP created before every invocation of the delete benchmark.
+     */
+    @State(Scope.Thread)
+    public static class CreatedFloatingIp {
+        NeutronFloatingIP floatingIp;
+
+        @Setup(Level.Invocation)
+        public void setUp(ContrailBackend backend, FloatingIpHandlerBenchmark benchmark) {
+            floatingIp = backend.floatingIp(benchmark.externalNetwork, benchmark.port);
+            check(benchmark.handler.addFloatingIP(floatingIp), "addFloatingIP");
+        }
+    }
+
+    @Benchmark
+    public boolean createFloatingIp(ContrailBackend backend) {
+        NeutronFloatingIP created = backend.floatingIp(externalNetwork, port);
+        return handler.canCreateFloatingIP(created) == HttpURLConnection.HTTP_OK && handler.addFloatingIP(created);
+    }
+
+    @Benchmark
+    public boolean updateFloatingIp() {
+        delta.setPortUUID(delta.getPortUUID() == null ? port.getPortUUID() : null);
+        return handler.canUpdateFloatingIP(delta, floatingIp) == HttpURLConnection.HTTP_OK
+                && handler.updateFloatingIP(floatingIp.getFloatingIPUUID(), delta);
+    }
+
+    @Benchmark
+    public boolean deleteFloatingIp(CreatedFloatingIp created) {
+        return handler.canDeleteFloatingIP(created.floatingIp) == HttpURLConnection.HTTP_OK
+                && handler.removeFloatingIP(created.floatingIp.getFloatingIPUUID());
+    }
+
+    @Benchmark
+    public boolean updateFloatingIps() {
+        for (Map.Entry<String, String> entry : portsByFloatingIp.entrySet()) {
+            entry.setValue(entry.getValue().equals(port.getPortUUID()) ? standbyPort.getPortUUID() : port.getPortUUID());
+        }
+        for (Integer status : handler.updateFloatingIPs(portsByFloatingIp).values()) {
+            if (status != HttpURLConnection.HTTP_OK) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import net.juniper.contrail.api.ApiConnector;
+import net.juniper.contrail.api.ApiObjectBase;
+import net.juniper.contrail.api.ApiPropertyBase;
+import net.juniper.contrail.api.ObjectReference;
+
+/**
+ * ApiConnector decorator delaying every call by a fixed time, standing in for
+ * the round trip to a Contrail API server.
+ */
+public class LatencyInjectingApiConnector extends ForwardingApiConnector {
+    private final long latencyNanos;
+
+    public LatencyInjectingApiConnector(ApiConnector delegate, long latencyMicros) {
+        super(delegate);
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+    }
+
+    private void pause() {
+        if (latencyNanos <= 0) {
+            return;
+        }
+        // parkNanos may return early, keep parking until the latency elapsed
+        long deadline = System.nanoTime() + latencyNanos;
+        long remaining = latencyNanos;
+        while (remaining > 0) {
+            LockSupport.parkNanos(remaining);
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    @Override
+    public boolean create(ApiObjectBase obj) throws IOException {
+        pause();
+        return super.create(obj);
+    }
+
+    @Override
+    public boolean read(ApiObjectBase obj) throws IOException {
+        pause();
+        return super.read(obj);
+    }
+
+    @Override
+    public boolean update(ApiObjectBase obj) throws IOException {
+        pause();
+        return super.update(obj);
+    }
+
+    @Override
+    public void delete(ApiObjectBase obj) throws IOException {
+        pause();
+        super.delete(obj);
+    }
+
+    @Override
+    public void delete(Class<? extends ApiObjectBase> cls, String uuid) throws IOException {
+        pause();
+        super.delete(cls, uuid);
+    }
+
+    @Override
+    public ApiObjectBase find(Class<? extends ApiObjectBase> cls, ApiObjectBase parent, String name) throws IOException {
+        pause();
+        return super.find(cls, parent, name);
+    }
+
+    @Override
+    public ApiObjectBase findByFQN(Class<? extends ApiObjectBase> cls, String fullName) throws IOException {
+        pause();
+        return super.findByFQN(cls, fullName);
+    }
+
+    @Override
+    public ApiObjectBase findById(Class<? extends ApiObjectBase> cls, String uuid) throws IOException {
+        pause();
+        return super.findById(cls, uuid);
+    }
+
+    @Override
+    public String findByName(Class<? extends ApiObjectBase> cls, List<String> nameList) throws IOException {
+        pause();
+        return super.findByName(cls, nameList);
+    }
+
+    @Override
+    public String findByName(Class<? extends ApiObjectBase> cls, ApiObjectBase parent, String name) throws IOException {
+        pause();
+        return super.findByName(cls, parent, name);
+    }
+
+    @Override
+    public List<? extends ApiObjectBase> list(Class<? extends ApiObjectBase> cls, List<String> parent) throws IOException {
+        pause();
+        return super.list(cls, parent);
+    }
+
+    @Override
+    public <T extends ApiPropertyBase> List<? extends ApiObjectBase> getObjects(Class<? extends ApiObjectBase> cls, List<ObjectReference<T>> refList)
+            throws IOException {
+        pause();
+        return super.getObjects(cls, refList);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.net.HttpURLConnection;
+
+import org.opendaylight.controller.networkconfig.neutron.NeutronNetwork;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of the NetworkHandler create, update and delete paths.
+ */
+@State(Scope.Thread)
+public class NetworkHandlerBenchmark extends HandlerBenchmark {
+    NetworkHandler handler;
+    NeutronNetwork network;
+    NeutronNetwork delta;
+    boolean renamed;
+
+    @Setup(Level.Iteration)
+    public void setUp(ContrailBackend backend) {
+        handler = new NetworkHandler();
+        network = backend.network(false);
+        check(handler.addNetwork(network), "addNetwork");
+        delta = new NeutronNetwork();
+    }
+
+    /**
+     * A network created before every invocation of the delete benchmark.
+     */
+    @State(Scope.Thread)
+    public static class CreatedNetwork {
+        NeutronNetwork network;
+
+        @Setup(Level.Invocation)
+        public void setUp(ContrailBackend backend) {
+            network = backend.network(false);
+            check(new NetworkHandler().addNetwork(network), "addNetwork");
+        }
+    }
+
+    @Benchmark
+    public boolean createNetwork(ContrailBackend backend) {
+        NeutronNetwork created = backend.network(false);
+        return handler.canCreateNetwork(created) == HttpURLConnection.HTTP_OK && handler.addNetwork(created);
+    }
+
+    @Benchmark
+    public boolean createExternalNetwork(ContrailBackend backend) {
+        NeutronNetwork created = backend.network(true);
+        return handler.canCreateNetwork(created) == HttpURLConnection.HTTP_OK && handler.addNetwork(created);
+    }
+
+    @Benchmark
+    public boolean updateNetwork() {
+        renamed = !renamed;
+        delta.setNetworkName(renamed ? "renamed" : network.getNetworkName());
+        return handler.canUpdateNetwork(delta, network) == HttpURLConnection.HTTP_OK && handler.updateNetwork(network.getNetworkUUID(), delta);
+    }
+
+    @Benchmark
+    public boolean deleteNetwork(CreatedNetwork created) {
+        return handler.canDeleteNetwork(created.network) == HttpURLConnection.HTTP_OK && handler.removeNetwork(created.network.getNetworkUUID());
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.opendaylight.controller.networkconfig.neutron.NeutronFloatingIP;
+import org.opendaylight.controller.networkconfig.neutron.NeutronNetwork;
+import org.opendaylight.controller.networkconfig.neutron.NeutronPort;
+import org.opendaylight.controller.networkconfig.neutron.NeutronRouter;
+import org.opendaylight.controller.networkconfig.neutron.NeutronRouter_Interface;
+import org.opendaylight.controller.networkconfig.neutron.NeutronRouter_NetworkReference;
+import org.opendaylight.controller.networkconfig.neutron.NeutronSubnet;
+import org.opendaylight.controller.networkconfig.neutron.NeutronSubnet_IPAllocationPool;
+import org.opendaylight.controller.networkconfig.neutron.Neutron_IPs;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/**
+ * Recorded sequence of Neutron operations, as replayed by the
+ * {@link WorkloadReplayer}.
+ *
+ * A trace has one JSON operation per line; blank lines and lines starting
+ * with # are skipped. Every operation has a time in milliseconds, an action
+ * and the resource in the Neutron API format, keyed by its type: network,
+ * subnet, port, router or floatingip. Updates only carry the changed
+ * attributes and deletes only the id. Router interfaces are attached and
+ * detached with the router id and the interface:
+ *
+ * <pre>
+ * {"time": 0, "action": "create", "network": {"id": "...", "tenant_id": "...", "name": "net1"}}
+ * {"time": 40, "action": "create", "subnet": {"id": "...", "network_id": "...", "tenant_id": "...", "cidr": "10.0.0.0/24", "gateway_ip": "10.0.0.1"}}
+ * {"time": 95, "action": "create", "port": {"id": "...", "network_id": "...", "tenant_id": "...", "device_id": "...",
+ *     "mac_address": "fa:16:3e:00:00:01", "fixed_ips": [{"subnet_id": "...", "ip_address": "10.0.0.3"}]}}
+ * {"time": 130, "action": "update", "port": {"id": "...", "name": "web"}}
+ * {"time": 150, "action": "attach", "router": {"id": "..."}, "interface": {"subnet_id": "...", "port_id": "..."}}
+ * {"time": 900, "action": "delete", "port": {"id": "..."}}
+ * </pre>
+ *
+ * Fixed IPs must carry their ip_address: picking one from the subnet goes
+ * through the Neutron subnet cache, which only exists in the controller.
+ */
+final class NeutronTrace {
+    static final String[] RESOURCES = { "network", "subnet", "port", "router", "floatingip" };
+
+    private NeutronTrace() {
+    }
+
+    /**
+     * One recorded operation.
+     */
+    static final class Operation {
+        final int line;
+        final long timeMillis;
+        final String action;
+        final String resource;
+        final JsonObject body;
+        final JsonObject routerInterface;
+
+        Operation(int line, long timeMillis, String action, String resource, JsonObject body, JsonObject routerInterface) {
+            this.line = line;
+            this.timeMillis = timeMillis;
+            this.action = action;
+            this.resource = resource;
+            this.body = body;
+            this.routerInterface = routerInterface;
+        }
+
+        String getId() {
+            return string(body, "id");
+        }
+
+        /**
+         * @return The name operations are reported under, e.g. "create port".
+         */
+        String getName() {
+            return action + " " + resource;
+        }
+    }
+
+    /**
+     * @return The operations of a trace, in their order in the trace.
+     */
+    static List<Operation> read(Reader in) throws IOException {
+        List<Operation> operations = new ArrayList<Operation>();
+        BufferedReader reader = new BufferedReader(in);
+        JsonParser parser = new JsonParser();
+        String text;
+        int line = 0;
+        while ((text = reader.readLine()) != null) {
+            line++;
+            text = text.trim();
+            if (text.length() == 0 || text.startsWith("#")) {
+                continue;
+            }
+            try {
+                JsonObject json = parser.parse(text).getAsJsonObject();
+                String action = string(json, "action");
+                String resource = null;
+                for (String candidate : RESOURCES) {
+                    if (json.has(candidate)) {
+                        resource = candidate;
+                    }
+                }
+                if (action == null || resource == null || !json.has("time")) {
+                    throw new IOException("Line " + line + " needs a time, an action and a resource");
+                }
+                boolean routerInterface = "attach".equals(action) || "detach".equals(action);
+                if (!"create".equals(action) && !"update".equals(action) && !"delete".equals(action)
+                        && !(routerInterface && "router".equals(resource) && json.has("interface"))) {
+                    throw new IOException("Line " + line + " has an unknown action " + action + " on a " + resource);
+                }
+                JsonObject body = json.getAsJsonObject(resource);
+                if (string(body, "id") == null) {
+                    throw new IOException("Line " + line + " has a " + resource + " without id");
+                }
+                operations.add(new Operation(line, json.get("time").getAsLong(), action, resource, body, json.getAsJsonObject("interface")));
+            } catch (JsonParseException e) {
+                throw new IOException("Line " + line + " is not a JSON object: " + e.getMessage(), e);
+            } catch (IllegalStateException e) {
+                throw new IOException("Line " + line + " is not a JSON object: " + e.getMessage(), e);
+            }
+        }
+        return operations;
+    }
+
+    /**
+     * @return The resource with the attributes of the update replacing its
+     *         own, as the Neutron cache holds it after the update.
+     */
+    static JsonObject merge(JsonObject resource, JsonObject update) {
+        JsonObject merged = new JsonObject();
+        for (Map.Entry<String, JsonElement> attribute : resource.entrySet()) {
+            merged.add(attribute.getKey(), attribute.getValue());
+        }
+        for (Map.Entry<String, JsonElement> attribute : update.entrySet()) {
+            merged.add(attribute.getKey(), attribute.getValue());
+        }
+        return merged;
+    }
+
+    /**
+     * @return A created resource with the defaults the Neutron API applies to
+     *         attributes left out, e.g. admin_state_up.
+     */
+    static JsonObject withDefaults(String resource, JsonObject json) {
+        JsonObject defaults = new JsonObject();
+        if ("network".equals(resource)) {
+            defaults.addProperty("admin_state_up", true);
+            defaults.addProperty("shared", false);
+            defaults.addProperty("router:external", false);
+        } else if ("subnet".equals(resource)) {
+            defaults.addProperty("ip_version", 4);
+            defaults.addProperty("enable_dhcp", true);
+            // Neutron derives the pools from the cidr; none leaves the gateway unconstrained
+            defaults.add("allocation_pools", new JsonArray());
+        } else if ("port".equals(resource) || "router".equals(resource)) {
+            defaults.addProperty("admin_state_up", true);
+        }
+        return merge(defaults, json);
+    }
+
+    static NeutronNetwork network(JsonObject json) {
+        NeutronNetwork network = new NeutronNetwork();
+        network.setID(string(json, "id"));
+        network.setNetworkUUID(string(json, "id"));
+        network.setNetworkName(string(json, "name"));
+        network.setTenantID(string(json, "tenant_id"));
+        network.setAdminStateUp(bool(json, "admin_state_up"));
+        network.setShared(bool(json, "shared"));
+        network.setRouterExternal(bool(json, "router:external"));
+        return network;
+    }
+
+    static NeutronSubnet subnet(JsonObject json) {
+        NeutronSubnet subnet = new NeutronSubnet();
+        subnet.setID(string(json, "id"));
+        subnet.setSubnetUUID(string(json, "id"));
+        subnet.setNetworkUUID(string(json, "network_id"));
+        subnet.setName(string(json, "name"));
+        subnet.setTenantID(string(json, "tenant_id"));
+        subnet.setCidr(string(json, "cidr"));
+        subnet.setGatewayIP(string(json, "gateway_ip"));
+        subnet.setEnableDHCP(bool(json, "enable_dhcp"));
+        if (json.has("ip_version")) {
+            subnet.setIpVersion(json.get("ip_version").getAsInt());
+        }
+        if (json.has("allocation_pools")) {
+            List<NeutronSubnet_IPAllocationPool> pools = new ArrayList<NeutronSubnet_IPAllocationPool>();
+            for (JsonElement element : json.getAsJsonArray("allocation_pools")) {
+                NeutronSubnet_IPAllocationPool pool = new NeutronSubnet_IPAllocationPool();
+                pool.setPoolStart(string(element.getAsJsonObject(), "start"));
+                pool.setPoolEnd(string(element.getAsJsonObject(), "end"));
+                pools.add(pool);
+            }
+            subnet.setAllocationPools(pools);
+        }
+        return subnet;
+    }
+
+    static NeutronPort port(JsonObject json) {
+        NeutronPort port = new NeutronPort();
+        port.setID(string(json, "id"));
+        port.setPortUUID(string(json, "id"));
+        port.setNetworkUUID(string(json, "network_id"));
+        port.setName(string(json, "name"));
+        port.setTenantID(string(json, "tenant_id"));
+        port.setAdminStateUp(bool(json, "admin_state_up"));
+        port.setMacAddress(string(json, "mac_address"));
+        port.setDeviceID(string(json, "device_id"));
+        port.setDeviceOwner(string(json, "device_owner"));
+        if (json.has("fixed_ips")) {
+            List<Neutron_IPs> ips = new ArrayList<Neutron_IPs>();
+            for (JsonElement element : json.getAsJsonArray("fixed_ips")) {
+                Neutron_IPs ip = new Neutron_IPs();
+                ip.setSubnetUUID(string(element.getAsJsonObject(), "subnet_id"));
+                ip.setIpAddress(string(element.getAsJsonObject(), "ip_address"));
+                ips.add(ip);
+            }
+            port.setFixedIPs(ips);
+        }
+        return port;
+    }
+
+    static NeutronRouter router(JsonObject json) {
+        NeutronRouter router = new NeutronRouter();
+        router.setID(string(json, "id"));
+        router.setRouterUUID(string(json, "id"));
+        router.setName(string(json, "name"));
+        router.setTenantID(string(json, "tenant_id"));
+        router.setAdminStateUp(bool(json, "admin_state_up"));
+        JsonElement gateway = json.get("external_gateway_info");
+        if (gateway != null && gateway.isJsonObject()) {
+            NeutronRouter_NetworkReference reference = new NeutronRouter_NetworkReference();
+            reference.setNetworkID(string(gateway.getAsJsonObject(), "network_id"));
+            router.setExternalGatewayInfo(reference);
+        }
+        return router;
+    }
+
+    static NeutronRouter_Interface routerInterface(String routerId, JsonObject json) {
+        NeutronRouter_Interface routerInterface = new NeutronRouter_Interface();
+        routerInterface.setID(routerId);
+        routerInterface.setSubnetUUID(string(json, "subnet_id"));
+        routerInterface.setPortUUID(string(json, "port_id"));
+        routerInterface.setTenantID(string(json, "tenant_id"));
+        return routerInterface;
+    }
+
+    static NeutronFloatingIP floatingIp(JsonObject json) {
+        NeutronFloatingIP floatingIp = new NeutronFloatingIP();
+        floatingIp.setID(string(json, "id"));
+        floatingIp.setFloatingIPUUID(string(json, "id"));
+        floatingIp.setFloatingNetworkUUID(string(json, "floating_network_id"));
+        floatingIp.setPortUUID(string(json, "port_id"));
+        floatingIp.setFixedIPAddress(string(json, "fixed_ip_address"));
+        floatingIp.setFloatingIPAddress(string(json, "floating_ip_address"));
+        floatingIp.setTenantUUID(string(json, "tenant_id"));
+        return floatingIp;
+    }
+
+    static String string(JsonObject json, String key) {
+        JsonElement element = json == null ? null : json.get(key);
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+
+    private static Boolean bool(JsonObject json, String key) {
+        JsonElement element = json.get(key);
+        return element == null || element.isJsonNull() ? null : element.getAsBoolean();
+    }
+}
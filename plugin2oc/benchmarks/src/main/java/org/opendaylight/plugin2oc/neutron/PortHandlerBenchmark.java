@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.net.HttpURLConnection;
+
+import org.opendaylight.controller.networkconfig.neutron.NeutronNetwork;
+import org.opendaylight.controller.networkconfig.neutron.NeutronPort;
+import org.opendaylight.controller.networkconfig.neutron.NeutronSubnet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of the PortHandler create, update and delete paths. Every port
+ * is bound to a device and gets one fixed IP.
+ */
+@State(Scope.Thread)
+public class PortHandlerBenchmark extends HandlerBenchmark {
+    PortHandler handler;
+    NeutronSubnet subnet;
+    NeutronPort port;
+    NeutronPort delta;
+    boolean renamed;
+
+    @Setup(Level.Iteration)
+    public void setUp(ContrailBackend backend) {
+        handler = new PortHandler();
+        NeutronNetwork network = backend.network(false);
+        check(new NetworkHandler().addNetwork(network), "addNetwork");
+        subnet = backend.subnet(network);
+        check(new SubnetHandler().addSubnet(subnet), "addSubnet");
+        port = backend.port(subnet);
+        check(handler.addPort(port), "addPort");
+        delta = new NeutronPort();
+    }
+
+    /**
+     * A port created before every invocation of the delete benchmark.
+     */
+    @State(Scope.Thread)
+    public static class CreatedPort {
+        NeutronPort port;
+
+        @Setup(Level.Invocation)
+        public void setUp(ContrailBackend backend, PortHandlerBenchmark benchmark) {
+            port = backend.port(benchmark.subnet);
+            check(benchmark.handler.addPort(port), "addPort");
+        }
+    }
+
+    @Benchmark
+    public boolean createPort(ContrailBackend backend) {
+        NeutronPort created = backend.port(subnet);
+        return handler.canCreatePort(created) == HttpURLConnection.HTTP_OK && handler.addPort(created);
+    }
+
+    @Benchmark
+    public boolean updatePort() {
+        renamed = !renamed;
+        delta.setName(renamed ? "renamed" : port.getName());
+        return handler.canUpdatePort(delta, port) == HttpURLConnection.HTTP_OK && handler.updatePort(port.getPortUUID(), delta);
+    }
+
+    @Benchmark
+    public boolean deletePort(CreatedPort created) {
+        return handler.canDeletePort(created.port) == HttpURLConnection.HTTP_OK && handler.removePort(created.port.getPortUUID());
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.net.HttpURLConnection;
+
+import org.opendaylight.controller.networkconfig.neutron.NeutronNetwork;
+import org.opendaylight.controller.networkconfig.neutron.NeutronPort;
+import org.opendaylight.controller.networkconfig.neutron.NeutronRouter;
+import org.opendaylight.controller.networkconfig.neutron.NeutronRouter_Interface;
+import org.opendaylight.controller.networkconfig.neutron.NeutronSubnet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of the RouterHandler create, update and delete paths, and of
+ * attaching and detaching one interface in turn.
+ */
+@State(Scope.Thread)
+public class RouterHandlerBenchmark extends HandlerBenchmark {
+    RouterHandler handler;
+    NeutronRouter router;
+    NeutronRouter delta;
+    boolean renamed;
+    NeutronRouter_Interface routerInterface;
+    boolean attached;
+
+    @Setup(Level.Iteration)
+    public void setUp(ContrailBackend backend) {
+        handler = new RouterHandler();
+        router = backend.router();
+        check(handler.addRouter(router), "addRouter");
+        delta = new NeutronRouter();
+        NeutronNetwork network = backend.network(false);
+        check(new NetworkHandler().addNetwork(network), "addNetwork");
+        NeutronSubnet subnet = backend.subnet(network);
+        check(new SubnetHandler().addSubnet(subnet), "addSubnet");
+        NeutronPort port = backend.port(subnet);
+        check(new PortHandler().addPort(port), "addPort");
+        routerInterface = new NeutronRouter_Interface();
+        routerInterface.setPortUUID(port.getPortUUID());
+        routerInterface.setSubnetUUID(subnet.getSubnetUUID());
+        attached = false;
+    }
+
+    /**
+     * A router created before every invocation of the delete benchmark.
+     */
+    @State(Scope.Thread)
+    public static class CreatedRouter {
+        NeutronRouter router;
+
+        @Setup(Level.Invocation)
+        public void setUp(ContrailBackend backend) {
+            router = backend.router();
+            check(new RouterHandler().addRouter(router), "addRouter");
+        }
+    }
+
+    @Benchmark
+    public boolean createRouter(ContrailBackend backend) {
+        NeutronRouter created = backend.router();
+        return handler.canCreateRouter(created) == HttpURLConnection.HTTP_OK && handler.addRouter(created);
+    }
+
+    @Benchmark
+    public boolean updateRouter() {
+        renamed = !renamed;
+        delta.setName(renamed ? "renamed" : router.getName());
+        return handler.canUpdateRouter(router, delta) == HttpURLConnection.HTTP_OK && handler.updateRouter(router.getRouterUUID(), delta);
+    }
+
+    @Benchmark
+    public boolean deleteRouter(CreatedRouter created) {
+        return handler.canDeleteRouter(created.router) == HttpURLConnection.HTTP_OK && handler.removeRouter(created.router.getRouterUUID());
+    }
+
+    @Benchmark
+    public boolean attachInterface() {
+        attached = !attached;
+        if (attached) {
+            if (handler.canAttachInterface(router, routerInterface) != HttpURLConnection.HTTP_OK) {
+                return false;
+            }
+            handler.neutronRouterInterfaceAttached(router, routerInterface);
+        } else {
+            if (handler.canDetachInterface(router, routerInterface) != HttpURLConnection.HTTP_OK) {
+                return false;
+            }
+            handler.neutronRouterInterfaceDetached(router, routerInterface);
+        }
+        return true;
+    }
+}
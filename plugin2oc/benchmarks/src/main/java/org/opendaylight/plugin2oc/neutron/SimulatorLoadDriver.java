@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.juniper.contrail.api.ApiConnectorFactory;
+import net.juniper.contrail.api.types.Project;
+
+import org.opendaylight.controller.networkconfig.neutron.NeutronFloatingIP;
+import org.opendaylight.controller.networkconfig.neutron.NeutronNetwork;
+import org.opendaylight.controller.networkconfig.neutron.NeutronPort;
+import org.opendaylight.controller.networkconfig.neutron.NeutronSubnet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Load driver running the Neutron handlers end to end over HTTP, against the
+ * {@link ContrailApiSimulator} or any Contrail API server.
+ *
+ * Every thread repeats the life cycle of a tenant network: create a network,
+ * a subnet and a port, rename the port, associate a floating IP with it,
+ * then delete everything again. Floating IPs come from one external network
+ * created at start. At the end the latency and failures of every step are
+ * reported, along with the faults the simulator injected.
+ *
+ * Settings are System properties:
+ * <ul>
+ * <li>plugin2oc.loaddriver.threads: concurrent tenants' life cycles, 4</li>
+ * <li>plugin2oc.loaddriver.seconds: run duration, 60</li>
+ * <li>plugin2oc.loaddriver.apiserver: host:port of an API server to use
+ * instead of starting a simulator</li>
+ * <li>plugin2oc.simulator.faults: fault profiles file of the simulator, see
+ * {@link FaultProfile}</li>
+ * <li>plugin2oc.simulator.threads and plugin2oc.simulator.seed</li>
+ * </ul>
+ *
+ * The handlers share one ApiConnector, as they do in the controller.
+ */
+public final class SimulatorLoadDriver {
+    /**
+     * Logger instance.
+     */
+    static final Logger LOGGER = LoggerFactory.getLogger(SimulatorLoadDriver.class);
+    static final String[] STEPS = { "createNetwork", "createSubnet", "createPort", "updatePort", "createFloatingIP", "deleteFloatingIP",
+            "deletePort", "deleteSubnet", "deleteNetwork" };
+
+    private final ContrailBackend resources = new ContrailBackend();
+    private final ConcurrentMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentMap<String, AtomicLong> failures = new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicLong cycles = new AtomicLong();
+    private final AtomicLong exceptions = new AtomicLong();
+    private NeutronNetwork externalNetwork;
+
+    SimulatorLoadDriver() {
+        for (String step : STEPS) {
+            latencies.put(step, new LatencyHistogram());
+            failures.put(step, new AtomicLong());
+        }
+    }
+
+    /**
+     * Invoked to create the tenant and the external network shared by all
+     * threads.
+     */
+    boolean prepare() throws Exception {
+        Project project = new Project();
+        project.setName("loaddriver");
+        project.setDisplayName("loaddriver");
+        project.setUuid(ContrailBackend.TENANT_ID);
+        if (Activator.apiConnector.findById(Project.class, ContrailBackend.TENANT_ID) == null && !Activator.apiConnector.create(project)) {
+            LOGGER.error("Could not create the load driver project");
+            return false;
+        }
+        externalNetwork = resources.network(true);
+        NetworkHandler networkHandler = new NetworkHandler();
+        return networkHandler.canCreateNetwork(externalNetwork) == HttpURLConnection.HTTP_OK && networkHandler.addNetwork(externalNetwork);
+    }
+
+    /**
+     * Invoked to run the life cycles on the specified number of threads until
+     * the deadline.
+     */
+    void run(int threads, final long deadlineNanos) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Cycle cycle = new Cycle();
+                        while (System.nanoTime() < deadlineNanos) {
+                            try {
+                                cycle.run();
+                                cycles.incrementAndGet();
+                            } catch (RuntimeException e) {
+                                exceptions.incrementAndGet();
+                                LOGGER.debug("Life cycle aborted", e);
+                            }
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "loaddriver-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+    }
+
+    /**
+     * One tenant network life cycle, with handlers of its own since some of
+     * them keep state between their can* and action calls.
+     */
+    private final class Cycle {
+        final NetworkHandler networkHandler = new NetworkHandler();
+        final SubnetHandler subnetHandler = new SubnetHandler();
+        final PortHandler portHandler = new PortHandler();
+        final FloatingIpHandler floatingIpHandler = new FloatingIpHandler();
+
+        void run() {
+            NeutronNetwork network = resources.network(false);
+            long start = System.nanoTime();
+            if (!record("createNetwork", start,
+                    networkHandler.canCreateNetwork(network) == HttpURLConnection.HTTP_OK && networkHandler.addNetwork(network))) {
+                return;
+            }
+            NeutronSubnet subnet = resources.subnet(network);
+            start = System.nanoTime();
+            if (record("createSubnet", start, subnetHandler.canCreateSubnet(subnet) == HttpURLConnection.HTTP_OK && subnetHandler.addSubnet(subnet))) {
+                NeutronPort port = resources.port(subnet);
+                start = System.nanoTime();
+                if (record("createPort", start, portHandler.canCreatePort(port) == HttpURLConnection.HTTP_OK && portHandler.addPort(port))) {
+                    NeutronPort delta = new NeutronPort();
+                    delta.setName("renamed-" + port.getPortUUID());
+                    start = System.nanoTime();
+                    record("updatePort", start,
+                            portHandler.canUpdatePort(delta, port) == HttpURLConnection.HTTP_OK && portHandler.updatePort(port.getPortUUID(), delta));
+                    NeutronFloatingIP floatingIp = resources.floatingIp(externalNetwork, port);
+                    start = System.nanoTime();
+                    if (record("createFloatingIP", start,
+                            floatingIpHandler.canCreateFloatingIP(floatingIp) == HttpURLConnection.HTTP_OK && floatingIpHandler.addFloatingIP(floatingIp))) {
+                        start = System.nanoTime();
+                        record("deleteFloatingIP", start, floatingIpHandler.canDeleteFloatingIP(floatingIp) == HttpURLConnection.HTTP_OK
+                                && floatingIpHandler.removeFloatingIP(floatingIp.getFloatingIPUUID()));
+                    }
+                    start = System.nanoTime();
+                    record("deletePort", start, portHandler.canDeletePort(port) == HttpURLConnection.HTTP_OK && portHandler.removePort(port.getPortUUID()));
+                }
+                start = System.nanoTime();
+                record("deleteSubnet", start,
+                        subnetHandler.canDeleteSubnet(subnet) == HttpURLConnection.HTTP_OK && subnetHandler.removeSubnet(subnet.getSubnetUUID()));
+            }
+            start = System.nanoTime();
+            record("deleteNetwork", start,
+                    networkHandler.canDeleteNetwork(network) == HttpURLConnection.HTTP_OK && networkHandler.removeNetwork(network.getNetworkUUID()));
+        }
+    }
+
+    private boolean record(String step, long startNanos, boolean done) {
+        latencies.get(step).recordSince(startNanos);
+        if (!done) {
+            failures.get(step).incrementAndGet();
+        }
+        return done;
+    }
+
+    void report(PrintStream out, long elapsedNanos, ContrailApiSimulator simulator) {
+        double seconds = elapsedNanos / 1e9;
+        out.printf("%d life cycles in %.1f s, %.1f per second, %d aborted by exceptions%n", cycles.get(), seconds, cycles.get() / seconds,
+                exceptions.get());
+        out.printf("%-18s %8s %8s %10s %10s %10s %10s%n", "step", "count", "failed", "mean ms", "p50 ms", "p99 ms", "max ms");
+        for (String step : STEPS) {
+            LatencyHistogram latency = latencies.get(step);
+            out.printf("%-18s %8d %8d %10.2f %10.2f %10.2f %10.2f%n", step, latency.getCount(), failures.get(step).get(),
+                    latency.getMeanNanos() / 1e6, latency.getValueAtPercentile(50) / 1e6, latency.getValueAtPercentile(99) / 1e6,
+                    latency.getMaxNanos() / 1e6);
+        }
+        if (simulator != null) {
+            out.printf("simulator: %d requests, %d errors, %d resets and %d slow bodies injected%n", simulator.getRequests(),
+                    simulator.getInjectedErrors(), simulator.getInjectedResets(), simulator.getSlowBodies());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = Integer.getInteger("plugin2oc.loaddriver.threads", 4);
+        int seconds = Integer.getInteger("plugin2oc.loaddriver.seconds", 60);
+        String apiServer = System.getProperty("plugin2oc.loaddriver.apiserver");
+        ContrailApiSimulator simulator = null;
+        String host = "127.0.0.1";
+        int port;
+        if (apiServer == null) {
+            simulator = new ContrailApiSimulator(0, Integer.getInteger("plugin2oc.simulator.threads", 16),
+                    ContrailApiSimulator.loadFaults(System.getProperty("plugin2oc.simulator.faults")), Long.getLong("plugin2oc.simulator.seed", 1));
+            simulator.start();
+            port = simulator.getPort();
+        } else {
+            host = apiServer.substring(0, apiServer.lastIndexOf(':'));
+            port = Integer.parseInt(apiServer.substring(apiServer.lastIndexOf(':') + 1));
+        }
+        Activator.apiConnector = new InstrumentedApiConnector(ApiConnectorFactory.build(host, port));
+        SimulatorLoadDriver driver = new SimulatorLoadDriver();
+        try {
+            if (!driver.prepare()) {
+                System.err.println("Could not prepare the tenant and external network, see the log");
+                return;
+            }
+            long start = System.nanoTime();
+            driver.run(threads, start + TimeUnit.SECONDS.toNanos(seconds));
+            driver.report(System.out, System.nanoTime() - start, simulator);
+        } finally {
+            if (simulator != null) {
+                simulator.stop();
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.net.HttpURLConnection;
+
+import org.opendaylight.controller.networkconfig.neutron.NeutronNetwork;
+import org.opendaylight.controller.networkconfig.neutron.NeutronSubnet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of the SubnetHandler create, update and delete paths. Subnets
+ * are kept on the VirtualNetwork, so each created or deleted subnet gets a
+ * network of its own.
+ */
+@State(Scope.Thread)
+public class SubnetHandlerBenchmark extends HandlerBenchmark {
+    SubnetHandler handler;
+    NeutronSubnet subnet;
+    NeutronSubnet delta;
+    boolean renamed;
+
+    @Setup(Level.Iteration)
+    public void setUp(ContrailBackend backend) {
+        handler = new SubnetHandler();
+        NeutronNetwork network = backend.network(false);
+        check(new NetworkHandler().addNetwork(network), "addNetwork");
+        subnet = backend.subnet(network);
+        check(handler.addSubnet(subnet), "addSubnet");
+        delta = new NeutronSubnet();
+    }
+
+    /**
+     * A network without subnet created before every invocation.
+     */
+    @State(Scope.Thread)
+    public static class CreatedNetwork {
+        NeutronSubnet subnet;
+
+        @Setup(Level.Invocation)
+        public void setUp(ContrailBackend backend) {
+            NeutronNetwork network = backend.network(false);
+            check(new NetworkHandler().addNetwork(network), "addNetwork");
+            subnet = backend.subnet(network);
+        }
+    }
+
+    /**
+     * A network with one subnet created before every invocation.
+     */
+    @State(Scope.Thread)
+    public static class CreatedSubnet {
+        NeutronSubnet subnet;
+
+        @Setup(Level.Invocation)
+        public void setUp(ContrailBackend backend) {
+            NeutronNetwork network = backend.network(false);
+            check(new NetworkHandler().addNetwork(network), "addNetwork");
+            subnet = backend.subnet(network);
+            check(new SubnetHandler().addSubnet(subnet), "addSubnet");
+        }
+    }
+
+    @Benchmark
+    public boolean createSubnet(CreatedNetwork created) {
+        return handler.canCreateSubnet(created.subnet) == HttpURLConnection.HTTP_OK && handler.addSubnet(created.subnet);
+    }
+
+    @Benchmark
+    public boolean updateSubnet() {
+        renamed = !renamed;
+        delta.setName(renamed ? "renamed" : subnet.getName());
+        return handler.canUpdateSubnet(delta, subnet) == HttpURLConnection.HTTP_OK && handler.updateSubnet(subnet.getSubnetUUID(), delta);
+    }
+
+    @Benchmark
+    public boolean deleteSubnet(CreatedSubnet created) {
+        return handler.canDeleteSubnet(created.subnet) == HttpURLConnection.HTTP_OK && handler.removeSubnet(created.subnet.getSubnetUUID());
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Random;
+import java.util.UUID;
+
+import org.opendaylight.plugin2oc.neutron.CompactTopology.Kind;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the heap retained by a {@link CompactTopology} per port, and fails
+ * if it is above a bound.
+ *
+ * The synthetic topology has networks of 250 ports with one subnet each, an
+ * instance IP per port, a floating IP for every fourth port, a project per
+ * 40 networks and a router per project with an interface on each of its
+ * networks. Retained heap is the difference of the used heap, after
+ * collecting garbage, before building the graph and once it is built.
+ *
+ * Settings are System properties:
+ * <ul>
+ * <li>plugin2oc.footprint.ports: ports in the topology, 1000000</li>
+ * <li>plugin2oc.footprint.maxBytesPerPort: bound of the retained heap per
+ * port, 160</li>
+ * </ul>
+ *
+ * Run with a heap large enough for the builder, -Xmx1g for a million ports.
+ */
+public final class TopologyFootprint {
+    /**
+     * Logger instance.
+     */
+    static final Logger LOGGER = LoggerFactory.getLogger(TopologyFootprint.class);
+    static final int PORTS_PER_NETWORK = 250;
+    static final int NETWORKS_PER_PROJECT = 40;
+
+    private TopologyFootprint() {
+    }
+
+    static CompactTopology build(int ports, Random random) {
+        CompactTopology.Builder builder = CompactTopology.builder();
+        String project = null;
+        String router = null;
+        String network = null;
+        String subnet = null;
+        for (int i = 0; i < ports; i++) {
+            if (i % (PORTS_PER_NETWORK * NETWORKS_PER_PROJECT) == 0) {
+                project = uuid(random);
+                router = uuid(random);
+                builder.node(Kind.PROJECT, project, null).node(Kind.ROUTER, router, project);
+            }
+            String port = uuid(random);
+            if (i % PORTS_PER_NETWORK == 0) {
+                network = uuid(random);
+                subnet = uuid(random);
+                builder.node(Kind.NETWORK, network, project).node(Kind.SUBNET, subnet, network).ref(router, port);
+            }
+            builder.node(Kind.PORT, port, network).ref(port, subnet).node(Kind.INSTANCE_IP, uuid(random), port);
+            if (i % 4 == 0) {
+                builder.node(Kind.FLOATING_IP, uuid(random), port);
+            }
+        }
+        return builder.build();
+    }
+
+    private static String uuid(Random random) {
+        return new UUID(random.nextLong(), random.nextLong()).toString();
+    }
+
+    private static long usedHeap(MemoryMXBean memory) throws InterruptedException {
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int ports = Integer.getInteger("plugin2oc.footprint.ports", 1000000);
+        int maxBytesPerPort = Integer.getInteger("plugin2oc.footprint.maxBytesPerPort", 160);
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long before = usedHeap(memory);
+        long start = System.nanoTime();
+        CompactTopology topology = build(ports, new Random(1));
+        long elapsed = System.nanoTime() - start;
+        long retained = usedHeap(memory) - before;
+        long perPort = retained / ports;
+        System.out.printf("%d ports, %d nodes, built in %d ms%n", ports, topology.size(), elapsed / 1000000);
+        System.out.printf("arrays %d bytes, %d per port%n", topology.memoryBytes(), topology.memoryBytes() / ports);
+        System.out.printf("retained %d bytes, %d per port, bound %d%n", retained, perPort, maxBytesPerPort);
+        if (perPort > maxBytesPerPort) {
+            LOGGER.error("Topology retains {} bytes per port, above the bound of {}", perPort, maxBytesPerPort);
+            System.exit(1);
+        }
+    }
+}
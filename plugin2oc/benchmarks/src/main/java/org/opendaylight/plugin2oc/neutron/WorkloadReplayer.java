@@ -0,0 +1,389 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import net.juniper.contrail.api.ApiConnectorFactory;
+import net.juniper.contrail.api.types.Project;
+
+import org.opendaylight.controller.networkconfig.neutron.NeutronFloatingIP;
+import org.opendaylight.controller.networkconfig.neutron.NeutronNetwork;
+import org.opendaylight.controller.networkconfig.neutron.NeutronPort;
+import org.opendaylight.controller.networkconfig.neutron.NeutronRouter;
+import org.opendaylight.controller.networkconfig.neutron.NeutronRouter_Interface;
+import org.opendaylight.controller.networkconfig.neutron.NeutronSubnet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonObject;
+
+/**
+ * Replays a recorded Neutron workload, see {@link NeutronTrace}, against the
+ * plugin's handlers and reports throughput, latency percentiles and Contrail
+ * calls per operation.
+ *
+ * Operations are started at their recorded time, scaled by the speed, or as
+ * fast as possible. Operations of one tenant run one after the other in trace
+ * order, since they usually depend on each other; different tenants run in
+ * parallel on a number of lanes. As in the controller, the handlers get the
+ * resource before an update or delete from a cache of the replayed resources.
+ *
+ * java -cp benchmarks.jar org.opendaylight.plugin2oc.neutron.WorkloadReplayer trace.json
+ *
+ * Settings are System properties:
+ * <ul>
+ * <li>plugin2oc.replay.speed: 1 for the recorded speed, 10 for ten times as
+ * fast, or max, 1 by default</li>
+ * <li>plugin2oc.replay.lanes: tenants replayed in parallel, 8</li>
+ * <li>plugin2oc.replay.apiserver: host:port of an API server, or simulator
+ * for a {@link ContrailApiSimulator}; an {@link InMemoryApiConnector} when
+ * not set</li>
+ * </ul>
+ */
+public final class WorkloadReplayer {
+    /**
+     * Logger instance.
+     */
+    static final Logger LOGGER = LoggerFactory.getLogger(WorkloadReplayer.class);
+
+    private final List<NeutronTrace.Operation> operations;
+    private final double speed;
+    private final Lane[] lanes;
+    private final ConcurrentMap<String, JsonObject> resources = new ConcurrentHashMap<String, JsonObject>();
+    private final Map<String, Statistics> statistics = new LinkedHashMap<String, Statistics>();
+    private final LatencyHistogram lag = new LatencyHistogram();
+    private final AtomicLong exceptions = new AtomicLong();
+
+    /**
+     * @param speed
+     *            Factor applied to the recorded pace, 0 to replay as fast as
+     *            possible.
+     */
+    WorkloadReplayer(List<NeutronTrace.Operation> operations, double speed, int lanes) {
+        this.operations = operations;
+        this.speed = speed;
+        this.lanes = new Lane[lanes];
+        for (int i = 0; i < lanes; i++) {
+            this.lanes[i] = new Lane(i);
+        }
+        for (NeutronTrace.Operation operation : operations) {
+            if (!statistics.containsKey(operation.getName())) {
+                statistics.put(operation.getName(), new Statistics());
+            }
+        }
+    }
+
+    /**
+     * Latency, failures and Contrail calls of one kind of operation.
+     */
+    static final class Statistics {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong calls = new AtomicLong();
+    }
+
+    /**
+     * A thread replaying the operations of some tenants, with handlers of its
+     * own since some of them keep state between their can* and action calls.
+     */
+    private final class Lane {
+        final ExecutorService executor;
+        final NetworkHandler networkHandler = new NetworkHandler();
+        final SubnetHandler subnetHandler = new SubnetHandler();
+        final PortHandler portHandler = new PortHandler();
+        final RouterHandler routerHandler = new RouterHandler();
+        final FloatingIpHandler floatingIpHandler = new FloatingIpHandler();
+
+        Lane(int index) {
+            executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("replay-lane-" + index).setDaemon(true).build());
+        }
+
+        void replay(NeutronTrace.Operation operation, long dueNanos) {
+            long start = System.nanoTime();
+            if (speed > 0) {
+                lag.record(start - dueNanos);
+            }
+            Statistics stats = statistics.get(operation.getName());
+            OperationTrace trace = OperationTrace.begin();
+            boolean done = false;
+            try {
+                done = apply(operation);
+            } catch (RuntimeException e) {
+                exceptions.incrementAndGet();
+                LOGGER.warn("Operation on line {} failed", operation.line, e);
+            } finally {
+                stats.latency.recordSince(start);
+                if (trace != null) {
+                    stats.calls.addAndGet(trace.getTotalCalls());
+                }
+                OperationTrace.end(trace);
+            }
+            if (!done) {
+                stats.failures.incrementAndGet();
+                LOGGER.debug("{} {} on line {} failed", operation.getName(), operation.getId(), operation.line);
+            }
+        }
+
+        /**
+         * Invoked to run one operation the way the Neutron northbound does:
+         * check with the can* method, then act.
+         */
+        boolean apply(NeutronTrace.Operation operation) {
+            String id = operation.getId();
+            String action = operation.action;
+            JsonObject cached = resources.get(id);
+            JsonObject body = "create".equals(action) ? NeutronTrace.withDefaults(operation.resource, operation.body) : operation.body;
+            JsonObject original = cached != null ? cached : body;
+            boolean done;
+            if ("network".equals(operation.resource)) {
+                NeutronNetwork network = NeutronTrace.network(original);
+                if ("create".equals(action)) {
+                    done = networkHandler.canCreateNetwork(network) == HttpURLConnection.HTTP_OK && networkHandler.addNetwork(network);
+                } else if ("update".equals(action)) {
+                    NeutronNetwork delta = NeutronTrace.network(body);
+                    done = networkHandler.canUpdateNetwork(delta, network) == HttpURLConnection.HTTP_OK && networkHandler.updateNetwork(id, delta);
+                } else {
+                    done = networkHandler.canDeleteNetwork(network) == HttpURLConnection.HTTP_OK && networkHandler.removeNetwork(id);
+                }
+            } else if ("subnet".equals(operation.resource)) {
+                NeutronSubnet subnet = NeutronTrace.subnet(original);
+                if ("create".equals(action)) {
+                    done = subnetHandler.canCreateSubnet(subnet) == HttpURLConnection.HTTP_OK && subnetHandler.addSubnet(subnet);
+                } else if ("update".equals(action)) {
+                    NeutronSubnet delta = NeutronTrace.subnet(body);
+                    done = subnetHandler.canUpdateSubnet(delta, subnet) == HttpURLConnection.HTTP_OK && subnetHandler.updateSubnet(id, delta);
+                } else {
+                    done = subnetHandler.canDeleteSubnet(subnet) == HttpURLConnection.HTTP_OK && subnetHandler.removeSubnet(id);
+                }
+            } else if ("port".equals(operation.resource)) {
+                NeutronPort port = NeutronTrace.port(original);
+                if ("create".equals(action)) {
+                    done = portHandler.canCreatePort(port) == HttpURLConnection.HTTP_OK && portHandler.addPort(port);
+                } else if ("update".equals(action)) {
+                    NeutronPort delta = NeutronTrace.port(body);
+                    done = portHandler.canUpdatePort(delta, port) == HttpURLConnection.HTTP_OK && portHandler.updatePort(id, delta);
+                } else {
+                    done = portHandler.canDeletePort(port) == HttpURLConnection.HTTP_OK && portHandler.removePort(id);
+                }
+            } else if ("router".equals(operation.resource)) {
+                NeutronRouter router = NeutronTrace.router(original);
+                if ("create".equals(action)) {
+                    done = routerHandler.canCreateRouter(router) == HttpURLConnection.HTTP_OK && routerHandler.addRouter(router);
+                } else if ("update".equals(action)) {
+                    NeutronRouter delta = NeutronTrace.router(body);
+                    done = routerHandler.canUpdateRouter(router, delta) == HttpURLConnection.HTTP_OK && routerHandler.updateRouter(id, delta);
+                } else if ("attach".equals(action) || "detach".equals(action)) {
+                    NeutronRouter_Interface routerInterface = NeutronTrace.routerInterface(id, operation.routerInterface);
+                    if ("attach".equals(action)) {
+                        done = routerHandler.canAttachInterface(router, routerInterface) == HttpURLConnection.HTTP_OK;
+                        if (done) {
+                            routerHandler.neutronRouterInterfaceAttached(router, routerInterface);
+                        }
+                    } else {
+                        done = routerHandler.canDetachInterface(router, routerInterface) == HttpURLConnection.HTTP_OK;
+                        if (done) {
+                            routerHandler.neutronRouterInterfaceDetached(router, routerInterface);
+                        }
+                    }
+                    return done;
+                } else {
+                    done = routerHandler.canDeleteRouter(router) == HttpURLConnection.HTTP_OK && routerHandler.removeRouter(id);
+                }
+            } else {
+                NeutronFloatingIP floatingIp = NeutronTrace.floatingIp(original);
+                if ("create".equals(action)) {
+                    done = floatingIpHandler.canCreateFloatingIP(floatingIp) == HttpURLConnection.HTTP_OK && floatingIpHandler.addFloatingIP(floatingIp);
+                } else if ("update".equals(action)) {
+                    NeutronFloatingIP delta = NeutronTrace.floatingIp(body);
+                    done = floatingIpHandler.canUpdateFloatingIP(delta, floatingIp) == HttpURLConnection.HTTP_OK
+                            && floatingIpHandler.updateFloatingIP(id, delta);
+                } else {
+                    done = floatingIpHandler.canDeleteFloatingIP(floatingIp) == HttpURLConnection.HTTP_OK && floatingIpHandler.removeFloatingIP(id);
+                }
+            }
+            if (done) {
+                if ("create".equals(action)) {
+                    resources.put(id, body);
+                } else if ("update".equals(action)) {
+                    resources.put(id, NeutronTrace.merge(original, body));
+                } else {
+                    resources.remove(id);
+                }
+            }
+            return done;
+        }
+    }
+
+    /**
+     * Invoked to create the Contrail project of every tenant in the trace,
+     * which Keystone would have done.
+     */
+    void createProjects() throws Exception {
+        Set<String> tenants = new LinkedHashSet<String>();
+        for (NeutronTrace.Operation operation : operations) {
+            String tenant = tenant(operation);
+            if (tenant != null) {
+                tenants.add(tenant);
+            }
+        }
+        for (String tenant : tenants) {
+            String uuid = projectUuid(tenant);
+            if (Activator.apiConnector.findById(Project.class, uuid) == null) {
+                Project project = new Project();
+                project.setName(uuid);
+                project.setDisplayName(uuid);
+                project.setUuid(uuid);
+                if (!Activator.apiConnector.create(project)) {
+                    LOGGER.warn("Could not create the project of tenant {}", tenant);
+                }
+            }
+        }
+    }
+
+    /**
+     * Invoked to replay the whole trace and wait for its completion.
+     *
+     * @return The time the replay took, in nanoseconds.
+     */
+    long replay() throws InterruptedException {
+        Map<String, String> tenants = new HashMap<String, String>();
+        long firstMillis = operations.isEmpty() ? 0 : operations.get(0).timeMillis;
+        long start = System.nanoTime();
+        for (final NeutronTrace.Operation operation : operations) {
+            final long due = speed > 0 ? start + (long) (TimeUnit.MILLISECONDS.toNanos(operation.timeMillis - firstMillis) / speed) : start;
+            long wait = due - System.nanoTime();
+            while (wait > 0) {
+                LockSupport.parkNanos(wait);
+                wait = due - System.nanoTime();
+            }
+            // deletes and updates carry no tenant, so remember it by resource
+            String tenant = tenant(operation);
+            if (tenant != null) {
+                tenants.put(operation.getId(), tenant);
+            } else {
+                tenant = tenants.get(operation.getId());
+            }
+            final Lane lane = lanes[Math.abs((tenant == null ? "" : tenant).hashCode() % lanes.length)];
+            lane.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    lane.replay(operation, due);
+                }
+            });
+        }
+        for (Lane lane : lanes) {
+            lane.executor.shutdown();
+        }
+        for (Lane lane : lanes) {
+            lane.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        return System.nanoTime() - start;
+    }
+
+    void report(PrintStream out, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long total = 0;
+        long failed = 0;
+        for (Statistics stats : statistics.values()) {
+            total += stats.latency.getCount();
+            failed += stats.failures.get();
+        }
+        out.printf("%d operations in %.1f s, %.1f per second, %d failed, %d by exceptions%n", total, seconds, total / seconds, failed,
+                exceptions.get());
+        out.printf("%-18s %8s %8s %9s %9s %9s %9s %9s %9s%n", "operation", "count", "failed", "mean ms", "p50 ms", "p90 ms", "p99 ms", "max ms",
+                "calls/op");
+        for (Map.Entry<String, Statistics> entry : statistics.entrySet()) {
+            LatencyHistogram latency = entry.getValue().latency;
+            long count = latency.getCount();
+            out.printf("%-18s %8d %8d %9.2f %9.2f %9.2f %9.2f %9.2f %9.1f%n", entry.getKey(), count, entry.getValue().failures.get(),
+                    latency.getMeanNanos() / 1e6, latency.getValueAtPercentile(50) / 1e6, latency.getValueAtPercentile(90) / 1e6,
+                    latency.getValueAtPercentile(99) / 1e6, latency.getMaxNanos() / 1e6,
+                    count == 0 ? 0.0 : (double) entry.getValue().calls.get() / count);
+        }
+        if (speed > 0) {
+            out.printf("start lag behind the recorded pace: p50 %.2f ms, p99 %.2f ms, max %.2f ms%n", lag.getValueAtPercentile(50) / 1e6,
+                    lag.getValueAtPercentile(99) / 1e6, lag.getMaxNanos() / 1e6);
+        }
+    }
+
+    private String tenant(NeutronTrace.Operation operation) {
+        String tenant = NeutronTrace.string(operation.body, "tenant_id");
+        return tenant != null ? tenant : NeutronTrace.string(resources.get(operation.getId()), "tenant_id");
+    }
+
+    /**
+     * @return The project UUID of a Keystone tenant id, which usually comes
+     *         without dashes.
+     */
+    static String projectUuid(String tenant) {
+        if (tenant.length() == 32 && !tenant.contains("-")) {
+            return tenant.substring(0, 8) + "-" + tenant.substring(8, 12) + "-" + tenant.substring(12, 16) + "-" + tenant.substring(16, 20) + "-"
+                    + tenant.substring(20);
+        }
+        return tenant;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("Usage: WorkloadReplayer trace.json");
+            return;
+        }
+        List<NeutronTrace.Operation> operations;
+        Reader reader = new InputStreamReader(new FileInputStream(args[0]), ContrailApiSimulator.UTF_8);
+        try {
+            operations = NeutronTrace.read(reader);
+        } finally {
+            reader.close();
+        }
+        String speed = System.getProperty("plugin2oc.replay.speed", "1");
+        String apiServer = System.getProperty("plugin2oc.replay.apiserver");
+        ContrailApiSimulator simulator = null;
+        if (apiServer == null) {
+            Activator.apiConnector = new InstrumentedApiConnector(new InMemoryApiConnector(true));
+        } else if ("simulator".equals(apiServer)) {
+            simulator = new ContrailApiSimulator(0, Integer.getInteger("plugin2oc.simulator.threads", 16),
+                    ContrailApiSimulator.loadFaults(System.getProperty("plugin2oc.simulator.faults")), Long.getLong("plugin2oc.simulator.seed", 1));
+            simulator.start();
+            Activator.apiConnector = new InstrumentedApiConnector(ApiConnectorFactory.build("127.0.0.1", simulator.getPort()));
+        } else {
+            int colon = apiServer.lastIndexOf(':');
+            Activator.apiConnector = new InstrumentedApiConnector(ApiConnectorFactory.build(apiServer.substring(0, colon),
+                    Integer.parseInt(apiServer.substring(colon + 1))));
+        }
+        WorkloadReplayer replayer = new WorkloadReplayer(operations, "max".equals(speed) ? 0 : Double.parseDouble(speed), Integer.getInteger(
+                "plugin2oc.replay.lanes", 8));
+        try {
+            replayer.createProjects();
+            replayer.report(System.out, replayer.replay());
+        } finally {
+            if (simulator != null) {
+                simulator.stop();
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.opendaylight.plugin2oc.neutron.CompactTopology.Kind;
+import org.opendaylight.plugin2oc.neutron.CompactTopology.Node;
+
+/**
+ * Test Class for the CompactTopology.
+ */
+public class CompactTopologyTest {
+    static final String PROJECT = "9c3a3a5e-5aef-4f0b-9e48-1c1c6e1c7a10";
+    static final String NETWORK = "54a271fe-0216-46bc-a3e6-1ff582fbd324";
+    static final String SUBNET = "a5b20a4c-14bb-41ad-84c4-b7b6c5a4e2f1";
+    static final String ROUTER = "e3b7c2a1-8f44-4d2b-a8a1-0c2f1d6e9b77";
+
+    /* Test method to check the hierarchy, references and kinds of a graph built in any order */
+    @Test
+    public void testBuild() {
+        CompactTopology.Builder builder = CompactTopology.builder();
+        List<String> ports = new ArrayList<String>();
+        // ports first, so that their network and subnet are only referred to until declared
+        for (int i = 0; i < 1000; i++) {
+            String port = new UUID(1, i).toString();
+            ports.add(port);
+            builder.node(Kind.PORT, port, NETWORK).ref(port, SUBNET).node(Kind.INSTANCE_IP, new UUID(2, i).toString(), port);
+            if (i % 10 == 0) {
+                builder.node(Kind.FLOATING_IP, new UUID(3, i).toString(), port);
+            }
+        }
+        builder.ref(ROUTER, ports.get(7)).node(Kind.ROUTER, ROUTER, PROJECT);
+        builder.node(Kind.SUBNET, SUBNET, NETWORK).node(Kind.NETWORK, NETWORK, PROJECT).node(Kind.PROJECT, PROJECT, null);
+        builder.node(Kind.PORT, "not a uuid", NETWORK);
+        CompactTopology topology = builder.build();
+
+        assertEquals(2104, topology.size());
+        assertEquals(1000, topology.count(Kind.PORT));
+        Node network = topology.node(NETWORK);
+        assertEquals(Kind.NETWORK, network.getKind());
+        assertEquals(PROJECT, network.getParent().getUuid());
+        assertEquals(1001, network.getChildren().size());
+        assertEquals(1000, network.getChildren(Kind.PORT).size());
+        assertEquals(SUBNET, network.getChildren(Kind.SUBNET).get(0).getUuid());
+        assertEquals(0, network.getChildren(Kind.ROUTER).size());
+
+        Node port = topology.node(ports.get(10));
+        assertEquals(ports.get(10), port.getUuid());
+        assertEquals(network, port.getParent());
+        assertEquals(new UUID(2, 10).toString(), port.getChildren(Kind.INSTANCE_IP).get(0).getUuid());
+        assertEquals(new UUID(3, 10).toString(), port.getChildren(Kind.FLOATING_IP).get(0).getUuid());
+        assertEquals(SUBNET, port.getRefs(Kind.SUBNET).get(0).getUuid());
+        assertTrue(port.getReferrers().isEmpty());
+        assertEquals(1000, topology.node(SUBNET).getReferrers(Kind.PORT).size());
+        assertEquals(ROUTER, topology.node(ports.get(7)).getReferrers(Kind.ROUTER).get(0).getUuid());
+        assertEquals(2, topology.node(PROJECT).getChildren().size());
+        assertNull(topology.node(PROJECT).getParent());
+        assertNull(topology.node("not a uuid"));
+        assertNull(topology.node(new UUID(4, 0).toString()));
+        assertTrue(topology.memoryBytes() > 0);
+    }
+}
@@ -8,6 +8,13 @@
  */
 package org.opendaylight.plugin2oc.neutron;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 import net.juniper.contrail.api.ApiConnector;
 import net.juniper.contrail.api.ApiConnectorFactory;
 
@@ -27,12 +34,27 @@ import org.opendaylight.controller.sal.core.ComponentActivatorAbstractBase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * OSGi bundle activator for the plugin2oc Neutron Interface.
  */
 public class Activator extends ComponentActivatorAbstractBase {
     static ApiConnector apiConnector = null;
+    static final AddressIndex addressIndex = new AddressIndex();
+    static final ReferenceIndex referenceIndex = new ReferenceIndex();
+    static final Topology topology = new Topology();
+    static final SubnetIndex subnetIndex = new SubnetIndex();
+    static final FloatingIpAllocator floatingIpAllocator = new FloatingIpAllocator();
+    static final FloatingIpPools floatingIpPools = new FloatingIpPools();
+    static final WarmNetworks warmNetworks = new WarmNetworks();
+    static final VirtualMachineRegistry virtualMachines = new VirtualMachineRegistry();
     static final Logger LOGGER = LoggerFactory.getLogger(Activator.class);
+    static final int DEFAULT_EXISTENCE_SYNC_MINUTES = 60;
+    static final long DEFAULT_WARM_REFRESH_MILLIS = 30000;
+    private RecordingApiConnector recorder;
+    private ScheduledExecutorService existenceSync;
+    private ScheduledExecutorService warmRefresh;
 
     /**
      * Function called when the activator starts just after some initializations
@@ -42,6 +64,103 @@ public class Activator extends ComponentActivatorAbstractBase {
     public void init() {
         LOGGER.info("plugin2oc Plugin service Registered");
         apiConnector = getApiConnection();
+        OperationMetrics.registerMBeans(ManagementFactory.getPlatformMBeanServer());
+        rebuildIndexes(Boolean.parseBoolean(System.getProperty("plugin2oc.addressindex.rebuild", "true")),
+                Boolean.parseBoolean(System.getProperty("plugin2oc.referenceindex.rebuild", "true")),
+                Boolean.parseBoolean(System.getProperty("plugin2oc.fipallocator.rebuild", "true")));
+        if (Boolean.parseBoolean(System.getProperty("plugin2oc.existence.filter", "true"))) {
+            syncExistenceFilters();
+        }
+        refreshWarmNetworks();
+    }
+
+    /**
+     * Invoked to load the {@link ExistenceFilter}s in the background at start
+     * and then every plugin2oc.existence.sync.minutes, 60 by default, to drop
+     * the objects deleted outside the plugin. With 0 they are only loaded once.
+     */
+    private void syncExistenceFilters() {
+        final ApiConnector connector = apiConnector;
+        existenceSync = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("plugin2oc-existence-sync")
+                .setDaemon(true).build());
+        Runnable load = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ExistenceFilter.loadAll(connector);
+                } catch (Exception ex) {
+                    LOGGER.error("Could not load the existence filters", ex);
+                }
+            }
+        };
+        int minutes = Integer.getInteger("plugin2oc.existence.sync.minutes", DEFAULT_EXISTENCE_SYNC_MINUTES);
+        if (minutes > 0) {
+            existenceSync.scheduleWithFixedDelay(load, 0, minutes, TimeUnit.MINUTES);
+        } else {
+            existenceSync.execute(load);
+        }
+    }
+
+    /**
+     * Invoked to re-read the {@link WarmNetworks} in the background every
+     * plugin2oc.port.warm.refresh.ms, 30000 by default, so that they follow
+     * the changes made outside the plugin. With 0 they are not re-read.
+     */
+    private void refreshWarmNetworks() {
+        long millis = Long.getLong("plugin2oc.port.warm.refresh.ms", DEFAULT_WARM_REFRESH_MILLIS);
+        if (millis <= 0) {
+            return;
+        }
+        warmRefresh = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("plugin2oc-warm-networks")
+                .setDaemon(true).build());
+        warmRefresh.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                warmNetworks.refresh();
+            }
+        }, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Invoked to load the addresses of the existing ports into the
+     * {@link AddressIndex}, their references into the {@link ReferenceIndex}
+     * and the floating IPs of the external networks into the
+     * {@link FloatingIpAllocator} in the background, since that takes a
+     * Contrail call per object.
+     */
+    private void rebuildIndexes(final boolean addresses, final boolean references, final boolean floatingIps) {
+        if (!addresses && !references && !floatingIps) {
+            return;
+        }
+        final ApiConnector connector = apiConnector;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                if (addresses) {
+                    try {
+                        addressIndex.rebuild(connector);
+                    } catch (Exception ex) {
+                        LOGGER.error("Could not rebuild the address index", ex);
+                    }
+                }
+                if (references) {
+                    try {
+                        referenceIndex.rebuild(connector);
+                    } catch (Exception ex) {
+                        LOGGER.error("Could not rebuild the reference index", ex);
+                    }
+                }
+                if (floatingIps) {
+                    try {
+                        floatingIpAllocator.rebuild(connector);
+                    } catch (Exception ex) {
+                        LOGGER.error("Could not rebuild the floating IP allocator", ex);
+                    }
+                }
+            }
+        }, "plugin2oc-indexes");
+        thread.setDaemon(true);
+        thread.start();
     }
 
     /**
@@ -49,17 +168,53 @@ public class Activator extends ComponentActivatorAbstractBase {
      * opendaylight configuration folder inside config.ini at
      * opendaylight/distribution
      * /opendaylight/src/main/resources/configuration/config.ini
+     *
+     * With plugin2oc.apiserver.inmemory=true the plugin runs against an
+     * {@link InMemoryApiConnector} instead of a Contrail API server, for
+     * offline and scale testing. With plugin2oc.apiserver.record=FILE every
+     * call to the API server is recorded into FILE by a
+     * {@link RecordingApiConnector}; with plugin2oc.apiserver.playback=FILE
+     * the calls are answered from such a recording instead, taking their
+     * recorded latency if plugin2oc.apiserver.playback.latency=true.
      */
     public ApiConnector getApiConnection() {
-        String ipAddress = System.getProperty("plugin2oc.apiserver.ipaddress");
-        String port = System.getProperty("plugin2oc.apiserver.port");
-        int portNumber = 0;
-        try {
-            portNumber = Integer.parseInt(port);
-        } catch (Exception ex) {
-            LOGGER.error("Missing entry in Config file of Opendaylight", ex);
+        String playback = System.getProperty("plugin2oc.apiserver.playback");
+        if (playback != null) {
+            try {
+                apiConnector = new InstrumentedApiConnector(new PlaybackApiConnector(new File(playback),
+                        Boolean.getBoolean("plugin2oc.apiserver.playback.latency")));
+                LOGGER.info("Playing back the Contrail calls recorded in {}", playback);
+                return apiConnector;
+            } catch (IOException ex) {
+                LOGGER.error("Could not read the Contrail recording " + playback, ex);
+            }
+        }
+        ApiConnector connector;
+        if (Boolean.getBoolean("plugin2oc.apiserver.inmemory")) {
+            LOGGER.info("Using the in-memory Contrail API connector");
+            connector = new InMemoryApiConnector(true);
+        } else {
+            String ipAddress = System.getProperty("plugin2oc.apiserver.ipaddress");
+            String port = System.getProperty("plugin2oc.apiserver.port");
+            int portNumber = 0;
+            try {
+                portNumber = Integer.parseInt(port);
+            } catch (Exception ex) {
+                LOGGER.error("Missing entry in Config file of Opendaylight", ex);
+            }
+            connector = ApiConnectorFactory.build(ipAddress, portNumber);
+        }
+        String recording = System.getProperty("plugin2oc.apiserver.record");
+        if (recording != null) {
+            try {
+                recorder = new RecordingApiConnector(connector, new File(recording));
+                connector = recorder;
+                LOGGER.info("Recording the Contrail calls into {}", recording);
+            } catch (IOException ex) {
+                LOGGER.error("Could not create the Contrail recording " + recording, ex);
+            }
         }
-        apiConnector = ApiConnectorFactory.build(ipAddress, portNumber);
+        apiConnector = new InstrumentedApiConnector(connector);
         return apiConnector;
     }
 
@@ -70,6 +225,23 @@ public class Activator extends ComponentActivatorAbstractBase {
      */
     @Override
     public void destroy() {
+        OperationMetrics.unregisterMBeans();
+        if (existenceSync != null) {
+            existenceSync.shutdownNow();
+            existenceSync = null;
+        }
+        if (warmRefresh != null) {
+            warmRefresh.shutdownNow();
+            warmRefresh = null;
+        }
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException ex) {
+                LOGGER.error("Could not close the Contrail recording", ex);
+            }
+            recorder = null;
+        }
     }
 
     /**
@@ -88,7 +260,8 @@ public class Activator extends ComponentActivatorAbstractBase {
 
     /**
      * Function that is called when configuration of the dependencies is
-     * required.
+     * required. Each handler is registered behind an
+     * {@link InstrumentedHandler} proxy recording per operation latencies.
      *
      * @param c
      *            dependency manager Component object, used for configuring the
@@ -105,18 +278,27 @@ public class Activator extends ComponentActivatorAbstractBase {
     public void configureInstance(Component c, Object imp, String containerName) {
         if (imp.equals(NetworkHandler.class)) {
             c.setInterface(new String[] { INeutronNetworkCRUD.class.getName(), INeutronNetworkAware.class.getName() }, null);
+            c.setImplementation(InstrumentedHandler.wrap(new NetworkHandler(), INeutronNetworkCRUD.class, INeutronNetworkAware.class));
         }
         if (imp.equals(SubnetHandler.class)) {
             c.setInterface(new String[] { INeutronSubnetCRUD.class.getName(), INeutronSubnetAware.class.getName() }, null);
+            c.setImplementation(InstrumentedHandler.wrap(new SubnetHandler(), INeutronSubnetCRUD.class, INeutronSubnetAware.class));
         }
         if (imp.equals(PortHandler.class)) {
             c.setInterface(new String[] { INeutronPortCRUD.class.getName(), INeutronPortAware.class.getName() }, null);
+            c.setImplementation(InstrumentedHandler.wrap(new PortHandler(), INeutronPortCRUD.class, INeutronPortAware.class));
         }
         if (imp.equals(RouterHandler.class)) {
-            c.setInterface(new String[] { INeutronRouterCRUD.class.getName(), INeutronRouterAware.class.getName() }, null);
+            c.setInterface(new String[] { INeutronRouterCRUD.class.getName(), INeutronRouterAware.class.getName(), RouterQueries.class.getName() },
+                    null);
+            c.setImplementation(InstrumentedHandler.wrap(new RouterHandler(), INeutronRouterCRUD.class, INeutronRouterAware.class,
+                    RouterQueries.class));
         }
         if (imp.equals(FloatingIpHandler.class)) {
-            c.setInterface(new String[] { INeutronFloatingIPCRUD.class.getName(), INeutronFloatingIPAware.class.getName() }, null);
+            c.setInterface(new String[] { INeutronFloatingIPCRUD.class.getName(), INeutronFloatingIPAware.class.getName(),
+                    FloatingIpBulkUpdater.class.getName() }, null);
+            c.setImplementation(InstrumentedHandler.wrap(new FloatingIpHandler(), INeutronFloatingIPCRUD.class, INeutronFloatingIPAware.class,
+                    FloatingIpBulkUpdater.class));
         }
         // Create service dependencies.
         c.add(createServiceDependency().setService(BindingAwareBroker.class).setCallbacks("setBindingAwareBroker", "unsetBindingAwareBroker")
@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.juniper.contrail.api.ApiConnector;
+import net.juniper.contrail.api.ApiObjectBase;
+import net.juniper.contrail.api.ApiPropertyBase;
+import net.juniper.contrail.api.ObjectReference;
+import net.juniper.contrail.api.types.InstanceIp;
+import net.juniper.contrail.api.types.VirtualMachineInterface;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the port owning every MAC address and every fixed IP address,
+ * answering macInUse and the duplicate checks of port creation and update
+ * without scanning the VirtualMachineInterfaces of Contrail.
+ *
+ * MAC addresses are unique across all ports, as Neutron's macInUse checks
+ * them, and fixed IPs within their network. Entries live in
+ * {@link OffHeapOwnerTable}s: MACs as 48 bit longs, IPv4 addresses as a long
+ * made of a network number and the address, IPv6 addresses as three longs.
+ * Network UUIDs are numbered on first use and keep their number.
+ *
+ * Addresses that do not parse are not indexed, and claiming them always
+ * succeeds: validating them is up to Neutron and Contrail.
+ */
+public class AddressIndex {
+    /**
+     * Logger instance.
+     */
+    static final Logger LOGGER = LoggerFactory.getLogger(AddressIndex.class);
+    static final int DEFAULT_CAPACITY = 1024;
+    private static final long INVALID = -1;
+
+    private final OffHeapOwnerTable macs = new OffHeapOwnerTable(1, DEFAULT_CAPACITY);
+    private final OffHeapOwnerTable ipv4 = new OffHeapOwnerTable(1, DEFAULT_CAPACITY);
+    private final OffHeapOwnerTable ipv6 = new OffHeapOwnerTable(3, DEFAULT_CAPACITY);
+    private final ConcurrentMap<String, Integer> networks = new ConcurrentHashMap<String, Integer>();
+    private final AtomicInteger networkCount = new AtomicInteger();
+    // addresses released during a rebuild, null otherwise
+    private Set<String> released;
+
+    /**
+     * @return The UUID of the port owning a MAC address, or null if no port
+     *         has it.
+     */
+    public String macOwner(String mac) {
+        long key = mac(mac);
+        return key == INVALID ? null : string(macs.get(key));
+    }
+
+    /**
+     * Invoked to give a MAC address to a port unless another port has it.
+     *
+     * @return Whether the port owns the MAC address now.
+     */
+    public boolean claimMac(String mac, String portUuid) {
+        long key = mac(mac);
+        UUID port = UUID.fromString(portUuid);
+        if (key == INVALID) {
+            return true;
+        }
+        UUID owner = macs.putIfAbsent(port, key);
+        return owner == null || owner.equals(port);
+    }
+
+    /**
+     * Invoked to free a MAC address if the specified port owns it.
+     */
+    public void releaseMac(String mac, String portUuid) {
+        long key = mac(mac);
+        if (key != INVALID) {
+            UUID port = UUID.fromString(portUuid);
+            synchronized (this) {
+                if (released != null) {
+                    released.add(port + " " + key);
+                }
+                macs.remove(port, key);
+            }
+        }
+    }
+
+    /**
+     * @return The UUID of the port owning an IP address in a network, or null
+     *         if no port has it.
+     */
+    public String ipOwner(String networkUuid, String ip) {
+        long[] key = ip(networkUuid, ip);
+        if (key == null) {
+            return null;
+        }
+        return string(key.length == 1 ? ipv4.get(key) : ipv6.get(key));
+    }
+
+    /**
+     * Invoked to give an IP address of a network to a port unless another
+     * port has it.
+     *
+     * @return Whether the port owns the IP address now.
+     */
+    public boolean claimIp(String networkUuid, String ip, String portUuid) {
+        long[] key = ip(networkUuid, ip);
+        UUID port = UUID.fromString(portUuid);
+        if (key == null) {
+            return true;
+        }
+        UUID owner = key.length == 1 ? ipv4.putIfAbsent(port, key) : ipv6.putIfAbsent(port, key);
+        return owner == null || owner.equals(port);
+    }
+
+    /**
+     * Invoked to free an IP address of a network if the specified port owns
+     * it.
+     */
+    public void releaseIp(String networkUuid, String ip, String portUuid) {
+        long[] key = ip(networkUuid, ip);
+        if (key == null) {
+            return;
+        }
+        UUID port = UUID.fromString(portUuid);
+        synchronized (this) {
+            if (released != null) {
+                released.add(port + " " + Arrays.toString(key));
+            }
+            if (key.length == 1) {
+                ipv4.remove(port, key);
+            } else {
+                ipv6.remove(port, key);
+            }
+        }
+    }
+
+    /**
+     * Invoked to load the addresses of the ports existing in Contrail, from
+     * the MAC addresses of the VirtualMachineInterfaces and the addresses of
+     * their InstanceIps. Makes a call per object; run by the Activator on a
+     * thread of its own at start. Addresses released meanwhile by the
+     * handlers are not loaded again.
+     */
+    public void rebuild(ApiConnector apiConnector) throws IOException {
+        long start = System.nanoTime();
+        synchronized (this) {
+            released = new HashSet<String>();
+        }
+        try {
+            load(apiConnector);
+        } finally {
+            synchronized (this) {
+                released = null;
+            }
+        }
+        LOGGER.info("Address index rebuilt with {} MAC and {} IP addresses in {} ms", getMacCount(), getIpCount(),
+                (System.nanoTime() - start) / 1000000);
+    }
+
+    private void load(ApiConnector apiConnector) throws IOException {
+        List<? extends ApiObjectBase> interfaces = apiConnector.list(VirtualMachineInterface.class, null);
+        if (interfaces != null) {
+            for (ApiObjectBase listed : interfaces) {
+                VirtualMachineInterface virtualMachineInterface = (VirtualMachineInterface) apiConnector.findById(VirtualMachineInterface.class,
+                        listed.getUuid());
+                if (virtualMachineInterface != null && virtualMachineInterface.getMacAddresses() != null
+                        && virtualMachineInterface.getMacAddresses().getMacAddress() != null) {
+                    for (String mac : virtualMachineInterface.getMacAddresses().getMacAddress()) {
+                        if (!restoreMac(mac, virtualMachineInterface.getUuid())) {
+                            LOGGER.warn("MAC address {} is used by several ports, including {}", mac, virtualMachineInterface.getUuid());
+                        }
+                    }
+                }
+            }
+        }
+        List<? extends ApiObjectBase> instanceIps = apiConnector.list(InstanceIp.class, null);
+        if (instanceIps != null) {
+            for (ApiObjectBase listed : instanceIps) {
+                InstanceIp instanceIp = (InstanceIp) apiConnector.findById(InstanceIp.class, listed.getUuid());
+                if (instanceIp == null || instanceIp.getAddress() == null) {
+                    continue;
+                }
+                String port = first(instanceIp.getVirtualMachineInterface());
+                String network = first(instanceIp.getVirtualNetwork());
+                if (port != null && network != null && !restoreIp(network, instanceIp.getAddress(), port)) {
+                    LOGGER.warn("IP address {} is used by several ports of network {}", instanceIp.getAddress(), network);
+                }
+            }
+        }
+    }
+
+    /**
+     * Invoked by the rebuild to claim a MAC address read from Contrail,
+     * unless the port released it since the rebuild started.
+     */
+    private synchronized boolean restoreMac(String mac, String portUuid) {
+        long key = mac(mac);
+        if (key != INVALID && released.contains(UUID.fromString(portUuid) + " " + key)) {
+            return true;
+        }
+        return claimMac(mac, portUuid);
+    }
+
+    /**
+     * Invoked by the rebuild to claim an IP address read from Contrail,
+     * unless the port released it since the rebuild started.
+     */
+    private synchronized boolean restoreIp(String networkUuid, String ip, String portUuid) {
+        long[] key = ip(networkUuid, ip);
+        if (key != null && released.contains(UUID.fromString(portUuid) + " " + Arrays.toString(key))) {
+            return true;
+        }
+        return claimIp(networkUuid, ip, portUuid);
+    }
+
+    /**
+     * Invoked to forget every address.
+     */
+    public void clear() {
+        macs.clear();
+        ipv4.clear();
+        ipv6.clear();
+    }
+
+    public int getMacCount() {
+        return macs.size();
+    }
+
+    public int getIpCount() {
+        return ipv4.size() + ipv6.size();
+    }
+
+    /**
+     * @return Bytes of direct memory held by the index.
+     */
+    public long getMemoryBytes() {
+        return macs.memoryBytes() + ipv4.memoryBytes() + ipv6.memoryBytes();
+    }
+
+    /**
+     * @return The key of an IP address in a network: one long for IPv4 and
+     *         three for IPv6, or null if it does not parse.
+     */
+    private long[] ip(String networkUuid, String ip) {
+        if (networkUuid == null || ip == null) {
+            return null;
+        }
+        long address = ipv4(ip);
+        if (address != INVALID) {
+            return new long[] { ((long) network(networkUuid) << 32) | address };
+        }
+        if (ip.indexOf(':') < 0) {
+            return null;
+        }
+        byte[] bytes;
+        try {
+            // a literal with a colon is never resolved through DNS
+            InetAddress inetAddress = InetAddress.getByName(ip);
+            if (inetAddress instanceof Inet4Address) {
+                return ip(networkUuid, inetAddress.getHostAddress());
+            }
+            bytes = inetAddress.getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < 8; i++) {
+            high = (high << 8) | (bytes[i] & 0xFF);
+            low = (low << 8) | (bytes[i + 8] & 0xFF);
+        }
+        return new long[] { network(networkUuid), high, low };
+    }
+
+    private int network(String networkUuid) {
+        Integer number = networks.get(networkUuid);
+        if (number == null) {
+            Integer created = networkCount.getAndIncrement();
+            number = networks.putIfAbsent(networkUuid, created);
+            if (number == null) {
+                number = created;
+            }
+        }
+        return number;
+    }
+
+    /**
+     * @return An IPv4 address in dotted decimal as a long, or
+     *         {@link #INVALID}.
+     */
+    static long ipv4(String ip) {
+        String[] parts = ip.split("\\.", -1);
+        if (parts.length != 4) {
+            return INVALID;
+        }
+        long address = 0;
+        for (String part : parts) {
+            int value = number(part, 10, 3);
+            if (value < 0 || value > 255) {
+                return INVALID;
+            }
+            address = (address << 8) | value;
+        }
+        return address;
+    }
+
+    /**
+     * @return A MAC address as six hexadecimal bytes separated by colons or
+     *         dashes as a long, or {@link #INVALID}.
+     */
+    static long mac(String mac) {
+        if (mac == null) {
+            return INVALID;
+        }
+        String[] parts = mac.split("[:-]", -1);
+        if (parts.length != 6) {
+            return INVALID;
+        }
+        long address = 0;
+        for (String part : parts) {
+            int value = number(part, 16, 2);
+            if (value < 0) {
+                return INVALID;
+            }
+            address = (address << 8) | value;
+        }
+        return address;
+    }
+
+    /**
+     * @return The value of a number of at most the specified digits, or -1.
+     */
+    private static int number(String digits, int radix, int maxDigits) {
+        if (digits.length() == 0 || digits.length() > maxDigits) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            int digit = Character.digit(digits.charAt(i), radix);
+            if (digit < 0) {
+                return -1;
+            }
+            value = value * radix + digit;
+        }
+        return value;
+    }
+
+    private static String first(List<ObjectReference<ApiPropertyBase>> refs) {
+        return refs == null || refs.isEmpty() ? null : refs.get(0).getUuid();
+    }
+
+    private static String string(UUID uuid) {
+        return uuid == null ? null : uuid.toString();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.opendaylight.controller.networkconfig.neutron.NeutronSubnet_IPAllocationPool;
+
+import com.google.common.net.InetAddresses;
+
+/**
+ * The CIDR of a subnet, IPv4 or IPv6, telling whether an address is in it,
+ * and the checks of its allocation pools made when the subnet is created:
+ * whether a pool leaves the CIDR, and whether two pools overlap. Addresses
+ * are compared as numbers; the pools are sorted once, so that overlapping
+ * pools are found however fragmented they are.
+ *
+ * The AllocationPools of the subnets created are kept by the
+ * {@link SubnetIndex}.
+ */
+public final class AllocationPools {
+    private final int length;
+    private final BigInteger cidrLow;
+    private final BigInteger cidrHigh;
+    private final boolean overlapping;
+    private final boolean outsideCidr;
+
+    /**
+     * @throws IllegalArgumentException
+     *             If the CIDR or a pool is not valid.
+     */
+    AllocationPools(String cidr, List<NeutronSubnet_IPAllocationPool> pools) {
+        if (cidr == null || cidr.indexOf('/') < 0) {
+            throw new IllegalArgumentException("CIDR " + cidr + " not in correct format");
+        }
+        byte[] prefix = InetAddresses.forString(cidr.substring(0, cidr.indexOf('/'))).getAddress();
+        int prefixLength = Integer.parseInt(cidr.substring(cidr.indexOf('/') + 1));
+        length = prefix.length;
+        if (prefixLength < 0 || prefixLength > 8 * length) {
+            throw new IllegalArgumentException("CIDR " + cidr + " has an invalid prefix length");
+        }
+        BigInteger hostMask = BigInteger.ONE.shiftLeft(8 * length - prefixLength).subtract(BigInteger.ONE);
+        cidrLow = new BigInteger(1, prefix).andNot(hostMask);
+        cidrHigh = cidrLow.or(hostMask);
+        List<BigInteger[]> ranges = new ArrayList<BigInteger[]>();
+        boolean outside = false;
+        if (pools != null) {
+            for (NeutronSubnet_IPAllocationPool pool : pools) {
+                BigInteger start = number(pool.getPoolStart());
+                BigInteger end = number(pool.getPoolEnd());
+                if (start == null || end == null || start.compareTo(end) > 0) {
+                    throw new IllegalArgumentException("Allocation pool " + pool.getPoolStart() + " - " + pool.getPoolEnd() + " is not valid");
+                }
+                outside |= start.compareTo(cidrLow) < 0 || end.compareTo(cidrHigh) > 0;
+                ranges.add(new BigInteger[] { start, end });
+            }
+        }
+        outsideCidr = outside;
+        BigInteger[][] sorted = ranges.toArray(new BigInteger[ranges.size()][]);
+        Arrays.sort(sorted, new Comparator<BigInteger[]>() {
+            @Override
+            public int compare(BigInteger[] first, BigInteger[] second) {
+                return first[0].compareTo(second[0]);
+            }
+        });
+        BigInteger end = null;
+        boolean overlap = false;
+        for (BigInteger[] range : sorted) {
+            if (end != null && range[0].compareTo(end) <= 0) {
+                overlap = true;
+            }
+            end = end == null ? range[1] : end.max(range[1]);
+        }
+        overlapping = overlap;
+    }
+
+    /**
+     * @return True if the address is a valid address in the CIDR.
+     */
+    public boolean inCidr(String ipAddress) {
+        BigInteger address = number(ipAddress);
+        return address != null && address.compareTo(cidrLow) >= 0 && address.compareTo(cidrHigh) <= 0;
+    }
+
+    /**
+     * @return True if two of the allocation pools share an address.
+     */
+    public boolean isOverlapping() {
+        return overlapping;
+    }
+
+    /**
+     * @return True if an allocation pool is not inside the CIDR.
+     */
+    public boolean isOutsideCidr() {
+        return outsideCidr;
+    }
+
+    /**
+     * @return The address as a number, or null if it is not an address of
+     *         the family of the CIDR.
+     */
+    private BigInteger number(String ipAddress) {
+        if (ipAddress == null || !InetAddresses.isInetAddress(ipAddress)) {
+            return null;
+        }
+        byte[] address = InetAddresses.forString(ipAddress).getAddress();
+        return address.length == length ? new BigInteger(1, address) : null;
+    }
+}
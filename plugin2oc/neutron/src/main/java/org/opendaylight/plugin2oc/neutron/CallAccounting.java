@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Aggregates the {@link OperationTrace} of every completed call of one
+ * handler operation into counters.
+ *
+ * An operation repeating the same kind of call on the same object type more
+ * than plugin2oc.trace.repeatedCallWarn times (default 20) is logged as a
+ * warning with its full trace, which is how N+1 call patterns show up.
+ */
+public class CallAccounting implements OutboundCallsMXBean {
+    /**
+     * Logger instance.
+     */
+    static final Logger LOGGER = LoggerFactory.getLogger(CallAccounting.class);
+    static final int REPEATED_CALL_WARN = Integer.getInteger("plugin2oc.trace.repeatedCallWarn", 20);
+
+    private final String operationName;
+    private final AtomicLong operations = new AtomicLong();
+    private final AtomicLong totalCalls = new AtomicLong();
+    private final AtomicLong maxCalls = new AtomicLong();
+    private final AtomicLongArray calls = new AtomicLongArray(OperationTrace.SLOTS);
+    private final AtomicLongArray nanos = new AtomicLongArray(OperationTrace.SLOTS);
+
+    public CallAccounting(String handler, String operation) {
+        this.operationName = handler + "." + operation;
+    }
+
+    /**
+     * Invoked when an operation completes to add its trace to the counters.
+     *
+     * @param trace
+     *            The trace of the completed operation.
+     */
+    public void add(OperationTrace trace) {
+        long operationCalls = 0;
+        boolean repeated = false;
+        for (int i = 0; i < trace.getUsedSlots(); i++) {
+            int slot = trace.getUsedSlot(i);
+            long count = trace.getCalls(slot);
+            if (count > 0) {
+                calls.addAndGet(slot, count);
+                nanos.addAndGet(slot, trace.getNanos(slot));
+                operationCalls += count;
+                repeated |= count > REPEATED_CALL_WARN;
+            }
+        }
+        operations.incrementAndGet();
+        totalCalls.addAndGet(operationCalls);
+        long max = maxCalls.get();
+        while (operationCalls > max && !maxCalls.compareAndSet(max, operationCalls)) {
+            max = maxCalls.get();
+        }
+        if (repeated) {
+            LOGGER.warn("{} repeated a Contrail call more than {} times : {}", operationName, REPEATED_CALL_WARN, trace.summary());
+        } else if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("{} : {}", operationName, trace.summary());
+        }
+    }
+
+    @Override
+    public long getOperations() {
+        return operations.get();
+    }
+
+    @Override
+    public double getAverageCallsPerOperation() {
+        long count = operations.get();
+        return count == 0 ? 0 : (double) totalCalls.get() / count;
+    }
+
+    @Override
+    public long getMaxCallsPerOperation() {
+        return maxCalls.get();
+    }
+
+    @Override
+    public Map<String, Long> getCalls() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (int i = 0; i < OperationTrace.SLOTS; i++) {
+            long count = calls.get(i);
+            if (count > 0) {
+                result.put(OperationTrace.slotName(i), count);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getCallMicros() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (int i = 0; i < OperationTrace.SLOTS; i++) {
+            if (calls.get(i) > 0) {
+                result.put(OperationTrace.slotName(i), TimeUnit.NANOSECONDS.toMicros(nanos.get(i)));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Double> getCallsPerOperation() {
+        Map<String, Double> result = new TreeMap<String, Double>();
+        long count = operations.get();
+        if (count == 0) {
+            return result;
+        }
+        for (int i = 0; i < OperationTrace.SLOTS; i++) {
+            long slotCalls = calls.get(i);
+            if (slotCalls > 0) {
+                result.put(OperationTrace.slotName(i), (double) slotCalls / count);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < OperationTrace.SLOTS; i++) {
+            calls.set(i, 0);
+            nanos.set(i, 0);
+        }
+        operations.set(0);
+        totalCalls.set(0);
+        maxCalls.set(0);
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+/**
+ * The calls the plugin makes through {@link net.juniper.contrail.api.ApiConnector}.
+ */
+public enum ContrailOperation {
+    CREATE("create"), READ("read"), UPDATE("update"), DELETE("delete"), FIND("find"), FIND_BY_FQN("findByFQN"), FIND_BY_ID("findById"), FIND_BY_NAME(
+            "findByName"), LIST("list"), GET_OBJECTS("getObjects");
+
+    private final String methodName;
+
+    private ContrailOperation(String methodName) {
+        this.methodName = methodName;
+    }
+
+    /**
+     * @return Name of the ApiConnector method performing the operation.
+     */
+    public String getMethodName() {
+        return methodName;
+    }
+}
@@ -0,0 +1,596 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.juniper.contrail.api.ApiObjectBase;
+import net.juniper.contrail.api.ApiPropertyBase;
+import net.juniper.contrail.api.ObjectReference;
+
+/**
+ * Binary log format shared by the {@link RecordingApiConnector} and the
+ * {@link PlaybackApiConnector}.
+ *
+ * A log starts with the magic bytes "P2OCREC", a version byte and the wall
+ * clock time the recording started, in milliseconds. Then every call is one
+ * record, prefixed by its length in bytes:
+ *
+ * <pre>
+ * varlong   call start, in nanoseconds since the recording started
+ * byte      operation, the ordinal of its {@link ContrailOperation}
+ * string    object type, e.g. VirtualNetwork
+ * string    key the call is matched on in playback, see the key methods
+ * string    UUID of the object concerned, if known
+ * varlong   latency in nanoseconds
+ * varint    payload size: bytes of the request, result and state below
+ * byte      outcome: 0 returned, 1 threw
+ * value     request: the object sent by create and update, otherwise null
+ * value     result: the value returned, or the exception class and message
+ * value     state: the object after read, its UUID after create, otherwise null
+ * </pre>
+ *
+ * Values are tagged: null, strings, integers, longs, doubles, booleans,
+ * lists, and objects as their class name followed by their non null fields
+ * by name. Integers are variable length and strings are written once per
+ * record, later occurrences refer to the first one; a field name or a type
+ * name costs a byte or two after its first use.
+ */
+final class ContrailRecording {
+    static final byte[] MAGIC = "P2OCREC".getBytes(Charset.forName("US-ASCII"));
+    static final int VERSION = 1;
+    static final int RETURNED = 0;
+    static final int THREW = 1;
+
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int INTEGER = 2;
+    private static final int LONG = 3;
+    private static final int DOUBLE = 4;
+    private static final int TRUE = 5;
+    private static final int FALSE = 6;
+    private static final int LIST = 7;
+    private static final int OBJECT = 8;
+    private static final int ERROR = 9;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String TYPES_PACKAGE = InMemoryApiConnector.TYPES_PACKAGE;
+    private static final ConcurrentMap<Class<?>, Map<String, Field>> FIELDS = new ConcurrentHashMap<Class<?>, Map<String, Field>>();
+
+    private ContrailRecording() {
+    }
+
+    /**
+     * One recorded call.
+     */
+    static final class Record {
+        long timeNanos;
+        ContrailOperation operation;
+        String type;
+        String key;
+        String uuid;
+        long latencyNanos;
+        int payloadSize;
+        Object request;
+        /**
+         * The value returned, or the Throwable thrown while recording and a
+         * {@link Failure} in playback.
+         */
+        Object result;
+        Object state;
+
+        boolean threw() {
+            return result instanceof Throwable || result instanceof Failure;
+        }
+    }
+
+    /**
+     * Exception recorded as thrown by a call.
+     */
+    static final class Failure {
+        final String className;
+        final String message;
+
+        Failure(String className, String message) {
+            this.className = className;
+            this.message = message;
+        }
+    }
+
+    /**
+     * Encodes records, one thread at a time.
+     */
+    static final class Encoder {
+        private final Buffer buffer = new Buffer();
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+        byte[] encode(Record record) {
+            buffer.reset();
+            strings.clear();
+            writeVarLong(record.timeNanos);
+            buffer.write(record.operation.ordinal());
+            writeString(record.type);
+            writeString(record.key);
+            writeString(record.uuid);
+            writeVarLong(record.latencyNanos);
+            int sizeAt = buffer.size();
+            // patched once the values are written; the size is not known yet
+            buffer.write(new byte[5], 0, 5);
+            buffer.write(record.threw() ? THREW : RETURNED);
+            int start = buffer.size();
+            writeValue(record.request);
+            if (record.result instanceof Throwable) {
+                Throwable error = (Throwable) record.result;
+                buffer.write(ERROR);
+                writeString(error.getClass().getName());
+                writeString(error.getMessage());
+            } else {
+                writeValue(record.result);
+            }
+            writeValue(record.state);
+            record.payloadSize = buffer.size() - start;
+            buffer.patchVarInt(sizeAt, record.payloadSize);
+            return buffer.toByteArray();
+        }
+
+        private void writeValue(Object value) {
+            if (value == null) {
+                buffer.write(NULL);
+            } else if (value instanceof String) {
+                buffer.write(STRING);
+                writeString((String) value);
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                buffer.write(INTEGER);
+                writeVarLong(((Number) value).intValue());
+            } else if (value instanceof Long) {
+                buffer.write(LONG);
+                writeVarLong((Long) value);
+            } else if (value instanceof Double || value instanceof Float) {
+                buffer.write(DOUBLE);
+                writeVarLong(Double.doubleToLongBits(((Number) value).doubleValue()));
+            } else if (value instanceof Boolean) {
+                buffer.write((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof List) {
+                List<?> list = (List<?>) value;
+                buffer.write(LIST);
+                writeVarLong(list.size());
+                for (Object element : list) {
+                    writeValue(element);
+                }
+            } else {
+                buffer.write(OBJECT);
+                String className = value.getClass().getName();
+                writeString(className.startsWith(TYPES_PACKAGE) ? className.substring(TYPES_PACKAGE.length()) : className);
+                List<Field> set = new ArrayList<Field>();
+                for (Field field : fields(value.getClass()).values()) {
+                    if (get(field, value) != null) {
+                        set.add(field);
+                    }
+                }
+                writeVarLong(set.size());
+                for (Field field : set) {
+                    writeString(field.getName());
+                    writeValue(get(field, value));
+                }
+            }
+        }
+
+        /**
+         * Invoked to write a string the first time it is seen in the record,
+         * or a reference to its first occurrence.
+         */
+        private void writeString(String value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            Integer index = strings.get(value);
+            if (index != null) {
+                writeVarLong((index << 1) | 1);
+                return;
+            }
+            strings.put(value, strings.size());
+            byte[] bytes = value.getBytes(UTF_8);
+            writeVarLong((bytes.length + 1) << 1);
+            buffer.write(bytes, 0, bytes.length);
+        }
+
+        /**
+         * Invoked to write a value 7 bits at a time, zigzag encoded so that
+         * small negative values stay short.
+         */
+        private void writeVarLong(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                buffer.write((int) ((zigzag & 0x7F) | 0x80));
+                zigzag >>>= 7;
+            }
+            buffer.write((int) zigzag);
+        }
+    }
+
+    /**
+     * Decodes records; not thread safe.
+     */
+    static final class Decoder {
+        private final List<String> strings = new ArrayList<String>();
+        private byte[] bytes;
+        private int position;
+
+        Record decode(byte[] body) throws IOException {
+            bytes = body;
+            position = 0;
+            strings.clear();
+            try {
+                Record record = new Record();
+                record.timeNanos = readVarLong();
+                int operation = readByte();
+                if (operation >= ContrailOperation.values().length) {
+                    throw new IOException("Unknown operation " + operation);
+                }
+                record.operation = ContrailOperation.values()[operation];
+                record.type = readString();
+                record.key = readString();
+                record.uuid = readString();
+                record.latencyNanos = readVarLong();
+                record.payloadSize = (int) readVarLong();
+                readByte();
+                record.request = readValue();
+                record.result = readValue();
+                record.state = readValue();
+                return record;
+            } catch (ArrayIndexOutOfBoundsException e) {
+                throw new IOException("Truncated record", e);
+            }
+        }
+
+        private Object readValue() throws IOException {
+            int tag = readByte();
+            switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString();
+            case INTEGER:
+                return (int) readVarLong();
+            case LONG:
+                return readVarLong();
+            case DOUBLE:
+                return Double.longBitsToDouble(readVarLong());
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case LIST:
+                int size = (int) readVarLong();
+                List<Object> list = new ArrayList<Object>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue());
+                }
+                return list;
+            case OBJECT:
+                String className = readString();
+                Class<?> cls = type(className.indexOf('.') < 0 ? TYPES_PACKAGE + className : className);
+                Object obj = newInstance(cls);
+                Map<String, Field> fields = fields(cls);
+                int count = (int) readVarLong();
+                for (int i = 0; i < count; i++) {
+                    Field field = fields.get(readString());
+                    Object value = readValue();
+                    // a field gone from the Contrail types is skipped
+                    if (field != null) {
+                        set(field, obj, convert(value, field.getType()));
+                    }
+                }
+                return obj;
+            case ERROR:
+                return new Failure(readString(), readString());
+            default:
+                throw new IOException("Unknown value tag " + tag);
+            }
+        }
+
+        private String readString() {
+            long header = readVarLong();
+            if (header == 0) {
+                return null;
+            }
+            if ((header & 1) != 0) {
+                return strings.get((int) (header >>> 1));
+            }
+            int length = (int) (header >>> 1) - 1;
+            String value = new String(bytes, position, length, UTF_8);
+            position += length;
+            strings.add(value);
+            return value;
+        }
+
+        private int readByte() {
+            return bytes[position++] & 0xFF;
+        }
+
+        private long readVarLong() {
+            long zigzag = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = readByte();
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+    }
+
+    /**
+     * Invoked to write the header of a log.
+     */
+    static void writeHeader(OutputStream out, long startMillis) throws IOException {
+        out.write(MAGIC);
+        out.write(VERSION);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (startMillis >>> shift));
+        }
+    }
+
+    /**
+     * @return The wall clock time the recording started, after checking the
+     *         header of a log.
+     */
+    static long readHeader(InputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        readFully(in, magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a Contrail recording");
+        }
+        int version = in.read();
+        if (version != VERSION) {
+            throw new IOException("Unsupported recording version " + version);
+        }
+        byte[] time = new byte[8];
+        readFully(in, time);
+        long startMillis = 0;
+        for (byte b : time) {
+            startMillis = (startMillis << 8) | (b & 0xFF);
+        }
+        return startMillis;
+    }
+
+    /**
+     * Invoked to write a record with its length prefix.
+     */
+    static void writeRecord(OutputStream out, byte[] body) throws IOException {
+        int length = body.length;
+        while ((length & ~0x7F) != 0) {
+            out.write((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        out.write(length);
+        out.write(body);
+    }
+
+    /**
+     * @return The next record of a log, or null at its end. A record cut
+     *         short, as left by a recording that did not close, is the end.
+     */
+    static byte[] readRecord(InputStream in) throws IOException {
+        int length = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.read();
+            if (b < 0) {
+                return null;
+            }
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        byte[] body = new byte[length];
+        try {
+            readFully(in, body);
+        } catch (EOFException e) {
+            return null;
+        }
+        return body;
+    }
+
+    /**
+     * @return The key of a call on an object: its UUID, or its fully qualified
+     *         name when it has none yet.
+     */
+    static String key(ApiObjectBase obj) {
+        if (obj == null) {
+            return null;
+        }
+        if (obj.getUuid() != null) {
+            return obj.getUuid();
+        }
+        List<String> fqName = obj.getQualifiedName();
+        if (fqName == null || fqName.isEmpty()) {
+            fqName = new ArrayList<String>();
+            if (obj.getDefaultParent() != null) {
+                fqName.addAll(obj.getDefaultParent());
+            }
+            fqName.add(obj.getName());
+        }
+        return join(fqName, ":");
+    }
+
+    /**
+     * @return The key of a lookup by name under a parent.
+     */
+    static String key(ApiObjectBase parent, String name) {
+        return parent == null ? name : join(parent.getQualifiedName(), ":") + ":" + name;
+    }
+
+    /**
+     * @return The key of a getObjects call: the referred UUIDs, or names for
+     *         references without UUID.
+     */
+    static <T extends ApiPropertyBase> String key(List<ObjectReference<T>> refList) {
+        if (refList == null) {
+            return null;
+        }
+        List<String> keys = new ArrayList<String>(refList.size());
+        for (ObjectReference<T> ref : refList) {
+            keys.add(ref.getUuid() != null ? ref.getUuid() : join(ref.getReferredName(), ":"));
+        }
+        return join(keys, ",");
+    }
+
+    static String join(List<String> parts, String separator) {
+        if (parts == null) {
+            return null;
+        }
+        StringBuilder joined = new StringBuilder();
+        for (String part : parts) {
+            if (joined.length() > 0) {
+                joined.append(separator);
+            }
+            joined.append(part);
+        }
+        return joined.toString();
+    }
+
+    /**
+     * @return The name types are recorded under, e.g. VirtualNetwork.
+     */
+    static String typeName(Class<?> cls) {
+        return cls.getSimpleName();
+    }
+
+    /**
+     * Invoked to copy the recorded state of an object into the object of a
+     * call, e.g. the object a read fills in.
+     */
+    static void copyFields(Object from, Object to) {
+        for (Field field : fields(to.getClass()).values()) {
+            Field source = fields(from.getClass()).get(field.getName());
+            set(field, to, source == null ? null : get(source, from));
+        }
+    }
+
+    private static Object convert(Object value, Class<?> type) {
+        if (value instanceof Integer) {
+            if (type == Short.class || type == short.class) {
+                return ((Integer) value).shortValue();
+            }
+            if (type == Byte.class || type == byte.class) {
+                return ((Integer) value).byteValue();
+            }
+        } else if (value instanceof Double && (type == Float.class || type == float.class)) {
+            return ((Double) value).floatValue();
+        }
+        return value;
+    }
+
+    /**
+     * @return The instance fields of a class and its superclasses by name,
+     *         back references included although they are transient.
+     */
+    private static Map<String, Field> fields(Class<?> cls) {
+        Map<String, Field> result = FIELDS.get(cls);
+        if (result == null) {
+            result = new LinkedHashMap<String, Field>();
+            for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic() && !result.containsKey(field.getName())) {
+                        field.setAccessible(true);
+                        result.put(field.getName(), field);
+                    }
+                }
+            }
+            FIELDS.put(cls, result);
+        }
+        return result;
+    }
+
+    private static Class<?> type(String className) throws IOException {
+        try {
+            return Class.forName(className, false, ApiObjectBase.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown recorded class " + className, e);
+        }
+    }
+
+    private static Object newInstance(Class<?> cls) throws IOException {
+        try {
+            Constructor<?> constructor = cls.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor.newInstance();
+        } catch (Exception e) {
+            throw new IOException("Cannot instantiate " + cls.getName(), e);
+        }
+    }
+
+    private static Object get(Field field, Object obj) {
+        try {
+            return field.get(obj);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void set(Field field, Object obj, Object value) {
+        try {
+            field.set(obj, value);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void readFully(InputStream in, byte[] bytes) throws IOException {
+        int read = 0;
+        while (read < bytes.length) {
+            int count = in.read(bytes, read, bytes.length - read);
+            if (count < 0) {
+                throw new EOFException();
+            }
+            read += count;
+        }
+    }
+
+    /**
+     * Growable byte buffer whose varints can be patched in place.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(512);
+        }
+
+        /**
+         * Invoked to overwrite 5 reserved bytes with a varint padded to 5
+         * bytes, which decoders read like any other varint.
+         */
+        void patchVarInt(int at, int value) {
+            long zigzag = (long) value << 1;
+            for (int i = 0; i < 4; i++) {
+                buf[at + i] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buf[at + 4] = (byte) (zigzag & 0x7F);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of UUIDs with 4 bit counters instead of bits, so that UUIDs
+ * can be removed again. Thread safe without locks: counters are packed 16 to
+ * a long and updated by compare and set.
+ *
+ * A counter that reaches 15 sticks there, since it can no longer tell how
+ * many UUIDs share it; removing a UUID never added may clear a counter of
+ * another one, as with any counting Bloom filter.
+ */
+final class CountingBloomFilter {
+    private static final int BITS = 4;
+    private static final int PER_WORD = 64 / BITS;
+    private static final long MAX = (1L << BITS) - 1;
+
+    private final AtomicLongArray words;
+    private final int counters;
+    private final int hashes;
+    private final AtomicLong entries = new AtomicLong();
+
+    /**
+     * @param expectedEntries
+     *            Number of UUIDs the filter is sized for.
+     * @param falsePositiveRate
+     *            Rate of false positives wanted at that number of UUIDs.
+     */
+    CountingBloomFilter(int expectedEntries, double falsePositiveRate) {
+        int n = Math.max(1, expectedEntries);
+        double m = -n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        this.counters = (int) Math.max(PER_WORD, Math.min(Integer.MAX_VALUE / 2, Math.ceil(m)));
+        this.hashes = Math.max(1, (int) Math.round((double) counters / n * Math.log(2)));
+        this.words = new AtomicLongArray((counters + PER_WORD - 1) / PER_WORD);
+    }
+
+    void add(long high, long low) {
+        long h1 = mix(high ^ mix(low));
+        long h2 = mix(h1 ^ low) | 1;
+        for (int i = 0; i < hashes; i++) {
+            update(index(h1, h2, i), 1);
+        }
+        entries.incrementAndGet();
+    }
+
+    /**
+     * Invoked to remove a UUID, unless the filter does not contain it.
+     */
+    void remove(long high, long low) {
+        if (!mightContain(high, low)) {
+            return;
+        }
+        long h1 = mix(high ^ mix(low));
+        long h2 = mix(h1 ^ low) | 1;
+        for (int i = 0; i < hashes; i++) {
+            update(index(h1, h2, i), -1);
+        }
+        entries.decrementAndGet();
+    }
+
+    /**
+     * @return False if the UUID was definitely never added, true if it may
+     *         have been.
+     */
+    boolean mightContain(long high, long low) {
+        long h1 = mix(high ^ mix(low));
+        long h2 = mix(h1 ^ low) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int index = index(h1, h2, i);
+            if (((words.get(index / PER_WORD) >>> shift(index)) & MAX) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Number of UUIDs added and not removed.
+     */
+    long entries() {
+        return entries.get();
+    }
+
+    /**
+     * @return The false positive rate expected at the current number of
+     *         UUIDs.
+     */
+    double expectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) hashes * Math.max(0, entries.get()) / counters), hashes);
+    }
+
+    long memoryBytes() {
+        return words.length() * 8L;
+    }
+
+    private void update(int index, int delta) {
+        int word = index / PER_WORD;
+        int shift = shift(index);
+        while (true) {
+            long value = words.get(word);
+            long counter = (value >>> shift) & MAX;
+            if (counter == MAX || counter == 0 && delta < 0) {
+                return;
+            }
+            if (words.compareAndSet(word, value, value + ((long) delta << shift))) {
+                return;
+            }
+        }
+    }
+
+    private int index(long h1, long h2, int i) {
+        return (int) (((h1 + i * h2) >>> 1) % counters);
+    }
+
+    private static int shift(int index) {
+        return (index % PER_WORD) * BITS;
+    }
+
+    /**
+     * @return The finalizer of MurmurHash3.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB93FE1A85EC3L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
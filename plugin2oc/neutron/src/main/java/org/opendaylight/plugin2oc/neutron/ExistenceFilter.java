@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.juniper.contrail.api.ApiConnector;
+import net.juniper.contrail.api.ApiObjectBase;
+import net.juniper.contrail.api.types.FloatingIp;
+import net.juniper.contrail.api.types.LogicalRouter;
+import net.juniper.contrail.api.types.VirtualMachineInterface;
+import net.juniper.contrail.api.types.VirtualNetwork;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counting Bloom filter of the UUIDs of one Contrail object type, answering
+ * lookups of objects that do not exist without a round trip to Contrail.
+ *
+ * The filter is loaded from Contrail by {@link #load(ApiConnector)}, which
+ * the Activator runs at start and then periodically, and kept current by the
+ * handlers adding the objects they create and removing those they delete.
+ * Until it is loaded every lookup goes to Contrail. A UUID the filter may
+ * contain is looked up in Contrail as before; objects found that way are
+ * added, even if the filter counts them already, so that objects created
+ * outside the plugin are learnt and an object found through a false positive
+ * is counted before the handlers remove it. An object counted more than once
+ * only costs a lookup once deleted, as do objects deleted outside the
+ * plugin, until the next load.
+ *
+ * Filters are sized by plugin2oc.existence.capacity, 100000 objects by
+ * default, or twice the objects loaded if more, for a false positive rate of
+ * plugin2oc.existence.fpp, 0.01 by default.
+ */
+public class ExistenceFilter implements ExistenceFilterMBean {
+    /**
+     * Logger instance.
+     */
+    static final Logger LOGGER = LoggerFactory.getLogger(ExistenceFilter.class);
+    static final int DEFAULT_CAPACITY = 100000;
+    static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+    /**
+     * Types whose existence the handlers check.
+     */
+    static final List<Class<? extends ApiObjectBase>> TYPES = Arrays.<Class<? extends ApiObjectBase>> asList(VirtualNetwork.class,
+            VirtualMachineInterface.class, LogicalRouter.class, FloatingIp.class);
+
+    private static final ConcurrentMap<Class<?>, ExistenceFilter> FILTERS = new ConcurrentHashMap<Class<?>, ExistenceFilter>();
+
+    private final Class<? extends ApiObjectBase> type;
+    private final int capacity;
+    private final double falsePositiveRate;
+    private volatile CountingBloomFilter filter;
+    /**
+     * Guards the swap of the filter by a load against the objects added.
+     */
+    private final Object swap = new Object();
+    /**
+     * Objects created while a load lists the objects, added to the filter it
+     * loads.
+     */
+    private List<UUID> createdWhileLoading;
+    private volatile boolean loaded;
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong definiteMisses = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    ExistenceFilter(Class<? extends ApiObjectBase> type, int capacity, double falsePositiveRate) {
+        this.type = type;
+        this.capacity = capacity;
+        this.falsePositiveRate = falsePositiveRate;
+        this.filter = new CountingBloomFilter(capacity, falsePositiveRate);
+    }
+
+    /**
+     * @return The filter of a Contrail object type, registered as an MBean on
+     *         first use.
+     */
+    public static ExistenceFilter of(Class<? extends ApiObjectBase> type) {
+        ExistenceFilter existenceFilter = FILTERS.get(type);
+        if (existenceFilter == null) {
+            ExistenceFilter created = new ExistenceFilter(type, Integer.getInteger("plugin2oc.existence.capacity", DEFAULT_CAPACITY),
+                    Double.parseDouble(System.getProperty("plugin2oc.existence.fpp", String.valueOf(DEFAULT_FALSE_POSITIVE_RATE))));
+            existenceFilter = FILTERS.putIfAbsent(type, created);
+            if (existenceFilter == null) {
+                existenceFilter = created;
+                OperationMetrics.publish(OperationMetrics.DOMAIN + ":type=ExistenceFilter,object=" + type.getSimpleName(), created);
+            }
+        }
+        return existenceFilter;
+    }
+
+    /**
+     * Invoked to load the filters of all {@link #TYPES}.
+     */
+    public static void loadAll(ApiConnector apiConnector) throws IOException {
+        for (Class<? extends ApiObjectBase> type : TYPES) {
+            of(type).load(apiConnector);
+        }
+    }
+
+    /**
+     * Invoked to look an object up by UUID, skipping the call to Contrail when
+     * the filter knows it does not exist.
+     *
+     * @return The object, or null if it does not exist.
+     */
+    public ApiObjectBase findById(ApiConnector apiConnector, String uuid) throws IOException {
+        if (!mightExist(uuid)) {
+            return null;
+        }
+        ApiObjectBase obj = apiConnector.findById(type, uuid);
+        if (obj == null) {
+            if (loaded) {
+                falsePositives.incrementAndGet();
+            }
+        } else {
+            add(uuid);
+        }
+        return obj;
+    }
+
+    /**
+     * @return False if the object definitely does not exist, true if it may.
+     */
+    public boolean mightExist(String uuid) {
+        if (!loaded) {
+            return true;
+        }
+        UUID parsed = parse(uuid);
+        if (parsed == null) {
+            return true;
+        }
+        queries.incrementAndGet();
+        if (!filter.mightContain(parsed.getMostSignificantBits(), parsed.getLeastSignificantBits())) {
+            definiteMisses.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Invoked after an object has been created.
+     */
+    public void add(String uuid) {
+        UUID parsed = parse(uuid);
+        if (parsed == null) {
+            return;
+        }
+        synchronized (swap) {
+            filter.add(parsed.getMostSignificantBits(), parsed.getLeastSignificantBits());
+            if (createdWhileLoading != null) {
+                createdWhileLoading.add(parsed);
+            }
+        }
+    }
+
+    /**
+     * Invoked after an object has been deleted. A load in progress may still
+     * count it; that only costs a lookup until the next load.
+     */
+    public void remove(String uuid) {
+        UUID parsed = parse(uuid);
+        if (parsed != null) {
+            synchronized (swap) {
+                filter.remove(parsed.getMostSignificantBits(), parsed.getLeastSignificantBits());
+            }
+        }
+    }
+
+    /**
+     * Invoked to replace the filter with one built from the objects listed by
+     * Contrail, and the objects created while they are listed.
+     */
+    public synchronized void load(ApiConnector apiConnector) throws IOException {
+        long start = System.nanoTime();
+        synchronized (swap) {
+            createdWhileLoading = new ArrayList<UUID>();
+        }
+        int count;
+        try {
+            List<? extends ApiObjectBase> objects = apiConnector.list(type, null);
+            count = objects == null ? 0 : objects.size();
+            CountingBloomFilter next = new CountingBloomFilter(Math.max(capacity, 2 * count), falsePositiveRate);
+            if (objects != null) {
+                for (ApiObjectBase obj : objects) {
+                    UUID parsed = parse(obj.getUuid());
+                    if (parsed != null) {
+                        next.add(parsed.getMostSignificantBits(), parsed.getLeastSignificantBits());
+                    }
+                }
+            }
+            synchronized (swap) {
+                for (UUID parsed : createdWhileLoading) {
+                    next.add(parsed.getMostSignificantBits(), parsed.getLeastSignificantBits());
+                }
+                filter = next;
+                loaded = true;
+            }
+        } finally {
+            synchronized (swap) {
+                createdWhileLoading = null;
+            }
+        }
+        LOGGER.info("Existence filter of {} loaded with {} objects in {} ms", type.getSimpleName(), count, (System.nanoTime() - start) / 1000000);
+    }
+
+    @Override
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    @Override
+    public long getEntries() {
+        return filter.entries();
+    }
+
+    @Override
+    public long getQueries() {
+        return queries.get();
+    }
+
+    @Override
+    public long getDefiniteMisses() {
+        return definiteMisses.get();
+    }
+
+    @Override
+    public long getFalsePositives() {
+        return falsePositives.get();
+    }
+
+    @Override
+    public double getFalsePositiveRate() {
+        long positives = falsePositives.get();
+        long negatives = positives + definiteMisses.get();
+        return negatives == 0 ? 0 : (double) positives / negatives;
+    }
+
+    @Override
+    public double getExpectedFalsePositiveRate() {
+        return filter.expectedFalsePositiveRate();
+    }
+
+    @Override
+    public long getMemoryBytes() {
+        return filter.memoryBytes();
+    }
+
+    @Override
+    public void reset() {
+        queries.set(0);
+        definiteMisses.set(0);
+        falsePositives.set(0);
+    }
+
+    private static UUID parse(String uuid) {
+        if (uuid == null) {
+            return null;
+        }
+        try {
+            return UUID.fromString(uuid);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
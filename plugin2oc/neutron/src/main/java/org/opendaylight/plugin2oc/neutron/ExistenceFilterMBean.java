@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+/**
+ * JMX view of the existence filter of one Contrail object type. Queries are
+ * the lookups that went through the filter once it was loaded; the measured
+ * false positive rate is the share of lookups of missing objects the filter
+ * did not answer itself.
+ */
+public interface ExistenceFilterMBean {
+    boolean isLoaded();
+
+    long getEntries();
+
+    long getQueries();
+
+    long getDefiniteMisses();
+
+    long getFalsePositives();
+
+    double getFalsePositiveRate();
+
+    double getExpectedFalsePositiveRate();
+
+    long getMemoryBytes();
+
+    void reset();
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.juniper.contrail.api.types.InstanceIp;
+import net.juniper.contrail.api.types.VnSubnetsType;
+
+/**
+ * The InstanceIp changes taking a port from its current addresses to the
+ * fixed IPs of an update. InstanceIps already holding a requested address of
+ * the network are kept, the others are moved to the requested addresses left,
+ * and InstanceIps are created or deleted for what is left over on either side,
+ * so that an update makes no more InstanceIp calls than it needs.
+ *
+ * Fixed IPs with an address are requested with {@link #add(String)} first,
+ * then those without one with {@link #keepAny(List, String)}, and
+ * {@link #add(String)} again for the address picked when none is kept; the
+ * changes are planned on the first call to one of {@link #moves()},
+ * {@link #additions()} or {@link #deletions()}.
+ */
+final class FixedIpPlan {
+    private final Map<String, InstanceIp> current = new LinkedHashMap<String, InstanceIp>();
+    private final List<InstanceIp> spares = new ArrayList<InstanceIp>();
+    private final Set<String> requested = new HashSet<String>();
+    private final Set<String> wanted = new LinkedHashSet<String>();
+    private final List<InstanceIp> kept = new ArrayList<InstanceIp>();
+    private List<Move> moves;
+    private List<String> additions;
+    private List<InstanceIp> deletions;
+
+    /**
+     * @param networkUUID
+     *            The network of the port after the update.
+     * @param instanceIps
+     *            The InstanceIps of the port before the update.
+     */
+    FixedIpPlan(String networkUUID, List<InstanceIp> instanceIps) {
+        for (InstanceIp instanceIp : instanceIps) {
+            if (instanceIp.getAddress() != null && networkUUID.equals(network(instanceIp)) && !current.containsKey(instanceIp.getAddress())) {
+                current.put(instanceIp.getAddress(), instanceIp);
+            } else {
+                spares.add(instanceIp);
+            }
+        }
+    }
+
+    /**
+     * Invoked to request any address of a subnet, as a fixed IP without an
+     * address does.
+     *
+     * @return True if an InstanceIp of the port holds an address of the
+     *         subnet, not requested otherwise, and is kept.
+     */
+    boolean keepAny(List<VnSubnetsType.IpamSubnetType> subnets, String subnetUUID) {
+        for (Iterator<Map.Entry<String, InstanceIp>> i = current.entrySet().iterator(); i.hasNext();) {
+            Map.Entry<String, InstanceIp> entry = i.next();
+            if (subnetUUID.equals(ReferenceIndex.subnetOf(subnets, entry.getKey()))) {
+                i.remove();
+                requested.add(entry.getKey());
+                kept.add(entry.getValue());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Invoked to request an address, kept if an InstanceIp of the port holds
+     * it already.
+     */
+    void add(String address) {
+        if (!requested.add(address)) {
+            return;
+        }
+        InstanceIp instanceIp = current.remove(address);
+        if (instanceIp != null) {
+            kept.add(instanceIp);
+        } else {
+            wanted.add(address);
+        }
+    }
+
+    /**
+     * @return True if the address was requested, kept or not.
+     */
+    boolean requested(String address) {
+        return requested.contains(address);
+    }
+
+    /**
+     * @return The InstanceIps to update, with the addresses they move to.
+     */
+    List<Move> moves() {
+        plan();
+        return moves;
+    }
+
+    /**
+     * @return The addresses to create InstanceIps for.
+     */
+    List<String> additions() {
+        plan();
+        return additions;
+    }
+
+    /**
+     * @return The InstanceIps to delete.
+     */
+    List<InstanceIp> deletions() {
+        plan();
+        return deletions;
+    }
+
+    /**
+     * @return The InstanceIps left as they are.
+     */
+    List<InstanceIp> kept() {
+        return Collections.unmodifiableList(kept);
+    }
+
+    private void plan() {
+        if (moves != null) {
+            return;
+        }
+        List<InstanceIp> unused = new ArrayList<InstanceIp>(current.values());
+        unused.addAll(spares);
+        moves = new ArrayList<Move>();
+        additions = new ArrayList<String>();
+        Iterator<InstanceIp> next = unused.iterator();
+        for (String address : wanted) {
+            if (next.hasNext()) {
+                moves.add(new Move(next.next(), address));
+            } else {
+                additions.add(address);
+            }
+        }
+        deletions = new ArrayList<InstanceIp>();
+        while (next.hasNext()) {
+            deletions.add(next.next());
+        }
+    }
+
+    static String network(InstanceIp instanceIp) {
+        if (instanceIp.getVirtualNetwork() == null || instanceIp.getVirtualNetwork().isEmpty()) {
+            return null;
+        }
+        return instanceIp.getVirtualNetwork().get(0).getUuid();
+    }
+
+    /**
+     * An InstanceIp to give another address, or network.
+     */
+    static final class Move {
+        final InstanceIp instanceIp;
+        final String address;
+        final String previousNetwork;
+        final String previousAddress;
+
+        Move(InstanceIp instanceIp, String address) {
+            this.instanceIp = instanceIp;
+            this.address = address;
+            this.previousNetwork = network(instanceIp);
+            this.previousAddress = instanceIp.getAddress();
+        }
+    }
+}
@@ -0,0 +1,432 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.juniper.contrail.api.ApiConnector;
+import net.juniper.contrail.api.ApiObjectBase;
+import net.juniper.contrail.api.ApiPropertyBase;
+import net.juniper.contrail.api.ObjectReference;
+import net.juniper.contrail.api.types.FloatingIp;
+import net.juniper.contrail.api.types.FloatingIpPool;
+import net.juniper.contrail.api.types.VirtualNetwork;
+import net.juniper.contrail.api.types.VnSubnetsType;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.net.InetAddresses;
+
+/**
+ * Allocator of the floating IP addresses of the external networks, so that
+ * Neutron can create a floating IP without an address and never collides
+ * with an address in use.
+ *
+ * Every IPv4 subnet of an external network has a bitmap of its addresses,
+ * with a summary word per 64 words telling which of them have a free
+ * address: allocating and releasing touch two words, and finding a free
+ * address scans the summary only. The network, broadcast and gateway
+ * addresses are never allocated.
+ *
+ * A network is loaded from Contrail on first use, with the addresses of its
+ * existing floating IPs, or for all external networks at start by
+ * {@link #rebuild(ApiConnector)}. Addresses outside the bitmaps, IPv6 ones
+ * among them, are left for Contrail to accept or refuse.
+ */
+public class FloatingIpAllocator {
+    /**
+     * Logger instance.
+     */
+    static final Logger LOGGER = LoggerFactory.getLogger(FloatingIpAllocator.class);
+    static final int MIN_PREFIX_LENGTH = 8;
+
+    private final ConcurrentMap<String, Network> networks = new ConcurrentHashMap<String, Network>();
+    private final ConcurrentMap<String, String> poolNetworks = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Invoked to allocate an address of an external network: the specified
+     * one, or any free one if null.
+     *
+     * @return The address allocated, or null if the address specified is in
+     *         use or the network has no free address.
+     */
+    public String allocate(ApiConnector apiConnector, String networkUUID, String address) throws IOException {
+        Network network = network(apiConnector, networkUUID);
+        if (network == null) {
+            return address;
+        }
+        if (address == null) {
+            return network.allocate();
+        }
+        return network.claim(address) ? address : null;
+    }
+
+    /**
+     * Invoked after the floating IP with an address of an external network is
+     * deleted, or could not be created.
+     */
+    public void release(String networkUUID, String address) {
+        Network network = networkUUID == null ? null : networks.get(networkUUID);
+        if (network != null && address != null) {
+            network.release(address);
+        }
+    }
+
+    /**
+     * Invoked after the floating IP with an address of a floating IP pool is
+     * deleted.
+     */
+    public void releaseInPool(String poolUUID, String address) {
+        release(poolUUID == null ? null : poolNetworks.get(poolUUID), address);
+    }
+
+    /**
+     * Invoked to record the network of a floating IP pool, for
+     * {@link #releaseInPool(String, String)}.
+     */
+    public void bindPool(String poolUUID, String networkUUID) {
+        if (poolUUID != null && networkUUID != null) {
+            poolNetworks.put(poolUUID, networkUUID);
+        }
+    }
+
+    /**
+     * @return True if the address of an external network is known to be in
+     *         use. Networks not loaded yet are not looked up.
+     */
+    public boolean inUse(String networkUUID, String address) {
+        Network network = networkUUID == null ? null : networks.get(networkUUID);
+        return network != null && address != null && network.inUse(address);
+    }
+
+    /**
+     * @return Number of free addresses of an external network, or -1 if it is
+     *         not loaded.
+     */
+    public long free(String networkUUID) {
+        Network network = networks.get(networkUUID);
+        return network == null ? -1 : network.free();
+    }
+
+    /**
+     * Invoked after the subnets of a network changed, to reload them on next
+     * use. Addresses in use are kept.
+     */
+    public void invalidate(String networkUUID) {
+        Network network = networkUUID == null ? null : networks.get(networkUUID);
+        if (network != null) {
+            network.stale = true;
+        }
+    }
+
+    /**
+     * Invoked after a network is deleted.
+     */
+    public void forget(String networkUUID) {
+        if (networkUUID != null && networks.remove(networkUUID) != null) {
+            poolNetworks.values().remove(networkUUID);
+        }
+    }
+
+    /**
+     * Invoked to load every external network with the addresses of its
+     * floating IPs. Makes a call per network and per floating IP.
+     */
+    public void rebuild(ApiConnector apiConnector) throws IOException {
+        long start = System.nanoTime();
+        List<? extends ApiObjectBase> listed = apiConnector.list(VirtualNetwork.class, null);
+        if (listed == null) {
+            return;
+        }
+        for (ApiObjectBase obj : listed) {
+            VirtualNetwork virtualNetwork = (VirtualNetwork) apiConnector.findById(VirtualNetwork.class, obj.getUuid());
+            if (virtualNetwork != null && !networks.containsKey(virtualNetwork.getUuid()) && Boolean.TRUE.equals(virtualNetwork.getRouterExternal())) {
+                load(apiConnector, virtualNetwork);
+            }
+        }
+        LOGGER.info("Floating IP allocator rebuilt with {} external networks in {} ms", networks.size(), (System.nanoTime() - start) / 1000000);
+    }
+
+    private Network network(ApiConnector apiConnector, String networkUUID) throws IOException {
+        Network network = networks.get(networkUUID);
+        if (network == null) {
+            VirtualNetwork virtualNetwork = (VirtualNetwork) apiConnector.findById(VirtualNetwork.class, networkUUID);
+            if (virtualNetwork == null) {
+                return null;
+            }
+            network = load(apiConnector, virtualNetwork);
+        } else if (network.stale) {
+            VirtualNetwork virtualNetwork = (VirtualNetwork) apiConnector.findById(VirtualNetwork.class, networkUUID);
+            if (virtualNetwork != null) {
+                bindPools(virtualNetwork);
+                network.reload(ranges(virtualNetwork));
+            }
+        }
+        return network;
+    }
+
+    private Network load(ApiConnector apiConnector, VirtualNetwork virtualNetwork) throws IOException {
+        Network network = new Network(ranges(virtualNetwork));
+        if (virtualNetwork.getFloatingIpPools() != null) {
+            bindPools(virtualNetwork);
+            for (ObjectReference<ApiPropertyBase> poolRef : virtualNetwork.getFloatingIpPools()) {
+                FloatingIpPool pool = (FloatingIpPool) apiConnector.findById(FloatingIpPool.class, poolRef.getUuid());
+                if (pool == null || pool.getFloatingIps() == null) {
+                    continue;
+                }
+                for (ObjectReference<ApiPropertyBase> ref : pool.getFloatingIps()) {
+                    FloatingIp floatingIp = (FloatingIp) apiConnector.findById(FloatingIp.class, ref.getUuid());
+                    if (floatingIp != null && floatingIp.getAddress() != null) {
+                        network.claim(floatingIp.getAddress());
+                    }
+                }
+            }
+        }
+        Network loaded = networks.putIfAbsent(virtualNetwork.getUuid(), network);
+        return loaded == null ? network : loaded;
+    }
+
+    private void bindPools(VirtualNetwork virtualNetwork) {
+        if (virtualNetwork.getFloatingIpPools() != null) {
+            for (ObjectReference<ApiPropertyBase> poolRef : virtualNetwork.getFloatingIpPools()) {
+                bindPool(poolRef.getUuid(), virtualNetwork.getUuid());
+            }
+        }
+    }
+
+    private static List<Range> ranges(VirtualNetwork virtualNetwork) {
+        List<Range> ranges = new ArrayList<Range>();
+        for (VnSubnetsType.IpamSubnetType subnet : ReferenceIndex.subnets(virtualNetwork)) {
+            if (subnet.getSubnet() == null) {
+                continue;
+            }
+            long prefix = ipv4(subnet.getSubnet().getIpPrefix());
+            int length = subnet.getSubnet().getIpPrefixLen();
+            if (prefix < 0 || length < MIN_PREFIX_LENGTH || length > 32) {
+                LOGGER.debug("Subnet {}/{} of network {} is not allocated from", subnet.getSubnet().getIpPrefix(), length, virtualNetwork.getUuid());
+                continue;
+            }
+            ranges.add(new Range(prefix, length, ipv4(subnet.getDefaultGateway())));
+        }
+        return ranges;
+    }
+
+    /**
+     * @return The IPv4 address as a number, or -1.
+     */
+    static long ipv4(String address) {
+        if (address == null || !InetAddresses.isInetAddress(address)) {
+            return -1;
+        }
+        if (!(InetAddresses.forString(address) instanceof Inet4Address)) {
+            return -1;
+        }
+        return InetAddresses.coerceToInteger(InetAddresses.forString(address)) & 0xFFFFFFFFL;
+    }
+
+    static String ipv4(long address) {
+        return InetAddresses.toAddrString(InetAddresses.fromInteger((int) address));
+    }
+
+    /**
+     * Addresses of an external network.
+     */
+    private static final class Network {
+        private List<Range> ranges;
+        volatile boolean stale;
+
+        Network(List<Range> ranges) {
+            this.ranges = ranges;
+        }
+
+        synchronized String allocate() {
+            for (Range range : ranges) {
+                long address = range.allocate();
+                if (address >= 0) {
+                    return ipv4(address);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return False if the address is in use.
+         */
+        synchronized boolean claim(String address) {
+            long number = ipv4(address);
+            for (Range range : ranges) {
+                if (range.contains(number)) {
+                    return range.claim(number);
+                }
+            }
+            return true;
+        }
+
+        synchronized void release(String address) {
+            long number = ipv4(address);
+            for (Range range : ranges) {
+                if (range.contains(number)) {
+                    range.release(number);
+                }
+            }
+        }
+
+        synchronized boolean inUse(String address) {
+            long number = ipv4(address);
+            for (Range range : ranges) {
+                if (range.contains(number)) {
+                    return range.inUse(number);
+                }
+            }
+            return false;
+        }
+
+        synchronized long free() {
+            long free = 0;
+            for (Range range : ranges) {
+                free += range.free;
+            }
+            return free;
+        }
+
+        /**
+         * Invoked to replace the ranges, keeping the addresses in use.
+         */
+        synchronized void reload(List<Range> reloaded) {
+            for (Range range : ranges) {
+                for (long address : range.allocated()) {
+                    for (Range target : reloaded) {
+                        if (target.contains(address)) {
+                            target.claim(address);
+                        }
+                    }
+                }
+            }
+            ranges = reloaded;
+            stale = false;
+        }
+    }
+
+    /**
+     * Bitmap of the addresses of a subnet, a set bit for an address in use.
+     */
+    static final class Range {
+        final long base;
+        final int size;
+        private final long[] words;
+        private final long[] summary;
+        private final long gateway;
+        int free;
+
+        Range(long prefix, int length, long gateway) {
+            size = 1 << (32 - length);
+            base = prefix & ~(size - 1L);
+            this.gateway = gateway;
+            words = new long[(size + 63) >>> 6];
+            summary = new long[(words.length + 63) >>> 6];
+            for (int w = 0; w < words.length; w++) {
+                summary[w >>> 6] |= 1L << w;
+            }
+            if (size % 64 != 0) {
+                // addresses past the end of the subnet are never free
+                words[0] = -1L << size;
+            }
+            free = size;
+            if (length < 31) {
+                claim(base);
+                claim(base + size - 1);
+            }
+            if (contains(gateway)) {
+                claim(gateway);
+            }
+        }
+
+        boolean contains(long address) {
+            return address >= base && address < base + size;
+        }
+
+        boolean isReserved(long address) {
+            return address == gateway || size > 2 && (address == base || address == base + size - 1);
+        }
+
+        boolean inUse(long address) {
+            int offset = (int) (address - base);
+            return (words[offset >>> 6] & 1L << offset) != 0;
+        }
+
+        /**
+         * @return The addresses in use, other than the reserved ones.
+         */
+        List<Long> allocated() {
+            List<Long> allocated = new ArrayList<Long>(size - free);
+            for (int w = 0; w < words.length; w++) {
+                for (long bits = words[w]; bits != 0; bits &= bits - 1) {
+                    long address = base + (w << 6) + Long.numberOfTrailingZeros(bits);
+                    if (contains(address) && !isReserved(address)) {
+                        allocated.add(address);
+                    }
+                }
+            }
+            return allocated;
+        }
+
+        /**
+         * @return The address allocated, or -1 if none is free.
+         */
+        long allocate() {
+            for (int s = 0; s < summary.length; s++) {
+                if (summary[s] != 0) {
+                    int w = (s << 6) + Long.numberOfTrailingZeros(summary[s]);
+                    int offset = (w << 6) + Long.numberOfTrailingZeros(~words[w]);
+                    set(offset);
+                    return base + offset;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return False if the address is in use.
+         */
+        boolean claim(long address) {
+            int offset = (int) (address - base);
+            if ((words[offset >>> 6] & 1L << offset) != 0) {
+                return false;
+            }
+            set(offset);
+            return true;
+        }
+
+        void release(long address) {
+            int offset = (int) (address - base);
+            int w = offset >>> 6;
+            if (isReserved(address) || (words[w] & 1L << offset) == 0) {
+                return;
+            }
+            words[w] &= ~(1L << offset);
+            summary[w >>> 6] |= 1L << w;
+            free++;
+        }
+
+        private void set(int offset) {
+            int w = offset >>> 6;
+            words[w] |= 1L << offset;
+            if (words[w] == -1L) {
+                summary[w >>> 6] &= ~(1L << w);
+            }
+            free--;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.util.Map;
+
+/**
+ * Service registered by the floating IP handler, besides the Neutron ones,
+ * to associate many floating IPs with ports at once.
+ */
+public interface FloatingIpBulkUpdater {
+    /**
+     * Invoked to associate many floating ips with ports at once, as failover
+     * does.
+     *
+     * @param portsByFloatingIp
+     *            The port UUID to associate every floating ip UUID with, or
+     *            null to disassociate it.
+     *
+     * @return A HTTP status code per floating ip UUID, in the order given:
+     *         404 if the floating ip or the port does not exist.
+     */
+    Map<String, Integer> updateFloatingIPs(Map<String, String> portsByFloatingIp);
+}
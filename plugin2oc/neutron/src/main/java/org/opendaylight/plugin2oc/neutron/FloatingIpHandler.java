@@ -10,31 +10,56 @@ package org.opendaylight.plugin2oc.neutron;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import net.juniper.contrail.api.ApiConnector;
+import net.juniper.contrail.api.ApiObjectBase;
 import net.juniper.contrail.api.types.FloatingIp;
 import net.juniper.contrail.api.types.FloatingIpPool;
 import net.juniper.contrail.api.types.Project;
 import net.juniper.contrail.api.types.VirtualMachineInterface;
-import net.juniper.contrail.api.types.VirtualNetwork;
 
 import org.opendaylight.controller.networkconfig.neutron.INeutronFloatingIPAware;
 import org.opendaylight.controller.networkconfig.neutron.INeutronFloatingIPCRUD;
 import org.opendaylight.controller.networkconfig.neutron.NeutronFloatingIP;
+import org.opendaylight.plugin2oc.neutron.ReferenceIndex.Relation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * Handle requests for Neutron Router.
  */
-public class FloatingIpHandler implements INeutronFloatingIPAware, INeutronFloatingIPCRUD {
+public class FloatingIpHandler implements INeutronFloatingIPAware, INeutronFloatingIPCRUD, FloatingIpBulkUpdater {
     /**
      * Logger instance.
      */
     static final Logger LOGGER = LoggerFactory.getLogger(PortHandler.class);
     static ApiConnector apiConnector;
+    static final int DEFAULT_BULK_THREADS = 16;
+    private static final ExecutorService BULK_EXECUTOR = bulkExecutor(Integer.getInteger("plugin2oc.fip.bulk.threads", DEFAULT_BULK_THREADS));
+    private final RequestDeduplicator requestDeduplicator = new RequestDeduplicator();
+
+    private static ExecutorService bulkExecutor(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("plugin2oc-fip-bulk-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 
     /**
      * Invoked when a floating ip creation is requested to check if the specified
@@ -59,9 +84,9 @@ public class FloatingIpHandler implements INeutronFloatingIPAware, INeutronFloat
             LOGGER.error(" Floating Ip tenant Id can not be null");
             return HttpURLConnection.HTTP_BAD_REQUEST;
         }
-        if (fip.getFloatingIPAddress() == null) {
-            LOGGER.error(" Floating Ip address can not be null");
-            return HttpURLConnection.HTTP_BAD_REQUEST;
+        if (Activator.floatingIpAllocator.inUse(fip.getFloatingNetworkUUID(), fip.getFloatingIPAddress())) {
+            LOGGER.error("Floating Ip address {} is already in use", fip.getFloatingIPAddress());
+            return HttpURLConnection.HTTP_CONFLICT;
         }
         apiConnector = Activator.apiConnector;
         return HttpURLConnection.HTTP_OK;
@@ -160,7 +185,7 @@ public class FloatingIpHandler implements INeutronFloatingIPAware, INeutronFloat
      */
     @Override
     public void neutronFloatingIPUpdated(NeutronFloatingIP floatingIp) {
-        LOGGER.info("Floating Ip with floating UUID " + floatingIp.getFloatingIPUUID() + " is Updated");
+        LOGGER.info("Floating Ip with floating UUID {} is Updated", floatingIp.getFloatingIPUUID());
     }
 
     /**
@@ -191,11 +216,30 @@ public class FloatingIpHandler implements INeutronFloatingIPAware, INeutronFloat
      * @return A boolean to the creation request.
      */
     @Override
-    public boolean addFloatingIP(NeutronFloatingIP neutronFloatingIp) {
+    public boolean addFloatingIP(final NeutronFloatingIP neutronFloatingIp) {
+        return requestDeduplicator.execute(neutronFloatingIp.getID(), "addFloatingIP", new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return createFloatingIP(neutronFloatingIp);
+            }
+        });
+    }
+
+    /**
+     * Invoked to create the Contrail floating ip backing the specified Neutron
+     * floating ip. Retried requests for the same floating ip are collapsed by
+     * {@link #addFloatingIP(NeutronFloatingIP)} before reaching this method.
+     *
+     * @param neutronFloatingIp
+     *            An instance of new Neutron floating ip object.
+     *
+     * @return A boolean to the creation request.
+     */
+    private boolean createFloatingIP(NeutronFloatingIP neutronFloatingIp) {
         String projectUUID = null;
         String floatingPoolNetworkId = null;
+        apiConnector = Activator.apiConnector;
         String fipId = neutronFloatingIp.getID();
-        String floatingIpaddress = neutronFloatingIp.getFloatingIPAddress();
         try {
             floatingPoolNetworkId = neutronFloatingIp.getFloatingNetworkUUID();
             projectUUID = neutronFloatingIp.getTenantUUID().toString();
@@ -212,8 +256,7 @@ public class FloatingIpHandler implements INeutronFloatingIPAware, INeutronFloat
             project = (Project) apiConnector.findById(Project.class, projectUUID);
             if (project == null) {
                 try {
-                    Thread.currentThread();
-                    Thread.sleep(3000);
+                    OperationTrace.sleepBeforeRetry(3000);
                 } catch (InterruptedException e) {
                     LOGGER.error("InterruptedException :    ", e);
                     return false;
@@ -224,23 +267,10 @@ public class FloatingIpHandler implements INeutronFloatingIPAware, INeutronFloat
                     return false;
                 }
             }
-            VirtualNetwork virtualNetwork = (VirtualNetwork) apiConnector.findById(VirtualNetwork.class, floatingPoolNetworkId);
-            if (virtualNetwork == null) {
-                LOGGER.error("Could not find Virtual network...");
-                return false;
-            }
-            String floatingPoolId = virtualNetwork.getFloatingIpPools().get(0).getUuid();
-            FloatingIpPool floatingIpPool = (FloatingIpPool) apiConnector.findById(FloatingIpPool.class, floatingPoolId);
-            if (floatingIpPool == null) {
-                LOGGER.error("Could not find Floating ip pool...");
-                return false;
-            }
             FloatingIp floatingIp = new FloatingIp();
             floatingIp.setUuid(fipId);
             floatingIp.setName(fipId);
             floatingIp.setDisplayName(fipId);
-            floatingIp.setAddress(floatingIpaddress);
-            floatingIp.setParent(floatingIpPool);
             floatingIp.setProject(project);
             if (neutronFloatingIp.getPortUUID() != null) {
                 VirtualMachineInterface virtualMachineInterface = (VirtualMachineInterface) apiConnector.findById(VirtualMachineInterface.class,
@@ -249,12 +279,45 @@ public class FloatingIpHandler implements INeutronFloatingIPAware, INeutronFloat
                     floatingIp.addVirtualMachineInterface(virtualMachineInterface);
                 }
             }
-            boolean floatingIpCreaterd = apiConnector.create(floatingIp);
+            FloatingIpPool floatingIpPool = Activator.floatingIpPools.select(apiConnector, floatingPoolNetworkId);
+            if (floatingIpPool == null) {
+                LOGGER.error("Could not find Virtual network or Floating ip pool...");
+                return false;
+            }
+            floatingIp.setParent(floatingIpPool);
+            Activator.floatingIpAllocator.bindPool(floatingIpPool.getUuid(), floatingPoolNetworkId);
+            String floatingIpaddress = null;
+            boolean floatingIpCreaterd = false;
+            try {
+                // without an address any free one of the external network is allocated
+                floatingIpaddress = Activator.floatingIpAllocator.allocate(apiConnector, floatingPoolNetworkId,
+                        neutronFloatingIp.getFloatingIPAddress());
+                if (floatingIpaddress == null) {
+                    LOGGER.error("Floating Ip address {} is not available in network {}", neutronFloatingIp.getFloatingIPAddress(),
+                            floatingPoolNetworkId);
+                    return false;
+                }
+                floatingIp.setAddress(floatingIpaddress);
+                floatingIpCreaterd = apiConnector.create(floatingIp);
+            } finally {
+                if (!floatingIpCreaterd) {
+                    if (floatingIpaddress != null) {
+                        Activator.floatingIpAllocator.release(floatingPoolNetworkId, floatingIpaddress);
+                    }
+                    Activator.floatingIpPools.release(floatingIpPool.getUuid());
+                }
+            }
             if (!floatingIpCreaterd) {
                 LOGGER.warn("Floating Ip creation failed..");
                 return false;
             }
-            LOGGER.info("Floating Ip : " + floatingIp.getName() + "  having UUID : " + floatingIp.getUuid() + "  sucessfully created...");
+            neutronFloatingIp.setFloatingIPAddress(floatingIpaddress);
+            LOGGER.info("Floating Ip : {}  having UUID : {}  sucessfully created...", floatingIp.getName(), floatingIp.getUuid());
+            ExistenceFilter.of(FloatingIp.class).add(floatingIp.getUuid());
+            Activator.topology.put(NeutronFloatingIP.class, floatingIp.getUuid(), neutronFloatingIp);
+            if (floatingIp.getVirtualMachineInterface() != null) {
+                Activator.referenceIndex.add(Relation.PORT_FLOATING_IPS, neutronFloatingIp.getPortUUID(), floatingIp.getUuid());
+            }
             return true;
         } catch (IOException e1) {
             e1.printStackTrace();
@@ -263,18 +326,24 @@ public class FloatingIpHandler implements INeutronFloatingIPAware, INeutronFloat
     }
 
     @Override
-    public boolean floatingIPExists(String arg0) {
-        return false;
+    public boolean floatingIPExists(String floatingIpUUID) {
+        apiConnector = Activator.apiConnector;
+        try {
+            return ExistenceFilter.of(FloatingIp.class).findById(apiConnector, floatingIpUUID) != null;
+        } catch (IOException e) {
+            LOGGER.error("Exception : " + e);
+            return false;
+        }
     }
 
     @Override
     public List<NeutronFloatingIP> getAllFloatingIPs() {
-        return null;
+        return Activator.topology.list(NeutronFloatingIP.class);
     }
 
     @Override
-    public NeutronFloatingIP getFloatingIP(String arg0) {
-        return null;
+    public NeutronFloatingIP getFloatingIP(String floatingIpUUID) {
+        return Activator.topology.get(NeutronFloatingIP.class, floatingIpUUID);
     }
     /**
      * Invoked to delete the specified Neutron floating ip.
@@ -288,13 +357,19 @@ public class FloatingIpHandler implements INeutronFloatingIPAware, INeutronFloat
     public boolean removeFloatingIP(String neutronFloatingIp) {
         apiConnector = Activator.apiConnector;
         try {
-            FloatingIp floatingIp = (FloatingIp) apiConnector.findById(FloatingIp.class, neutronFloatingIp);
+            FloatingIp floatingIp = (FloatingIp) ExistenceFilter.of(FloatingIp.class).findById(apiConnector, neutronFloatingIp);
             if (floatingIp != null) {
                 apiConnector.delete(floatingIp);
-                LOGGER.info("Floating Ip with UUID :  " + floatingIp.getUuid() + "  has been deleted successfully....");
+                ExistenceFilter.of(FloatingIp.class).remove(neutronFloatingIp);
+                Activator.floatingIpAllocator.releaseInPool(floatingIp.getParentUuid(), floatingIp.getAddress());
+                Activator.floatingIpPools.release(floatingIp.getParentUuid());
+                Activator.referenceIndex.removeSource(Relation.PORT_FLOATING_IPS, neutronFloatingIp);
+                Activator.topology.remove(NeutronFloatingIP.class, neutronFloatingIp);
+                requestDeduplicator.forget(neutronFloatingIp, "addFloatingIP");
+                LOGGER.info("Floating Ip with UUID :  {}  has been deleted successfully....", floatingIp.getUuid());
                 return true;
             } else {
-                LOGGER.info("No Floating Ip exists with UUID :  " + neutronFloatingIp);
+                LOGGER.info("No Floating Ip exists with UUID :  {}", neutronFloatingIp);
                 return false;
             }
         } catch (Exception e) {
@@ -314,6 +389,7 @@ public class FloatingIpHandler implements INeutronFloatingIPAware, INeutronFloat
      */
     @Override
     public boolean updateFloatingIP(String floatingIpUUID, NeutronFloatingIP deltaFloatingIp) {
+        apiConnector = Activator.apiConnector;
         FloatingIp floatingIP;
         try {
             floatingIP = (FloatingIp) apiConnector.findById(FloatingIp.class, floatingIpUUID);
@@ -333,11 +409,127 @@ public class FloatingIpHandler implements INeutronFloatingIPAware, INeutronFloat
                 LOGGER.warn("Floating Ip Updation failed..");
                 return false;
             }
-            LOGGER.info("Floating Ip  having UUID : " + floatingIP.getUuid() + "  has been sucessfully updated...");
+            LOGGER.info("Floating Ip  having UUID : {}  has been sucessfully updated...", floatingIP.getUuid());
+            updated(floatingIP, deltaFloatingIp);
         } catch (IOException e) {
             e.printStackTrace();
             return false;
         }
         return true;
     }
+
+    /**
+     * Invoked after a floating ip has been associated with the port of the
+     * delta, or disassociated if it has none.
+     */
+    private void updated(FloatingIp floatingIP, NeutronFloatingIP deltaFloatingIp) {
+        String floatingIpUUID = floatingIP.getUuid();
+        String virtualMachineInterfaceUUID = deltaFloatingIp.getPortUUID();
+        Activator.topology.update(NeutronFloatingIP.class, floatingIpUUID, deltaFloatingIp);
+        if (virtualMachineInterfaceUUID == null) {
+            // an update leaves unset properties alone, so clear the association explicitly
+            NeutronFloatingIP disassociated = Activator.topology.get(NeutronFloatingIP.class, floatingIpUUID);
+            if (disassociated != null) {
+                disassociated.setPortUUID(null);
+                disassociated.setFixedIPAddress(null);
+                Activator.topology.put(NeutronFloatingIP.class, floatingIpUUID, disassociated);
+            }
+            Activator.referenceIndex.removeSource(Relation.PORT_FLOATING_IPS, floatingIpUUID);
+        } else if (floatingIP.getVirtualMachineInterface() != null) {
+            Activator.referenceIndex.setTargets(Relation.PORT_FLOATING_IPS, floatingIpUUID, Collections.singleton(virtualMachineInterfaceUUID));
+        }
+    }
+
+    /**
+     * Invoked to associate many floating ips with ports at once, as failover
+     * does. The floating ips and ports are looked up concurrently first, then
+     * the floating ips are updated concurrently, by at most
+     * plugin2oc.fip.bulk.threads threads, 16 by default, for all bulk
+     * updates.
+     *
+     * @param portsByFloatingIp
+     *            The port UUID to associate every floating ip UUID with, or
+     *            null to disassociate it.
+     *
+     * @return A HTTP status code per floating ip UUID, in the order given:
+     *         404 if the floating ip or the port does not exist.
+     */
+    @Override
+    public Map<String, Integer> updateFloatingIPs(Map<String, String> portsByFloatingIp) {
+        final ApiConnector connector = Activator.apiConnector;
+        Map<String, Future<? extends ApiObjectBase>> floatingIps = new HashMap<String, Future<? extends ApiObjectBase>>();
+        Map<String, Future<? extends ApiObjectBase>> ports = new HashMap<String, Future<? extends ApiObjectBase>>();
+        for (Map.Entry<String, String> entry : portsByFloatingIp.entrySet()) {
+            floatingIps.put(entry.getKey(), find(connector, FloatingIp.class, entry.getKey()));
+            if (entry.getValue() != null && !ports.containsKey(entry.getValue())) {
+                ports.put(entry.getValue(), find(connector, VirtualMachineInterface.class, entry.getValue()));
+            }
+        }
+        Map<String, Future<Integer>> updates = new LinkedHashMap<String, Future<Integer>>();
+        for (Map.Entry<String, String> entry : portsByFloatingIp.entrySet()) {
+            final FloatingIp floatingIp = (FloatingIp) result(floatingIps.get(entry.getKey()));
+            final VirtualMachineInterface virtualMachineInterface = entry.getValue() == null ? null : (VirtualMachineInterface) result(ports
+                    .get(entry.getValue()));
+            final String portUUID = entry.getValue();
+            if (floatingIp == null || portUUID != null && virtualMachineInterface == null) {
+                LOGGER.warn("Floating Ip {} or port {} not found", entry.getKey(), portUUID);
+                updates.put(entry.getKey(), Futures.immediateFuture(HttpURLConnection.HTTP_NOT_FOUND));
+                continue;
+            }
+            updates.put(entry.getKey(), BULK_EXECUTOR.submit(OperationTrace.traced(new Callable<Integer>() {
+                @Override
+                public Integer call() throws IOException {
+                    if (virtualMachineInterface == null) {
+                        floatingIp.clearVirtualMachineInterface();
+                    } else {
+                        floatingIp.setVirtualMachineInterface(virtualMachineInterface);
+                    }
+                    if (!connector.update(floatingIp)) {
+                        LOGGER.warn("Floating Ip {} Updation failed..", floatingIp.getUuid());
+                        return HttpURLConnection.HTTP_INTERNAL_ERROR;
+                    }
+                    NeutronFloatingIP delta = new NeutronFloatingIP();
+                    delta.setPortUUID(portUUID);
+                    updated(floatingIp, delta);
+                    return HttpURLConnection.HTTP_OK;
+                }
+            })));
+        }
+        Map<String, Integer> results = new LinkedHashMap<String, Integer>();
+        int failed = 0;
+        for (Map.Entry<String, Future<Integer>> update : updates.entrySet()) {
+            Integer status = result(update.getValue());
+            results.put(update.getKey(), status == null ? HttpURLConnection.HTTP_INTERNAL_ERROR : status);
+            if (results.get(update.getKey()) != HttpURLConnection.HTTP_OK) {
+                failed++;
+            }
+        }
+        LOGGER.info("{} Floating Ips updated, {} failed", results.size() - failed, failed);
+        return results;
+    }
+
+    private static Future<? extends ApiObjectBase> find(final ApiConnector connector, final Class<? extends ApiObjectBase> type, final String uuid) {
+        return BULK_EXECUTOR.submit(OperationTrace.traced(new Callable<ApiObjectBase>() {
+            @Override
+            public ApiObjectBase call() throws IOException {
+                return connector.findById(type, uuid);
+            }
+        }));
+    }
+
+    /**
+     * @return The result of a bulk task, or null if it failed.
+     */
+    private static <T> T result(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("Interrupted while waiting for a bulk Floating Ip task");
+            return null;
+        } catch (ExecutionException e) {
+            LOGGER.error("Exception :     " + e.getCause());
+            return null;
+        }
+    }
 }
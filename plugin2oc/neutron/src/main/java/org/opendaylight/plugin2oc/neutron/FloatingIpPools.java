@@ -0,0 +1,480 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.juniper.contrail.api.ApiConnector;
+import net.juniper.contrail.api.ApiPropertyBase;
+import net.juniper.contrail.api.ObjectReference;
+import net.juniper.contrail.api.types.FloatingIpPool;
+import net.juniper.contrail.api.types.VirtualNetwork;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Floating IP pools of the external networks, cached so that creating a
+ * floating IP or setting a router gateway does not look up the network and
+ * its pool every time, and
+ * sharded so that the floating IPs of a busy network do not all hang off
+ * one pool object.
+ *
+ * An external network gets plugin2oc.fippool.count pools, 2 by default, and
+ * every floating IP goes to its least used pool. When all pools of a network
+ * hold plugin2oc.fippool.capacity floating IPs, 1024 by default, the network
+ * gets one more pool. Contrail can not move a floating IP to another pool,
+ * so a full pool is split by adding a sibling that takes the new floating
+ * IPs, and shrinks only as its floating IPs are deleted.
+ *
+ * A network made external or internal gets its pools created or deleted by
+ * {@link #provision(ApiConnector, String, boolean)} in the background, so
+ * that the network request does not wait for them. Requests needing the
+ * pools of a network wait, at most plugin2oc.fippool.wait.ms, 30000 by
+ * default, for its provisioning to complete. The pools of an external
+ * network whose provisioning failed are created again by the next request
+ * needing them.
+ */
+public class FloatingIpPools {
+    /**
+     * Logger instance.
+     */
+    static final Logger LOGGER = LoggerFactory.getLogger(FloatingIpPools.class);
+    static final int DEFAULT_COUNT = 2;
+    static final int DEFAULT_CAPACITY = 1024;
+    static final long DEFAULT_WAIT_MILLIS = 30000;
+    private static final ExecutorService PROVISIONING = provisioningExecutor();
+
+    private final ConcurrentMap<String, Shards> networks = new ConcurrentHashMap<String, Shards>();
+    private final ConcurrentMap<String, Shards> pools = new ConcurrentHashMap<String, Shards>();
+    private final ConcurrentMap<String, Future<Boolean>> provisioning = new ConcurrentHashMap<String, Future<Boolean>>();
+    private final long waitMillis = Long.getLong("plugin2oc.fippool.wait.ms", DEFAULT_WAIT_MILLIS);
+    private final int count;
+    private final int capacity;
+
+    public FloatingIpPools() {
+        this(Integer.getInteger("plugin2oc.fippool.count", DEFAULT_COUNT), Integer.getInteger("plugin2oc.fippool.capacity", DEFAULT_CAPACITY));
+    }
+
+    FloatingIpPools(int count, int capacity) {
+        this.count = Math.max(1, count);
+        this.capacity = Math.max(1, capacity);
+    }
+
+    private static ExecutorService provisioningExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("plugin2oc-fippool-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Invoked after a network has been made external, or internal, to create
+     * or delete its pools in the background. Provisioning of one network
+     * runs in the order requested, and outlives the network request, so its
+     * Contrail calls are not accounted to the request.
+     *
+     * @return The outcome, false if the network does not exist or a pool
+     *         could not be created or deleted.
+     */
+    public Future<Boolean> provision(final ApiConnector apiConnector, final String networkUUID, final boolean external) {
+        final SettableFuture<Boolean> outcome = SettableFuture.create();
+        final Future<Boolean> previous = provisioning.put(networkUUID, outcome);
+        PROVISIONING.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean done = false;
+                try {
+                    if (previous != null) {
+                        previous.get();
+                    }
+                    VirtualNetwork virtualNetwork = (VirtualNetwork) apiConnector.findById(VirtualNetwork.class, networkUUID);
+                    if (virtualNetwork == null) {
+                        LOGGER.warn("No Network exists with UUID :  {}", networkUUID);
+                    } else if (external) {
+                        done = createPools(apiConnector, virtualNetwork);
+                    } else {
+                        done = deletePools(apiConnector, virtualNetwork);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException | IOException | RuntimeException e) {
+                    LOGGER.error("Exception :   ", e);
+                } finally {
+                    if (!done) {
+                        LOGGER.warn("Floating Ip pools of network {} could not be {}", networkUUID, external ? "created" : "deleted");
+                    }
+                    outcome.set(done);
+                    if (done) {
+                        provisioning.remove(networkUUID, outcome);
+                    }
+                }
+            }
+        });
+        return outcome;
+    }
+
+    /**
+     * Invoked to wait for the pools of a network to be provisioned, if they
+     * are being provisioned.
+     *
+     * @return False if the last provisioning failed or did not complete in
+     *         time.
+     */
+    public boolean await(String networkUUID) {
+        Future<Boolean> pending = networkUUID == null ? null : provisioning.get(networkUUID);
+        if (pending == null) {
+            return true;
+        }
+        try {
+            return pending.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            LOGGER.warn("Floating Ip pools of network {} are not provisioned: {}", networkUUID, e);
+            return false;
+        }
+    }
+
+    /**
+     * Invoked to create the pools of a network made external.
+     *
+     * @return False if a pool could not be created.
+     */
+    public boolean createPools(ApiConnector apiConnector, VirtualNetwork virtualNetwork) throws IOException {
+        Shards shards = shards(virtualNetwork);
+        for (int i = shards.size(); i < count; i++) {
+            if (createPool(apiConnector, virtualNetwork, shards) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Invoked to delete the pools of a network no longer external.
+     *
+     * @return False if a pool could not be deleted.
+     */
+    public boolean deletePools(ApiConnector apiConnector, VirtualNetwork virtualNetwork) throws IOException {
+        drop(virtualNetwork.getUuid());
+        if (virtualNetwork.getFloatingIpPools() == null) {
+            return true;
+        }
+        for (ObjectReference<ApiPropertyBase> ref : virtualNetwork.getFloatingIpPools()) {
+            FloatingIpPool floatingIpPool = (FloatingIpPool) apiConnector.findById(FloatingIpPool.class, ref.getUuid());
+            if (floatingIpPool != null) {
+                apiConnector.delete(floatingIpPool);
+                if (apiConnector.findById(FloatingIpPool.class, ref.getUuid()) != null) {
+                    LOGGER.warn("Floating Ip pool {} could not be deleted", ref.getUuid());
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Invoked to choose the pool of a new floating IP of an external network,
+     * the least used one, and count the floating IP in it. Adds a pool if
+     * they are all full.
+     *
+     * @return The pool, or null if the network does not exist, has no pool,
+     *         or its pools could not be provisioned.
+     */
+    public FloatingIpPool select(ApiConnector apiConnector, String networkUUID) throws IOException {
+        if (!await(networkUUID) && !reprovision(apiConnector, networkUUID)) {
+            return null;
+        }
+        Shards shards = networks.get(networkUUID);
+        if (shards == null) {
+            VirtualNetwork virtualNetwork = (VirtualNetwork) apiConnector.findById(VirtualNetwork.class, networkUUID);
+            if (virtualNetwork == null) {
+                return null;
+            }
+            shards = load(apiConnector, virtualNetwork);
+        }
+        Reservation reservation = shards.reserve(capacity);
+        if (reservation == null) {
+            return null;
+        }
+        Shard shard = reservation.shard;
+        if (reservation.full && shards.startSplit()) {
+            try {
+                VirtualNetwork virtualNetwork = (VirtualNetwork) apiConnector.findById(VirtualNetwork.class, networkUUID);
+                Shard added = virtualNetwork == null ? null : createPool(apiConnector, virtualNetwork, shards);
+                if (added != null) {
+                    LOGGER.info("Floating Ip pools of network {} are full, added pool {}", networkUUID, added.pool.getUuid());
+                    shards.add(shard.pool.getUuid(), -1);
+                    shards.add(added.pool.getUuid(), 1);
+                    shard = added;
+                }
+            } finally {
+                shards.endSplit();
+            }
+        }
+        return shard.pool;
+    }
+
+    /**
+     * Invoked after a floating IP of a pool is deleted, or could not be
+     * created in the pool selected.
+     */
+    public void release(String poolUUID) {
+        Shards shards = poolUUID == null ? null : pools.get(poolUUID);
+        if (shards != null) {
+            shards.add(poolUUID, -1);
+        }
+    }
+
+    /**
+     * Invoked to look up an external network through its pools, e.g. to set
+     * it as the gateway of a router without reading it from Contrail again.
+     *
+     * @return The network, or null if it does not exist, has no pool, or its
+     *         pools could not be provisioned.
+     */
+    public VirtualNetwork externalNetwork(ApiConnector apiConnector, String networkUUID) throws IOException {
+        if (!await(networkUUID) && !reprovision(apiConnector, networkUUID)) {
+            return null;
+        }
+        Shards shards = networks.get(networkUUID);
+        if (shards == null) {
+            VirtualNetwork virtualNetwork = (VirtualNetwork) apiConnector.findById(VirtualNetwork.class, networkUUID);
+            if (virtualNetwork == null) {
+                return null;
+            }
+            shards = load(apiConnector, virtualNetwork);
+        }
+        return shards.size() == 0 ? null : shards.network;
+    }
+
+    /**
+     * @return Number of pools of a network, or -1 if it is not cached.
+     */
+    public int poolCount(String networkUUID) {
+        Shards shards = networks.get(networkUUID);
+        return shards == null ? -1 : shards.size();
+    }
+
+    /**
+     * Invoked after a network is deleted or no longer external. A
+     * provisioning still pending is left to complete.
+     */
+    public void forget(String networkUUID) {
+        if (networkUUID == null) {
+            return;
+        }
+        Future<Boolean> provisioned = provisioning.get(networkUUID);
+        if (provisioned != null && provisioned.isDone()) {
+            provisioning.remove(networkUUID, provisioned);
+        }
+        drop(networkUUID);
+    }
+
+    /**
+     * Invoked when the last provisioning of a network failed, to create the
+     * pools of the network again if it is external. Provisioning still
+     * running is not retried.
+     *
+     * @return False if the network is not external, or its pools could not
+     *         be created.
+     */
+    private boolean reprovision(ApiConnector apiConnector, String networkUUID) throws IOException {
+        Future<Boolean> failed = provisioning.get(networkUUID);
+        if (failed == null || !failed.isDone()) {
+            return false;
+        }
+        SettableFuture<Boolean> outcome = SettableFuture.create();
+        if (!provisioning.replace(networkUUID, failed, outcome)) {
+            return await(networkUUID);
+        }
+        boolean done = false;
+        try {
+            VirtualNetwork virtualNetwork = (VirtualNetwork) apiConnector.findById(VirtualNetwork.class, networkUUID);
+            if (virtualNetwork != null && Boolean.TRUE.equals(virtualNetwork.getRouterExternal())) {
+                LOGGER.info("Creating the Floating Ip pools of network {} again", networkUUID);
+                drop(networkUUID);
+                load(apiConnector, virtualNetwork);
+                done = createPools(apiConnector, virtualNetwork);
+            }
+        } finally {
+            outcome.set(done);
+            if (done) {
+                provisioning.remove(networkUUID, outcome);
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Invoked to drop the pools of a network from the cache.
+     */
+    private void drop(String networkUUID) {
+        if (networks.remove(networkUUID) != null) {
+            for (Iterator<Shards> i = pools.values().iterator(); i.hasNext();) {
+                if (i.next().networkUUID.equals(networkUUID)) {
+                    i.remove();
+                }
+            }
+        }
+    }
+
+    private Shards shards(VirtualNetwork virtualNetwork) {
+        Shards shards = networks.get(virtualNetwork.getUuid());
+        if (shards == null) {
+            shards = new Shards(virtualNetwork);
+            Shards existing = networks.putIfAbsent(virtualNetwork.getUuid(), shards);
+            shards = existing == null ? shards : existing;
+        }
+        return shards;
+    }
+
+    private Shards load(ApiConnector apiConnector, VirtualNetwork virtualNetwork) throws IOException {
+        Shards shards = new Shards(virtualNetwork);
+        if (virtualNetwork.getFloatingIpPools() != null) {
+            for (ObjectReference<ApiPropertyBase> ref : virtualNetwork.getFloatingIpPools()) {
+                FloatingIpPool floatingIpPool = (FloatingIpPool) apiConnector.findById(FloatingIpPool.class, ref.getUuid());
+                if (floatingIpPool != null) {
+                    Shard shard = new Shard(floatingIpPool);
+                    shard.used = floatingIpPool.getFloatingIps() == null ? 0 : floatingIpPool.getFloatingIps().size();
+                    shards.add(shard);
+                    pools.put(floatingIpPool.getUuid(), shards);
+                }
+            }
+        }
+        Shards existing = networks.putIfAbsent(virtualNetwork.getUuid(), shards);
+        return existing == null ? shards : existing;
+    }
+
+    private Shard createPool(ApiConnector apiConnector, VirtualNetwork virtualNetwork, Shards shards) throws IOException {
+        String poolId = UUID.randomUUID().toString();
+        FloatingIpPool floatingIpPool = new FloatingIpPool();
+        floatingIpPool.setName(poolId);
+        floatingIpPool.setDisplayName(poolId);
+        floatingIpPool.setUuid(poolId);
+        floatingIpPool.setParent(virtualNetwork);
+        if (!apiConnector.create(floatingIpPool)) {
+            LOGGER.warn("Floating Ip pool creation failed..");
+            return null;
+        }
+        LOGGER.info("Floating Ip pool created with UUID  : {}", floatingIpPool.getUuid());
+        Shard shard = new Shard(floatingIpPool);
+        shards.add(shard);
+        pools.put(poolId, shards);
+        return shard;
+    }
+
+    /**
+     * A pool and the number of its floating IPs.
+     */
+    private static final class Shard {
+        final FloatingIpPool pool;
+        int used;
+
+        Shard(FloatingIpPool pool) {
+            this.pool = pool;
+        }
+    }
+
+    /**
+     * A pool chosen for a new floating IP, and whether it holds more floating
+     * IPs than the capacity of a pool.
+     */
+    private static final class Reservation {
+        final Shard shard;
+        final boolean full;
+
+        Reservation(Shard shard, boolean full) {
+            this.shard = shard;
+            this.full = full;
+        }
+    }
+
+    /**
+     * The pools of a network.
+     */
+    private static final class Shards {
+        final String networkUUID;
+        final VirtualNetwork network;
+        private final List<Shard> shards = new ArrayList<Shard>();
+        private boolean splitting;
+
+        Shards(VirtualNetwork network) {
+            this.networkUUID = network.getUuid();
+            this.network = network;
+        }
+
+        synchronized int size() {
+            return shards.size();
+        }
+
+        synchronized void add(Shard shard) {
+            shards.add(shard);
+        }
+
+        synchronized void add(String poolUUID, int delta) {
+            for (Shard shard : shards) {
+                if (shard.pool.getUuid().equals(poolUUID)) {
+                    shard.used = Math.max(0, shard.used + delta);
+                }
+            }
+        }
+
+        /**
+         * @return The least used pool, counting the new floating IP in it, or
+         *         null if there is no pool.
+         */
+        synchronized Reservation reserve(int capacity) {
+            Shard leastUsed = null;
+            for (Shard shard : shards) {
+                if (leastUsed == null || shard.used < leastUsed.used) {
+                    leastUsed = shard;
+                }
+            }
+            if (leastUsed == null) {
+                return null;
+            }
+            leastUsed.used++;
+            return new Reservation(leastUsed, leastUsed.used > capacity);
+        }
+
+        /**
+         * @return False if another thread is adding a pool.
+         */
+        synchronized boolean startSplit() {
+            if (splitting) {
+                return false;
+            }
+            splitting = true;
+            return true;
+        }
+
+        synchronized void endSplit() {
+            splitting = false;
+        }
+    }
+}
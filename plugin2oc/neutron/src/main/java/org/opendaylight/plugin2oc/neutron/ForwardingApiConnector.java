@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.io.IOException;
+import java.util.List;
+
+import net.juniper.contrail.api.ApiConnector;
+import net.juniper.contrail.api.ApiObjectBase;
+import net.juniper.contrail.api.ApiPropertyBase;
+import net.juniper.contrail.api.ObjectReference;
+
+/**
+ * ApiConnector forwarding every call to another ApiConnector. Decorators
+ * override the calls they are interested in.
+ */
+public abstract class ForwardingApiConnector implements ApiConnector {
+    private final ApiConnector delegate;
+
+    protected ForwardingApiConnector(ApiConnector delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return The ApiConnector calls are forwarded to.
+     */
+    public ApiConnector getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public boolean create(ApiObjectBase obj) throws IOException {
+        return delegate.create(obj);
+    }
+
+    @Override
+    public boolean read(ApiObjectBase obj) throws IOException {
+        return delegate.read(obj);
+    }
+
+    @Override
+    public boolean update(ApiObjectBase obj) throws IOException {
+        return delegate.update(obj);
+    }
+
+    @Override
+    public void delete(ApiObjectBase obj) throws IOException {
+        delegate.delete(obj);
+    }
+
+    @Override
+    public void delete(Class<? extends ApiObjectBase> cls, String uuid) throws IOException {
+        delegate.delete(cls, uuid);
+    }
+
+    @Override
+    public ApiObjectBase find(Class<? extends ApiObjectBase> cls, ApiObjectBase parent, String name) throws IOException {
+        return delegate.find(cls, parent, name);
+    }
+
+    @Override
+    public ApiObjectBase findByFQN(Class<? extends ApiObjectBase> cls, String fullName) throws IOException {
+        return delegate.findByFQN(cls, fullName);
+    }
+
+    @Override
+    public ApiObjectBase findById(Class<? extends ApiObjectBase> cls, String uuid) throws IOException {
+        return delegate.findById(cls, uuid);
+    }
+
+    @Override
+    public String findByName(Class<? extends ApiObjectBase> cls, List<String> nameList) throws IOException {
+        return delegate.findByName(cls, nameList);
+    }
+
+    @Override
+    public String findByName(Class<? extends ApiObjectBase> cls, ApiObjectBase parent, String name) throws IOException {
+        return delegate.findByName(cls, parent, name);
+    }
+
+    @Override
+    public List<? extends ApiObjectBase> list(Class<? extends ApiObjectBase> cls, List<String> parent) throws IOException {
+        return delegate.list(cls, parent);
+    }
+
+    @Override
+    public <T extends ApiPropertyBase> List<? extends ApiObjectBase> getObjects(Class<? extends ApiObjectBase> cls, List<ObjectReference<T>> refList)
+            throws IOException {
+        return delegate.getObjects(cls, refList);
+    }
+}
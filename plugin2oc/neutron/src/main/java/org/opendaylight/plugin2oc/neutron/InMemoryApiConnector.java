@@ -0,0 +1,637 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import net.juniper.contrail.api.ApiConnector;
+import net.juniper.contrail.api.ApiObjectBase;
+import net.juniper.contrail.api.ApiPropertyBase;
+import net.juniper.contrail.api.ObjectReference;
+import net.juniper.contrail.api.types.NetworkIpam;
+import net.juniper.contrail.api.types.Project;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ApiConnector keeping Contrail objects in memory instead of talking to a
+ * Contrail API server, for benchmarks and tests.
+ *
+ * It behaves like the API server as far as the handlers can tell: objects are
+ * indexed by UUID and fully qualified name, missing UUIDs are assigned on
+ * create, references created by name get their UUID filled in, children are
+ * listed on their parent, references show up as back references on the
+ * referred object (e.g. the instance_ip_back_refs of a
+ * VirtualMachineInterface), and every call works on copies so that callers
+ * never share state with the store. The store is deterministic: generated
+ * UUIDs derive from the fully qualified name and lists are ordered by UUID.
+ * The default-network-ipam exists from the start.
+ *
+ * Unlike the API server, deleting an object that is still referred to is not
+ * refused; its back references are simply dropped.
+ */
+public class InMemoryApiConnector implements ApiConnector {
+    /**
+     * Logger instance.
+     */
+    static final Logger LOGGER = LoggerFactory.getLogger(InMemoryApiConnector.class);
+    static final String TYPES_PACKAGE = "net.juniper.contrail.api.types.";
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ConcurrentMap<Class<?>, Store> stores = new ConcurrentHashMap<Class<?>, Store>();
+    private final ConcurrentMap<Class<?>, Field[]> fields = new ConcurrentHashMap<Class<?>, Field[]>();
+    private final ConcurrentMap<String, Class<? extends ApiObjectBase>> types = new ConcurrentHashMap<String, Class<? extends ApiObjectBase>>();
+    /**
+     * Back references by referred UUID, then back reference field, then
+     * referring UUID. They are kept apart from the stored objects so that
+     * maintaining them never locks the referred object.
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, ConcurrentSkipListMap<String, ObjectReference<ApiPropertyBase>>>> backRefs = new ConcurrentHashMap<String, ConcurrentMap<String, ConcurrentSkipListMap<String, ObjectReference<ApiPropertyBase>>>>();
+    private final boolean syncProjects;
+
+    public InMemoryApiConnector() {
+        this(false);
+    }
+
+    /**
+     * @param syncProjects
+     *            Whether a Project looked up by an unknown UUID is created on
+     *            the fly, as the API server does for Keystone tenants. Needed
+     *            when the plugin runs against this store, since nothing else
+     *            creates the tenants' projects.
+     */
+    public InMemoryApiConnector(boolean syncProjects) {
+        this.syncProjects = syncProjects;
+        NetworkIpam ipam = new NetworkIpam();
+        ipam.setName("default-network-ipam");
+        ipam.setDisplayName("default-network-ipam");
+        create(ipam);
+    }
+
+    /**
+     * Objects of one type, by UUID and by fully qualified name.
+     */
+    private static final class Store {
+        final ConcurrentSkipListMap<String, ApiObjectBase> byUuid = new ConcurrentSkipListMap<String, ApiObjectBase>();
+        final ConcurrentMap<String, String> byName = new ConcurrentHashMap<String, String>();
+    }
+
+    @Override
+    public boolean create(ApiObjectBase obj) {
+        List<String> fqName = qualifiedName(obj);
+        String name = join(fqName);
+        String uuid = obj.getUuid();
+        if (uuid == null) {
+            uuid = UUID.nameUUIDFromBytes((obj.getObjectType() + ":" + name).getBytes(UTF_8)).toString();
+            obj.setUuid(uuid);
+        }
+        Store store = store(obj.getClass());
+        if (store.byName.putIfAbsent(name, uuid) != null) {
+            LOGGER.debug("{} {} already exists", obj.getObjectType(), name);
+            return false;
+        }
+        ApiObjectBase stored = copy(obj);
+        for (Field field : fields(stored.getClass())) {
+            if (field.getName().endsWith("_back_refs")) {
+                set(field, stored, null);
+            }
+        }
+        resolveReferences(stored);
+        synchronized (stored) {
+            if (store.byUuid.putIfAbsent(uuid, stored) != null) {
+                store.byName.remove(name, uuid);
+                LOGGER.debug("{} {} already exists", obj.getObjectType(), uuid);
+                return false;
+            }
+            linkToParent(stored, fqName, true);
+            linkBackReferences(stored, references(stored), true);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean read(ApiObjectBase obj) {
+        ApiObjectBase stored = lookup(obj);
+        if (stored == null) {
+            return false;
+        }
+        synchronized (stored) {
+            copyFields(stored, obj);
+        }
+        fillBackReferences(obj);
+        return true;
+    }
+
+    /**
+     * Properties set on the specified object replace the stored ones and
+     * references replace the stored references. Identity, children and
+     * back references are maintained by the store and left unchanged.
+     */
+    @Override
+    public boolean update(ApiObjectBase obj) {
+        ApiObjectBase stored = lookup(obj);
+        if (stored == null) {
+            return false;
+        }
+        synchronized (stored) {
+            if (store(obj.getClass()).byUuid.get(stored.getUuid()) != stored) {
+                // deleted meanwhile
+                return false;
+            }
+            List<ObjectReference<ApiPropertyBase>> before = references(stored);
+            for (Field field : fields(obj.getClass())) {
+                if (field.getDeclaringClass() == ApiObjectBase.class || isReferenceList(field) && !field.getName().endsWith("_refs")
+                        || field.getName().endsWith("_back_refs")) {
+                    continue;
+                }
+                Object value = get(field, obj);
+                if (value != null || field.getName().endsWith("_refs")) {
+                    set(field, stored, copyValue(value));
+                }
+            }
+            resolveReferences(stored);
+            linkBackReferences(stored, before, false);
+            linkBackReferences(stored, references(stored), true);
+        }
+        return true;
+    }
+
+    @Override
+    public void delete(ApiObjectBase obj) {
+        if (obj == null) {
+            return;
+        }
+        ApiObjectBase stored = lookup(obj);
+        if (stored != null) {
+            delete(obj.getClass(), stored.getUuid());
+        }
+    }
+
+    @Override
+    public void delete(Class<? extends ApiObjectBase> cls, String uuid) {
+        if (uuid == null) {
+            return;
+        }
+        Store store = store(cls);
+        ApiObjectBase stored = store.byUuid.remove(uuid);
+        if (stored != null) {
+            synchronized (stored) {
+                List<String> fqName = stored.getQualifiedName();
+                store.byName.remove(join(fqName), uuid);
+                linkToParent(stored, fqName, false);
+                linkBackReferences(stored, references(stored), false);
+            }
+            backRefs.remove(uuid);
+        }
+    }
+
+    @Override
+    public ApiObjectBase find(Class<? extends ApiObjectBase> cls, ApiObjectBase parent, String name) {
+        return findById(cls, findByName(cls, parent, name));
+    }
+
+    @Override
+    public ApiObjectBase findByFQN(Class<? extends ApiObjectBase> cls, String fullName) {
+        return findById(cls, store(cls).byName.get(fullName));
+    }
+
+    @Override
+    public ApiObjectBase findById(Class<? extends ApiObjectBase> cls, String uuid) {
+        if (uuid == null) {
+            return null;
+        }
+        ApiObjectBase stored = store(cls).byUuid.get(uuid);
+        if (stored == null) {
+            return syncProjects && cls == Project.class ? syncProject(uuid) : null;
+        }
+        return snapshot(stored);
+    }
+
+    @Override
+    public String findByName(Class<? extends ApiObjectBase> cls, List<String> nameList) {
+        return nameList == null ? null : store(cls).byName.get(join(nameList));
+    }
+
+    @Override
+    public String findByName(Class<? extends ApiObjectBase> cls, ApiObjectBase parent, String name) {
+        List<String> fqName = new ArrayList<String>();
+        if (parent != null) {
+            fqName.addAll(parent.getQualifiedName());
+        } else {
+            List<String> defaultParent = newInstance(cls).getDefaultParent();
+            if (defaultParent != null) {
+                fqName.addAll(defaultParent);
+            }
+        }
+        fqName.add(name);
+        return findByName(cls, fqName);
+    }
+
+    @Override
+    public List<? extends ApiObjectBase> list(Class<? extends ApiObjectBase> cls, List<String> parent) {
+        List<ApiObjectBase> result = new ArrayList<ApiObjectBase>();
+        for (ApiObjectBase stored : store(cls).byUuid.values()) {
+            if (parent == null || isChildOf(stored.getQualifiedName(), parent)) {
+                result.add(snapshot(stored));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public <T extends ApiPropertyBase> List<? extends ApiObjectBase> getObjects(Class<? extends ApiObjectBase> cls, List<ObjectReference<T>> refList) {
+        List<ApiObjectBase> result = new ArrayList<ApiObjectBase>();
+        if (refList == null) {
+            return result;
+        }
+        for (ObjectReference<T> ref : refList) {
+            String uuid = ref.getUuid() != null ? ref.getUuid() : findByName(cls, ref.getReferredName());
+            ApiObjectBase obj = findById(cls, uuid);
+            if (obj != null) {
+                result.add(obj);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return Number of objects of the specified type in the store.
+     */
+    public int size(Class<? extends ApiObjectBase> cls) {
+        return store(cls).byUuid.size();
+    }
+
+    /**
+     * @return A copy of a stored object with its back references.
+     */
+    private ApiObjectBase snapshot(ApiObjectBase stored) {
+        ApiObjectBase copy;
+        synchronized (stored) {
+            copy = copy(stored);
+        }
+        fillBackReferences(copy);
+        return copy;
+    }
+
+    /**
+     * Invoked to create the Project of a tenant on its first lookup.
+     */
+    private ApiObjectBase syncProject(String uuid) {
+        Project project = new Project();
+        project.setName(uuid);
+        project.setDisplayName(uuid);
+        project.setUuid(uuid);
+        if (create(project)) {
+            LOGGER.info("Project {} created for its tenant", uuid);
+        }
+        ApiObjectBase stored = store(Project.class).byUuid.get(uuid);
+        return stored == null ? null : snapshot(stored);
+    }
+
+    private Store store(Class<?> cls) {
+        Store store = stores.get(cls);
+        if (store == null) {
+            Store created = new Store();
+            store = stores.putIfAbsent(cls, created);
+            if (store == null) {
+                store = created;
+            }
+        }
+        return store;
+    }
+
+    private ApiObjectBase lookup(ApiObjectBase obj) {
+        Store store = store(obj.getClass());
+        String uuid = obj.getUuid();
+        if (uuid == null) {
+            uuid = store.byName.get(join(qualifiedName(obj)));
+        }
+        return uuid == null ? null : store.byUuid.get(uuid);
+    }
+
+    private List<String> qualifiedName(ApiObjectBase obj) {
+        List<String> fqName = obj.getQualifiedName();
+        if (fqName == null || fqName.isEmpty()) {
+            fqName = new ArrayList<String>();
+            if (obj.getDefaultParent() != null) {
+                fqName.addAll(obj.getDefaultParent());
+            }
+            fqName.add(obj.getName());
+        }
+        return fqName;
+    }
+
+    /**
+     * Invoked to fill in the UUID of references that were set by name only.
+     */
+    private void resolveReferences(ApiObjectBase obj) {
+        for (Field field : fields(obj.getClass())) {
+            String name = field.getName();
+            if (!name.endsWith("_refs") || name.endsWith("_back_refs") || !isReferenceList(field)) {
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            List<ObjectReference<ApiPropertyBase>> refs = (List<ObjectReference<ApiPropertyBase>>) get(field, obj);
+            if (refs == null) {
+                continue;
+            }
+            Class<? extends ApiObjectBase> target = type(name.substring(0, name.length() - "_refs".length()).replace('_', '-'));
+            for (ObjectReference<ApiPropertyBase> ref : refs) {
+                if (ref.getUuid() == null && target != null) {
+                    ref.setReference(ref.getReferredName(), ref.getAttr(), ref.getHref(), findByName(target, ref.getReferredName()));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The resolved references of an object, from all its *_refs
+     *         fields.
+     */
+    private List<ObjectReference<ApiPropertyBase>> references(ApiObjectBase obj) {
+        List<ObjectReference<ApiPropertyBase>> references = new ArrayList<ObjectReference<ApiPropertyBase>>();
+        for (Field field : fields(obj.getClass())) {
+            String name = field.getName();
+            if (!name.endsWith("_refs") || name.endsWith("_back_refs") || !isReferenceList(field)) {
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            List<ObjectReference<ApiPropertyBase>> refs = (List<ObjectReference<ApiPropertyBase>>) get(field, obj);
+            if (refs == null) {
+                continue;
+            }
+            for (ObjectReference<ApiPropertyBase> ref : refs) {
+                if (ref.getUuid() != null) {
+                    references.add(ref);
+                }
+            }
+        }
+        return references;
+    }
+
+    /**
+     * Invoked to add or remove the back references of the specified object
+     * on the objects it refers to. Must be called holding the lock of the
+     * referring object, so that its updates apply in order.
+     */
+    private void linkBackReferences(ApiObjectBase obj, List<ObjectReference<ApiPropertyBase>> references, boolean add) {
+        String field = obj.getObjectType().replace('-', '_') + "_back_refs";
+        for (ObjectReference<ApiPropertyBase> ref : references) {
+            ConcurrentMap<String, ConcurrentSkipListMap<String, ObjectReference<ApiPropertyBase>>> byField = backRefs.get(ref.getUuid());
+            if (byField == null) {
+                if (!add) {
+                    continue;
+                }
+                ConcurrentMap<String, ConcurrentSkipListMap<String, ObjectReference<ApiPropertyBase>>> created = new ConcurrentHashMap<String, ConcurrentSkipListMap<String, ObjectReference<ApiPropertyBase>>>();
+                byField = backRefs.putIfAbsent(ref.getUuid(), created);
+                if (byField == null) {
+                    byField = created;
+                }
+            }
+            ConcurrentSkipListMap<String, ObjectReference<ApiPropertyBase>> bySource = byField.get(field);
+            if (bySource == null) {
+                if (!add) {
+                    continue;
+                }
+                ConcurrentSkipListMap<String, ObjectReference<ApiPropertyBase>> created = new ConcurrentSkipListMap<String, ObjectReference<ApiPropertyBase>>();
+                bySource = byField.putIfAbsent(field, created);
+                if (bySource == null) {
+                    bySource = created;
+                }
+            }
+            if (add) {
+                ObjectReference<ApiPropertyBase> backRef = new ObjectReference<ApiPropertyBase>();
+                backRef.setReference(new ArrayList<String>(obj.getQualifiedName()), ref.getAttr(), null, obj.getUuid());
+                bySource.put(obj.getUuid(), backRef);
+            } else {
+                bySource.remove(obj.getUuid());
+            }
+        }
+    }
+
+    /**
+     * Invoked to set the *_back_refs fields of a copy from the back reference
+     * index; empty back references are null, as returned by the API server.
+     */
+    private void fillBackReferences(ApiObjectBase copy) {
+        ConcurrentMap<String, ConcurrentSkipListMap<String, ObjectReference<ApiPropertyBase>>> byField = backRefs.get(copy.getUuid());
+        for (Field field : fields(copy.getClass())) {
+            if (!field.getName().endsWith("_back_refs")) {
+                continue;
+            }
+            ConcurrentSkipListMap<String, ObjectReference<ApiPropertyBase>> bySource = byField == null ? null : byField.get(field.getName());
+            List<Object> refs = null;
+            if (bySource != null && !bySource.isEmpty()) {
+                refs = new ArrayList<Object>(bySource.size());
+                for (ObjectReference<ApiPropertyBase> backRef : bySource.values()) {
+                    refs.add(copyValue(backRef));
+                }
+            }
+            set(field, copy, refs);
+        }
+    }
+
+    /**
+     * Invoked to add or remove an object from the children listed on its
+     * parent, e.g. the floating_ip_pools of a VirtualNetwork.
+     */
+    private void linkToParent(ApiObjectBase child, List<String> fqName, boolean add) {
+        if (fqName.size() < 2) {
+            return;
+        }
+        String parentType = child.getParentType() != null ? child.getParentType() : child.getDefaultParentType();
+        Class<? extends ApiObjectBase> parentClass = parentType == null ? null : type(parentType);
+        if (parentClass == null) {
+            return;
+        }
+        Store parentStore = store(parentClass);
+        String parentUuid = parentStore.byName.get(join(fqName.subList(0, fqName.size() - 1)));
+        ApiObjectBase parent = parentUuid == null ? null : parentStore.byUuid.get(parentUuid);
+        Field field = parent == null ? null : field(parentClass, child.getObjectType().replace('-', '_') + "s");
+        if (field == null) {
+            return;
+        }
+        synchronized (parent) {
+            @SuppressWarnings("unchecked")
+            List<ObjectReference<ApiPropertyBase>> children = (List<ObjectReference<ApiPropertyBase>>) get(field, parent);
+            if (add) {
+                if (children == null) {
+                    children = new ArrayList<ObjectReference<ApiPropertyBase>>();
+                    set(field, parent, children);
+                }
+                ObjectReference<ApiPropertyBase> ref = new ObjectReference<ApiPropertyBase>();
+                ref.setReference(new ArrayList<String>(fqName), null, null, child.getUuid());
+                children.add(ref);
+            } else if (children != null) {
+                Iterator<ObjectReference<ApiPropertyBase>> i = children.iterator();
+                while (i.hasNext()) {
+                    if (child.getUuid().equals(i.next().getUuid())) {
+                        i.remove();
+                    }
+                }
+                if (children.isEmpty()) {
+                    set(field, parent, null);
+                }
+            }
+        }
+    }
+
+    private static boolean isChildOf(List<String> fqName, List<String> parent) {
+        return fqName.size() == parent.size() + 1 && fqName.subList(0, parent.size()).equals(parent);
+    }
+
+    private static String join(List<String> fqName) {
+        StringBuilder name = new StringBuilder();
+        for (String part : fqName) {
+            if (name.length() > 0) {
+                name.append(':');
+            }
+            name.append(part);
+        }
+        return name.toString();
+    }
+
+    /**
+     * @return The class of a Contrail object type, e.g. VirtualNetwork for
+     *         "virtual-network", or null if there is no such class.
+     */
+    private Class<? extends ApiObjectBase> type(String objectType) {
+        Class<? extends ApiObjectBase> type = types.get(objectType);
+        if (type == null) {
+            StringBuilder className = new StringBuilder(TYPES_PACKAGE);
+            for (String part : objectType.split("-")) {
+                if (part.length() > 0) {
+                    className.append(Character.toUpperCase(part.charAt(0))).append(part.substring(1));
+                }
+            }
+            try {
+                type = Class.forName(className.toString()).asSubclass(ApiObjectBase.class);
+            } catch (ClassNotFoundException e) {
+                // remembered as the base class, e.g. for the config-root
+                type = ApiObjectBase.class;
+            }
+            types.put(objectType, type);
+        }
+        return type == ApiObjectBase.class ? null : type;
+    }
+
+    private static boolean isReferenceList(Field field) {
+        Type type = field.getGenericType();
+        if (!(type instanceof ParameterizedType) || ((ParameterizedType) type).getRawType() != List.class) {
+            return false;
+        }
+        Type element = ((ParameterizedType) type).getActualTypeArguments()[0];
+        if (element instanceof ParameterizedType) {
+            element = ((ParameterizedType) element).getRawType();
+        }
+        return element == ObjectReference.class;
+    }
+
+    private Field field(Class<?> cls, String name) {
+        for (Field field : fields(cls)) {
+            if (field.getName().equals(name)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The instance fields of a class and its superclasses.
+     */
+    private Field[] fields(Class<?> cls) {
+        Field[] result = fields.get(cls);
+        if (result == null) {
+            List<Field> list = new ArrayList<Field>();
+            for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    // back references are transient in the Contrail types but kept here
+                    if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic()) {
+                        field.setAccessible(true);
+                        list.add(field);
+                    }
+                }
+            }
+            result = list.toArray(new Field[list.size()]);
+            fields.put(cls, result);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T copy(T obj) {
+        T copy = (T) newInstance(obj.getClass());
+        copyFields(obj, copy);
+        return copy;
+    }
+
+    private void copyFields(Object from, Object to) {
+        for (Field field : fields(from.getClass())) {
+            set(field, to, copyValue(get(field, from)));
+        }
+    }
+
+    /**
+     * @return A deep copy of a field value; strings, boxed primitives and
+     *         enums are immutable and shared.
+     */
+    private Object copyValue(Object value) {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean || value instanceof Character
+                || value instanceof Enum) {
+            return value;
+        }
+        if (value instanceof List) {
+            List<Object> copy = new ArrayList<Object>(((List<?>) value).size());
+            for (Object element : (List<?>) value) {
+                copy.add(copyValue(element));
+            }
+            return copy;
+        }
+        return copy(value);
+    }
+
+    private static <T> T newInstance(Class<T> cls) {
+        try {
+            Constructor<T> constructor = cls.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor.newInstance();
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot instantiate " + cls.getName(), e);
+        }
+    }
+
+    private static Object get(Field field, Object obj) {
+        try {
+            return field.get(obj);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void set(Field field, Object obj, Object value) {
+        try {
+            field.set(obj, value);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.io.IOException;
+import java.util.List;
+
+import net.juniper.contrail.api.ApiConnector;
+import net.juniper.contrail.api.ApiObjectBase;
+import net.juniper.contrail.api.ApiPropertyBase;
+import net.juniper.contrail.api.ObjectReference;
+
+/**
+ * ApiConnector decorator recording the latency of every Contrail call in
+ * {@link OperationMetrics}, tagged by operation and object type, and
+ * accounting it to the {@link OperationTrace} of the Neutron operation being
+ * served.
+ */
+public class InstrumentedApiConnector extends ForwardingApiConnector {
+
+    public InstrumentedApiConnector(ApiConnector delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public boolean create(ApiObjectBase obj) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return super.create(obj);
+        } finally {
+            record(ContrailOperation.CREATE, obj, start);
+        }
+    }
+
+    @Override
+    public boolean read(ApiObjectBase obj) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return super.read(obj);
+        } finally {
+            record(ContrailOperation.READ, obj, start);
+        }
+    }
+
+    @Override
+    public boolean update(ApiObjectBase obj) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return super.update(obj);
+        } finally {
+            record(ContrailOperation.UPDATE, obj, start);
+        }
+    }
+
+    @Override
+    public void delete(ApiObjectBase obj) throws IOException {
+        long start = System.nanoTime();
+        try {
+            super.delete(obj);
+        } finally {
+            record(ContrailOperation.DELETE, obj, start);
+        }
+    }
+
+    @Override
+    public void delete(Class<? extends ApiObjectBase> cls, String uuid) throws IOException {
+        long start = System.nanoTime();
+        try {
+            super.delete(cls, uuid);
+        } finally {
+            record(ContrailOperation.DELETE, cls, start);
+        }
+    }
+
+    @Override
+    public ApiObjectBase find(Class<? extends ApiObjectBase> cls, ApiObjectBase parent, String name) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return super.find(cls, parent, name);
+        } finally {
+            record(ContrailOperation.FIND, cls, start);
+        }
+    }
+
+    @Override
+    public ApiObjectBase findByFQN(Class<? extends ApiObjectBase> cls, String fullName) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return super.findByFQN(cls, fullName);
+        } finally {
+            record(ContrailOperation.FIND_BY_FQN, cls, start);
+        }
+    }
+
+    @Override
+    public ApiObjectBase findById(Class<? extends ApiObjectBase> cls, String uuid) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return super.findById(cls, uuid);
+        } finally {
+            record(ContrailOperation.FIND_BY_ID, cls, start);
+        }
+    }
+
+    @Override
+    public String findByName(Class<? extends ApiObjectBase> cls, List<String> nameList) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return super.findByName(cls, nameList);
+        } finally {
+            record(ContrailOperation.FIND_BY_NAME, cls, start);
+        }
+    }
+
+    @Override
+    public String findByName(Class<? extends ApiObjectBase> cls, ApiObjectBase parent, String name) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return super.findByName(cls, parent, name);
+        } finally {
+            record(ContrailOperation.FIND_BY_NAME, cls, start);
+        }
+    }
+
+    @Override
+    public List<? extends ApiObjectBase> list(Class<? extends ApiObjectBase> cls, List<String> parent) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return super.list(cls, parent);
+        } finally {
+            record(ContrailOperation.LIST, cls, start);
+        }
+    }
+
+    @Override
+    public <T extends ApiPropertyBase> List<? extends ApiObjectBase> getObjects(Class<? extends ApiObjectBase> cls, List<ObjectReference<T>> refList)
+            throws IOException {
+        long start = System.nanoTime();
+        try {
+            return super.getObjects(cls, refList);
+        } finally {
+            record(ContrailOperation.GET_OBJECTS, cls, start);
+        }
+    }
+
+    private void record(ContrailOperation operation, ApiObjectBase obj, long start) {
+        record(operation, obj == null ? ApiObjectBase.class : obj.getClass(), start);
+    }
+
+    /**
+     * Invoked after every call with the time the call was started.
+     *
+     * @param operation
+     *            The ApiConnector operation performed.
+     * @param type
+     *            The Contrail object type the call referred to.
+     * @param start
+     *            Start time as returned by {@link System#nanoTime()}.
+     */
+    protected void record(ContrailOperation operation, Class<?> type, long start) {
+        long elapsed = System.nanoTime() - start;
+        OperationMetrics.contrailLatency(operation, type).record(elapsed);
+        OperationTrace.recordCall(operation, type, elapsed);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Proxy handler timing every INeutron*Aware and INeutron*CRUD call made on a
+ * Neutron handler and accounting the Contrail calls each one makes, slow
+ * calls being reported to the {@link SlowOperationLog}. The
+ * Activator registers the proxy with the dependency manager in place of the
+ * handler itself.
+ */
+public final class InstrumentedHandler implements InvocationHandler {
+    private final Object handler;
+    private final String handlerName;
+    private final ConcurrentMap<Method, Operation> operations = new ConcurrentHashMap<Method, Operation>();
+
+    private InstrumentedHandler(Object handler) {
+        this.handler = handler;
+        this.handlerName = handler.getClass().getSimpleName();
+    }
+
+    /**
+     * Invoked to wrap a Neutron handler into an instrumented proxy.
+     *
+     * @param handler
+     *            The Neutron handler instance.
+     * @param interfaces
+     *            The Neutron, and plugin, service interfaces the handler
+     *            implements.
+     *
+     * @return A proxy implementing the specified interfaces.
+     */
+    public static Object wrap(Object handler, Class<?>... interfaces) {
+        return Proxy.newProxyInstance(handler.getClass().getClassLoader(), interfaces, new InstrumentedHandler(handler));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return invokeObjectMethod(proxy, method, args);
+        }
+        Operation operation = operation(method);
+        OperationTrace trace = OperationTrace.begin();
+        long start = System.nanoTime();
+        try {
+            return method.invoke(handler, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            operation.latency.record(elapsed);
+            if (trace != null) {
+                OperationTrace.end(trace);
+                operation.calls.add(trace);
+            }
+            if (SlowOperationLog.isSlow(elapsed)) {
+                SlowOperationLog.log(handlerName, method.getName(), args, trace, elapsed);
+            }
+        }
+    }
+
+    private Operation operation(Method method) {
+        Operation operation = operations.get(method);
+        if (operation == null) {
+            operation = new Operation(OperationMetrics.handlerLatency(handlerName, method.getName()), OperationMetrics.callAccounting(
+                    handlerName, method.getName()));
+            operations.put(method, operation);
+        }
+        return operation;
+    }
+
+    private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+        if ("equals".equals(method.getName())) {
+            return proxy == args[0];
+        }
+        if ("hashCode".equals(method.getName())) {
+            return System.identityHashCode(proxy);
+        }
+        return handlerName + "@" + Integer.toHexString(System.identityHashCode(proxy));
+    }
+
+    /**
+     * Metrics kept for one handler method.
+     */
+    private static final class Operation {
+        final LatencyHistogram latency;
+        final CallAccounting calls;
+
+        Operation(LatencyHistogram latency, CallAccounting calls) {
+            this.latency = latency;
+            this.calls = calls;
+        }
+    }
+}
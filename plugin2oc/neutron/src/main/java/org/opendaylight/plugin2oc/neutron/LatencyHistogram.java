@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-linear buckets.
+ *
+ * Every power of two is split into 32 linear sub-buckets, which bounds the
+ * relative error of a reported percentile to about 3%. Values are recorded in
+ * nanoseconds and clamped to roughly 18 minutes. Recording only increments
+ * preallocated atomic counters, so it never allocates and never blocks.
+ */
+public final class LatencyHistogram {
+    static final int SUB_BUCKET_BITS = 6;
+    static final int SUB_BUCKET_HALF = 1 << (SUB_BUCKET_BITS - 1);
+    static final long MAX_VALUE = (1L << 40) - 1;
+    static final int BUCKETS = index(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Invoked to record one latency sample.
+     *
+     * @param nanos
+     *            Latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        long value = nanos < 0 ? 0 : (nanos > MAX_VALUE ? MAX_VALUE : nanos);
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        totalNanos.addAndGet(value);
+        long max = maxNanos.get();
+        while (value > max && !maxNanos.compareAndSet(max, value)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * Invoked to record the time elapsed since the specified start.
+     *
+     * @param startNanos
+     *            Start time as returned by {@link System#nanoTime()}.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public long getMeanNanos() {
+        long samples = count.get();
+        return samples == 0 ? 0 : totalNanos.get() / samples;
+    }
+
+    /**
+     * Invoked to get the latency below which the specified percentage of the
+     * samples fall.
+     *
+     * @param percentile
+     *            Percentile between 0 and 100.
+     *
+     * @return Highest value equivalent to the percentile bucket, in
+     *         nanoseconds, or 0 if nothing has been recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total);
+        if (target < 1) {
+            target = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * Invoked to clear all recorded samples.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    static int index(long value) {
+        if (value < (SUB_BUCKET_HALF << 1)) {
+            return (int) value;
+        }
+        int exponent = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        return exponent * SUB_BUCKET_HALF + (int) (value >>> exponent);
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < (SUB_BUCKET_HALF << 1)) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKET_HALF - 1;
+        long mantissa = index - exponent * SUB_BUCKET_HALF;
+        return ((mantissa + 1) << exponent) - 1;
+    }
+}
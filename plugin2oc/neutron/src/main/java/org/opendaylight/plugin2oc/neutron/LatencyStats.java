@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes a {@link LatencyHistogram} as a JMX MBean.
+ *
+ * Rates are computed on the reading side only: the one minute rate is an
+ * exponentially weighted moving average that is brought up to date in five
+ * second ticks whenever it is read, so recording stays allocation free.
+ */
+public class LatencyStats implements LatencyStatsMBean {
+    static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(5);
+    static final double ALPHA = 1 - Math.exp(-5.0 / 60.0);
+    static final int MAX_DECAY_TICKS = 120;
+
+    private final LatencyHistogram histogram;
+    private long startNanos;
+    private long lastTickNanos;
+    private long lastTickCount;
+    private double oneMinuteRate;
+    private boolean rateInitialized;
+
+    public LatencyStats(LatencyHistogram histogram) {
+        this.histogram = histogram;
+        this.startNanos = System.nanoTime();
+        this.lastTickNanos = startNanos;
+    }
+
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    @Override
+    public long getCount() {
+        return histogram.getCount();
+    }
+
+    @Override
+    public synchronized double getMeanRate() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds <= 0 ? 0 : histogram.getCount() / seconds;
+    }
+
+    @Override
+    public synchronized double getOneMinuteRate() {
+        tick();
+        return oneMinuteRate;
+    }
+
+    @Override
+    public long getMeanMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(histogram.getMeanNanos());
+    }
+
+    @Override
+    public long getP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(50.0));
+    }
+
+    @Override
+    public long getP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(99.0));
+    }
+
+    @Override
+    public long getP999Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(99.9));
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(histogram.getMaxNanos());
+    }
+
+    @Override
+    public synchronized void reset() {
+        histogram.reset();
+        startNanos = System.nanoTime();
+        lastTickNanos = startNanos;
+        lastTickCount = 0;
+        oneMinuteRate = 0;
+        rateInitialized = false;
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+        long ticks = (now - lastTickNanos) / TICK_NANOS;
+        if (ticks <= 0) {
+            return;
+        }
+        lastTickNanos += ticks * TICK_NANOS;
+        long count = histogram.getCount();
+        double instantRate = (count - lastTickCount) / (ticks * (TICK_NANOS / 1e9));
+        lastTickCount = count;
+        if (!rateInitialized) {
+            oneMinuteRate = instantRate;
+            rateInitialized = true;
+            return;
+        }
+        for (long i = 0; i < Math.min(ticks, MAX_DECAY_TICKS); i++) {
+            oneMinuteRate += ALPHA * (instantRate - oneMinuteRate);
+        }
+    }
+}
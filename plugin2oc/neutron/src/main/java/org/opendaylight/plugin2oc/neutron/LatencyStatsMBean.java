@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+/**
+ * JMX view of the latency recorded for one handler operation or one Contrail
+ * call type. Latencies are reported in microseconds, rates in calls per
+ * second.
+ */
+public interface LatencyStatsMBean {
+    long getCount();
+
+    double getMeanRate();
+
+    double getOneMinuteRate();
+
+    long getMeanMicros();
+
+    long getP50Micros();
+
+    long getP99Micros();
+
+    long getP999Micros();
+
+    long getMaxMicros();
+
+    void reset();
+}
@@ -14,13 +14,13 @@ import java.util.List;
 import java.util.UUID;
 
 import net.juniper.contrail.api.ApiConnector;
-import net.juniper.contrail.api.types.FloatingIpPool;
 import net.juniper.contrail.api.types.Project;
 import net.juniper.contrail.api.types.VirtualNetwork;
 
 import org.opendaylight.controller.networkconfig.neutron.INeutronNetworkAware;
 import org.opendaylight.controller.networkconfig.neutron.INeutronNetworkCRUD;
 import org.opendaylight.controller.networkconfig.neutron.NeutronNetwork;
+import org.opendaylight.plugin2oc.neutron.ReferenceIndex.Relation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,7 +49,7 @@ public class NetworkHandler implements INeutronNetworkAware, INeutronNetworkCRUD
             LOGGER.error("Network object can't be null..");
             return HttpURLConnection.HTTP_BAD_REQUEST;
         }
-        LOGGER.debug("Network object " + network);
+        LOGGER.debug("Network object {}", network);
         apiConnector = Activator.apiConnector;
         if (network.getNetworkUUID() == null || network.getNetworkName() == null || network.getNetworkUUID().equals("")
                 || network.getNetworkName().equals("")) {
@@ -71,17 +71,16 @@ public class NetworkHandler implements INeutronNetworkAware, INeutronNetworkCRUD
                     projectUUID = uuidFormater(projectUUID);
                 }
                 projectUUID = UUID.fromString(projectUUID).toString();
-                LOGGER.info("projectUUID 2  " + projectUUID);
+                LOGGER.info("projectUUID 2  {}", projectUUID);
             } catch (Exception ex) {
                 LOGGER.error("UUID input incorrect", ex);
                 return HttpURLConnection.HTTP_BAD_REQUEST;
             }
-            virtualNetwork = (VirtualNetwork) apiConnector.findById(VirtualNetwork.class, networkUUID);
+            virtualNetwork = (VirtualNetwork) ExistenceFilter.of(VirtualNetwork.class).findById(apiConnector, networkUUID);
             Project project = (Project) apiConnector.findById(Project.class, projectUUID);
             if (project == null) {
                 try {
-                    Thread.currentThread();
-                    Thread.sleep(3000);
+                    OperationTrace.sleepBeforeRetry(3000);
                 } catch (InterruptedException e) {
                     LOGGER.error("InterruptedException :    ", e);
                     return HttpURLConnection.HTTP_BAD_REQUEST;
@@ -218,15 +217,30 @@ public class NetworkHandler implements INeutronNetworkAware, INeutronNetworkCRUD
     public int canDeleteNetwork(NeutronNetwork network) {
         apiConnector = Activator.apiConnector;
         VirtualNetwork virtualNetwork = null;
+        if (Activator.referenceIndex.inUse(Relation.NETWORK_PORTS, network.getNetworkUUID())) {
+            LOGGER.info("Network with UUID :  {} cannot be deleted as it has port(s) associated with it....", network.getNetworkUUID());
+            return HttpURLConnection.HTTP_FORBIDDEN;
+        }
+        if (Activator.referenceIndex.inUse(Relation.NETWORK_GATEWAYS, network.getNetworkUUID())) {
+            LOGGER.info("Network with UUID :  {} cannot be deleted as it is the gateway of router(s)....", network.getNetworkUUID());
+            return HttpURLConnection.HTTP_FORBIDDEN;
+        }
+        if (Activator.referenceIndex.isLoaded()) {
+            if (!ExistenceFilter.of(VirtualNetwork.class).mightExist(network.getNetworkUUID())) {
+                LOGGER.info("No Network exists with UUID :  {}", network.getNetworkUUID());
+                return HttpURLConnection.HTTP_BAD_REQUEST;
+            }
+            return HttpURLConnection.HTTP_OK;
+        }
         try {
             virtualNetwork = (VirtualNetwork) apiConnector.findById(VirtualNetwork.class, network.getNetworkUUID());
             if (virtualNetwork != null) {
                 if (virtualNetwork.getVirtualMachineInterfaceBackRefs() != null) {
-                    LOGGER.info("Network with UUID :  " + network.getNetworkUUID() + " cannot be deleted as it has port(s) associated with it....");
+                    LOGGER.info("Network with UUID :  {} cannot be deleted as it has port(s) associated with it....", network.getNetworkUUID());
                     return HttpURLConnection.HTTP_FORBIDDEN;
                 }
             } else {
-                LOGGER.info("No Network exists with UUID :  " + network.getNetworkUUID());
+                LOGGER.info("No Network exists with UUID :  {}", network.getNetworkUUID());
                 return HttpURLConnection.HTTP_BAD_REQUEST;
             }
         } catch (Exception e) {
@@ -300,7 +314,7 @@ public class NetworkHandler implements INeutronNetworkAware, INeutronNetworkCRUD
         boolean networkCreated;
         try {
             networkCreated = apiConnector.create(virtualNetwork);
-            LOGGER.debug("networkCreated:   " + networkCreated);
+            LOGGER.debug("networkCreated:   {}", networkCreated);
             if (!networkCreated) {
                 LOGGER.warn("Network creation failed..");
                 return false;
@@ -309,50 +323,53 @@ public class NetworkHandler implements INeutronNetworkAware, INeutronNetworkCRUD
             e1.printStackTrace();
             return false;
         }
-        LOGGER.info("Network : " + virtualNetwork.getName() + "  having UUID : " + virtualNetwork.getUuid() + "  sucessfully created...");
+        LOGGER.info("Network : {}  having UUID : {}  sucessfully created...", virtualNetwork.getName(), virtualNetwork.getUuid());
+        ExistenceFilter.of(VirtualNetwork.class).add(virtualNetwork.getUuid());
+        Activator.warmNetworks.put(apiConnector, virtualNetwork);
         if (virtualNetwork.getRouterExternal() == true) {
-            FloatingIpPool floatingIpPool = null;
-            String fipId = UUID.randomUUID().toString();
-            floatingIpPool = new FloatingIpPool();
-            floatingIpPool.setName(fipId);
-            floatingIpPool.setDisplayName(fipId);
-            floatingIpPool.setUuid(fipId);
-            floatingIpPool.setParent(virtualNetwork);
-            boolean createFloatingIpPool;
-            try {
-                createFloatingIpPool = apiConnector.create(floatingIpPool);
-                if (!createFloatingIpPool) {
-                    LOGGER.info("Floating Ip pool creation failed..");
-                    return false;
-                } else {
-                    LOGGER.info("Floating Ip pool created with UUID  : " + floatingIpPool.getUuid());
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-                return false;
-            }
+            Activator.floatingIpPools.provision(apiConnector, virtualNetwork.getUuid(), true);
         }
+        Activator.topology.put(NeutronNetwork.class, virtualNetwork.getUuid(), network);
         return true;
     }
 
     @Override
     public List<NeutronNetwork> getAllNetworks() {
-        return null;
+        return Activator.topology.list(NeutronNetwork.class);
     }
 
     @Override
-    public NeutronNetwork getNetwork(String arg0) {
-        return null;
+    public NeutronNetwork getNetwork(String networkUUID) {
+        return Activator.topology.get(NeutronNetwork.class, networkUUID);
     }
 
     @Override
-    public boolean networkExists(String arg0) {
-        return false;
+    public boolean networkExists(String networkUUID) {
+        apiConnector = Activator.apiConnector;
+        try {
+            return ExistenceFilter.of(VirtualNetwork.class).findById(apiConnector, networkUUID) != null;
+        } catch (IOException e) {
+            LOGGER.error("Exception :   " + e);
+            return false;
+        }
     }
 
     @Override
-    public boolean networkInUse(String arg0) {
-        return false;
+    public boolean networkInUse(String networkUUID) {
+        apiConnector = Activator.apiConnector;
+        if (Activator.referenceIndex.inUse(Relation.NETWORK_PORTS, networkUUID)
+                || Activator.referenceIndex.inUse(Relation.NETWORK_GATEWAYS, networkUUID)) {
+            return true;
+        } else if (Activator.referenceIndex.isLoaded()) {
+            return false;
+        }
+        try {
+            VirtualNetwork virtualNetwork = (VirtualNetwork) ExistenceFilter.of(VirtualNetwork.class).findById(apiConnector, networkUUID);
+            return virtualNetwork != null && virtualNetwork.getVirtualMachineInterfaceBackRefs() != null;
+        } catch (IOException e) {
+            LOGGER.error("Exception :   " + e);
+            return false;
+        }
     }
 
     /**
@@ -366,8 +383,13 @@ public class NetworkHandler implements INeutronNetworkAware, INeutronNetworkCRUD
     @Override
     public boolean removeNetwork(String networkUUID) {
         VirtualNetwork virtualNetwork;
+        Activator.floatingIpPools.await(networkUUID);
         try {
             virtualNetwork = (VirtualNetwork) apiConnector.findById(VirtualNetwork.class, networkUUID);
+            if (virtualNetwork == null) {
+                LOGGER.info("No Network exists with UUID :  {}", networkUUID);
+                return false;
+            }
             apiConnector.delete(virtualNetwork);
             VirtualNetwork virtualNetwork1 = (VirtualNetwork) apiConnector.findById(VirtualNetwork.class, networkUUID);
             if (virtualNetwork1 != null) {
@@ -377,7 +399,13 @@ public class NetworkHandler implements INeutronNetworkAware, INeutronNetworkCRUD
             LOGGER.error("Network with UUID :" + networkUUID + "  failed to delete.... ");
             return false;
         }
-        LOGGER.info("Network with UUID :  " + networkUUID + "  has been deleted successfully....");
+        ExistenceFilter.of(VirtualNetwork.class).remove(networkUUID);
+        Activator.referenceIndex.removeTarget(Relation.NETWORK_PORTS, networkUUID);
+        Activator.topology.remove(NeutronNetwork.class, networkUUID);
+        Activator.floatingIpAllocator.forget(networkUUID);
+        Activator.floatingIpPools.forget(networkUUID);
+        Activator.warmNetworks.forget(networkUUID);
+        LOGGER.info("Network with UUID :  {}  has been deleted successfully....", networkUUID);
         return true;
     }
 
@@ -417,7 +445,6 @@ public class NetworkHandler implements INeutronNetworkAware, INeutronNetworkCRUD
         boolean networkUpdate;
         try {
             networkUpdate = apiConnector.update(virtualNetwork);
-            System.out.println(networkUpdate);
             if (!networkUpdate) {
                 LOGGER.warn("Network Updation failed..");
                 return false;
@@ -426,50 +453,13 @@ public class NetworkHandler implements INeutronNetworkAware, INeutronNetworkCRUD
             LOGGER.warn("Network Updation failed..");
             return false;
         }
-        LOGGER.info("Network having UUID : " + virtualNetwork.getUuid() + "  has been sucessfully updated...");
+        LOGGER.info("Network having UUID : {}  has been sucessfully updated...", virtualNetwork.getUuid());
+        if (deltaNetwork.getRouterExternal() != null && !deltaNetwork.getRouterExternal().equals(originalNetwork.getRouterExternal())) {
+            Activator.floatingIpPools.provision(apiConnector, networkUUID, deltaNetwork.getRouterExternal());
+        }
+        Activator.topology.update(NeutronNetwork.class, networkUUID, deltaNetwork);
         if (deltaNetwork.getRouterExternal() != null) {
-            if (!(originalNetwork.getRouterExternal()) && deltaNetwork.getRouterExternal()) {
-                VirtualNetwork UpdatedVirtualnetwork;
-                try {
-                    UpdatedVirtualnetwork = (VirtualNetwork) apiConnector.findById(VirtualNetwork.class, originalNetwork.getUuid());
-                    FloatingIpPool floatingIpPool = null;
-                    String fipId = UUID.randomUUID().toString();
-                    floatingIpPool = new FloatingIpPool();
-                    floatingIpPool.setName(fipId);
-                    floatingIpPool.setDisplayName(fipId);
-                    floatingIpPool.setUuid(fipId);
-                    floatingIpPool.setParent(UpdatedVirtualnetwork);
-                    boolean createFloatingIpPool = apiConnector.create(floatingIpPool);
-                    if (!createFloatingIpPool) {
-                        LOGGER.info("Floating Ip pool creation failed..");
-                        return false;
-                    } else {
-                        LOGGER.info("Floating Ip pool created with UUID  : " + floatingIpPool.getUuid());
-                    }
-                } catch (IOException e) {
-                    LOGGER.info("Floating Ip pool creation failed..");
-                    return false;
-                }
-            } else if (originalNetwork.getRouterExternal() && !(deltaNetwork.getRouterExternal())) {
-                String floatingPoolId = virtualNetwork.getFloatingIpPools().get(0).getUuid();
-                FloatingIpPool floatingIpPool;
-                try {
-                    floatingIpPool = (FloatingIpPool) apiConnector.findById(FloatingIpPool.class, floatingPoolId);
-                    if (floatingIpPool != null) {
-                        apiConnector.delete(floatingIpPool);
-                    }
-                    floatingIpPool = (FloatingIpPool) apiConnector.findById(FloatingIpPool.class, floatingPoolId);
-                    if (floatingIpPool == null) {
-                        LOGGER.info("Floating Ip pool is removed after update network..");
-                    } else {
-                        LOGGER.info("Floating Ip pool is failed to removed after update network..");
-                        return false;
-                    }
-                } catch (IOException e) {
-                    LOGGER.info("Floating Ip pool is failed to removed after update network..");
-                    return false;
-                }
-            }
+            Activator.floatingIpAllocator.invalidate(networkUUID);
         }
         return true;
     }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Copies of Neutron objects through their bean properties, the way the
+ * Neutron northbound caches overwrite an object with the fields set in an
+ * update.
+ */
+final class NeutronObjects {
+    private static final ConcurrentMap<Class<?>, List<Method[]>> PROPERTIES = new ConcurrentHashMap<Class<?>, List<Method[]>>();
+
+    private NeutronObjects() {
+    }
+
+    /**
+     * @return A copy of a Neutron object, with copies of its lists and maps
+     *         but sharing their elements.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T copy(T source) {
+        try {
+            T target = (T) source.getClass().newInstance();
+            for (Method[] property : properties(source.getClass())) {
+                Object value = property[0].invoke(source);
+                if (value != null) {
+                    property[1].invoke(target, copyValue(value));
+                }
+            }
+            return target;
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Can not copy " + source.getClass().getSimpleName(), e);
+        }
+    }
+
+    /**
+     * @return A copy of a Neutron object with the properties set in the delta
+     *         overwritten.
+     */
+    static <T> T overwrite(T original, T delta) {
+        T target = copy(original);
+        try {
+            for (Method[] property : properties(delta.getClass())) {
+                Object value = property[0].invoke(delta);
+                if (value != null) {
+                    property[1].invoke(target, copyValue(value));
+                }
+            }
+            return target;
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Can not update " + original.getClass().getSimpleName(), e);
+        }
+    }
+
+    private static Object copyValue(Object value) {
+        if (value instanceof List) {
+            return new ArrayList<Object>((List<?>) value);
+        }
+        if (value instanceof Map) {
+            return new HashMap<Object, Object>((Map<?, ?>) value);
+        }
+        return value;
+    }
+
+    /**
+     * @return The getter and setter of every read and write property.
+     */
+    private static List<Method[]> properties(Class<?> type) {
+        List<Method[]> properties = PROPERTIES.get(type);
+        if (properties == null) {
+            properties = new ArrayList<Method[]>();
+            for (Method setter : type.getMethods()) {
+                if (!setter.getName().startsWith("set") || setter.getParameterTypes().length != 1) {
+                    continue;
+                }
+                Method getter = getter(type, setter.getName().substring(3));
+                if (getter != null && setter.getParameterTypes()[0].isAssignableFrom(getter.getReturnType())) {
+                    properties.add(new Method[] { getter, setter });
+                }
+            }
+            properties = Collections.unmodifiableList(properties);
+            PROPERTIES.putIfAbsent(type, properties);
+        }
+        return properties;
+    }
+
+    private static Method getter(Class<?> type, String property) {
+        try {
+            return type.getMethod("get" + property);
+        } catch (NoSuchMethodException e) {
+            try {
+                return type.getMethod("is" + property);
+            } catch (NoSuchMethodException ex) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Open addressing hash table from fixed size keys of one or more longs to
+ * owner UUIDs, stored in a direct buffer so that millions of entries cost
+ * the garbage collector nothing but the buffer object.
+ *
+ * Every slot holds the key words followed by the two words of the owner.
+ * The nil UUID marks free slots, so it can not own anything. Collisions are
+ * resolved by linear probing and removals shift the following entries back,
+ * leaving no tombstones. The table doubles when more than 60% full.
+ */
+final class OffHeapOwnerTable {
+    static final int MIN_CAPACITY = 16;
+    private static final double MAX_LOAD = 0.6;
+
+    private final int keyWords;
+    private final int slotBytes;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private ByteBuffer slots;
+    private int capacity;
+    private int size;
+
+    OffHeapOwnerTable(int keyWords, int initialCapacity) {
+        this.keyWords = keyWords;
+        this.slotBytes = (keyWords + 2) * 8;
+        this.capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, initialCapacity) - 1) << 1;
+        this.slots = allocate(capacity);
+    }
+
+    /**
+     * @return The owner of a key, or null if it has none.
+     */
+    UUID get(long... key) {
+        lock.readLock().lock();
+        try {
+            int slot = find(slots, capacity, key);
+            return slot < 0 ? null : new UUID(word(slot, keyWords), word(slot, keyWords + 1));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Invoked to give a key to an owner unless another owner has it.
+     *
+     * @return The owner the key already had, or null if it is now owned by
+     *         the specified owner.
+     */
+    UUID putIfAbsent(UUID owner, long... key) {
+        if (owner.getMostSignificantBits() == 0 && owner.getLeastSignificantBits() == 0) {
+            throw new IllegalArgumentException("The nil UUID can not own anything");
+        }
+        lock.writeLock().lock();
+        try {
+            int slot = find(slots, capacity, key);
+            if (slot >= 0) {
+                return new UUID(word(slot, keyWords), word(slot, keyWords + 1));
+            }
+            if (size + 1 > capacity * MAX_LOAD) {
+                resize(capacity * 2);
+                slot = find(slots, capacity, key);
+            }
+            write(slots, -slot - 1, key, owner.getMostSignificantBits(), owner.getLeastSignificantBits());
+            size++;
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Invoked to free a key if the specified owner has it.
+     *
+     * @return Whether the key was freed.
+     */
+    boolean remove(UUID owner, long... key) {
+        lock.writeLock().lock();
+        try {
+            int slot = find(slots, capacity, key);
+            if (slot < 0 || word(slot, keyWords) != owner.getMostSignificantBits() || word(slot, keyWords + 1) != owner.getLeastSignificantBits()) {
+                return false;
+            }
+            int mask = capacity - 1;
+            int free = slot;
+            int next = free;
+            while (true) {
+                next = (next + 1) & mask;
+                if (isFree(slots, next)) {
+                    break;
+                }
+                int home = hash(slots, next) & mask;
+                // the entry moves back unless its home lies cyclically in (free, next]
+                boolean stays = free <= next ? free < home && home <= next : free < home || home <= next;
+                if (!stays) {
+                    copy(next, free);
+                    free = next;
+                }
+            }
+            clear(free);
+            size--;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Bytes of direct memory held by the table.
+     */
+    long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) capacity * slotBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Invoked to free every key.
+     */
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            capacity = MIN_CAPACITY;
+            slots = allocate(capacity);
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The slot of a key, or -(free slot + 1) when it is missing.
+     */
+    private int find(ByteBuffer table, int tableCapacity, long[] key) {
+        int mask = tableCapacity - 1;
+        int slot = hash(key) & mask;
+        while (!isFree(table, slot)) {
+            if (matches(table, slot, key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -slot - 1;
+    }
+
+    private void resize(int newCapacity) {
+        if ((long) newCapacity * slotBytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Owner table full with " + size + " entries");
+        }
+        ByteBuffer table = allocate(newCapacity);
+        long[] key = new long[keyWords];
+        for (int slot = 0; slot < capacity; slot++) {
+            if (!isFree(slots, slot)) {
+                for (int i = 0; i < keyWords; i++) {
+                    key[i] = word(slot, i);
+                }
+                write(table, -find(table, newCapacity, key) - 1, key, word(slot, keyWords), word(slot, keyWords + 1));
+            }
+        }
+        slots = table;
+        capacity = newCapacity;
+    }
+
+    private ByteBuffer allocate(int slotCount) {
+        return ByteBuffer.allocateDirect(slotCount * slotBytes).order(ByteOrder.nativeOrder());
+    }
+
+    private long word(int slot, int index) {
+        return slots.getLong(slot * slotBytes + index * 8);
+    }
+
+    private boolean isFree(ByteBuffer table, int slot) {
+        int owner = slot * slotBytes + keyWords * 8;
+        return table.getLong(owner) == 0 && table.getLong(owner + 8) == 0;
+    }
+
+    private boolean matches(ByteBuffer table, int slot, long[] key) {
+        for (int i = 0; i < keyWords; i++) {
+            if (table.getLong(slot * slotBytes + i * 8) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void write(ByteBuffer table, int slot, long[] key, long ownerHigh, long ownerLow) {
+        int offset = slot * slotBytes;
+        for (int i = 0; i < keyWords; i++) {
+            table.putLong(offset + i * 8, key[i]);
+        }
+        table.putLong(offset + keyWords * 8, ownerHigh);
+        table.putLong(offset + keyWords * 8 + 8, ownerLow);
+    }
+
+    private void copy(int from, int to) {
+        for (int i = 0; i < keyWords + 2; i++) {
+            slots.putLong(to * slotBytes + i * 8, slots.getLong(from * slotBytes + i * 8));
+        }
+    }
+
+    private void clear(int slot) {
+        for (int i = 0; i < keyWords + 2; i++) {
+            slots.putLong(slot * slotBytes + i * 8, 0);
+        }
+    }
+
+    private int hash(ByteBuffer table, int slot) {
+        long[] key = new long[keyWords];
+        for (int i = 0; i < keyWords; i++) {
+            key[i] = table.getLong(slot * slotBytes + i * 8);
+        }
+        return hash(key);
+    }
+
+    private static int hash(long[] key) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (long word : key) {
+            h = mix(h ^ word);
+        }
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * @return The finalizer of MurmurHash3, spreading every input bit over
+     *         the whole result.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB93FE1A85EC3L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
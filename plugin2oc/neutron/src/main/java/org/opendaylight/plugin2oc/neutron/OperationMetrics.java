@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the latency histograms and outbound call counters kept for
+ * handler operations and Contrail calls, and of the MBeans publishing them.
+ *
+ * Histograms are created on first use and looked up without allocation
+ * afterwards. Once {@link #registerMBeans(MBeanServer)} has been called by the
+ * Activator, every histogram, including those created later, is registered
+ * under the {@value #DOMAIN} JMX domain.
+ */
+public final class OperationMetrics {
+    /**
+     * Logger instance.
+     */
+    static final Logger LOGGER = LoggerFactory.getLogger(OperationMetrics.class);
+    static final String DOMAIN = "org.opendaylight.plugin2oc";
+
+    private static final ConcurrentMap<String, LatencyStats> HANDLER_STATS = new ConcurrentHashMap<String, LatencyStats>();
+    private static final ConcurrentMap<String, CallAccounting> CALL_ACCOUNTING = new ConcurrentHashMap<String, CallAccounting>();
+    private static final ConcurrentMap<Class<?>, LatencyHistogram[]> CONTRAIL_HISTOGRAMS = new ConcurrentHashMap<Class<?>, LatencyHistogram[]>();
+    private static final ConcurrentMap<String, Object> MBEANS = new ConcurrentHashMap<String, Object>();
+    private static MBeanServer mbeanServer;
+
+    private OperationMetrics() {
+    }
+
+    /**
+     * Invoked to get the histogram of a handler operation.
+     *
+     * @param handler
+     *            Simple name of the handler class.
+     * @param operation
+     *            Name of the Neutron operation.
+     *
+     * @return {@link LatencyHistogram}
+     */
+    public static LatencyHistogram handlerLatency(String handler, String operation) {
+        String name = DOMAIN + ":type=HandlerLatency,handler=" + handler + ",operation=" + operation;
+        LatencyStats stats = HANDLER_STATS.get(name);
+        if (stats == null) {
+            LatencyStats created = new LatencyStats(new LatencyHistogram());
+            stats = HANDLER_STATS.putIfAbsent(name, created);
+            if (stats == null) {
+                stats = created;
+                publish(name, stats);
+            }
+        }
+        return stats.getHistogram();
+    }
+
+    /**
+     * Invoked to get the outbound call counters of a handler operation.
+     *
+     * @param handler
+     *            Simple name of the handler class.
+     * @param operation
+     *            Name of the Neutron operation.
+     *
+     * @return {@link CallAccounting}
+     */
+    public static CallAccounting callAccounting(String handler, String operation) {
+        String name = DOMAIN + ":type=OutboundCalls,handler=" + handler + ",operation=" + operation;
+        CallAccounting accounting = CALL_ACCOUNTING.get(name);
+        if (accounting == null) {
+            CallAccounting created = new CallAccounting(handler, operation);
+            accounting = CALL_ACCOUNTING.putIfAbsent(name, created);
+            if (accounting == null) {
+                accounting = created;
+                publish(name, accounting);
+            }
+        }
+        return accounting;
+    }
+
+    /**
+     * Invoked to get the histogram of a Contrail call on an object type. The
+     * lookup does not allocate once the histogram exists.
+     *
+     * @param operation
+     *            The ApiConnector operation.
+     * @param type
+     *            The Contrail object type the call refers to.
+     *
+     * @return {@link LatencyHistogram}
+     */
+    public static LatencyHistogram contrailLatency(ContrailOperation operation, Class<?> type) {
+        LatencyHistogram[] histograms = CONTRAIL_HISTOGRAMS.get(type);
+        if (histograms != null) {
+            LatencyHistogram histogram = histograms[operation.ordinal()];
+            if (histogram != null) {
+                return histogram;
+            }
+        }
+        return createContrailLatency(operation, type);
+    }
+
+    private static synchronized LatencyHistogram createContrailLatency(ContrailOperation operation, Class<?> type) {
+        LatencyHistogram[] histograms = CONTRAIL_HISTOGRAMS.get(type);
+        if (histograms == null) {
+            histograms = new LatencyHistogram[ContrailOperation.values().length];
+            CONTRAIL_HISTOGRAMS.put(type, histograms);
+        }
+        LatencyHistogram histogram = histograms[operation.ordinal()];
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            // publish the fully built histogram through the map's volatile write
+            LatencyHistogram[] copy = histograms.clone();
+            copy[operation.ordinal()] = histogram;
+            CONTRAIL_HISTOGRAMS.put(type, copy);
+            publish(DOMAIN + ":type=ContrailLatency,operation=" + operation.getMethodName() + ",object=" + type.getSimpleName(),
+                    new LatencyStats(histogram));
+        }
+        return histogram;
+    }
+
+    /**
+     * Invoked to register an additional MBean alongside the latency MBeans.
+     * It is registered right away if the Activator already registered the
+     * metrics, otherwise when it does.
+     *
+     * @param name
+     *            JMX object name of the MBean.
+     * @param mbean
+     *            The MBean.
+     */
+    public static synchronized void publish(String name, Object mbean) {
+        if (MBEANS.putIfAbsent(name, mbean) == null && mbeanServer != null) {
+            register(name, mbean);
+        }
+    }
+
+    /**
+     * Invoked by the Activator to register all MBeans with the specified
+     * server.
+     *
+     * @param server
+     *            The MBean server.
+     */
+    public static synchronized void registerMBeans(MBeanServer server) {
+        mbeanServer = server;
+        for (Map.Entry<String, Object> entry : MBEANS.entrySet()) {
+            register(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Invoked by the Activator to unregister all MBeans.
+     */
+    public static synchronized void unregisterMBeans() {
+        if (mbeanServer == null) {
+            return;
+        }
+        for (String name : MBEANS.keySet()) {
+            try {
+                ObjectName objectName = new ObjectName(name);
+                if (mbeanServer.isRegistered(objectName)) {
+                    mbeanServer.unregisterMBean(objectName);
+                }
+            } catch (Exception e) {
+                LOGGER.warn("Could not unregister MBean " + name + " : " + e);
+            }
+        }
+        mbeanServer = null;
+    }
+
+    private static void register(String name, Object mbean) {
+        try {
+            ObjectName objectName = new ObjectName(name);
+            if (!mbeanServer.isRegistered(objectName)) {
+                mbeanServer.registerMBean(mbean, objectName);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Could not register MBean " + name + " : " + e);
+        }
+    }
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Summary of the Contrail calls made while serving one Neutron operation:
+ * how many calls of each kind were made on each object type, and how long
+ * they took.
+ *
+ * A trace is bound to the thread serving the operation between
+ * {@link #begin()} and {@link #end(OperationTrace)}. Each thread owns one
+ * trace object that is reset and reused for every operation, so tracing does
+ * not allocate. The slots used by an operation are listed as they are first
+ * used, so that resetting and reading a trace only visit those. Work handed to other threads on behalf of the operation can
+ * {@link #attach(OperationTrace)} to the trace so its calls are accounted
+ * too.
+ *
+ * Besides the per-type totals, the first {@value #MAX_STEPS} steps of the
+ * operation are kept in order: every Contrail call, every pause before a
+ * retry and every wait on another request, with their offset and duration,
+ * for the slow operation log.
+ */
+public final class OperationTrace {
+    static final int MAX_TYPES = 32;
+    static final int OPERATIONS = ContrailOperation.values().length;
+    static final int SLOTS = MAX_TYPES * OPERATIONS;
+    static final int MAX_STEPS = 64;
+    static final int RETRY_STEP = -1;
+    static final int LOCK_WAIT_STEP = -2;
+
+    private static final ConcurrentMap<Class<?>, Integer> TYPE_INDEXES = new ConcurrentHashMap<Class<?>, Integer>();
+    private static final AtomicReferenceArray<Class<?>> TYPES = new AtomicReferenceArray<Class<?>>(MAX_TYPES);
+    private static final ThreadLocal<OperationTrace> OWNED = new ThreadLocal<OperationTrace>() {
+        @Override
+        protected OperationTrace initialValue() {
+            return new OperationTrace();
+        }
+    };
+    private static final ThreadLocal<OperationTrace> CURRENT = new ThreadLocal<OperationTrace>();
+
+    private final AtomicLongArray calls = new AtomicLongArray(SLOTS);
+    private final AtomicLongArray nanos = new AtomicLongArray(SLOTS);
+    private final AtomicIntegerArray usedSlots = new AtomicIntegerArray(SLOTS);
+    private final AtomicInteger used = new AtomicInteger();
+    private final AtomicInteger steps = new AtomicInteger();
+    private final AtomicLongArray stepKinds = new AtomicLongArray(MAX_STEPS);
+    private final AtomicLongArray stepOffsets = new AtomicLongArray(MAX_STEPS);
+    private final AtomicLongArray stepNanos = new AtomicLongArray(MAX_STEPS);
+    private final AtomicInteger retries = new AtomicInteger();
+    private final AtomicLong retryNanos = new AtomicLong();
+    private final AtomicInteger lockWaits = new AtomicInteger();
+    private final AtomicLong lockWaitNanos = new AtomicLong();
+    private long startNanos;
+
+    private OperationTrace() {
+    }
+
+    /**
+     * Invoked when a Neutron operation starts on the current thread.
+     *
+     * @return The trace bound to the current thread, or null if the thread is
+     *         already serving an operation, in which case calls keep being
+     *         accounted to the outer operation.
+     */
+    public static OperationTrace begin() {
+        if (CURRENT.get() != null) {
+            return null;
+        }
+        OperationTrace trace = OWNED.get();
+        trace.reset();
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /**
+     * Invoked when the Neutron operation started by {@link #begin()}
+     * completes.
+     *
+     * @param trace
+     *            The trace returned by {@link #begin()}.
+     */
+    public static void end(OperationTrace trace) {
+        if (trace != null && CURRENT.get() == trace) {
+            CURRENT.set(null);
+        }
+    }
+
+    /**
+     * @return The trace of the operation the current thread is serving, or
+     *         null.
+     */
+    public static OperationTrace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Invoked on a worker thread to account its calls to the specified trace.
+     *
+     * @param trace
+     *            The trace of the operation the work is done for, may be null.
+     *
+     * @return The trace previously bound to the thread, to be passed to
+     *         {@link #detach(OperationTrace)}.
+     */
+    public static OperationTrace attach(OperationTrace trace) {
+        OperationTrace previous = CURRENT.get();
+        CURRENT.set(trace);
+        return previous;
+    }
+
+    /**
+     * Invoked on a worker thread once the work done for an attached trace is
+     * complete.
+     *
+     * @param previous
+     *            The value returned by {@link #attach(OperationTrace)}.
+     */
+    public static void detach(OperationTrace previous) {
+        CURRENT.set(previous);
+    }
+
+    /**
+     * Invoked to hand a task to another thread on behalf of the operation the
+     * current thread is serving.
+     *
+     * @return The task, run attached to the trace of the operation.
+     */
+    public static <T> Callable<T> traced(final Callable<T> task) {
+        final OperationTrace trace = CURRENT.get();
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                OperationTrace previous = attach(trace);
+                try {
+                    return task.call();
+                } finally {
+                    detach(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * Invoked to hand a task to another thread on behalf of the operation the
+     * current thread is serving.
+     *
+     * @return The task, run attached to the trace of the operation.
+     */
+    public static Runnable traced(final Runnable task) {
+        final OperationTrace trace = CURRENT.get();
+        return new Runnable() {
+            @Override
+            public void run() {
+                OperationTrace previous = attach(trace);
+                try {
+                    task.run();
+                } finally {
+                    detach(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * Invoked by the instrumented connector after every Contrail call.
+     *
+     * @param operation
+     *            The ApiConnector operation performed.
+     * @param type
+     *            The Contrail object type the call referred to.
+     * @param elapsedNanos
+     *            Duration of the call.
+     */
+    public static void recordCall(ContrailOperation operation, Class<?> type, long elapsedNanos) {
+        OperationTrace trace = CURRENT.get();
+        if (trace != null) {
+            int slot = typeIndex(type) * OPERATIONS + operation.ordinal();
+            if (trace.calls.incrementAndGet(slot) == 1) {
+                trace.usedSlots.set(trace.used.getAndIncrement(), slot);
+            }
+            trace.nanos.addAndGet(slot, elapsedNanos);
+            trace.step(slot, elapsedNanos);
+        }
+    }
+
+    /**
+     * Invoked instead of {@link Thread#sleep(long)} when a handler waits
+     * before retrying a Contrail lookup, so the pause shows in the trace.
+     *
+     * @param millis
+     *            Time to wait in milliseconds.
+     *
+     * @throws InterruptedException
+     *             If the thread is interrupted while waiting.
+     */
+    public static void sleepBeforeRetry(long millis) throws InterruptedException {
+        long start = System.nanoTime();
+        try {
+            Thread.sleep(millis);
+        } finally {
+            OperationTrace trace = CURRENT.get();
+            if (trace != null) {
+                long elapsed = System.nanoTime() - start;
+                trace.retries.incrementAndGet();
+                trace.retryNanos.addAndGet(elapsed);
+                trace.step(RETRY_STEP, elapsed);
+            }
+        }
+    }
+
+    /**
+     * Invoked after the operation waited for another request or a lock held
+     * on behalf of another operation.
+     *
+     * @param elapsedNanos
+     *            Duration of the wait.
+     */
+    public static void recordLockWait(long elapsedNanos) {
+        OperationTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.lockWaits.incrementAndGet();
+            trace.lockWaitNanos.addAndGet(elapsedNanos);
+            trace.step(LOCK_WAIT_STEP, elapsedNanos);
+        }
+    }
+
+    private void step(int kind, long elapsedNanos) {
+        int step = steps.getAndIncrement();
+        if (step < MAX_STEPS) {
+            stepKinds.set(step, kind);
+            stepOffsets.set(step, System.nanoTime() - elapsedNanos - startNanos);
+            stepNanos.set(step, elapsedNanos);
+        }
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * @return Number of slots calls were recorded in.
+     */
+    int getUsedSlots() {
+        return Math.min(used.get(), SLOTS);
+    }
+
+    /**
+     * @return The slot calls were recorded in, by order of first use.
+     */
+    int getUsedSlot(int index) {
+        return usedSlots.get(index);
+    }
+
+    /**
+     * @return Number of calls recorded in the specified slot.
+     */
+    long getCalls(int slot) {
+        return calls.get(slot);
+    }
+
+    /**
+     * @return Time spent in the calls recorded in the specified slot.
+     */
+    long getNanos(int slot) {
+        return nanos.get(slot);
+    }
+
+    public int getRetries() {
+        return retries.get();
+    }
+
+    public long getRetryNanos() {
+        return retryNanos.get();
+    }
+
+    public int getLockWaits() {
+        return lockWaits.get();
+    }
+
+    public long getLockWaitNanos() {
+        return lockWaitNanos.get();
+    }
+
+    /**
+     * @return Total number of Contrail calls made by the operation.
+     */
+    public long getTotalCalls() {
+        long total = 0;
+        for (int i = 0; i < getUsedSlots(); i++) {
+            total += calls.get(usedSlots.get(i));
+        }
+        return total;
+    }
+
+    /**
+     * @return A human readable summary of the calls in the order first made,
+     *         e.g. "findById VirtualNetwork x2 (1.250 ms), create InstanceIp x1 (0.800 ms)".
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder();
+        for (int i = 0; i < getUsedSlots(); i++) {
+            int slot = usedSlots.get(i);
+            long count = calls.get(slot);
+            if (count > 0) {
+                if (summary.length() > 0) {
+                    summary.append(", ");
+                }
+                summary.append(slotName(slot)).append(" x").append(count);
+                summary.append(" (").append(millis(nanos.get(slot))).append(" ms)");
+            }
+        }
+        return summary.length() == 0 ? "no Contrail calls" : summary.toString();
+    }
+
+    /**
+     * Invoked to append the steps of the operation in the order they
+     * completed, one per line, e.g. "+0.120 ms findById Project 3.400 ms".
+     *
+     * @param out
+     *            The builder to append to.
+     */
+    public void appendSteps(StringBuilder out) {
+        int count = Math.min(steps.get(), MAX_STEPS);
+        for (int i = 0; i < count; i++) {
+            int kind = (int) stepKinds.get(i);
+            String name = kind == RETRY_STEP ? "sleep before retry" : kind == LOCK_WAIT_STEP ? "wait for other request" : slotName(kind);
+            out.append("\n    +").append(millis(stepOffsets.get(i))).append(" ms ").append(name).append(' ');
+            out.append(millis(stepNanos.get(i))).append(" ms");
+        }
+        if (steps.get() > MAX_STEPS) {
+            out.append("\n    ... ").append(steps.get() - MAX_STEPS).append(" more steps");
+        }
+    }
+
+    static String millis(long nanos) {
+        return String.format("%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    private void reset() {
+        for (int i = 0; i < getUsedSlots(); i++) {
+            int slot = usedSlots.get(i);
+            calls.set(slot, 0);
+            nanos.set(slot, 0);
+        }
+        used.set(0);
+        steps.set(0);
+        retries.set(0);
+        retryNanos.set(0);
+        lockWaits.set(0);
+        lockWaitNanos.set(0);
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * @return The "operation Type" name of a slot, e.g. "findById VirtualNetwork".
+     */
+    static String slotName(int slot) {
+        Class<?> type = TYPES.get(slot / OPERATIONS);
+        String typeName = type == null ? "Other" : type.getSimpleName();
+        return ContrailOperation.values()[slot % OPERATIONS].getMethodName() + " " + typeName;
+    }
+
+    static int typeIndex(Class<?> type) {
+        Integer index = TYPE_INDEXES.get(type);
+        if (index != null) {
+            return index;
+        }
+        return registerType(type);
+    }
+
+    private static synchronized int registerType(Class<?> type) {
+        Integer index = TYPE_INDEXES.get(type);
+        if (index != null) {
+            return index;
+        }
+        int next = TYPE_INDEXES.size();
+        if (next >= MAX_TYPES - 1) {
+            // the last index collects every type beyond the table size
+            return MAX_TYPES - 1;
+        }
+        TYPES.set(next, type);
+        TYPE_INDEXES.put(type, next);
+        return next;
+    }
+}
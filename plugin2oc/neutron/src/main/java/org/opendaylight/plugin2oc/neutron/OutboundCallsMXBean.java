@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.util.Map;
+
+/**
+ * JMX view of the Contrail calls made by one handler operation. Map keys
+ * name the call and object type, e.g. "findById InstanceIp".
+ */
+public interface OutboundCallsMXBean {
+    long getOperations();
+
+    double getAverageCallsPerOperation();
+
+    long getMaxCallsPerOperation();
+
+    Map<String, Long> getCalls();
+
+    Map<String, Long> getCallMicros();
+
+    Map<String, Double> getCallsPerOperation();
+
+    void reset();
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable map from strings to values, as a hash array mapped trie: adding
+ * or removing a key copies only the nodes on its path, at most seven of up to
+ * 32 entries, and shares the rest with the map it was derived from. Maps can
+ * therefore be read from any number of threads without locking while new
+ * versions are derived from them.
+ *
+ * Null values are not supported: {@link #get(String)} returns null for
+ * missing keys.
+ */
+final class PersistentMap<V> {
+    private static final PersistentMap<Object> EMPTY = new PersistentMap<Object>(null, 0);
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private final Node root;
+    private final int size;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> PersistentMap<V> empty() {
+        return (PersistentMap<V>) EMPTY;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(String key) {
+        return root == null ? null : (V) root.get(0, hash(key), key);
+    }
+
+    boolean containsKey(String key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return A map with the key mapped to the value; this map if it already
+     *         was.
+     */
+    PersistentMap<V> plus(String key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported");
+        }
+        boolean[] added = new boolean[1];
+        Node node = (root == null ? BitmapNode.EMPTY : root).plus(0, hash(key), key, value, added);
+        return node == root ? this : new PersistentMap<V>(node, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * @return A map without the key; this map if it had none.
+     */
+    PersistentMap<V> minus(String key) {
+        if (root == null || root.get(0, hash(key), key) == null) {
+            return this;
+        }
+        return new PersistentMap<V>(root.minus(0, hash(key), key), size - 1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The values, in no particular order.
+     */
+    @SuppressWarnings("unchecked")
+    List<V> values() {
+        List<Object> values = new ArrayList<Object>(size);
+        if (root != null) {
+            root.collect(values);
+        }
+        return (List<V>) values;
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    }
+
+    private abstract static class Node {
+        abstract Object get(int shift, int hash, String key);
+
+        abstract Node plus(int shift, int hash, String key, Object value, boolean[] added);
+
+        /**
+         * @return The node without the key, or null if it is left empty.
+         */
+        abstract Node minus(int shift, int hash, String key);
+
+        abstract void collect(List<Object> values);
+    }
+
+    /**
+     * Node holding up to 32 entries, each a key and its value, or a null key
+     * and a child node. The bitmap tells which of the 32 slots are used.
+     */
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+        private final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        @Override
+        Object get(int shift, int hash, String key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object slotKey = array[index];
+            if (slotKey == null) {
+                return ((Node) array[index + 1]).get(shift + BITS, hash, key);
+            }
+            return key.equals(slotKey) ? array[index + 1] : null;
+        }
+
+        @Override
+        Node plus(int shift, int hash, String key, Object value, boolean[] added) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                Object[] copy = new Object[array.length + 2];
+                System.arraycopy(array, 0, copy, 0, index);
+                copy[index] = key;
+                copy[index + 1] = value;
+                System.arraycopy(array, index, copy, index + 2, array.length - index);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, copy);
+            }
+            Object slotKey = array[index];
+            Object slotValue = array[index + 1];
+            if (slotKey == null) {
+                Node child = ((Node) slotValue).plus(shift + BITS, hash, key, value, added);
+                return child == slotValue ? this : with(index + 1, child);
+            }
+            if (key.equals(slotKey)) {
+                return value == slotValue ? this : with(index + 1, value);
+            }
+            added[0] = true;
+            Node child = pair(shift + BITS, (String) slotKey, slotValue, hash, key, value);
+            Object[] copy = array.clone();
+            copy[index] = null;
+            copy[index + 1] = child;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        @Override
+        Node minus(int shift, int hash, String key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object slotKey = array[index];
+            if (slotKey == null) {
+                Node child = ((Node) array[index + 1]).minus(shift + BITS, hash, key);
+                if (child == array[index + 1]) {
+                    return this;
+                }
+                if (child != null) {
+                    return with(index + 1, child);
+                }
+            } else if (!key.equals(slotKey)) {
+                return this;
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] copy = new Object[array.length - 2];
+            System.arraycopy(array, 0, copy, 0, index);
+            System.arraycopy(array, index + 2, copy, index, array.length - index - 2);
+            return new BitmapNode(bitmap ^ bit, copy);
+        }
+
+        @Override
+        void collect(List<Object> values) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) {
+                    ((Node) array[i + 1]).collect(values);
+                } else {
+                    values.add(array[i + 1]);
+                }
+            }
+        }
+
+        private BitmapNode with(int index, Object value) {
+            Object[] copy = array.clone();
+            copy[index] = value;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        private static Node pair(int shift, String key1, Object value1, int hash2, String key2, Object value2) {
+            int hash1 = hash(key1);
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new Object[] { key1, value1, key2, value2 });
+            }
+            boolean[] added = new boolean[1];
+            return EMPTY.plus(shift, hash1, key1, value1, added).plus(shift, hash2, key2, value2, added);
+        }
+    }
+
+    /**
+     * Node holding the keys whose hashes are equal.
+     */
+    private static final class CollisionNode extends Node {
+        private final int hash;
+        private final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        @Override
+        Object get(int shift, int hash, String key) {
+            int index = indexOf(key);
+            return index < 0 ? null : array[index + 1];
+        }
+
+        @Override
+        Node plus(int shift, int hash, String key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // the keys part below this level: nest this node in a bitmap node
+                BitmapNode nested = new BitmapNode(1 << ((this.hash >>> shift) & MASK), new Object[] { null, this });
+                return nested.plus(shift, hash, key, value, added);
+            }
+            int index = indexOf(key);
+            if (index >= 0) {
+                if (array[index + 1] == value) {
+                    return this;
+                }
+                Object[] copy = array.clone();
+                copy[index + 1] = value;
+                return new CollisionNode(hash, copy);
+            }
+            Object[] copy = Arrays.copyOf(array, array.length + 2);
+            copy[array.length] = key;
+            copy[array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, copy);
+        }
+
+        @Override
+        Node minus(int shift, int hash, String key) {
+            int index = indexOf(key);
+            if (index < 0) {
+                return this;
+            }
+            if (array.length == 2) {
+                return null;
+            }
+            Object[] copy = new Object[array.length - 2];
+            System.arraycopy(array, 0, copy, 0, index);
+            System.arraycopy(array, index + 2, copy, index, array.length - index - 2);
+            return new CollisionNode(hash, copy);
+        }
+
+        @Override
+        void collect(List<Object> values) {
+            for (int i = 1; i < array.length; i += 2) {
+                values.add(array[i]);
+            }
+        }
+
+        private int indexOf(String key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
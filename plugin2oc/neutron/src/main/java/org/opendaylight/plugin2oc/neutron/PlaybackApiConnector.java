@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.juniper.contrail.api.ApiConnector;
+import net.juniper.contrail.api.ApiObjectBase;
+import net.juniper.contrail.api.ApiPropertyBase;
+import net.juniper.contrail.api.ObjectReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ApiConnector serving the responses captured by a
+ * {@link RecordingApiConnector}, without any Contrail API server.
+ *
+ * Every call is answered by the first recording of the same operation, type
+ * and key (UUID, name or parent) that was not served yet, so a call made
+ * several times gets its responses in the recorded order. Calls on objects
+ * named by a random UUID, such as InstanceIps, do not find their key in the
+ * recording and get the next recorded call of the same operation and type
+ * instead. Calls that were not recorded at all are answered as by an empty
+ * API server: false, null or an empty list, and counted as misses.
+ *
+ * Recorded exceptions are thrown again, as an IOException when the original
+ * was one. Optionally every call takes the recorded latency, so that a
+ * replayed workload runs at the pace of the recorded one.
+ */
+public class PlaybackApiConnector implements ApiConnector {
+    /**
+     * Logger instance.
+     */
+    static final Logger LOGGER = LoggerFactory.getLogger(PlaybackApiConnector.class);
+
+    private final Map<String, Queue<Entry>> byKey = new HashMap<String, Queue<Entry>>();
+    private final Map<String, Queue<Entry>> byOperation = new HashMap<String, Queue<Entry>>();
+    private final boolean replayLatency;
+    private final int size;
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param replayLatency
+     *            Whether every call takes as long as it did when recorded.
+     */
+    public PlaybackApiConnector(File file, boolean replayLatency) throws IOException {
+        this(new BufferedInputStream(new FileInputStream(file)), replayLatency);
+    }
+
+    PlaybackApiConnector(InputStream in, boolean replayLatency) throws IOException {
+        this.replayLatency = replayLatency;
+        int count = 0;
+        try {
+            ContrailRecording.readHeader(in);
+            ContrailRecording.Decoder decoder = new ContrailRecording.Decoder();
+            byte[] body;
+            while ((body = ContrailRecording.readRecord(in)) != null) {
+                ContrailRecording.Record record = decoder.decode(body);
+                Entry entry = new Entry(body);
+                String operation = record.operation.ordinal() + " " + record.type;
+                add(byOperation, operation, entry);
+                add(byKey, operation + " " + record.key, entry);
+                count++;
+            }
+        } finally {
+            in.close();
+        }
+        size = count;
+        LOGGER.info("Loaded {} recorded Contrail calls", count);
+    }
+
+    /**
+     * A recorded call, decoded again every time it is served so that callers
+     * never share the objects returned.
+     */
+    private static final class Entry {
+        final byte[] body;
+        final AtomicBoolean served = new AtomicBoolean();
+
+        Entry(byte[] body) {
+            this.body = body;
+        }
+    }
+
+    @Override
+    public boolean create(ApiObjectBase obj) throws IOException {
+        ContrailRecording.Record record = serve(ContrailOperation.CREATE, obj.getClass(), ContrailRecording.key(obj));
+        if (record == null) {
+            return false;
+        }
+        boolean created = Boolean.TRUE.equals(result(record));
+        if (created && obj.getUuid() == null) {
+            obj.setUuid((String) record.state);
+        }
+        return created;
+    }
+
+    @Override
+    public boolean read(ApiObjectBase obj) throws IOException {
+        ContrailRecording.Record record = serve(ContrailOperation.READ, obj.getClass(), ContrailRecording.key(obj));
+        if (record == null) {
+            return false;
+        }
+        boolean read = Boolean.TRUE.equals(result(record));
+        if (read && record.state != null) {
+            String uuid = obj.getUuid();
+            ContrailRecording.copyFields(record.state, obj);
+            if (uuid != null) {
+                obj.setUuid(uuid);
+            }
+        }
+        return read;
+    }
+
+    @Override
+    public boolean update(ApiObjectBase obj) throws IOException {
+        ContrailRecording.Record record = serve(ContrailOperation.UPDATE, obj.getClass(), ContrailRecording.key(obj));
+        return record != null && Boolean.TRUE.equals(result(record));
+    }
+
+    @Override
+    public void delete(ApiObjectBase obj) throws IOException {
+        if (obj == null) {
+            return;
+        }
+        ContrailRecording.Record record = serve(ContrailOperation.DELETE, obj.getClass(), ContrailRecording.key(obj));
+        if (record != null) {
+            result(record);
+        }
+    }
+
+    @Override
+    public void delete(Class<? extends ApiObjectBase> cls, String uuid) throws IOException {
+        ContrailRecording.Record record = serve(ContrailOperation.DELETE, cls, uuid);
+        if (record != null) {
+            result(record);
+        }
+    }
+
+    @Override
+    public ApiObjectBase find(Class<? extends ApiObjectBase> cls, ApiObjectBase parent, String name) throws IOException {
+        ContrailRecording.Record record = serve(ContrailOperation.FIND, cls, ContrailRecording.key(parent, name));
+        return record == null ? null : (ApiObjectBase) result(record);
+    }
+
+    @Override
+    public ApiObjectBase findByFQN(Class<? extends ApiObjectBase> cls, String fullName) throws IOException {
+        ContrailRecording.Record record = serve(ContrailOperation.FIND_BY_FQN, cls, fullName);
+        return record == null ? null : (ApiObjectBase) result(record);
+    }
+
+    @Override
+    public ApiObjectBase findById(Class<? extends ApiObjectBase> cls, String uuid) throws IOException {
+        ContrailRecording.Record record = serve(ContrailOperation.FIND_BY_ID, cls, uuid);
+        return record == null ? null : (ApiObjectBase) result(record);
+    }
+
+    @Override
+    public String findByName(Class<? extends ApiObjectBase> cls, List<String> nameList) throws IOException {
+        ContrailRecording.Record record = serve(ContrailOperation.FIND_BY_NAME, cls, ContrailRecording.join(nameList, ":"));
+        return record == null ? null : (String) result(record);
+    }
+
+    @Override
+    public String findByName(Class<? extends ApiObjectBase> cls, ApiObjectBase parent, String name) throws IOException {
+        ContrailRecording.Record record = serve(ContrailOperation.FIND_BY_NAME, cls, ContrailRecording.key(parent, name));
+        return record == null ? null : (String) result(record);
+    }
+
+    @Override
+    public List<? extends ApiObjectBase> list(Class<? extends ApiObjectBase> cls, List<String> parent) throws IOException {
+        ContrailRecording.Record record = serve(ContrailOperation.LIST, cls, ContrailRecording.join(parent, ":"));
+        return record == null ? new ArrayList<ApiObjectBase>() : objects(result(record));
+    }
+
+    @Override
+    public <T extends ApiPropertyBase> List<? extends ApiObjectBase> getObjects(Class<? extends ApiObjectBase> cls, List<ObjectReference<T>> refList)
+            throws IOException {
+        ContrailRecording.Record record = serve(ContrailOperation.GET_OBJECTS, cls, ContrailRecording.key(refList));
+        return record == null ? new ArrayList<ApiObjectBase>() : objects(result(record));
+    }
+
+    /**
+     * @return Number of calls in the recording.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Number of calls answered from the recording.
+     */
+    public long getServed() {
+        return served.get();
+    }
+
+    /**
+     * @return Number of calls that found nothing left to serve them.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return The recorded call answering a call, or null if there is none
+     *         left.
+     */
+    private ContrailRecording.Record serve(ContrailOperation operation, Class<?> type, String key) throws IOException {
+        String operationKey = operation.ordinal() + " " + ContrailRecording.typeName(type);
+        Entry entry = take(byKey.get(operationKey + " " + key));
+        if (entry == null) {
+            entry = take(byOperation.get(operationKey));
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            LOGGER.debug("No recorded {} of {} {} left", operation.getMethodName(), ContrailRecording.typeName(type), key);
+            return null;
+        }
+        served.incrementAndGet();
+        ContrailRecording.Record record = new ContrailRecording.Decoder().decode(entry.body);
+        if (replayLatency) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(record.latencyNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return record;
+    }
+
+    /**
+     * @return The value returned by a recorded call, after throwing its
+     *         exception if it threw one.
+     */
+    private static Object result(ContrailRecording.Record record) throws IOException {
+        if (!(record.result instanceof ContrailRecording.Failure)) {
+            return record.result;
+        }
+        ContrailRecording.Failure failure = (ContrailRecording.Failure) record.result;
+        boolean ioException;
+        try {
+            ioException = IOException.class.isAssignableFrom(Class.forName(failure.className));
+        } catch (ClassNotFoundException e) {
+            ioException = true;
+        }
+        if (ioException) {
+            throw new IOException(failure.message);
+        }
+        throw new IllegalStateException(failure.className + ": " + failure.message);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<? extends ApiObjectBase> objects(Object result) {
+        return (List<? extends ApiObjectBase>) result;
+    }
+
+    private static Entry take(Queue<Entry> entries) {
+        if (entries == null) {
+            return null;
+        }
+        Entry entry;
+        while ((entry = entries.poll()) != null) {
+            // entries are queued by key and by operation; either may serve them first
+            if (entry.served.compareAndSet(false, true)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private static void add(Map<String, Queue<Entry>> entries, String key, Entry entry) {
+        Queue<Entry> queue = entries.get(key);
+        if (queue == null) {
+            queue = new ConcurrentLinkedQueue<Entry>();
+            entries.put(key, queue);
+        }
+        queue.add(entry);
+    }
+}
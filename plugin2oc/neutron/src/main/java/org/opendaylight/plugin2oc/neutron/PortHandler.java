@@ -10,8 +10,19 @@ package org.opendaylight.plugin2oc.neutron;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import net.juniper.contrail.api.ApiConnector;
 import net.juniper.contrail.api.ApiPropertyBase;
@@ -31,9 +42,12 @@ import org.opendaylight.controller.networkconfig.neutron.NeutronCRUDInterfaces;
 import org.opendaylight.controller.networkconfig.neutron.NeutronPort;
 import org.opendaylight.controller.networkconfig.neutron.Neutron_IPs;
 import org.opendaylight.controller.networkconfig.neutron.NeutronSubnet;
+import org.opendaylight.plugin2oc.neutron.ReferenceIndex.Relation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * Handle requests for Neutron Port.
  */
@@ -44,6 +58,17 @@ public class PortHandler implements INeutronPortAware, INeutronPortCRUD {
     static final Logger LOGGER = LoggerFactory.getLogger(PortHandler.class);
     static ApiConnector apiConnector;
     private NeutronPort originalPort;
+    private final RequestDeduplicator requestDeduplicator = new RequestDeduplicator();
+    static final int DEFAULT_INSTANCE_IP_THREADS = 8;
+    private static final ExecutorService INSTANCE_IP_EXECUTOR = instanceIpExecutor(Integer.getInteger("plugin2oc.port.ip.threads",
+            DEFAULT_INSTANCE_IP_THREADS));
+
+    private static ExecutorService instanceIpExecutor(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("plugin2oc-instance-ip-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 
     public NeutronPort getOriginalPort() {
         return originalPort;
@@ -81,13 +106,28 @@ public class PortHandler implements INeutronPortAware, INeutronPortCRUD {
             LOGGER.warn("Neutron Fixed Ips can't be null..");
             return HttpURLConnection.HTTP_FORBIDDEN;
         }
+        String owner = Activator.addressIndex.macOwner(neutronPort.getMacAddress());
+        if (owner != null && !owner.equalsIgnoreCase(neutronPort.getID())) {
+            LOGGER.error("MAC address {} is already used by port {}", neutronPort.getMacAddress(), owner);
+            return HttpURLConnection.HTTP_CONFLICT;
+        }
+        for (Neutron_IPs ip : ips) {
+            if (!inSubnet(ip)) {
+                LOGGER.error("IP address {} is not in the Cidr of subnet {}", ip.getIpAddress(), ip.getSubnetUUID());
+                return HttpURLConnection.HTTP_BAD_REQUEST;
+            }
+            owner = Activator.addressIndex.ipOwner(neutronPort.getNetworkUUID(), ip.getIpAddress());
+            if (owner != null && !owner.equalsIgnoreCase(neutronPort.getID())) {
+                LOGGER.error("IP address {} is already used by port {}", ip.getIpAddress(), owner);
+                return HttpURLConnection.HTTP_CONFLICT;
+            }
+        }
         Project project;
         try {
             project = (Project) apiConnector.findById(Project.class, neutronPort.getTenantID());
             if (project == null) {
                 try {
-                    Thread.currentThread();
-                    Thread.sleep(3000);
+                    OperationTrace.sleepBeforeRetry(3000);
                 } catch (InterruptedException e) {
                     LOGGER.error("InterruptedException :      ", e);
                     return HttpURLConnection.HTTP_INTERNAL_ERROR;
@@ -106,7 +146,9 @@ public class PortHandler implements INeutronPortAware, INeutronPortCRUD {
     }
 
     /**
-     * Invoked to add the specified Neutron port.
+     * Invoked to add the specified Neutron port. Its MAC address and fixed IP
+     * addresses are claimed in the {@link AddressIndex} first, and freed again
+     * if the port can not be created.
      *
      * @param network
      *            An instance of new Neutron Port object.
@@ -114,7 +156,109 @@ public class PortHandler implements INeutronPortAware, INeutronPortCRUD {
      * @return {@link Boolean} A boolean to the creation request.
      */
     @Override
-    public boolean addPort(NeutronPort neutronPort) {
+    public boolean addPort(final NeutronPort neutronPort) {
+        return requestDeduplicator.execute(neutronPort.getID(), "addPort", new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                if (!claimAddresses(neutronPort)) {
+                    return false;
+                }
+                boolean created = false;
+                try {
+                    created = createPort(neutronPort);
+                    return created;
+                } finally {
+                    if (!created) {
+                        releaseAddresses(neutronPort);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Invoked to claim the MAC address and the requested fixed IP addresses of
+     * a new port. Addresses left for Neutron to allocate are not indexed.
+     *
+     * @return Whether the port owns all its addresses.
+     */
+    private boolean claimAddresses(NeutronPort neutronPort) {
+        String portID;
+        try {
+            portID = UUID.fromString(neutronPort.getID()).toString();
+        } catch (Exception ex) {
+            // rejected by createPort
+            return true;
+        }
+        if (!Activator.addressIndex.claimMac(neutronPort.getMacAddress(), portID)) {
+            LOGGER.warn("MAC address {} is already used by port {}", neutronPort.getMacAddress(),
+                    Activator.addressIndex.macOwner(neutronPort.getMacAddress()));
+            return false;
+        }
+        if (neutronPort.getFixedIPs() != null) {
+            for (Neutron_IPs ip : neutronPort.getFixedIPs()) {
+                if (!Activator.addressIndex.claimIp(neutronPort.getNetworkUUID(), ip.getIpAddress(), portID)) {
+                    LOGGER.warn("IP address {} is already used by port {}", ip.getIpAddress(),
+                            Activator.addressIndex.ipOwner(neutronPort.getNetworkUUID(), ip.getIpAddress()));
+                    releaseAddresses(neutronPort);
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Invoked to free the addresses a port owns after it failed to be created.
+     */
+    private void releaseAddresses(NeutronPort neutronPort) {
+        String portID;
+        try {
+            portID = UUID.fromString(neutronPort.getID()).toString();
+        } catch (Exception ex) {
+            return;
+        }
+        Activator.addressIndex.releaseMac(neutronPort.getMacAddress(), portID);
+        if (neutronPort.getFixedIPs() != null) {
+            for (Neutron_IPs ip : neutronPort.getFixedIPs()) {
+                Activator.addressIndex.releaseIp(neutronPort.getNetworkUUID(), ip.getIpAddress(), portID);
+            }
+        }
+    }
+
+    /**
+     * Invoked to check that a fixed IP address is in the Cidr of its subnet,
+     * through the {@link SubnetIndex}. Fixed IPs
+     * without an address, or on subnets not created through the plugin, are
+     * not checked.
+     */
+    private boolean inSubnet(Neutron_IPs ip) {
+        if (ip.getIpAddress() == null) {
+            return true;
+        }
+        NeutronSubnet subnet = Activator.topology.snapshot().get(NeutronSubnet.class, ip.getSubnetUUID());
+        if (subnet == null) {
+            return true;
+        }
+        try {
+            return Activator.subnetIndex.of(subnet).inCidr(ip.getIpAddress());
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Invalid Cidr or allocation pool of subnet {} : {}", ip.getSubnetUUID(), e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * Invoked to create the Contrail objects backing the specified Neutron
+     * port. Retried requests for the same port are collapsed by
+     * {@link #addPort(NeutronPort)} before reaching this method.
+     *
+     * @param neutronPort
+     *            An instance of new Neutron Port object.
+     *
+     * @return {@link Boolean} A boolean to the creation request.
+     */
+    private boolean createPort(NeutronPort neutronPort) {
         apiConnector = Activator.apiConnector;
         String networkID = neutronPort.getNetworkUUID();
         String portID = neutronPort.getID();
@@ -145,75 +289,77 @@ public class PortHandler implements INeutronPortAware, INeutronPortCRUD {
             return false;
         }
         try {
-            LOGGER.debug("portId:    " + portID);
-            virtualMachineInterface = (VirtualMachineInterface) apiConnector.findById(VirtualMachineInterface.class, portID);
+            LOGGER.debug("portId:    {}", portID);
+            virtualMachineInterface = (VirtualMachineInterface) ExistenceFilter.of(VirtualMachineInterface.class).findById(apiConnector, portID);
             if (deviceID != null && !(("").equals(deviceID))) {
-                virtualMachine = (VirtualMachine) apiConnector.findById(VirtualMachine.class, deviceID);
-                LOGGER.debug("virtualMachine:   " + virtualMachine);
+                virtualMachine = Activator.virtualMachines.get(apiConnector, deviceID);
                 if (virtualMachine == null) {
-                    virtualMachine = new VirtualMachine();
-                    virtualMachine.setName(deviceID);
-                    virtualMachine.setUuid(deviceID);
-                    boolean virtualMachineCreated = apiConnector.create(virtualMachine);
-                    LOGGER.debug("virtualMachineCreated: " + virtualMachineCreated);
-                    if (!virtualMachineCreated) {
-                        LOGGER.warn("virtualMachine creation failed..");
-                        return false;
-                    }
-                    LOGGER.info("virtualMachine : " + virtualMachine.getName() + "  having UUID : " + virtualMachine.getUuid()
-                            + "  sucessfully created...");
+                    return false;
                 }
             }
-            project = (Project) apiConnector.findById(Project.class, projectID);
-            virtualNetwork = (VirtualNetwork) apiConnector.findById(VirtualNetwork.class, networkID);
-            LOGGER.info("virtualNetwork: " + virtualNetwork);
+            project = Activator.warmNetworks.project(apiConnector, projectID);
+            virtualNetwork = Activator.warmNetworks.network(apiConnector, networkID);
+            LOGGER.info("virtualNetwork: {}", virtualNetwork);
             if (virtualNetwork == null) {
                 LOGGER.warn("virtualNetwork does not exist..");
                 return false;
-            } else {
-                virtualMachineInterface = new VirtualMachineInterface();
-                virtualMachineInterface.addVirtualNetwork(virtualNetwork);
-                virtualMachineInterface.setDisplayName(portDesc);
-                virtualMachineInterface.setUuid(portID);
-                virtualMachineInterface.setName(portDesc);
-                virtualMachineInterface.setParent(project);
-                macAddressesType.addMacAddress(portMACAddress);
-                virtualMachineInterface.setMacAddresses(macAddressesType);
-                if (deviceID != null && !(("").equals(deviceID))) {
-                    virtualMachineInterface.setVirtualMachine(virtualMachine);
-                }
-                boolean virtualMachineInterfaceCreated = apiConnector.create(virtualMachineInterface);
-                if (!virtualMachineInterfaceCreated) {
-                    LOGGER.warn("actual virtualMachineInterface creation failed..");
-                    return false;
-                }
-                LOGGER.info("virtualMachineInterface : " + virtualMachineInterface.getName() + "  having UUID : " + virtualMachineInterface.getUuid()
-                        + "  sucessfully created...");
             }
-            INeutronSubnetCRUD systemCRUD = NeutronCRUDInterfaces.getINeutronSubnetCRUD(this);
-            NeutronSubnet subnet = null;
+            virtualMachineInterface = new VirtualMachineInterface();
+            virtualMachineInterface.addVirtualNetwork(virtualNetwork);
+            virtualMachineInterface.setDisplayName(portDesc);
+            virtualMachineInterface.setUuid(portID);
+            virtualMachineInterface.setName(portDesc);
+            virtualMachineInterface.setParent(project);
+            macAddressesType.addMacAddress(portMACAddress);
+            virtualMachineInterface.setMacAddresses(macAddressesType);
+            if (deviceID != null && !(("").equals(deviceID))) {
+                virtualMachineInterface.setVirtualMachine(virtualMachine);
+            }
             List<Neutron_IPs> ips = neutronPort.getFixedIPs();
-            InstanceIp instanceIp = new InstanceIp();
-            String instaneIpUuid = UUID.randomUUID().toString();
+            List<InstanceIp> instanceIps = new ArrayList<InstanceIp>();
             for (Neutron_IPs ipValues : ips) {
-                if (ipValues.getIpAddress() == null) {
-                    subnet = systemCRUD.getSubnet(ipValues.getSubnetUUID());
-                    instanceIp.setAddress(subnet.getLowAddr());
-                } else {
-                    instanceIp.setAddress(ipValues.getIpAddress());
+                if (!inSubnet(ipValues)) {
+                    LOGGER.error("IP address {} is not in the Cidr of subnet {}", ipValues.getIpAddress(), ipValues.getSubnetUUID());
+                    return false;
                 }
+                InstanceIp instanceIp = instanceIp(virtualMachineInterface, virtualNetwork);
+                // left to Contrail to allocate when the fixed IP has no address
+                instanceIp.setAddress(ipValues.getIpAddress());
+                instanceIps.add(instanceIp);
             }
-            instanceIp.setName(instaneIpUuid);
-            instanceIp.setUuid(instaneIpUuid);
-            instanceIp.setParent(virtualMachineInterface);
-            instanceIp.setVirtualMachineInterface(virtualMachineInterface);
-            instanceIp.setVirtualNetwork(virtualNetwork);
-            boolean instanceIpCreated = apiConnector.create(instanceIp);
-            if (!instanceIpCreated) {
-                LOGGER.warn("instanceIp addition failed..");
+            if (instanceIps.isEmpty()) {
+                // left to Contrail to allocate
+                instanceIps.add(instanceIp(virtualMachineInterface, virtualNetwork));
+            }
+            boolean virtualMachineInterfaceCreated = apiConnector.create(virtualMachineInterface);
+            if (!virtualMachineInterfaceCreated) {
+                LOGGER.warn("actual virtualMachineInterface creation failed..");
+                Activator.warmNetworks.forget(networkID);
+                if (virtualMachine != null) {
+                    Activator.virtualMachines.forget(deviceID);
+                }
+                return false;
+            }
+            LOGGER.info("virtualMachineInterface : {}  having UUID : {}  sucessfully created...",
+                    virtualMachineInterface.getName(), virtualMachineInterface.getUuid());
+            ExistenceFilter.of(VirtualMachineInterface.class).add(portID);
+            Activator.referenceIndex.add(Relation.NETWORK_PORTS, networkID, portID);
+            boolean instanceIpsCreated = false;
+            try {
+                instanceIpsCreated = createInstanceIps(instanceIps);
+            } finally {
+                if (!instanceIpsCreated) {
+                    deleteInterface(virtualMachineInterface, networkID);
+                }
+            }
+            if (!instanceIpsCreated) {
                 return false;
             }
-            LOGGER.info("Instance IP added sucessfully...");
+            LOGGER.info("{} Instance IP(s) added sucessfully...", instanceIps.size());
+            Activator.topology.put(NeutronPort.class, portID, neutronPort);
+            for (Neutron_IPs ipValues : ips) {
+                Activator.referenceIndex.add(Relation.SUBNET_PORTS, ipValues.getSubnetUUID(), portID);
+            }
             return true;
         } catch (IOException ie) {
             LOGGER.error("IOException :    ", ie);
@@ -221,6 +367,269 @@ public class PortHandler implements INeutronPortAware, INeutronPortCRUD {
         }
     }
 
+    /**
+     * Invoked to delete the VirtualMachineInterface of a port whose
+     * InstanceIps could not be created, so that the network is not kept in
+     * use by it and the port can be created again.
+     */
+    private static void deleteInterface(VirtualMachineInterface virtualMachineInterface, String networkUUID) {
+        try {
+            apiConnector.delete(virtualMachineInterface);
+        } catch (IOException e) {
+            LOGGER.error("IOException :    ", e);
+            return;
+        }
+        LOGGER.info("virtualMachineInterface : {} deleted as its Instance IP(s) could not be added", virtualMachineInterface.getUuid());
+        ExistenceFilter.of(VirtualMachineInterface.class).remove(virtualMachineInterface.getUuid());
+        Activator.referenceIndex.remove(Relation.NETWORK_PORTS, networkUUID, virtualMachineInterface.getUuid());
+    }
+
+    private static InstanceIp instanceIp(VirtualMachineInterface virtualMachineInterface, VirtualNetwork virtualNetwork) {
+        InstanceIp instanceIp = new InstanceIp();
+        String instaneIpUuid = UUID.randomUUID().toString();
+        instanceIp.setName(instaneIpUuid);
+        instanceIp.setUuid(instaneIpUuid);
+        instanceIp.setParent(virtualMachineInterface);
+        instanceIp.setVirtualMachineInterface(virtualMachineInterface);
+        instanceIp.setVirtualNetwork(virtualNetwork);
+        return instanceIp;
+    }
+
+    /**
+     * Invoked to create the InstanceIps of a port, one per fixed IP. The
+     * first is created by the calling thread and the others concurrently, by
+     * at most plugin2oc.port.ip.threads threads, 8 by default, for all ports.
+     * If one can not be created, those created are deleted again.
+     *
+     * @return Whether all InstanceIps were created.
+     */
+    private static boolean createInstanceIps(List<InstanceIp> instanceIps) throws IOException {
+        final ApiConnector connector = apiConnector;
+        List<Future<Boolean>> created = new ArrayList<Future<Boolean>>();
+        for (final InstanceIp instanceIp : instanceIps.subList(1, instanceIps.size())) {
+            created.add(INSTANCE_IP_EXECUTOR.submit(OperationTrace.traced(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws IOException {
+                    return connector.create(instanceIp);
+                }
+            })));
+        }
+        List<InstanceIp> rollback = new ArrayList<InstanceIp>();
+        boolean first = false;
+        try {
+            first = connector.create(instanceIps.get(0));
+        } catch (IOException e) {
+            LOGGER.error("IOException :    ", e);
+        }
+        if (first) {
+            rollback.add(instanceIps.get(0));
+        }
+        boolean all = first;
+        for (int i = 0; i < created.size(); i++) {
+            boolean done = false;
+            try {
+                done = created.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                LOGGER.error("Exception :    ", e.getCause());
+            }
+            if (done) {
+                rollback.add(instanceIps.get(i + 1));
+            }
+            all &= done;
+        }
+        if (!all) {
+            LOGGER.warn("instanceIp addition failed..");
+            for (InstanceIp instanceIp : rollback) {
+                connector.delete(instanceIp);
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Invoked to read the InstanceIps of a port concurrently, on the threads
+     * creating InstanceIps.
+     *
+     * @return The InstanceIps, or null if one could not be read.
+     */
+    private static List<InstanceIp> instanceIps(VirtualMachineInterface virtualMachineInterface) {
+        final ApiConnector connector = apiConnector;
+        List<Future<InstanceIp>> reads = new ArrayList<Future<InstanceIp>>();
+        if (virtualMachineInterface.getInstanceIpBackRefs() != null) {
+            for (final ObjectReference<ApiPropertyBase> ref : virtualMachineInterface.getInstanceIpBackRefs()) {
+                reads.add(INSTANCE_IP_EXECUTOR.submit(OperationTrace.traced(new Callable<InstanceIp>() {
+                    @Override
+                    public InstanceIp call() throws IOException {
+                        return (InstanceIp) connector.findById(InstanceIp.class, ref.getUuid());
+                    }
+                })));
+            }
+        }
+        List<InstanceIp> instanceIps = new ArrayList<InstanceIp>();
+        for (Future<InstanceIp> read : reads) {
+            try {
+                InstanceIp instanceIp = read.get();
+                if (instanceIp != null) {
+                    instanceIps.add(instanceIp);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                LOGGER.error("Exception :    ", e.getCause());
+                return null;
+            }
+        }
+        return instanceIps;
+    }
+
+    /**
+     * Invoked to pick an address of a subnet for a fixed IP without one.
+     */
+    private String lowAddress(String subnetUUID) {
+        NeutronSubnet subnet = Activator.topology.snapshot().get(NeutronSubnet.class, subnetUUID);
+        if (subnet == null) {
+            INeutronSubnetCRUD systemCRUD = NeutronCRUDInterfaces.getINeutronSubnetCRUD(this);
+            subnet = systemCRUD == null ? null : systemCRUD.getSubnet(subnetUUID);
+        }
+        return subnet == null ? null : subnet.getLowAddr();
+    }
+
+    /**
+     * Invoked to apply the InstanceIp moves, additions and deletions of a
+     * port update as one batch, run concurrently like
+     * {@link #createInstanceIps(List)}. The addresses moved to are claimed in
+     * the {@link AddressIndex} first, and those given up released once their
+     * InstanceIps are moved or deleted.
+     *
+     * @return Whether all changes were made.
+     */
+    private static boolean reassign(FixedIpPlan plan, VirtualMachineInterface virtualMachineInterface, VirtualNetwork virtualNetwork,
+            String networkUUID, String portUUID) {
+        final ApiConnector connector = apiConnector;
+        List<String> claimed = new ArrayList<String>();
+        List<Callable<Boolean>> changes = new ArrayList<Callable<Boolean>>();
+        for (FixedIpPlan.Move move : plan.moves()) {
+            claimed.add(move.address);
+            final InstanceIp instanceIp = move.instanceIp;
+            instanceIp.setAddress(move.address);
+            instanceIp.setVirtualNetwork(virtualNetwork);
+            changes.add(OperationTrace.traced(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws IOException {
+                    return connector.update(instanceIp);
+                }
+            }));
+        }
+        for (String address : plan.additions()) {
+            claimed.add(address);
+            final InstanceIp instanceIp = instanceIp(virtualMachineInterface, virtualNetwork);
+            instanceIp.setAddress(address);
+            changes.add(OperationTrace.traced(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws IOException {
+                    return connector.create(instanceIp);
+                }
+            }));
+        }
+        for (final InstanceIp instanceIp : plan.deletions()) {
+            changes.add(OperationTrace.traced(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws IOException {
+                    connector.delete(instanceIp);
+                    return true;
+                }
+            }));
+        }
+        for (int i = 0; i < claimed.size(); i++) {
+            if (!Activator.addressIndex.claimIp(networkUUID, claimed.get(i), portUUID)) {
+                LOGGER.error("IP address {} is already used by port {}", claimed.get(i), Activator.addressIndex.ipOwner(networkUUID, claimed.get(i)));
+                for (String address : claimed.subList(0, i)) {
+                    Activator.addressIndex.releaseIp(networkUUID, address, portUUID);
+                }
+                return false;
+            }
+        }
+        List<Future<Boolean>> results;
+        try {
+            results = INSTANCE_IP_EXECUTOR.invokeAll(changes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        boolean all = true;
+        int moves = plan.moves().size();
+        int additions = plan.additions().size();
+        for (int i = 0; i < results.size(); i++) {
+            boolean done = false;
+            try {
+                done = results.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                LOGGER.error("Exception :    ", e.getCause());
+            }
+            all &= done;
+            if (i < moves) {
+                FixedIpPlan.Move move = plan.moves().get(i);
+                if (done) {
+                    release(plan, networkUUID, move.previousNetwork, move.previousAddress, portUUID);
+                } else {
+                    Activator.addressIndex.releaseIp(networkUUID, move.address, portUUID);
+                }
+            } else if (i < moves + additions) {
+                if (!done) {
+                    Activator.addressIndex.releaseIp(networkUUID, plan.additions().get(i - moves), portUUID);
+                }
+            } else if (done) {
+                InstanceIp instanceIp = plan.deletions().get(i - moves - additions);
+                release(plan, networkUUID, FixedIpPlan.network(instanceIp), instanceIp.getAddress(), portUUID);
+            }
+        }
+        if (!all) {
+            LOGGER.warn("instanceIp updation failed..");
+        }
+        return all;
+    }
+
+    /**
+     * Invoked to release an address given up by a port, unless the port
+     * keeps it through another InstanceIp.
+     */
+    private static void release(FixedIpPlan plan, String networkUUID, String previousNetwork, String previousAddress, String portUUID) {
+        if (previousAddress != null && !(networkUUID.equals(previousNetwork) && plan.requested(previousAddress))) {
+            Activator.addressIndex.releaseIp(previousNetwork, previousAddress, portUUID);
+        }
+    }
+
+    /**
+     * Invoked to release the fixed IPs of the original port the update gave
+     * up from their Neutron subnets.
+     */
+    private void releaseSubnetAddresses(FixedIpPlan plan, String networkUUID) {
+        if (originalPort == null || originalPort.getFixedIPs() == null) {
+            return;
+        }
+        INeutronSubnetCRUD systemCRUD = null;
+        for (Neutron_IPs ip : originalPort.getFixedIPs()) {
+            if (ip.getIpAddress() == null || networkUUID.equals(originalPort.getNetworkUUID()) && plan.requested(ip.getIpAddress())) {
+                continue;
+            }
+            if (systemCRUD == null) {
+                systemCRUD = NeutronCRUDInterfaces.getINeutronSubnetCRUD(this);
+                if (systemCRUD == null) {
+                    return;
+                }
+            }
+            NeutronSubnet subnet = systemCRUD.getSubnet(ip.getSubnetUUID());
+            if (subnet != null) {
+                subnet.releaseIP(ip.getIpAddress());
+            }
+        }
+    }
+
     /**
      * Invoked to take action after a port has been created.
      *
@@ -273,6 +682,10 @@ public class PortHandler implements INeutronPortAware, INeutronPortCRUD {
         try {
             VirtualMachineInterface virtualMachineInterface = (VirtualMachineInterface) apiConnector
                     .findById(VirtualMachineInterface.class, portUUID);
+            String networkUUID = null;
+            if (virtualMachineInterface.getVirtualNetwork() != null && !virtualMachineInterface.getVirtualNetwork().isEmpty()) {
+                networkUUID = virtualMachineInterface.getVirtualNetwork().get(0).getUuid();
+            }
             List<ObjectReference<ApiPropertyBase>> instanceIPs = virtualMachineInterface.getInstanceIpBackRefs();
             if (instanceIPs != null) {
                 for (ObjectReference<ApiPropertyBase> ref : instanceIPs) {
@@ -280,18 +693,32 @@ public class PortHandler implements INeutronPortAware, INeutronPortCRUD {
                     if (instanceIPUUID != null) {
                         instanceIP = (InstanceIp) apiConnector.findById(InstanceIp.class, instanceIPUUID);
                         apiConnector.delete(instanceIP);
+                        Activator.addressIndex.releaseIp(networkUUID, instanceIP.getAddress(), virtualMachineInterface.getUuid());
                     }
                 }
             }
             apiConnector.delete(virtualMachineInterface);
+            ExistenceFilter.of(VirtualMachineInterface.class).remove(portUUID);
+            Activator.referenceIndex.removeSource(Relation.NETWORK_PORTS, portUUID);
+            Activator.referenceIndex.removeSource(Relation.SUBNET_PORTS, portUUID);
+            Activator.referenceIndex.removeSource(Relation.ROUTER_INTERFACES, portUUID);
+            Activator.referenceIndex.removeTarget(Relation.PORT_FLOATING_IPS, portUUID);
+            Activator.topology.remove(NeutronPort.class, portUUID);
+            if (virtualMachineInterface.getMacAddresses() != null && virtualMachineInterface.getMacAddresses().getMacAddress() != null) {
+                for (String mac : virtualMachineInterface.getMacAddresses().getMacAddress()) {
+                    Activator.addressIndex.releaseMac(mac, virtualMachineInterface.getUuid());
+                }
+            }
             VirtualMachine virtualMachine = (VirtualMachine) apiConnector.findById(VirtualMachine.class, virtualMachineInterface.getVirtualMachine()
                     .get(0).getUuid());
             if (virtualMachine != null) {
                 virtualMachineInterfaceBackRefs = virtualMachine.getVirtualMachineInterfaceBackRefs();
                 if (virtualMachineInterfaceBackRefs == null) {
                     apiConnector.delete(virtualMachine);
+                    Activator.virtualMachines.forget(virtualMachine.getUuid());
                 }
             }
+            requestDeduplicator.forget(portUUID, "addPort");
             LOGGER.info("Specified port deleted sucessfully...");
             return true;
         } catch (IOException io) {
@@ -344,6 +771,20 @@ public class PortHandler implements INeutronPortAware, INeutronPortCRUD {
             LOGGER.error("MAC Address for the port can't be updated..");
             return HttpURLConnection.HTTP_BAD_REQUEST;
         }
+        if (deltaPort.getFixedIPs() != null) {
+            String networkUUID = deltaPort.getNetworkUUID() != null ? deltaPort.getNetworkUUID() : port.getNetworkUUID();
+            for (Neutron_IPs ip : deltaPort.getFixedIPs()) {
+                if (!inSubnet(ip)) {
+                    LOGGER.error("IP address {} is not in the Cidr of subnet {}", ip.getIpAddress(), ip.getSubnetUUID());
+                    return HttpURLConnection.HTTP_BAD_REQUEST;
+                }
+                String owner = Activator.addressIndex.ipOwner(networkUUID, ip.getIpAddress());
+                if (owner != null && !owner.equalsIgnoreCase(port.getID())) {
+                    LOGGER.error("IP address {} is already used by port {}", ip.getIpAddress(), owner);
+                    return HttpURLConnection.HTTP_CONFLICT;
+                }
+            }
+        }
         originalPort = port;
         return HttpURLConnection.HTTP_OK;
     }
@@ -356,6 +797,7 @@ public class PortHandler implements INeutronPortAware, INeutronPortCRUD {
         String portName = deltaPort.getName();
         List<Neutron_IPs> fixedIPs = deltaPort.getFixedIPs();
         boolean instanceIpUpdate = false;
+        boolean networkUpdate = false;
         String networkUUID = deltaPort.getNetworkUUID();
         VirtualNetwork virtualnetwork = null;
         VirtualMachineInterface virtualMachineInterface;
@@ -367,49 +809,68 @@ public class PortHandler implements INeutronPortAware, INeutronPortCRUD {
                         networkUUID = networks.getUuid();
                     }
                 }
-                boolean subnetExist = false;
                 virtualnetwork = (VirtualNetwork) apiConnector.findById(VirtualNetwork.class, networkUUID);
-                if (virtualnetwork != null && virtualnetwork.getNetworkIpam() != null) {
-                    for (Neutron_IPs fixedIp : fixedIPs) {
-                        for (ObjectReference<VnSubnetsType> ref : virtualnetwork.getNetworkIpam()) {
-                            VnSubnetsType vnSubnetsType = ref.getAttr();
-                            if (vnSubnetsType != null) {
-                                List<VnSubnetsType.IpamSubnetType> subnets = vnSubnetsType.getIpamSubnets();
-                                if (subnets != null) {
-                                    for (VnSubnetsType.IpamSubnetType subnetValue : subnets) {
-                                        Boolean doesSubnetExist = subnetValue.getSubnetUuid().matches(fixedIp.getSubnetUUID());
-                                        if (doesSubnetExist) {
-                                            subnetExist = true;
-                                            for (ObjectReference<ApiPropertyBase> instanceIp : virtualMachineInterface.getInstanceIpBackRefs()) {
-                                                InstanceIp instanceIpLocal = (InstanceIp) apiConnector.findById(InstanceIp.class, instanceIp.getUuid());
-                                                instanceIpLocal.setVirtualNetwork(virtualnetwork);
-                                                INeutronSubnetCRUD systemCRUD = NeutronCRUDInterfaces.getINeutronSubnetCRUD(this);
-                                                NeutronSubnet subnet = null;
-                                                for (Neutron_IPs ip : originalPort.getFixedIPs()) {
-                                                    subnet = systemCRUD.getSubnet(ip.getSubnetUUID());
-                                                    subnet.releaseIP(ip.getIpAddress());
-                                                }
-                                                if (fixedIp.getIpAddress() == null) {
-                                                    subnet = systemCRUD.getSubnet(fixedIp.getSubnetUUID());
-                                                    instanceIpLocal.setAddress(subnet.getLowAddr());
-                                                } else {
-                                                    instanceIpLocal.setAddress(fixedIp.getIpAddress());
-                                                }
-                                                instanceIpUpdate = apiConnector.update(instanceIpLocal);
-                                                virtualMachineInterface.setVirtualNetwork(virtualnetwork);
-                                            }
-                                        }
-                                    }
-                                }
-                            }
+                List<VnSubnetsType.IpamSubnetType> subnets = ReferenceIndex.subnets(virtualnetwork);
+                Set<String> subnetUUIDs = new HashSet<String>();
+                for (VnSubnetsType.IpamSubnetType subnet : subnets) {
+                    subnetUUIDs.add(subnet.getSubnetUuid());
+                }
+                if (fixedIPs.isEmpty()) {
+                    LOGGER.error("Subnet UUID must exist in the network..");
+                    originalPort = null;
+                    return false;
+                }
+                for (Neutron_IPs fixedIp : fixedIPs) {
+                    if (!subnetUUIDs.contains(fixedIp.getSubnetUUID())) {
+                        LOGGER.error("Subnet UUID must exist in the network..");
+                        originalPort = null;
+                        return false;
+                    }
+                    if (!inSubnet(fixedIp)) {
+                        LOGGER.error("IP address {} is not in the Cidr of subnet {}", fixedIp.getIpAddress(), fixedIp.getSubnetUUID());
+                        originalPort = null;
+                        return false;
+                    }
+                }
+                List<InstanceIp> instanceIps = instanceIps(virtualMachineInterface);
+                if (instanceIps == null) {
+                    originalPort = null;
+                    return false;
+                }
+                FixedIpPlan plan = new FixedIpPlan(networkUUID, instanceIps);
+                for (Neutron_IPs fixedIp : fixedIPs) {
+                    if (fixedIp.getIpAddress() != null) {
+                        plan.add(fixedIp.getIpAddress());
+                    }
+                }
+                for (Neutron_IPs fixedIp : fixedIPs) {
+                    if (fixedIp.getIpAddress() == null && !plan.keepAny(subnets, fixedIp.getSubnetUUID())) {
+                        String address = lowAddress(fixedIp.getSubnetUUID());
+                        if (address == null) {
+                            LOGGER.error("No address left in subnet {}", fixedIp.getSubnetUUID());
+                            originalPort = null;
+                            return false;
                         }
+                        plan.add(address);
                     }
                 }
-                if (!subnetExist) {
-                    LOGGER.error("Subnet UUID must exist in the network..");
+                if (!reassign(plan, virtualMachineInterface, virtualnetwork, networkUUID, portUUID)) {
                     originalPort = null;
                     return false;
                 }
+                releaseSubnetAddresses(plan, networkUUID);
+                instanceIpUpdate = true;
+                List<ObjectReference<ApiPropertyBase>> networks = virtualMachineInterface.getVirtualNetwork();
+                if (networks == null || networks.isEmpty() || !networkUUID.equals(networks.get(0).getUuid())) {
+                    virtualMachineInterface.setVirtualNetwork(virtualnetwork);
+                    networkUpdate = true;
+                }
+                List<String> portSubnets = new ArrayList<String>();
+                for (Neutron_IPs fixedIp : fixedIPs) {
+                    portSubnets.add(fixedIp.getSubnetUUID());
+                }
+                Activator.referenceIndex.setTargets(Relation.SUBNET_PORTS, portUUID, portSubnets);
+                Activator.referenceIndex.setTargets(Relation.NETWORK_PORTS, portUUID, Collections.singleton(networkUUID));
             }
             if (deviceID != null) {
                 if (("").equals(deviceID)) {
@@ -417,25 +878,15 @@ public class PortHandler implements INeutronPortAware, INeutronPortCRUD {
                 } else {
                     deviceID = UUID.fromString(deltaPort.getDeviceID()).toString();
                     try {
-                        virtualMachine = (VirtualMachine) apiConnector.findById(VirtualMachine.class, deviceID);
+                        virtualMachine = Activator.virtualMachines.get(apiConnector, deviceID);
                     } catch (Exception e) {
                         LOGGER.error("Exception:     " + e);
                         originalPort = null;
                         return false;
                     }
                     if (virtualMachine == null) {
-                        virtualMachine = new VirtualMachine();
-                        virtualMachine.setName(deviceID);
-                        virtualMachine.setUuid(deviceID);
-                        boolean virtualMachineCreated = apiConnector.create(virtualMachine);
-                        LOGGER.debug("virtualMachineCreated: " + virtualMachineCreated);
-                        if (!virtualMachineCreated) {
-                            LOGGER.warn("virtualMachine creation failed..");
-                            originalPort = null;
-                            return false;
-                        }
-                        LOGGER.info("virtualMachine : " + virtualMachine.getName() + "  having UUID : " + virtualMachine.getUuid()
-                                + "  sucessfully created...");
+                        originalPort = null;
+                        return false;
                     }
                     virtualMachineInterface.setVirtualMachine(virtualMachine);
                 }
@@ -444,7 +895,7 @@ public class PortHandler implements INeutronPortAware, INeutronPortCRUD {
                 virtualMachineInterface.setDisplayName(portName);
             }
             if ((deviceID != null && !(("").equals(deviceID))) || portName != null || instanceIpUpdate) {
-                if ((deviceID != null && !(("").equals(deviceID))) || portName != null) {
+                if ((deviceID != null && !(("").equals(deviceID))) || portName != null || networkUpdate) {
                     boolean portUpdate = apiConnector.update(virtualMachineInterface);
                     if (!portUpdate) {
                         LOGGER.warn("Port Updation failed..");
@@ -452,7 +903,8 @@ public class PortHandler implements INeutronPortAware, INeutronPortCRUD {
                         return false;
                     }
                 }
-                LOGGER.info("Port having UUID : " + virtualMachineInterface.getUuid() + "  has been sucessfully updated...");
+                LOGGER.info("Port having UUID : {}  has been sucessfully updated...", virtualMachineInterface.getUuid());
+                Activator.topology.update(NeutronPort.class, portUUID, deltaPort);
                 originalPort = null;
                 return true;
             } else {
@@ -521,26 +973,50 @@ public class PortHandler implements INeutronPortAware, INeutronPortCRUD {
 
     @Override
     public List<NeutronPort> getAllPorts() {
-        return null;
+        return Activator.topology.list(NeutronPort.class);
     }
 
+    /**
+     * @return The port holding the gateway address of a subnet, or null.
+     */
     @Override
-    public NeutronPort getGatewayPort(String arg0) {
+    public NeutronPort getGatewayPort(String subnetUUID) {
+        TopologySnapshot snapshot = Activator.topology.snapshot();
+        NeutronSubnet subnet = snapshot.get(NeutronSubnet.class, subnetUUID);
+        if (subnet == null || subnet.getGatewayIP() == null) {
+            return null;
+        }
+        for (NeutronPort port : snapshot.list(NeutronPort.class)) {
+            if (port.getFixedIPs() == null) {
+                continue;
+            }
+            for (Neutron_IPs ip : port.getFixedIPs()) {
+                if (subnetUUID.equals(ip.getSubnetUUID()) && subnet.getGatewayIP().equals(ip.getIpAddress())) {
+                    return NeutronObjects.copy(port);
+                }
+            }
+        }
         return null;
     }
 
     @Override
-    public NeutronPort getPort(String arg0) {
-        return null;
+    public NeutronPort getPort(String portUUID) {
+        return Activator.topology.get(NeutronPort.class, portUUID);
     }
 
     @Override
     public boolean macInUse(String arg0) {
-        return false;
+        return Activator.addressIndex.macOwner(arg0) != null;
     }
 
     @Override
-    public boolean portExists(String arg0) {
-        return false;
+    public boolean portExists(String portUUID) {
+        apiConnector = Activator.apiConnector;
+        try {
+            return ExistenceFilter.of(VirtualMachineInterface.class).findById(apiConnector, portUUID) != null;
+        } catch (IOException e) {
+            LOGGER.error("Exception  :   " + e);
+            return false;
+        }
     }
 }
\ No newline at end of file
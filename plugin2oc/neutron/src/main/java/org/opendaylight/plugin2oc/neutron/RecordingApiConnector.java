@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.juniper.contrail.api.ApiConnector;
+import net.juniper.contrail.api.ApiObjectBase;
+import net.juniper.contrail.api.ApiPropertyBase;
+import net.juniper.contrail.api.ObjectReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ApiConnector decorator recording every Contrail call with its response
+ * into a binary log, see {@link ContrailRecording}, to be served again by a
+ * {@link PlaybackApiConnector}. A slow production workload can then be
+ * captured once and replayed against a patched build.
+ *
+ * Calls are encoded on the calling thread, since the handlers go on changing
+ * the objects they sent and received, and written by a background thread.
+ * When the writer falls behind by more than plugin2oc.recording.queue
+ * records, 65536 by default, further records are dropped and counted rather
+ * than slowing the calls down.
+ */
+public class RecordingApiConnector extends ForwardingApiConnector implements Closeable {
+    /**
+     * Logger instance.
+     */
+    static final Logger LOGGER = LoggerFactory.getLogger(RecordingApiConnector.class);
+    private static final byte[] END = new byte[0];
+
+    private final long originNanos = System.nanoTime();
+    private final BlockingQueue<byte[]> queue;
+    private final OutputStream out;
+    private final Thread writer;
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final ThreadLocal<ContrailRecording.Encoder> encoders = new ThreadLocal<ContrailRecording.Encoder>() {
+        @Override
+        protected ContrailRecording.Encoder initialValue() {
+            return new ContrailRecording.Encoder();
+        }
+    };
+    private volatile boolean closed;
+
+    public RecordingApiConnector(ApiConnector delegate, File file) throws IOException {
+        this(delegate, new FileOutputStream(file), Integer.getInteger("plugin2oc.recording.queue", 65536));
+    }
+
+    RecordingApiConnector(ApiConnector delegate, OutputStream out, int queueSize) throws IOException {
+        super(delegate);
+        this.queue = new ArrayBlockingQueue<byte[]>(queueSize);
+        this.out = new BufferedOutputStream(out, 64 * 1024);
+        ContrailRecording.writeHeader(this.out, System.currentTimeMillis());
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "plugin2oc-recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public boolean create(ApiObjectBase obj) throws IOException {
+        String key = ContrailRecording.key(obj);
+        long start = System.nanoTime();
+        try {
+            boolean created = super.create(obj);
+            record(ContrailOperation.CREATE, obj.getClass(), key, obj.getUuid(), start, obj, created, created ? obj.getUuid() : null);
+            return created;
+        } catch (IOException | RuntimeException e) {
+            record(ContrailOperation.CREATE, obj.getClass(), key, obj.getUuid(), start, obj, e, null);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean read(ApiObjectBase obj) throws IOException {
+        String key = ContrailRecording.key(obj);
+        long start = System.nanoTime();
+        try {
+            boolean read = super.read(obj);
+            record(ContrailOperation.READ, obj.getClass(), key, obj.getUuid(), start, null, read, read ? obj : null);
+            return read;
+        } catch (IOException | RuntimeException e) {
+            record(ContrailOperation.READ, obj.getClass(), key, obj.getUuid(), start, null, e, null);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean update(ApiObjectBase obj) throws IOException {
+        String key = ContrailRecording.key(obj);
+        long start = System.nanoTime();
+        try {
+            boolean updated = super.update(obj);
+            record(ContrailOperation.UPDATE, obj.getClass(), key, obj.getUuid(), start, obj, updated, null);
+            return updated;
+        } catch (IOException | RuntimeException e) {
+            record(ContrailOperation.UPDATE, obj.getClass(), key, obj.getUuid(), start, obj, e, null);
+            throw e;
+        }
+    }
+
+    @Override
+    public void delete(ApiObjectBase obj) throws IOException {
+        if (obj == null) {
+            super.delete(obj);
+            return;
+        }
+        String key = ContrailRecording.key(obj);
+        long start = System.nanoTime();
+        try {
+            super.delete(obj);
+            record(ContrailOperation.DELETE, obj.getClass(), key, obj.getUuid(), start, null, null, null);
+        } catch (IOException | RuntimeException e) {
+            record(ContrailOperation.DELETE, obj.getClass(), key, obj.getUuid(), start, null, e, null);
+            throw e;
+        }
+    }
+
+    @Override
+    public void delete(Class<? extends ApiObjectBase> cls, String uuid) throws IOException {
+        long start = System.nanoTime();
+        try {
+            super.delete(cls, uuid);
+            record(ContrailOperation.DELETE, cls, uuid, uuid, start, null, null, null);
+        } catch (IOException | RuntimeException e) {
+            record(ContrailOperation.DELETE, cls, uuid, uuid, start, null, e, null);
+            throw e;
+        }
+    }
+
+    @Override
+    public ApiObjectBase find(Class<? extends ApiObjectBase> cls, ApiObjectBase parent, String name) throws IOException {
+        String key = ContrailRecording.key(parent, name);
+        long start = System.nanoTime();
+        try {
+            ApiObjectBase found = super.find(cls, parent, name);
+            record(ContrailOperation.FIND, cls, key, found == null ? null : found.getUuid(), start, null, found, null);
+            return found;
+        } catch (IOException | RuntimeException e) {
+            record(ContrailOperation.FIND, cls, key, null, start, null, e, null);
+            throw e;
+        }
+    }
+
+    @Override
+    public ApiObjectBase findByFQN(Class<? extends ApiObjectBase> cls, String fullName) throws IOException {
+        long start = System.nanoTime();
+        try {
+            ApiObjectBase found = super.findByFQN(cls, fullName);
+            record(ContrailOperation.FIND_BY_FQN, cls, fullName, found == null ? null : found.getUuid(), start, null, found, null);
+            return found;
+        } catch (IOException | RuntimeException e) {
+            record(ContrailOperation.FIND_BY_FQN, cls, fullName, null, start, null, e, null);
+            throw e;
+        }
+    }
+
+    @Override
+    public ApiObjectBase findById(Class<? extends ApiObjectBase> cls, String uuid) throws IOException {
+        long start = System.nanoTime();
+        try {
+            ApiObjectBase found = super.findById(cls, uuid);
+            record(ContrailOperation.FIND_BY_ID, cls, uuid, uuid, start, null, found, null);
+            return found;
+        } catch (IOException | RuntimeException e) {
+            record(ContrailOperation.FIND_BY_ID, cls, uuid, uuid, start, null, e, null);
+            throw e;
+        }
+    }
+
+    @Override
+    public String findByName(Class<? extends ApiObjectBase> cls, List<String> nameList) throws IOException {
+        String key = ContrailRecording.join(nameList, ":");
+        long start = System.nanoTime();
+        try {
+            String uuid = super.findByName(cls, nameList);
+            record(ContrailOperation.FIND_BY_NAME, cls, key, uuid, start, null, uuid, null);
+            return uuid;
+        } catch (IOException | RuntimeException e) {
+            record(ContrailOperation.FIND_BY_NAME, cls, key, null, start, null, e, null);
+            throw e;
+        }
+    }
+
+    @Override
+    public String findByName(Class<? extends ApiObjectBase> cls, ApiObjectBase parent, String name) throws IOException {
+        String key = ContrailRecording.key(parent, name);
+        long start = System.nanoTime();
+        try {
+            String uuid = super.findByName(cls, parent, name);
+            record(ContrailOperation.FIND_BY_NAME, cls, key, uuid, start, null, uuid, null);
+            return uuid;
+        } catch (IOException | RuntimeException e) {
+            record(ContrailOperation.FIND_BY_NAME, cls, key, null, start, null, e, null);
+            throw e;
+        }
+    }
+
+    @Override
+    public List<? extends ApiObjectBase> list(Class<? extends ApiObjectBase> cls, List<String> parent) throws IOException {
+        String key = ContrailRecording.join(parent, ":");
+        long start = System.nanoTime();
+        try {
+            List<? extends ApiObjectBase> list = super.list(cls, parent);
+            record(ContrailOperation.LIST, cls, key, null, start, null, list, null);
+            return list;
+        } catch (IOException | RuntimeException e) {
+            record(ContrailOperation.LIST, cls, key, null, start, null, e, null);
+            throw e;
+        }
+    }
+
+    @Override
+    public <T extends ApiPropertyBase> List<? extends ApiObjectBase> getObjects(Class<? extends ApiObjectBase> cls, List<ObjectReference<T>> refList)
+            throws IOException {
+        String key = ContrailRecording.key(refList);
+        long start = System.nanoTime();
+        try {
+            List<? extends ApiObjectBase> objects = super.getObjects(cls, refList);
+            record(ContrailOperation.GET_OBJECTS, cls, key, null, start, null, objects, null);
+            return objects;
+        } catch (IOException | RuntimeException e) {
+            record(ContrailOperation.GET_OBJECTS, cls, key, null, start, null, e, null);
+            throw e;
+        }
+    }
+
+    /**
+     * @return Number of calls recorded so far.
+     */
+    public long getRecorded() {
+        return recorded.get();
+    }
+
+    /**
+     * @return Number of calls left out of the recording, because the writer
+     *         fell behind or the call could not be encoded.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Invoked to write the calls recorded so far and close the log. Calls made
+     * afterwards are forwarded but no longer recorded.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            while (writer.isAlive() && !queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                continue;
+            }
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.info("Contrail recording closed with {} calls, {} dropped", recorded.get(), dropped.get());
+    }
+
+    /**
+     * Invoked after every call, on the calling thread, to queue its record.
+     */
+    private void record(ContrailOperation operation, Class<?> type, String key, String uuid, long start, Object request, Object result, Object state) {
+        long latency = System.nanoTime() - start;
+        if (closed) {
+            return;
+        }
+        ContrailRecording.Record record = new ContrailRecording.Record();
+        record.timeNanos = start - originNanos;
+        record.operation = operation;
+        record.type = ContrailRecording.typeName(type);
+        record.key = key;
+        record.uuid = uuid;
+        record.latencyNanos = latency;
+        record.request = request;
+        record.result = result;
+        record.state = state;
+        byte[] body;
+        try {
+            body = encoders.get().encode(record);
+        } catch (RuntimeException e) {
+            LOGGER.debug("Could not record {} {}", operation.getMethodName(), record.type, e);
+            dropped.incrementAndGet();
+            return;
+        }
+        if (queue.offer(body)) {
+            recorded.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Writer thread loop, flushing whenever it runs out of records.
+     */
+    private void write() {
+        try {
+            while (true) {
+                byte[] body = queue.poll();
+                if (body == null) {
+                    out.flush();
+                    body = queue.take();
+                }
+                if (body == END) {
+                    break;
+                }
+                ContrailRecording.writeRecord(out, body);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Could not write the Contrail recording, recording stopped", e);
+            closed = true;
+        } catch (InterruptedException e) {
+            closed = true;
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+                LOGGER.error("Could not close the Contrail recording", e);
+            }
+        }
+    }
+}
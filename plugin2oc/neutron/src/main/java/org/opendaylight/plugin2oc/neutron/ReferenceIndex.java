@@ -0,0 +1,423 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.juniper.contrail.api.ApiConnector;
+import net.juniper.contrail.api.ApiObjectBase;
+import net.juniper.contrail.api.ApiPropertyBase;
+import net.juniper.contrail.api.ObjectReference;
+import net.juniper.contrail.api.types.InstanceIp;
+import net.juniper.contrail.api.types.LogicalRouter;
+import net.juniper.contrail.api.types.VirtualMachineInterface;
+import net.juniper.contrail.api.types.VirtualNetwork;
+import net.juniper.contrail.api.types.VnSubnetsType;
+
+import org.apache.commons.net.util.SubnetUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the objects referring to networks, subnets, routers and ports,
+ * answering the "in use" and delete checks of the handlers without fetching
+ * the referred object and its back references from Contrail.
+ *
+ * Every {@link Relation} maps a referred object, the target, to the objects
+ * referring to it, the sources, and back, so that a source can be dropped
+ * from all its targets at once when it is deleted. The handlers keep the
+ * index current; {@link #rebuild(ApiConnector)} loads what exists in
+ * Contrail at start. Until then the handlers fall back to Contrail.
+ */
+public class ReferenceIndex {
+    /**
+     * Logger instance.
+     */
+    static final Logger LOGGER = LoggerFactory.getLogger(ReferenceIndex.class);
+
+    /**
+     * Kinds of references indexed, named target to sources.
+     */
+    public enum Relation {
+        NETWORK_PORTS, SUBNET_PORTS, ROUTER_INTERFACES, PORT_FLOATING_IPS, NETWORK_GATEWAYS
+    }
+
+    private final Map<Relation, References> relations = new EnumMap<Relation, References>(Relation.class);
+    private volatile boolean loaded;
+
+    public ReferenceIndex() {
+        for (Relation relation : Relation.values()) {
+            relations.put(relation, new References());
+        }
+    }
+
+    /**
+     * Invoked to record that a source refers to a target. Recording it again
+     * changes nothing.
+     */
+    public void add(Relation relation, String target, String source) {
+        if (target != null && source != null) {
+            relations.get(relation).add(target, source);
+        }
+    }
+
+    /**
+     * Invoked to record that a source no longer refers to a target.
+     */
+    public void remove(Relation relation, String target, String source) {
+        if (target != null && source != null) {
+            relations.get(relation).remove(target, source);
+        }
+    }
+
+    /**
+     * Invoked after a source has been deleted, to drop its references.
+     */
+    public void removeSource(Relation relation, String source) {
+        if (source != null) {
+            relations.get(relation).removeSource(source);
+        }
+    }
+
+    /**
+     * Invoked after a target has been deleted, to drop the references to it.
+     */
+    public void removeTarget(Relation relation, String target) {
+        if (target != null) {
+            relations.get(relation).removeTarget(target);
+        }
+    }
+
+    /**
+     * Invoked to replace the targets a source refers to.
+     */
+    public void setTargets(Relation relation, String source, Collection<String> targets) {
+        if (source != null) {
+            relations.get(relation).setTargets(source, targets);
+        }
+    }
+
+    /**
+     * @return Number of sources referring to a target.
+     */
+    public int count(Relation relation, String target) {
+        return target == null ? 0 : relations.get(relation).count(target);
+    }
+
+    /**
+     * @return Whether anything refers to a target.
+     */
+    public boolean inUse(Relation relation, String target) {
+        return count(relation, target) > 0;
+    }
+
+    /**
+     * @return The sources referring to a target.
+     */
+    public Set<String> sources(Relation relation, String target) {
+        return target == null ? Collections.<String> emptySet() : relations.get(relation).sources(target);
+    }
+
+    /**
+     * @return The targets a source refers to.
+     */
+    public Set<String> targets(Relation relation, String source) {
+        return source == null ? Collections.<String> emptySet() : relations.get(relation).targets(source);
+    }
+
+    /**
+     * @return Whether the index holds the references existing in Contrail,
+     *         so that a target it has no source for is not in use.
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Invoked to load the references existing in Contrail: the networks and
+     * floating IPs of every VirtualMachineInterface, the interfaces of every
+     * LogicalRouter, and the subnet holding the address of every InstanceIp.
+     * Makes a call per object; run by the Activator on a thread of its own at
+     * start. References added meanwhile by the handlers are kept, and those
+     * they remove meanwhile are not loaded again.
+     */
+    public void rebuild(ApiConnector apiConnector) throws IOException {
+        long start = System.nanoTime();
+        for (References references : relations.values()) {
+            references.trackRemovals(true);
+        }
+        try {
+            load(apiConnector);
+        } finally {
+            for (References references : relations.values()) {
+                references.trackRemovals(false);
+            }
+        }
+        loaded = true;
+        LOGGER.info("Reference index rebuilt with {} references in {} ms", size(), (System.nanoTime() - start) / 1000000);
+    }
+
+    private void load(ApiConnector apiConnector) throws IOException {
+        List<? extends ApiObjectBase> interfaces = apiConnector.list(VirtualMachineInterface.class, null);
+        if (interfaces != null) {
+            for (ApiObjectBase listed : interfaces) {
+                VirtualMachineInterface virtualMachineInterface = (VirtualMachineInterface) apiConnector.findById(VirtualMachineInterface.class,
+                        listed.getUuid());
+                if (virtualMachineInterface == null) {
+                    continue;
+                }
+                for (String network : uuids(virtualMachineInterface.getVirtualNetwork())) {
+                    restore(Relation.NETWORK_PORTS, network, virtualMachineInterface.getUuid());
+                }
+                for (String floatingIp : uuids(virtualMachineInterface.getFloatingIpBackRefs())) {
+                    restore(Relation.PORT_FLOATING_IPS, virtualMachineInterface.getUuid(), floatingIp);
+                }
+            }
+        }
+        List<? extends ApiObjectBase> routers = apiConnector.list(LogicalRouter.class, null);
+        if (routers != null) {
+            for (ApiObjectBase listed : routers) {
+                LogicalRouter logicalRouter = (LogicalRouter) apiConnector.findById(LogicalRouter.class, listed.getUuid());
+                if (logicalRouter != null) {
+                    for (String port : uuids(logicalRouter.getVirtualMachineInterface())) {
+                        restore(Relation.ROUTER_INTERFACES, logicalRouter.getUuid(), port);
+                    }
+                    for (String network : uuids(logicalRouter.getVirtualNetwork())) {
+                        restore(Relation.NETWORK_GATEWAYS, network, logicalRouter.getUuid());
+                    }
+                }
+            }
+        }
+        Map<String, List<VnSubnetsType.IpamSubnetType>> subnets = new HashMap<String, List<VnSubnetsType.IpamSubnetType>>();
+        List<? extends ApiObjectBase> instanceIps = apiConnector.list(InstanceIp.class, null);
+        if (instanceIps != null) {
+            for (ApiObjectBase listed : instanceIps) {
+                InstanceIp instanceIp = (InstanceIp) apiConnector.findById(InstanceIp.class, listed.getUuid());
+                if (instanceIp == null || instanceIp.getAddress() == null) {
+                    continue;
+                }
+                for (String network : uuids(instanceIp.getVirtualNetwork())) {
+                    if (!subnets.containsKey(network)) {
+                        subnets.put(network, subnets((VirtualNetwork) apiConnector.findById(VirtualNetwork.class, network)));
+                    }
+                    String subnet = subnetOf(subnets.get(network), instanceIp.getAddress());
+                    for (String port : uuids(instanceIp.getVirtualMachineInterface())) {
+                        restore(Relation.SUBNET_PORTS, subnet, port);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Invoked by the rebuild to record a reference read from Contrail, unless
+     * the handlers removed it since the rebuild started.
+     */
+    private void restore(Relation relation, String target, String source) {
+        if (target != null && source != null) {
+            relations.get(relation).restore(target, source);
+        }
+    }
+
+    /**
+     * Invoked to forget every reference.
+     */
+    public void clear() {
+        for (References references : relations.values()) {
+            references.clear();
+        }
+        loaded = false;
+    }
+
+    /**
+     * @return Number of references held.
+     */
+    public int size() {
+        int size = 0;
+        for (References references : relations.values()) {
+            size += references.size();
+        }
+        return size;
+    }
+
+    static List<VnSubnetsType.IpamSubnetType> subnets(VirtualNetwork virtualNetwork) {
+        List<VnSubnetsType.IpamSubnetType> subnets = new ArrayList<VnSubnetsType.IpamSubnetType>();
+        if (virtualNetwork == null || virtualNetwork.getNetworkIpam() == null) {
+            return subnets;
+        }
+        for (ObjectReference<VnSubnetsType> ref : virtualNetwork.getNetworkIpam()) {
+            if (ref.getAttr() != null && ref.getAttr().getIpamSubnets() != null) {
+                subnets.addAll(ref.getAttr().getIpamSubnets());
+            }
+        }
+        return subnets;
+    }
+
+    /**
+     * @return The UUID of the subnet holding an address, or null.
+     */
+    static String subnetOf(List<VnSubnetsType.IpamSubnetType> subnets, String address) {
+        for (VnSubnetsType.IpamSubnetType subnet : subnets) {
+            if (subnet.getSubnet() == null || subnet.getSubnetUuid() == null) {
+                continue;
+            }
+            try {
+                SubnetUtils utils = new SubnetUtils(subnet.getSubnet().getIpPrefix() + "/" + subnet.getSubnet().getIpPrefixLen());
+                if (utils.getInfo().isInRange(address)) {
+                    return subnet.getSubnetUuid();
+                }
+            } catch (IllegalArgumentException e) {
+                // IPv6 subnets and addresses are not matched
+                continue;
+            }
+        }
+        return null;
+    }
+
+    private static <T extends ApiPropertyBase> Set<String> uuids(List<ObjectReference<T>> refs) {
+        Set<String> uuids = new HashSet<String>();
+        if (refs != null) {
+            for (ObjectReference<T> ref : refs) {
+                if (ref.getUuid() != null) {
+                    uuids.add(ref.getUuid());
+                }
+            }
+        }
+        return uuids;
+    }
+
+    /**
+     * References of one relation, both ways.
+     */
+    private static final class References {
+        private final Map<String, Set<String>> sourcesByTarget = new HashMap<String, Set<String>>();
+        private final Map<String, Set<String>> targetsBySource = new HashMap<String, Set<String>>();
+        // removals made during a rebuild, null otherwise
+        private Map<String, Set<String>> removedTargetsBySource;
+        private Set<String> removedSources;
+        private Set<String> removedTargets;
+
+        synchronized void add(String target, String source) {
+            put(sourcesByTarget, target, source);
+            put(targetsBySource, source, target);
+        }
+
+        synchronized void remove(String target, String source) {
+            if (removedTargetsBySource != null) {
+                put(removedTargetsBySource, source, target);
+            }
+            delete(sourcesByTarget, target, source);
+            delete(targetsBySource, source, target);
+        }
+
+        synchronized void removeSource(String source) {
+            if (removedSources != null) {
+                removedSources.add(source);
+            }
+            Set<String> targets = targetsBySource.remove(source);
+            if (targets != null) {
+                for (String target : targets) {
+                    delete(sourcesByTarget, target, source);
+                }
+            }
+        }
+
+        synchronized void removeTarget(String target) {
+            if (removedTargets != null) {
+                removedTargets.add(target);
+            }
+            Set<String> sources = sourcesByTarget.remove(target);
+            if (sources != null) {
+                for (String source : sources) {
+                    delete(targetsBySource, source, target);
+                }
+            }
+        }
+
+        synchronized void setTargets(String source, Collection<String> targets) {
+            removeSource(source);
+            if (targets != null) {
+                for (String target : targets) {
+                    if (target != null) {
+                        add(target, source);
+                    }
+                }
+            }
+        }
+
+        synchronized void trackRemovals(boolean tracking) {
+            removedTargetsBySource = tracking ? new HashMap<String, Set<String>>() : null;
+            removedSources = tracking ? new HashSet<String>() : null;
+            removedTargets = tracking ? new HashSet<String>() : null;
+        }
+
+        synchronized void restore(String target, String source) {
+            if (removedSources != null) {
+                Set<String> removed = removedTargetsBySource.get(source);
+                if (removedSources.contains(source) || removedTargets.contains(target) || removed != null && removed.contains(target)) {
+                    return;
+                }
+            }
+            add(target, source);
+        }
+
+        synchronized int count(String target) {
+            Set<String> sources = sourcesByTarget.get(target);
+            return sources == null ? 0 : sources.size();
+        }
+
+        synchronized Set<String> sources(String target) {
+            Set<String> sources = sourcesByTarget.get(target);
+            return sources == null ? Collections.<String> emptySet() : new HashSet<String>(sources);
+        }
+
+        synchronized Set<String> targets(String source) {
+            Set<String> targets = targetsBySource.get(source);
+            return targets == null ? Collections.<String> emptySet() : new HashSet<String>(targets);
+        }
+
+        synchronized void clear() {
+            sourcesByTarget.clear();
+            targetsBySource.clear();
+        }
+
+        synchronized int size() {
+            int size = 0;
+            for (Set<String> sources : sourcesByTarget.values()) {
+                size += sources.size();
+            }
+            return size;
+        }
+
+        private static void put(Map<String, Set<String>> map, String key, String value) {
+            Set<String> values = map.get(key);
+            if (values == null) {
+                values = new HashSet<String>();
+                map.put(key, values);
+            }
+            values.add(value);
+        }
+
+        private static void delete(Map<String, Set<String>> map, String key, String value) {
+            Set<String> values = map.get(key);
+            if (values != null && values.remove(value) && values.isEmpty()) {
+                map.remove(key);
+            }
+        }
+    }
+}
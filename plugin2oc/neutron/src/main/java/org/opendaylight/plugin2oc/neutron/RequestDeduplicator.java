@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Collapses retried Neutron requests onto a single execution.
+ *
+ * Requests are keyed by the Neutron resource UUID plus the operation name. A
+ * duplicate that arrives while the original is still running waits for it and
+ * receives the same outcome; a duplicate that arrives after a successful
+ * completion is answered from a bounded table of recent outcomes without
+ * touching Contrail. Failed outcomes are handed to the requests that were
+ * waiting on them but are not remembered, so a later retry runs again.
+ */
+public class RequestDeduplicator {
+    /**
+     * Logger instance.
+     */
+    static final Logger LOGGER = LoggerFactory.getLogger(RequestDeduplicator.class);
+    static final int DEFAULT_CAPACITY = 4096;
+    static final long DEFAULT_RETENTION_MILLIS = 5 * 60 * 1000L;
+
+    private final ConcurrentMap<String, SettableFuture<Boolean>> inFlight = new ConcurrentHashMap<String, SettableFuture<Boolean>>();
+    private final Map<String, Long> completed;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final long retentionMillis;
+
+    public RequestDeduplicator() {
+        this(Integer.getInteger("plugin2oc.dedup.capacity", DEFAULT_CAPACITY), Long.getLong("plugin2oc.dedup.retention.ms",
+                DEFAULT_RETENTION_MILLIS));
+    }
+
+    public RequestDeduplicator(final int capacity, long retentionMillis) {
+        this.retentionMillis = retentionMillis;
+        this.completed = new LinkedHashMap<String, Long>(16, 0.75f, false) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Invoked to run the specified action unless an identical request is
+     * already running or has recently succeeded.
+     *
+     * @param uuid
+     *            UUID of the Neutron resource the request refers to.
+     * @param operation
+     *            Name of the requested operation.
+     * @param action
+     *            The action performing the request.
+     *
+     * @return The outcome of the action, shared with all duplicates.
+     */
+    public boolean execute(String uuid, String operation, Callable<Boolean> action) {
+        if (uuid == null || ("").equals(uuid)) {
+            return call(action);
+        }
+        String key = operation + ":" + uuid;
+        if (recentlyCompleted(key)) {
+            LOGGER.info("Duplicate {} request for UUID : {} answered from recent outcome...", operation, uuid);
+            return true;
+        }
+        SettableFuture<Boolean> outcome = SettableFuture.create();
+        SettableFuture<Boolean> running = inFlight.putIfAbsent(key, outcome);
+        if (running != null) {
+            LOGGER.info("Duplicate {} request for UUID : {} attached to the request in flight...", operation, uuid);
+            return await(running);
+        }
+        boolean result = false;
+        try {
+            // the original may have finished between the lookup and the claim
+            if (recentlyCompleted(key)) {
+                result = true;
+            } else {
+                result = call(action);
+                if (result) {
+                    remember(key);
+                }
+            }
+        } finally {
+            outcome.set(result);
+            inFlight.remove(key, outcome);
+        }
+        return result;
+    }
+
+    /**
+     * Invoked to drop the remembered outcome of an operation, e.g. once the
+     * resource it created has been deleted again.
+     *
+     * @param uuid
+     *            UUID of the Neutron resource.
+     * @param operation
+     *            Name of the operation to forget.
+     */
+    public void forget(String uuid, String operation) {
+        synchronized (completed) {
+            completed.remove(operation + ":" + uuid);
+        }
+    }
+
+    /**
+     * @return Number of duplicates waiting for a request in flight.
+     */
+    int waiting() {
+        return waiting.get();
+    }
+
+    private boolean call(Callable<Boolean> action) {
+        try {
+            Boolean result = action.call();
+            return result != null && result;
+        } catch (Exception e) {
+            LOGGER.error("Exception :   ", e);
+            return false;
+        }
+    }
+
+    private boolean await(SettableFuture<Boolean> running) {
+        long start = System.nanoTime();
+        waiting.incrementAndGet();
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("InterruptedException :    ", e);
+            return false;
+        } catch (ExecutionException e) {
+            LOGGER.error("Exception :   ", e);
+            return false;
+        } finally {
+            waiting.decrementAndGet();
+            OperationTrace.recordLockWait(System.nanoTime() - start);
+        }
+    }
+
+    private boolean recentlyCompleted(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (completed) {
+            expire(now);
+            return completed.containsKey(key);
+        }
+    }
+
+    private void remember(String key) {
+        synchronized (completed) {
+            completed.put(key, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Entries are kept in insertion order, so expired ones are always at the
+     * head of the table.
+     */
+    private void expire(long now) {
+        Iterator<Long> i = completed.values().iterator();
+        while (i.hasNext()) {
+            if (now - i.next() <= retentionMillis) {
+                break;
+            }
+            i.remove();
+        }
+    }
+}
@@ -2,30 +2,32 @@ package org.opendaylight.plugin2oc.neutron;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import net.juniper.contrail.api.ApiConnector;
-import net.juniper.contrail.api.ApiPropertyBase;
-import net.juniper.contrail.api.ObjectReference;
+import net.juniper.contrail.api.ApiObjectBase;
 import net.juniper.contrail.api.types.LogicalRouter;
 import net.juniper.contrail.api.types.Project;
-import net.juniper.contrail.api.types.VirtualMachine;
 import net.juniper.contrail.api.types.VirtualMachineInterface;
+import net.juniper.contrail.api.types.VirtualNetwork;
 import net.juniper.contrail.api.types.VirtualRouter;
 
 import org.opendaylight.controller.networkconfig.neutron.INeutronRouterAware;
 import org.opendaylight.controller.networkconfig.neutron.INeutronRouterCRUD;
+import org.opendaylight.controller.networkconfig.neutron.NeutronPort;
 import org.opendaylight.controller.networkconfig.neutron.NeutronRouter;
 import org.opendaylight.controller.networkconfig.neutron.NeutronRouter_Interface;
+import org.opendaylight.plugin2oc.neutron.ReferenceIndex.Relation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Handle requests for Neutron Router.
  */
-public class RouterHandler implements INeutronRouterAware, INeutronRouterCRUD {
+public class RouterHandler implements INeutronRouterAware, INeutronRouterCRUD, RouterQueries {
 
 	/**
 	 * Logger instance.
@@ -33,6 +35,7 @@ public class RouterHandler implements INeutronRouterAware, INeutronRouterCRUD {
 	
 	static final Logger LOGGER = LoggerFactory.getLogger(RouterHandler.class);
 	static ApiConnector apiConnector;
+	static final RouterInterfaceBatcher interfaceBatcher = new RouterInterfaceBatcher();
 	
 	   /**
 	    * Invoked when a router creation is requested to check if the specified
@@ -45,9 +48,7 @@ public class RouterHandler implements INeutronRouterAware, INeutronRouterCRUD {
 	     */
 	@Override
 	public int canCreateRouter(NeutronRouter router) {
-	    System.out.println("can create router calling 11111111111......");
 		apiConnector = Activator.apiConnector;
-		System.out.println("can create router calling......");
 		if (router == null) {
 			LOGGER.error("Router object can't be null/empty.");
 			return HttpURLConnection.HTTP_BAD_REQUEST;
@@ -75,8 +76,7 @@ public class RouterHandler implements INeutronRouterAware, INeutronRouterCRUD {
 			project = (Project) apiConnector.findById(Project.class, projectUUID);
 
 			if (project == null) {
-				Thread.currentThread();
-				Thread.sleep(3000);
+				OperationTrace.sleepBeforeRetry(3000);
 				project = (Project) apiConnector.findById(Project.class, projectUUID);
 				if (project == null) {
 					LOGGER.error("Could not find projectUUID...");
@@ -89,8 +89,7 @@ public class RouterHandler implements INeutronRouterAware, INeutronRouterCRUD {
 			// TODO Auto-generated catch block
 			e1.printStackTrace();
 		}
-		System.out.println("bedore hhtp ok===============================");
-		return HttpURLConnection.HTTP_OK;
+		return canSetGateway(router);
 	}
 	
 	
@@ -105,7 +104,6 @@ public class RouterHandler implements INeutronRouterAware, INeutronRouterCRUD {
         @Override
         public boolean addRouter(NeutronRouter router) {
             apiConnector = Activator.apiConnector;
-            System.out.println("reaching add router------------------------");
 		LogicalRouter logicalRouter = new LogicalRouter();
 		logicalRouter =mapRouterProperties(router, logicalRouter);
 		String projectUUID = router.getTenantID();
@@ -116,14 +114,20 @@ public class RouterHandler implements INeutronRouterAware, INeutronRouterCRUD {
 		try {
 		Project project = (Project) apiConnector.findById(Project.class, projectUUID);;
 			logicalRouter.setParent(project);
+			if (gateway(router) != null && !setGateway(logicalRouter, gateway(router))) {
+				return false;
+			}
 			boolean routerCreated = apiConnector.create(logicalRouter);
 			if (!routerCreated){
 				LOGGER.warn("Router creation failed..");
 	            return false;
 			}
-		    LOGGER.info("Router : " + logicalRouter.getName() +
-	                      "  having UUID : " + logicalRouter.getUuid() +
-	                      "  sucessfully created...");
+		    LOGGER.info("Router : {}  having UUID : {}  sucessfully created...", logicalRouter.getName(), logicalRouter.getUuid());
+			ExistenceFilter.of(LogicalRouter.class).add(logicalRouter.getUuid());
+			Activator.topology.put(NeutronRouter.class, logicalRouter.getUuid(), router);
+			if (gateway(router) != null) {
+				Activator.referenceIndex.add(Relation.NETWORK_GATEWAYS, gateway(router), logicalRouter.getUuid());
+			}
 			return  true;
 		} catch (IOException e) {
 			 LOGGER.error("IOException :   "+e);
@@ -168,6 +172,10 @@ public class RouterHandler implements INeutronRouterAware, INeutronRouterCRUD {
 			LOGGER.info("Router object can't be null...");
 			return HttpURLConnection.HTTP_BAD_REQUEST;
 		}
+		if (Activator.referenceIndex.inUse(Relation.ROUTER_INTERFACES, router.getRouterUUID())) {
+			LOGGER.info("Router with UUID :  {} cannot be deleted as it has interface(s) attached to it....", router.getRouterUUID());
+			return HttpURLConnection.HTTP_FORBIDDEN;
+		}
 		return HttpURLConnection.HTTP_OK;
 	}
 
@@ -185,13 +193,17 @@ public class RouterHandler implements INeutronRouterAware, INeutronRouterCRUD {
 	    apiConnector = Activator.apiConnector;
 		LogicalRouter logicalRouter =null;
   		try {
-			logicalRouter = (LogicalRouter) apiConnector.findById(LogicalRouter.class, routerUUID);
+			logicalRouter = (LogicalRouter) ExistenceFilter.of(LogicalRouter.class).findById(apiConnector, routerUUID);
 			if(logicalRouter!=null){
 					 apiConnector.delete(logicalRouter);
-					 LOGGER.info("Router with UUID :  "+ routerUUID +"  has been deleted successfully....");
+					 ExistenceFilter.of(LogicalRouter.class).remove(routerUUID);
+					 Activator.referenceIndex.removeTarget(Relation.ROUTER_INTERFACES, routerUUID);
+					 Activator.referenceIndex.removeSource(Relation.NETWORK_GATEWAYS, routerUUID);
+					 Activator.topology.remove(NeutronRouter.class, routerUUID);
+					 LOGGER.info("Router with UUID :  {}  has been deleted successfully....", routerUUID);
 		             return true;					
 			}else{
-				LOGGER.info("No Router exists with UUID :  "+ routerUUID );
+				LOGGER.info("No Router exists with UUID :  {}", routerUUID);
 	              return false;
 			}
 		} catch (IOException e) {
@@ -238,8 +250,7 @@ public class RouterHandler implements INeutronRouterAware, INeutronRouterCRUD {
             return HttpURLConnection.HTTP_BAD_REQUEST;
 		}
 		try {
-			LogicalRouter logicalRouter = (LogicalRouter) apiConnector.findById(LogicalRouter.class, router.getRouterUUID());
-			if(logicalRouter == null){
+			if (!exists(NeutronRouter.class, LogicalRouter.class, router.getRouterUUID())) {
 				LOGGER.warn("Router object not found..");
 				return HttpURLConnection.HTTP_NOT_FOUND;
 			}
@@ -247,7 +258,7 @@ public class RouterHandler implements INeutronRouterAware, INeutronRouterCRUD {
 			 LOGGER.error("Exception :    "+e);
 			 return HttpURLConnection.HTTP_INTERNAL_ERROR;
 		}
-		return HttpURLConnection.HTTP_OK;
+		return canSetGateway(deltaRouter);
 	}
 	 
 	/**
@@ -265,14 +276,29 @@ public class RouterHandler implements INeutronRouterAware, INeutronRouterCRUD {
 	    apiConnector = Activator.apiConnector;
 		try {
 			LogicalRouter logicalRouter = (LogicalRouter) apiConnector.findById(LogicalRouter.class, routerUUID);
+			if (logicalRouter == null) {
+				LOGGER.warn("Router object not found..");
+				return false;
+			}
 			String routerName = deltaRouter.getName();
-			logicalRouter.setName(routerName);
+			if (routerName != null) {
+				logicalRouter.setName(routerName);
+			}
+			if (deltaRouter.getExternalGatewayInfo() != null && !setGateway(logicalRouter, gateway(deltaRouter))) {
+				return false;
+			}
 			boolean routerUpdate = apiConnector.update(logicalRouter);
 			if (!routerUpdate) {
 				LOGGER.warn("Router Updation failed..");
 				return false;
 			}
-			LOGGER.info("Router having UUID : " + logicalRouter.getUuid() + "  has been sucessfully updated...");
+			LOGGER.info("Router having UUID : {}  has been sucessfully updated...", logicalRouter.getUuid());
+			Activator.topology.update(NeutronRouter.class, routerUUID, deltaRouter);
+			if (gateway(deltaRouter) != null) {
+				Activator.referenceIndex.setTargets(Relation.NETWORK_GATEWAYS, routerUUID, Collections.singleton(gateway(deltaRouter)));
+			} else if (deltaRouter.getExternalGatewayInfo() != null) {
+				Activator.referenceIndex.removeSource(Relation.NETWORK_GATEWAYS, routerUUID);
+			}
 			return true;
 		} catch (Exception e) {
 			LOGGER.error("Exception :    " + e);
@@ -309,7 +335,8 @@ public class RouterHandler implements INeutronRouterAware, INeutronRouterCRUD {
 
 
 	/**
-     * Invoked to attach interface to the specified Neutron Router.
+     * Invoked to attach an interface to the specified Neutron Router, through
+     * the {@link RouterInterfaceBatcher}.
      *
      * @param router
      *            An instance of new Neutron Router object.
@@ -323,37 +350,37 @@ public class RouterHandler implements INeutronRouterAware, INeutronRouterCRUD {
 	public int canAttachInterface(NeutronRouter router,
 			NeutronRouter_Interface routerInterface) {
 	    apiConnector = Activator.apiConnector;
-       String portId = routerInterface.getPortUUID();
-       String routerId =router.getRouterUUID();
-       VirtualMachineInterface virtualMachineInterface = null;
-       LogicalRouter logicalRouter =null;
-       try {
-    	logicalRouter = (LogicalRouter) apiConnector.findById(LogicalRouter.class, routerId);
-    	virtualMachineInterface = (VirtualMachineInterface) apiConnector.findById(VirtualMachineInterface.class, portId);
-        if(virtualMachineInterface!=null){
-        	logicalRouter.setVirtualMachineInterface(virtualMachineInterface);
-        }
-        VirtualMachine virtualMachine = new VirtualMachine();
-        virtualMachine.setName(routerId);
-        virtualMachine.setUuid(routerId);
-        virtualMachineInterface.setVirtualMachine(virtualMachine);
-        boolean updateVMI= apiConnector.update(virtualMachineInterface);
-		if (!updateVMI) {
-			LOGGER.warn("virtualMachineInterface updation failed..");
+		if (router == null || routerInterface == null || routerInterface.getPortUUID() == null) {
+			LOGGER.error("Router and interface can't be null...");
+			return HttpURLConnection.HTTP_BAD_REQUEST;
+		}
+		String portId = routerInterface.getPortUUID();
+		String routerId = router.getRouterUUID();
+		try {
+			if (!exists(NeutronRouter.class, LogicalRouter.class, routerId)) {
+				LOGGER.warn("No Router exists with UUID :  {}", routerId);
+				return HttpURLConnection.HTTP_NOT_FOUND;
+			}
+			if (!exists(NeutronPort.class, VirtualMachineInterface.class, portId)) {
+				LOGGER.warn("No port exists with UUID :  {}", portId);
+				return HttpURLConnection.HTTP_NOT_FOUND;
+			}
+		} catch (IOException e) {
+			LOGGER.error("IOException :   " + e);
 			return HttpURLConnection.HTTP_INTERNAL_ERROR;
 		}
-		boolean interfaceAttached = apiConnector.update(logicalRouter);
-		if (!interfaceAttached){
+		for (String attachedTo : Activator.referenceIndex.targets(Relation.ROUTER_INTERFACES, portId)) {
+			if (!attachedTo.equals(routerId)) {
+				LOGGER.warn("Port {} is already attached to router {}", portId, attachedTo);
+				return HttpURLConnection.HTTP_CONFLICT;
+			}
+		}
+		if (!interfaceBatcher.attach(apiConnector, routerId, portId)) {
 			LOGGER.warn("Interface attachment failed..");
-            return HttpURLConnection.HTTP_INTERNAL_ERROR;
-		}
-	    LOGGER.info("Interface : " + logicalRouter.getName() +
-                      "  having UUID : " + logicalRouter.getUuid() +
-                      "  sucessfully attached with..."+ logicalRouter.getVirtualMachineInterface());
-		return  HttpURLConnection.HTTP_OK;
-	} catch (IOException e) {
-		LOGGER.error("IOException :   "+e);
-        return HttpURLConnection.HTTP_INTERNAL_ERROR;	}
+			return HttpURLConnection.HTTP_INTERNAL_ERROR;
+		}
+		LOGGER.info("Interface : {}  sucessfully attached with router...{}", portId, routerId);
+		return HttpURLConnection.HTTP_OK;
 	}
 	
 
@@ -371,28 +398,13 @@ public class RouterHandler implements INeutronRouterAware, INeutronRouterCRUD {
 			NeutronRouter_Interface routerInterface) {
 		String portId = routerInterface.getPortUUID();
 	    String routerId =router.getRouterUUID();
-		VirtualMachineInterface virtualMachineInterface = null;
-		try{
-			virtualMachineInterface = (VirtualMachineInterface) apiConnector.findById(VirtualMachineInterface.class, portId);
-	    	List<ObjectReference<ApiPropertyBase>> virtualMachineList =virtualMachineInterface.getVirtualMachine();
-	    	if(virtualMachineList!=null){
-	             for (ObjectReference<ApiPropertyBase> ref : virtualMachineList) {
-	                 String deviceId = ref.getUuid();
-	                 if(deviceId == routerId){
-	                	 LOGGER.info("Interface attachment verified to router..."); 
-	                 }
-	             } 
-	    	 }
-//			if(virtualMachineInterface.getVirtualMachine()!=null && something.getDeviceOwner.equals("network:router_interface")){
-//				  LOGGER.info("Interface attachment verified to router..." );
-//			}
-        } catch (Exception e) {
-            LOGGER.error("Exception :    " + e);
-        }
-
+		if (Activator.referenceIndex.targets(Relation.ROUTER_INTERFACES, portId).contains(routerId)) {
+			LOGGER.info("Interface attachment verified to router...");
+		}
 	}
 	 /**
-     * Invoked to detach interface to the specified Neutron Router.
+     * Invoked to detach an interface from the specified Neutron Router,
+     * through the {@link RouterInterfaceBatcher}.
      *
      * @param router
      *            An instance of new Neutron Router object.
@@ -406,39 +418,31 @@ public class RouterHandler implements INeutronRouterAware, INeutronRouterCRUD {
 	public int canDetachInterface(NeutronRouter router,
 			NeutronRouter_Interface routerInterface) {
 	    apiConnector = Activator.apiConnector;
-		   String portId = routerInterface.getPortUUID();
-	       String routerId =router.getRouterUUID();
-	       VirtualMachineInterface virtualMachineInterface = null;
-	       LogicalRouter logicalRouter =null;
-	       try {
-	    	logicalRouter = (LogicalRouter) apiConnector.findById(LogicalRouter.class, routerId);
-	    	Iterator<ObjectReference<ApiPropertyBase>> i = logicalRouter.getVirtualMachineInterface().iterator();
-	    	while (i.hasNext()) {
-                if(i.next().getUuid()==portId){
-                	i.remove();
-                	break;
-                }
-             }
-	    	virtualMachineInterface = (VirtualMachineInterface) apiConnector.findById(VirtualMachineInterface.class, portId);
-	        virtualMachineInterface.setVirtualMachine(null);
-	        //something.setDeviceOwner(null);
-	        boolean updateVMI= apiConnector.update(virtualMachineInterface);
-			if (!updateVMI) {
-				LOGGER.warn("virtualMachineInterface updation failed..");
-				return HttpURLConnection.HTTP_INTERNAL_ERROR;
-			}
-			boolean interfaceDetached = apiConnector.update(logicalRouter);
-			if (!interfaceDetached){
-				LOGGER.warn("Interface detachment failed..");
-	            return HttpURLConnection.HTTP_INTERNAL_ERROR;
+		if (router == null || routerInterface == null || routerInterface.getPortUUID() == null) {
+			LOGGER.error("Router and interface can't be null...");
+			return HttpURLConnection.HTTP_BAD_REQUEST;
+		}
+		String portId = routerInterface.getPortUUID();
+		String routerId = router.getRouterUUID();
+		try {
+			if (!exists(NeutronRouter.class, LogicalRouter.class, routerId)) {
+				LOGGER.warn("No Router exists with UUID :  {}", routerId);
+				return HttpURLConnection.HTTP_NOT_FOUND;
 			}
-		    LOGGER.info("Interface : " + logicalRouter.getName() +
-	                      "  having UUID : " + logicalRouter.getUuid() +
-	                      "  sucessfully detached from..."+ logicalRouter.getVirtualMachineInterface());
-			return  HttpURLConnection.HTTP_OK;
 		} catch (IOException e) {
-			LOGGER.error("IOException :   "+e);
-	        return HttpURLConnection.HTTP_INTERNAL_ERROR;	}
+			LOGGER.error("IOException :   " + e);
+			return HttpURLConnection.HTTP_INTERNAL_ERROR;
+		}
+		if (Activator.referenceIndex.isLoaded() && !Activator.referenceIndex.targets(Relation.ROUTER_INTERFACES, portId).contains(routerId)) {
+			LOGGER.warn("Port {} is not attached to router {}", portId, routerId);
+			return HttpURLConnection.HTTP_NOT_FOUND;
+		}
+		if (!interfaceBatcher.detach(apiConnector, routerId, portId)) {
+			LOGGER.warn("Interface detachment failed..");
+			return HttpURLConnection.HTTP_INTERNAL_ERROR;
+		}
+		LOGGER.info("Interface : {}  sucessfully detached from router...{}", portId, routerId);
+		return HttpURLConnection.HTTP_OK;
 	}
 	 /**
      *  Invoked to take action after a router interface has been detached.
@@ -454,18 +458,68 @@ public class RouterHandler implements INeutronRouterAware, INeutronRouterCRUD {
 			NeutronRouter_Interface routerInterface) {
         String routerId =router.getRouterUUID();
 		String portId = routerInterface.getPortUUID();
-		VirtualMachineInterface virtualMachineInterface = null;
-		LogicalRouter logicalRouter =null;
-	    try{
-			virtualMachineInterface = (VirtualMachineInterface) apiConnector.findById(VirtualMachineInterface.class, portId);
-			logicalRouter = (LogicalRouter) apiConnector.findById(LogicalRouter.class, routerId);
-//			if(virtualMachineInterface.getVirtualMachine()==null && something.getDeviceOwner==null){
-//				  LOGGER.info("Interface detachment verified from router..." );
-//			}
-        } catch (Exception e) {
-            LOGGER.error("Exception :    " + e);
-        }
+		if (!Activator.referenceIndex.targets(Relation.ROUTER_INTERFACES, portId).contains(routerId)) {
+			LOGGER.info("Interface detachment verified from router...");
+		}
+	}
+
+	/**
+	 * Invoked to check the external gateway of a router, if it has one, is
+	 * an external network, i.e. one with floating ip pools.
+	 *
+	 * @return A HTTP status code to the request setting the gateway.
+	 */
+	private int canSetGateway(NeutronRouter router) {
+		String networkUUID = gateway(router);
+		if (networkUUID == null) {
+			return HttpURLConnection.HTTP_OK;
+		}
+		try {
+			if (Activator.floatingIpPools.externalNetwork(apiConnector, networkUUID) == null) {
+				LOGGER.warn("Network with UUID :  {} is not an external network", networkUUID);
+				return HttpURLConnection.HTTP_BAD_REQUEST;
+			}
+		} catch (IOException e) {
+			LOGGER.error("IOException :   " + e);
+			return HttpURLConnection.HTTP_INTERNAL_ERROR;
+		}
+		return HttpURLConnection.HTTP_OK;
+	}
 
+	/**
+	 * Invoked to point a router at the external network of its gateway, or
+	 * at no network if it has none. The network is taken from the cached
+	 * floating ip pools.
+	 *
+	 * @return False if the network is not an external network.
+	 */
+	private boolean setGateway(LogicalRouter logicalRouter, String networkUUID) throws IOException {
+		if (networkUUID == null) {
+			logicalRouter.clearVirtualNetwork();
+			return true;
+		}
+		VirtualNetwork virtualNetwork = Activator.floatingIpPools.externalNetwork(apiConnector, networkUUID);
+		if (virtualNetwork == null) {
+			LOGGER.warn("Network with UUID :  {} is not an external network", networkUUID);
+			return false;
+		}
+		logicalRouter.setVirtualNetwork(virtualNetwork);
+		return true;
+	}
+
+	/**
+	 * @return UUID of the external network of a router, or null.
+	 */
+	private static String gateway(NeutronRouter router) {
+		return router.getExternalGatewayInfo() == null ? null : router.getExternalGatewayInfo().getNetworkID();
+	}
+
+	/**
+	 * @return Whether an object is known to the topology, or else exists in
+	 *         Contrail.
+	 */
+	private boolean exists(Class<?> neutronType, Class<? extends ApiObjectBase> contrailType, String uuid) throws IOException {
+		return Activator.topology.contains(neutronType, uuid) || ExistenceFilter.of(contrailType).findById(apiConnector, uuid) != null;
 	}
 	
 	   /**
@@ -488,30 +542,72 @@ public class RouterHandler implements INeutronRouterAware, INeutronRouterCRUD {
 	
 	@Override
 	public List<NeutronRouter> getAllRouters() {
-		// TODO Auto-generated method stub
-		return null;
+		return Activator.topology.list(NeutronRouter.class);
 	}
 
 	@Override
-	public NeutronRouter getRouter(String arg0) {
-		// TODO Auto-generated method stub
-		return null;
+	public NeutronRouter getRouter(String routerUUID) {
+		return Activator.topology.get(NeutronRouter.class, routerUUID);
 	}
 
 	
 
 	@Override
-	public boolean routerExists(String arg0) {
-		// TODO Auto-generated method stub
-		return false;
+	public boolean routerExists(String routerUUID) {
+		apiConnector = Activator.apiConnector;
+		try {
+			return ExistenceFilter.of(LogicalRouter.class).findById(apiConnector, routerUUID) != null;
+		} catch (IOException e) {
+			LOGGER.error("Exception :    " + e);
+			return false;
+		}
+	}
+
+	@Override
+	public boolean routerInUse(String routerUUID) {
+		apiConnector = Activator.apiConnector;
+		if (Activator.referenceIndex.inUse(Relation.ROUTER_INTERFACES, routerUUID)) {
+			return true;
+		} else if (Activator.referenceIndex.isLoaded()) {
+			return false;
+		}
+		try {
+			LogicalRouter logicalRouter = (LogicalRouter) ExistenceFilter.of(LogicalRouter.class).findById(apiConnector, routerUUID);
+			return logicalRouter != null && logicalRouter.getVirtualMachineInterface() != null
+					&& !logicalRouter.getVirtualMachineInterface().isEmpty();
+		} catch (IOException e) {
+			LOGGER.error("Exception :    " + e);
+			return false;
+		}
 	}
 
+
+	/**
+	 * @return UUIDs of the ports attached to a router.
+	 */
+	@Override
+	public Set<String> getRouterInterfaces(String routerUUID) {
+		return Activator.referenceIndex.sources(Relation.ROUTER_INTERFACES, routerUUID);
+	}
+
+	/**
+	 * @return UUID of the router a port is attached to, or null.
+	 */
 	@Override
-	public boolean routerInUse(String arg0) {
-		// TODO Auto-generated method stub
-		return false;
+	public String getInterfaceRouter(String portUUID) {
+		Set<String> routers = Activator.referenceIndex.targets(Relation.ROUTER_INTERFACES, portUUID);
+		return routers.isEmpty() ? null : routers.iterator().next();
 	}
 
+	/**
+	 * @return UUID of the external network of the gateway of a router, or
+	 *         null.
+	 */
+	@Override
+	public String getRouterGateway(String routerUUID) {
+		Set<String> networks = Activator.referenceIndex.targets(Relation.NETWORK_GATEWAYS, routerUUID);
+		return networks.isEmpty() ? null : networks.iterator().next();
+	}
 	  	
 	   /**
      * Invoked to format the UUID if UUID is not in correct format.
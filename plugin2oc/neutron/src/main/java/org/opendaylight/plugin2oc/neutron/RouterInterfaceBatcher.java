@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import net.juniper.contrail.api.ApiConnector;
+import net.juniper.contrail.api.ApiPropertyBase;
+import net.juniper.contrail.api.ObjectReference;
+import net.juniper.contrail.api.types.LogicalRouter;
+import net.juniper.contrail.api.types.VirtualMachine;
+import net.juniper.contrail.api.types.VirtualMachineInterface;
+
+import org.opendaylight.plugin2oc.neutron.ReferenceIndex.Relation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Attaches interfaces to and detaches them from routers in batches, so that
+ * a router gets one LogicalRouter update however many of its interfaces
+ * change at once.
+ *
+ * The first request for a router starts a drain of its requests, run by at
+ * most plugin2oc.router.batch.threads threads, 8 by default, which waits
+ * plugin2oc.router.batch.window.ms, 2 by default, for more requests to the
+ * same router, then applies them all: the VirtualMachineInterfaces are
+ * updated concurrently, by as many other threads, and the LogicalRouter is
+ * written once with the interfaces that were updated. Requests made while a
+ * batch is applied form the next batch; callers only wait for the batch of
+ * their own request. A drain outlives the requests it serves, so its calls
+ * are not accounted to them. When a router gets several requests for one
+ * interface in a batch, the last one wins. A router is dropped once it has no
+ * request left.
+ */
+public class RouterInterfaceBatcher {
+    /**
+     * Logger instance.
+     */
+    static final Logger LOGGER = LoggerFactory.getLogger(RouterInterfaceBatcher.class);
+    static final long DEFAULT_WINDOW_MILLIS = 2;
+    static final int DEFAULT_THREADS = 8;
+
+    /**
+     * Stands for an interface that does not exist, which is only detached
+     * from the router.
+     */
+    private static final VirtualMachineInterface MISSING = new VirtualMachineInterface();
+
+    private final ConcurrentMap<String, Pending> routers = new ConcurrentHashMap<String, Pending>();
+    private final ExecutorService drainer;
+    private final ExecutorService executor;
+    private final long windowMillis;
+
+    public RouterInterfaceBatcher() {
+        this(Long.getLong("plugin2oc.router.batch.window.ms", DEFAULT_WINDOW_MILLIS), Integer.getInteger("plugin2oc.router.batch.threads",
+                DEFAULT_THREADS));
+    }
+
+    RouterInterfaceBatcher(long windowMillis, int threads) {
+        this.windowMillis = Math.max(0, windowMillis);
+        this.drainer = executor("plugin2oc-router-batch-%d", threads);
+        this.executor = executor("plugin2oc-router-interface-%d", threads);
+    }
+
+    private static ExecutorService executor(String nameFormat, int threads) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Invoked to attach an interface to a router.
+     *
+     * @return False if the router or the interface does not exist, or an
+     *         update failed.
+     */
+    public boolean attach(ApiConnector apiConnector, String routerUUID, String portUUID) {
+        return await(submit(apiConnector, routerUUID, new Request(portUUID, true)));
+    }
+
+    /**
+     * Invoked to detach an interface from a router.
+     *
+     * @return False if the router does not exist, or an update failed, in
+     *         which case the interface is kept on the router.
+     */
+    public boolean detach(ApiConnector apiConnector, String routerUUID, String portUUID) {
+        return await(submit(apiConnector, routerUUID, new Request(portUUID, false)));
+    }
+
+    private Future<Boolean> submit(final ApiConnector apiConnector, final String routerUUID, Request request) {
+        while (true) {
+            Pending pending = routers.get(routerUUID);
+            if (pending == null) {
+                pending = new Pending();
+                Pending existing = routers.putIfAbsent(routerUUID, pending);
+                pending = existing == null ? pending : existing;
+            }
+            Offer offer = pending.add(request);
+            if (offer == Offer.CLOSED) {
+                // drained meanwhile, and being dropped
+                continue;
+            }
+            if (offer == Offer.DRAIN) {
+                final Pending drained = pending;
+                drainer.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        drain(apiConnector, routerUUID, drained);
+                    }
+                });
+            }
+            return request.outcome;
+        }
+    }
+
+    /**
+     * Invoked once the first request of a router is queued, to apply batches
+     * until no request is left, then drop the router.
+     */
+    private void drain(ApiConnector apiConnector, String routerUUID, Pending pending) {
+        if (windowMillis > 0) {
+            try {
+                Thread.sleep(windowMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (List<Request> batch = pending.take(); batch != null; batch = pending.take()) {
+            try {
+                apply(apiConnector, routerUUID, batch);
+            } catch (RuntimeException e) {
+                LOGGER.error("Exception :    " + e);
+            } finally {
+                for (Request request : batch) {
+                    request.outcome.set(false);
+                }
+            }
+        }
+        routers.remove(routerUUID, pending);
+    }
+
+    private void apply(final ApiConnector apiConnector, final String routerUUID, List<Request> batch) {
+        LogicalRouter logicalRouter;
+        try {
+            logicalRouter = (LogicalRouter) ExistenceFilter.of(LogicalRouter.class).findById(apiConnector, routerUUID);
+        } catch (IOException e) {
+            LOGGER.error("IOException :   " + e);
+            return;
+        }
+        if (logicalRouter == null) {
+            LOGGER.warn("No Router exists with UUID :  {}", routerUUID);
+            return;
+        }
+        Map<String, Request> byPort = new LinkedHashMap<String, Request>();
+        for (Request request : batch) {
+            byPort.remove(request.portUUID);
+            byPort.put(request.portUUID, request);
+        }
+        Map<String, Future<VirtualMachineInterface>> updates = new LinkedHashMap<String, Future<VirtualMachineInterface>>();
+        for (final Request request : byPort.values()) {
+            updates.put(request.portUUID, executor.submit(new Callable<VirtualMachineInterface>() {
+                @Override
+                public VirtualMachineInterface call() throws IOException {
+                    return updateInterface(apiConnector, routerUUID, request);
+                }
+            }));
+        }
+        List<ObjectReference<ApiPropertyBase>> interfaces = logicalRouter.getVirtualMachineInterface();
+        List<Request> updated = new ArrayList<Request>();
+        for (Request request : byPort.values()) {
+            VirtualMachineInterface virtualMachineInterface = result(updates.get(request.portUUID));
+            if (virtualMachineInterface == null || virtualMachineInterface == MISSING && request.attach) {
+                // an interface whose update failed stays as it is
+                continue;
+            }
+            boolean attached = false;
+            if (interfaces != null) {
+                for (Iterator<ObjectReference<ApiPropertyBase>> i = interfaces.iterator(); i.hasNext();) {
+                    if (request.portUUID.equals(i.next().getUuid())) {
+                        if (request.attach) {
+                            attached = true;
+                        } else {
+                            i.remove();
+                        }
+                    }
+                }
+            }
+            if (request.attach && !attached) {
+                logicalRouter.addVirtualMachineInterface(virtualMachineInterface);
+                interfaces = logicalRouter.getVirtualMachineInterface();
+            }
+            updated.add(request);
+        }
+        if (updated.isEmpty()) {
+            return;
+        }
+        try {
+            if (!apiConnector.update(logicalRouter)) {
+                LOGGER.warn("Router {} interface update failed..", routerUUID);
+                return;
+            }
+        } catch (IOException e) {
+            LOGGER.error("IOException :   " + e);
+            return;
+        }
+        LOGGER.info("Router having UUID : {}  has {} interface(s) attached or detached", routerUUID, updated.size());
+        for (Request request : updated) {
+            if (request.attach) {
+                Activator.referenceIndex.add(Relation.ROUTER_INTERFACES, routerUUID, request.portUUID);
+            } else {
+                Activator.referenceIndex.remove(Relation.ROUTER_INTERFACES, routerUUID, request.portUUID);
+            }
+        }
+        for (Request request : batch) {
+            request.outcome.set(updated.contains(byPort.get(request.portUUID)));
+        }
+    }
+
+    /**
+     * Invoked to point the interface of a request at the router, or at
+     * nothing once detached.
+     *
+     * @return The updated interface, {@link #MISSING} if it does not exist,
+     *         or null if it could not be updated.
+     */
+    private static VirtualMachineInterface updateInterface(ApiConnector apiConnector, String routerUUID, Request request) throws IOException {
+        VirtualMachineInterface virtualMachineInterface = (VirtualMachineInterface) ExistenceFilter.of(VirtualMachineInterface.class).findById(
+                apiConnector, request.portUUID);
+        if (virtualMachineInterface == null) {
+            LOGGER.warn("No port exists with UUID :  {}", request.portUUID);
+            return MISSING;
+        }
+        if (request.attach) {
+            VirtualMachine virtualMachine = new VirtualMachine();
+            virtualMachine.setName(routerUUID);
+            virtualMachine.setUuid(routerUUID);
+            virtualMachineInterface.setVirtualMachine(virtualMachine);
+        } else {
+            virtualMachineInterface.clearVirtualMachine();
+        }
+        if (!apiConnector.update(virtualMachineInterface)) {
+            LOGGER.warn("virtualMachineInterface updation failed..");
+            return null;
+        }
+        return virtualMachineInterface;
+    }
+
+    private static <T> T result(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("InterruptedException :    ", e);
+            return null;
+        } catch (ExecutionException e) {
+            LOGGER.error("Exception :    " + e.getCause());
+            return null;
+        }
+    }
+
+    private static boolean await(Future<Boolean> outcome) {
+        Boolean result = result(outcome);
+        return result != null && result;
+    }
+
+    /**
+     * An interface to attach or detach.
+     */
+    private static final class Request {
+        final String portUUID;
+        final boolean attach;
+        final SettableFuture<Boolean> outcome = SettableFuture.create();
+
+        Request(String portUUID, boolean attach) {
+            this.portUUID = portUUID;
+            this.attach = attach;
+        }
+    }
+
+    /**
+     * What became of a request offered to the requests of a router.
+     */
+    private enum Offer {
+        /** Queued for the drain running. */
+        QUEUED,
+        /** Queued, and a drain is to be started. */
+        DRAIN,
+        /** Not queued, the router is being dropped. */
+        CLOSED
+    }
+
+    /**
+     * The requests of a router not applied yet.
+     */
+    private static final class Pending {
+        private List<Request> requests = new ArrayList<Request>();
+        private boolean draining;
+        private boolean closed;
+
+        synchronized Offer add(Request request) {
+            if (closed) {
+                return Offer.CLOSED;
+            }
+            requests.add(request);
+            if (draining) {
+                return Offer.QUEUED;
+            }
+            draining = true;
+            return Offer.DRAIN;
+        }
+
+        /**
+         * @return The next batch, or null once there is none, after which no
+         *         request is queued any more.
+         */
+        synchronized List<Request> take() {
+            if (requests.isEmpty()) {
+                closed = true;
+                return null;
+            }
+            List<Request> batch = requests;
+            requests = new ArrayList<Request>();
+            return batch;
+        }
+    }
+}
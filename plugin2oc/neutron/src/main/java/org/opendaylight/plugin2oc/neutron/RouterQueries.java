@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.util.Set;
+
+/**
+ * Service registered by the router handler, besides the Neutron ones, to
+ * look up the interfaces and gateways of routers without calling Contrail.
+ */
+public interface RouterQueries {
+    /**
+     * @return UUIDs of the ports attached to a router.
+     */
+    Set<String> getRouterInterfaces(String routerUUID);
+
+    /**
+     * @return UUID of the router a port is attached to, or null.
+     */
+    String getInterfaceRouter(String portUUID);
+
+    /**
+     * @return UUID of the external network of the gateway of a router, or
+     *         null.
+     */
+    String getRouterGateway(String routerUUID);
+}
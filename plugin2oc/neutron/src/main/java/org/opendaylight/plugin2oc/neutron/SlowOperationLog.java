@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opendaylight.controller.networkconfig.neutron.NeutronFloatingIP;
+import org.opendaylight.controller.networkconfig.neutron.NeutronNetwork;
+import org.opendaylight.controller.networkconfig.neutron.NeutronPort;
+import org.opendaylight.controller.networkconfig.neutron.NeutronRouter;
+import org.opendaylight.controller.networkconfig.neutron.NeutronRouter_Interface;
+import org.opendaylight.controller.networkconfig.neutron.NeutronSubnet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes one record per handler operation slower than
+ * plugin2oc.slowop.threshold.ms (default 1000, 0 disables the log) to its own
+ * logger, with the resource UUID and tenant of the request and the step
+ * breakdown of its {@link OperationTrace}.
+ *
+ * Faster operations only cost the threshold comparison; the record is built
+ * after the operation completed and only when it is written.
+ */
+public final class SlowOperationLog {
+    /**
+     * Logger instance.
+     */
+    static final Logger LOGGER = LoggerFactory.getLogger(SlowOperationLog.class);
+    static final long THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("plugin2oc.slowop.threshold.ms", 1000L));
+
+    private SlowOperationLog() {
+    }
+
+    /**
+     * @return true if an operation that took the specified time must be
+     *         logged.
+     */
+    public static boolean isSlow(long elapsedNanos) {
+        return THRESHOLD_NANOS > 0 && elapsedNanos >= THRESHOLD_NANOS && LOGGER.isWarnEnabled();
+    }
+
+    /**
+     * Invoked to log a slow operation.
+     *
+     * @param handler
+     *            Simple name of the handler class.
+     * @param operation
+     *            Name of the Neutron operation.
+     * @param args
+     *            Arguments the operation was invoked with.
+     * @param trace
+     *            Trace of the operation, may be null for a nested operation.
+     * @param elapsedNanos
+     *            Duration of the operation.
+     */
+    public static void log(String handler, String operation, Object[] args, OperationTrace trace, long elapsedNanos) {
+        StringBuilder record = new StringBuilder(512);
+        record.append("Slow operation ").append(handler).append('.').append(operation);
+        record.append(" took ").append(OperationTrace.millis(elapsedNanos)).append(" ms");
+        String uuid = null;
+        String tenant = null;
+        if (args != null) {
+            for (Object arg : args) {
+                if (uuid == null) {
+                    uuid = resourceUUID(arg);
+                }
+                if (tenant == null) {
+                    tenant = tenant(arg);
+                }
+            }
+        }
+        record.append(" : uuid=").append(uuid).append(", tenant=").append(tenant);
+        if (trace == null) {
+            record.append(", steps accounted to the enclosing operation");
+        } else {
+            record.append(", calls=").append(trace.getTotalCalls());
+            record.append(", retries=").append(trace.getRetries());
+            record.append(" (").append(OperationTrace.millis(trace.getRetryNanos())).append(" ms)");
+            record.append(", lockWaits=").append(trace.getLockWaits());
+            record.append(" (").append(OperationTrace.millis(trace.getLockWaitNanos())).append(" ms)");
+            trace.appendSteps(record);
+        }
+        LOGGER.warn(record.toString());
+    }
+
+    private static String resourceUUID(Object arg) {
+        if (arg instanceof String) {
+            return (String) arg;
+        } else if (arg instanceof NeutronNetwork) {
+            return ((NeutronNetwork) arg).getNetworkUUID();
+        } else if (arg instanceof NeutronSubnet) {
+            return ((NeutronSubnet) arg).getSubnetUUID();
+        } else if (arg instanceof NeutronPort) {
+            return ((NeutronPort) arg).getPortUUID();
+        } else if (arg instanceof NeutronRouter) {
+            return ((NeutronRouter) arg).getRouterUUID();
+        } else if (arg instanceof NeutronFloatingIP) {
+            return ((NeutronFloatingIP) arg).getFloatingIPUUID();
+        } else if (arg instanceof NeutronRouter_Interface) {
+            return ((NeutronRouter_Interface) arg).getPortUUID();
+        }
+        return null;
+    }
+
+    private static String tenant(Object arg) {
+        if (arg instanceof NeutronNetwork) {
+            return ((NeutronNetwork) arg).getTenantID();
+        } else if (arg instanceof NeutronSubnet) {
+            return ((NeutronSubnet) arg).getTenantID();
+        } else if (arg instanceof NeutronPort) {
+            return ((NeutronPort) arg).getTenantID();
+        } else if (arg instanceof NeutronRouter) {
+            return ((NeutronRouter) arg).getTenantID();
+        } else if (arg instanceof NeutronFloatingIP) {
+            return ((NeutronFloatingIP) arg).getTenantUUID();
+        } else if (arg instanceof NeutronRouter_Interface) {
+            return ((NeutronRouter_Interface) arg).getTenantID();
+        }
+        return null;
+    }
+}
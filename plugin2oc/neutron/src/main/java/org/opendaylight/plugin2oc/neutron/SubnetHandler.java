@@ -10,7 +10,6 @@ package org.opendaylight.plugin2oc.neutron;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
-import java.util.Iterator;
 import java.util.List;
 
 import net.juniper.contrail.api.ApiConnector;
@@ -21,12 +20,10 @@ import net.juniper.contrail.api.types.VirtualNetwork;
 import net.juniper.contrail.api.types.VnSubnetsType;
 import net.juniper.contrail.api.types.VnSubnetsType.IpamSubnetType;
 
-import org.apache.commons.net.util.SubnetUtils;
-import org.apache.commons.net.util.SubnetUtils.SubnetInfo;
 import org.opendaylight.controller.networkconfig.neutron.INeutronSubnetAware;
 import org.opendaylight.controller.networkconfig.neutron.INeutronSubnetCRUD;
 import org.opendaylight.controller.networkconfig.neutron.NeutronSubnet;
-import org.opendaylight.controller.networkconfig.neutron.NeutronSubnet_IPAllocationPool;
+import org.opendaylight.plugin2oc.neutron.ReferenceIndex.Relation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -67,8 +64,21 @@ public class SubnetHandler implements INeutronSubnetAware, INeutronSubnetCRUD {
             LOGGER.info("Subnet Cidr can not be empty or null...");
             return HttpURLConnection.HTTP_BAD_REQUEST;
         }
-        boolean isvalidGateway = validGatewayIP(subnet, subnet.getGatewayIP());
-        if (!isvalidGateway) {
+        // not cached until the subnet is created
+        AllocationPools pools;
+        try {
+            pools = new AllocationPools(subnet.getCidr(), subnet.getAllocationPools());
+            if (pools.isOutsideCidr() || pools.isOverlapping()) {
+                LOGGER.error("Allocation pools must be inside the subnet Cidr and must not overlap...");
+                return HttpURLConnection.HTTP_BAD_REQUEST;
+            }
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Invalid subnet Cidr or allocation pool : " + e.getMessage());
+            return HttpURLConnection.HTTP_BAD_REQUEST;
+        }
+        // a gateway overlapping the allocation pools is already refused by the
+        // Neutron northbound, whose default pools leave the gateway out
+        if (!pools.inCidr(subnet.getGatewayIP())) {
             LOGGER.error("Incorrect gateway IP....");
             return HttpURLConnection.HTTP_BAD_REQUEST;
         }
@@ -117,12 +127,21 @@ public class SubnetHandler implements INeutronSubnetAware, INeutronSubnetCRUD {
                 LOGGER.warn("Subnet creation failed..");
                 return false;
             }
-            LOGGER.info("Subnet " + subnet.getCidr() + "sucessfully added to the network having UUID : " + virtualnetwork.getUuid());
+            LOGGER.info("Subnet {}sucessfully added to the network having UUID : {}", subnet.getCidr(), virtualnetwork.getUuid());
+            Activator.topology.put(NeutronSubnet.class, subnet.getSubnetUUID(), subnet);
+            Activator.floatingIpAllocator.invalidate(subnet.getNetworkUUID());
         } catch (IOException e) {
             e.printStackTrace();
             LOGGER.error("Exception:  " + e);
             return false;
         }
+        try {
+            // cached once the subnet exists, for the fixed IPs of its ports
+            Activator.subnetIndex.invalidate(subnet.getSubnetUUID());
+            Activator.subnetIndex.of(subnet);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Invalid subnet Cidr or allocation pool : {}", e.getMessage());
+        }
         return true;
     }
 
@@ -284,25 +303,18 @@ public class SubnetHandler implements INeutronSubnetAware, INeutronSubnetCRUD {
 
     @Override
     public boolean updateSubnet(String subnetUUID, NeutronSubnet deltaSubnet) {
-        System.out.println(originalSubnet);
         apiConnector = Activator.apiConnector;
         try {
             VirtualNetwork virtualNetwork = (VirtualNetwork) apiConnector.findById(VirtualNetwork.class, originalSubnet.getNetworkUUID());
-            System.out.println(virtualNetwork);
             List<ObjectReference<VnSubnetsType>> ipamRefs = virtualNetwork.getNetworkIpam();
             if (ipamRefs != null) {
-                System.out.println("1");
                 for (ObjectReference<VnSubnetsType> ref : ipamRefs) {
                     VnSubnetsType vnSubnetsType = ref.getAttr();
                     if (vnSubnetsType != null) {
-                        System.out.println("2");
                         List<VnSubnetsType.IpamSubnetType> subnets = vnSubnetsType.getIpamSubnets();
                         for (VnSubnetsType.IpamSubnetType subnetValue : subnets) {
-                            System.out.println(subnetValue.getSubnetUuid());
-                            System.out.println(subnetUUID);
                             boolean doesSubnetExist = subnetValue.getSubnetUuid().matches(subnetUUID);
                             if (doesSubnetExist) {
-                                System.out.println("3");
                                 // subnetValue.setDefaultGateway(deltaSubnet.getGatewayIP());
                                 subnetValue.setSubnetName(deltaSubnet.getName());
                                 // if (deltaSubnet.getEnableDHCP() != null) {
@@ -315,15 +327,15 @@ public class SubnetHandler implements INeutronSubnetAware, INeutronSubnetCRUD {
                     }
                 }
             }
-            System.out.println("up");
             boolean subnetUpdate = apiConnector.update(virtualNetwork);
-            System.out.println(subnetUpdate);
             if (!subnetUpdate) {
                 LOGGER.warn("Subnet upadtion failed..");
                 originalSubnet = null;
                 return false;
             } else {
-                LOGGER.info(" Subnet " + originalSubnet.getCidr() + " sucessfully updated with subnet name : " + deltaSubnet.getName());
+                LOGGER.info(" Subnet {} sucessfully updated with subnet name : {}", originalSubnet.getCidr(), deltaSubnet.getName());
+                Activator.topology.update(NeutronSubnet.class, subnetUUID, deltaSubnet);
+                Activator.subnetIndex.invalidate(subnetUUID);
                 originalSubnet = null;
                 return true;
             }
@@ -384,6 +396,10 @@ public class SubnetHandler implements INeutronSubnetAware, INeutronSubnetCRUD {
     @Override
     public int canDeleteSubnet(NeutronSubnet subnet) {
         apiConnector = Activator.apiConnector;
+        if (subnet != null && Activator.referenceIndex.inUse(Relation.SUBNET_PORTS, subnet.getSubnetUUID())) {
+            LOGGER.info("Subnet with UUID :  {} cannot be deleted as it has port(s) associated with it....", subnet.getSubnetUUID());
+            return HttpURLConnection.HTTP_FORBIDDEN;
+        }
         originalSubnet = subnet;
         return HttpURLConnection.HTTP_OK;
     }
@@ -441,7 +457,11 @@ public class SubnetHandler implements INeutronSubnetAware, INeutronSubnetCRUD {
                     originalSubnet = null;
                     return false;
                 } else {
-                    LOGGER.info("Subnet " + originalSubnet.getCidr() + " sucessfully deleted from network  : " + originalSubnet.getNetworkUUID());
+                    LOGGER.info("Subnet {} sucessfully deleted from network  : {}", originalSubnet.getCidr(), originalSubnet.getNetworkUUID());
+                    Activator.referenceIndex.removeTarget(Relation.SUBNET_PORTS, subnetUUID);
+                    Activator.topology.remove(NeutronSubnet.class, subnetUUID);
+                    Activator.subnetIndex.invalidate(subnetUUID);
+                    Activator.floatingIpAllocator.invalidate(originalSubnet.getNetworkUUID());
                     originalSubnet = null;
                     return true;
                 }
@@ -484,39 +504,14 @@ public class SubnetHandler implements INeutronSubnetAware, INeutronSubnetCRUD {
         }
     }
 
-    boolean validGatewayIP(NeutronSubnet subnet, String ipAddress) {
-        try {
-            SubnetUtils util = new SubnetUtils(subnet.getCidr());
-            SubnetInfo info = util.getInfo();
-            boolean inRange = info.isInRange(ipAddress);
-            if (!inRange) {
-                return false;
-            } else {
-                // ip available in allocation pool
-                Iterator<NeutronSubnet_IPAllocationPool> i = subnet.getAllocationPools().iterator();
-                while (i.hasNext()) {
-                    NeutronSubnet_IPAllocationPool pool = i.next();
-                    if (pool.contains(ipAddress)) {
-                        return true;
-                    }
-                }
-                return true;
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            LOGGER.error("Exception  :  " + e);
-            return false;
-        }
-    }
-
     @Override
     public List<NeutronSubnet> getAllSubnets() {
-        return null;
+        return Activator.topology.list(NeutronSubnet.class);
     }
 
     @Override
-    public NeutronSubnet getSubnet(String arg0) {
-        return null;
+    public NeutronSubnet getSubnet(String subnetUUID) {
+        return Activator.topology.get(NeutronSubnet.class, subnetUUID);
     }
 
     /**
@@ -558,12 +553,12 @@ public class SubnetHandler implements INeutronSubnetAware, INeutronSubnetCRUD {
     }
 
     @Override
-    public boolean subnetInUse(String arg0) {
-        return false;
+    public boolean subnetInUse(String subnetUUID) {
+        return Activator.referenceIndex.inUse(Relation.SUBNET_PORTS, subnetUUID);
     }
 
     @Override
-    public boolean subnetExists(String arg0) {
-        return false;
+    public boolean subnetExists(String subnetUUID) {
+        return Activator.topology.contains(NeutronSubnet.class, subnetUUID);
     }
 }
\ No newline at end of file
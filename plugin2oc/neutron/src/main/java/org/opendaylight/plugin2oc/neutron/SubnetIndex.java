@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.opendaylight.controller.networkconfig.neutron.NeutronSubnet;
+
+/**
+ * The {@link AllocationPools} of the subnets created through the plugin, by
+ * subnet UUID, so that the fixed IPs of a port are checked against the CIDR
+ * of their subnet without parsing it again.
+ *
+ * An entry is added once its subnet has been created, and dropped when the
+ * subnet is updated or deleted.
+ */
+public class SubnetIndex {
+    private final ConcurrentMap<String, AllocationPools> subnets = new ConcurrentHashMap<String, AllocationPools>();
+
+    /**
+     * @return The index of an existing subnet, cached by its UUID.
+     *
+     * @throws IllegalArgumentException
+     *             If the CIDR or a pool of the subnet is not valid.
+     */
+    public AllocationPools of(NeutronSubnet subnet) {
+        String uuid = subnet.getSubnetUUID();
+        AllocationPools index = uuid == null ? null : subnets.get(uuid);
+        if (index == null) {
+            index = new AllocationPools(subnet.getCidr(), subnet.getAllocationPools());
+            if (uuid != null) {
+                subnets.put(uuid, index);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Invoked after a subnet is updated or deleted.
+     */
+    public void invalidate(String subnetUUID) {
+        if (subnetUUID != null) {
+            subnets.remove(subnetUUID);
+        }
+    }
+
+    public int size() {
+        return subnets.size();
+    }
+
+    /**
+     * Invoked to forget every subnet.
+     */
+    public void clear() {
+        subnets.clear();
+    }
+}
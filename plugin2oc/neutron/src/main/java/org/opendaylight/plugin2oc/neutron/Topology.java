@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Neutron objects created through the plugin, answering the get and list
+ * calls of the Neutron CRUD interfaces without a call to Contrail.
+ *
+ * Readers take the current {@link TopologySnapshot} with a single volatile
+ * read and never lock or wait. Writers derive a new snapshot from the
+ * current one and publish it by compare and set, retrying if another writer
+ * published first; only the path to the changed object is copied. Objects
+ * are copied in and out, so that callers can not change a snapshot.
+ *
+ * Only objects created since the start of the plugin are known.
+ */
+public class Topology {
+    private final AtomicReference<TopologySnapshot> root = new AtomicReference<TopologySnapshot>(TopologySnapshot.EMPTY);
+
+    /**
+     * @return The current snapshot, consistent however the topology changes
+     *         afterwards.
+     */
+    public TopologySnapshot snapshot() {
+        return root.get();
+    }
+
+    /**
+     * @return A copy of the object of a type with the specified UUID, or null.
+     */
+    public <T> T get(Class<T> type, String uuid) {
+        T obj = root.get().get(type, uuid);
+        return obj == null ? null : NeutronObjects.copy(obj);
+    }
+
+    /**
+     * @return Copies of the objects of a type.
+     */
+    public <T> List<T> list(Class<T> type) {
+        List<T> objects = root.get().list(type);
+        List<T> copies = new ArrayList<T>(objects.size());
+        for (T obj : objects) {
+            copies.add(NeutronObjects.copy(obj));
+        }
+        return copies;
+    }
+
+    public boolean contains(Class<?> type, String uuid) {
+        return root.get().contains(type, uuid);
+    }
+
+    /**
+     * Invoked after an object has been created.
+     */
+    public <T> void put(Class<T> type, String uuid, T obj) {
+        if (uuid == null || obj == null) {
+            return;
+        }
+        T copy = NeutronObjects.copy(obj);
+        TopologySnapshot current;
+        do {
+            current = root.get();
+        } while (!root.compareAndSet(current, current.with(type, uuid, copy)));
+    }
+
+    /**
+     * Invoked after an object has been updated, to overwrite the properties
+     * set in the delta.
+     *
+     * @return False if the object is not known.
+     */
+    public <T> boolean update(Class<T> type, String uuid, T delta) {
+        if (uuid == null || delta == null) {
+            return false;
+        }
+        TopologySnapshot current;
+        TopologySnapshot next;
+        do {
+            current = root.get();
+            T original = current.get(type, uuid);
+            if (original == null) {
+                return false;
+            }
+            next = current.with(type, uuid, NeutronObjects.overwrite(original, delta));
+        } while (!root.compareAndSet(current, next));
+        return true;
+    }
+
+    /**
+     * Invoked after an object has been deleted.
+     */
+    public void remove(Class<?> type, String uuid) {
+        if (uuid == null) {
+            return;
+        }
+        TopologySnapshot current;
+        do {
+            current = root.get();
+        } while (!root.compareAndSet(current, current.without(type, uuid)));
+    }
+
+    /**
+     * Invoked to forget every object.
+     */
+    public void clear() {
+        root.set(TopologySnapshot.EMPTY);
+    }
+}
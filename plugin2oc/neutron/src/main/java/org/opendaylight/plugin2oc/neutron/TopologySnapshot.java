@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.opendaylight.controller.networkconfig.neutron.NeutronFloatingIP;
+import org.opendaylight.controller.networkconfig.neutron.NeutronNetwork;
+import org.opendaylight.controller.networkconfig.neutron.NeutronPort;
+import org.opendaylight.controller.networkconfig.neutron.NeutronRouter;
+import org.opendaylight.controller.networkconfig.neutron.NeutronSubnet;
+
+/**
+ * Immutable point in time view of the Neutron objects created through the
+ * plugin. Deriving a snapshot with an object added or removed shares all
+ * other objects with this one, see {@link PersistentMap}.
+ *
+ * The objects held must not be modified; {@link Topology} hands out copies.
+ */
+public final class TopologySnapshot {
+    /**
+     * Types of the Neutron objects held.
+     */
+    static final List<Class<?>> TYPES = Arrays.<Class<?>> asList(NeutronNetwork.class, NeutronSubnet.class, NeutronPort.class,
+            NeutronRouter.class, NeutronFloatingIP.class);
+    static final TopologySnapshot EMPTY;
+
+    static {
+        @SuppressWarnings("unchecked")
+        PersistentMap<Object>[] maps = new PersistentMap[TYPES.size()];
+        Arrays.fill(maps, PersistentMap.empty());
+        EMPTY = new TopologySnapshot(maps, 0);
+    }
+
+    private final PersistentMap<Object>[] maps;
+    private final long version;
+
+    private TopologySnapshot(PersistentMap<Object>[] maps, long version) {
+        this.maps = maps;
+        this.version = version;
+    }
+
+    /**
+     * @return Number of changes made to the topology before this snapshot.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int size(Class<?> type) {
+        return maps[index(type)].size();
+    }
+
+    public boolean contains(Class<?> type, String uuid) {
+        return uuid != null && maps[index(type)].containsKey(uuid);
+    }
+
+    /**
+     * @return The object of a type with the specified UUID, or null.
+     */
+    <T> T get(Class<T> type, String uuid) {
+        return uuid == null ? null : type.cast(maps[index(type)].get(uuid));
+    }
+
+    /**
+     * @return The objects of a type, in no particular order.
+     */
+    @SuppressWarnings("unchecked")
+    <T> List<T> list(Class<T> type) {
+        return (List<T>) maps[index(type)].values();
+    }
+
+    /**
+     * @return A snapshot with the object of a type with the specified UUID
+     *         set.
+     */
+    TopologySnapshot with(Class<?> type, String uuid, Object obj) {
+        int index = index(type);
+        PersistentMap<Object> map = maps[index].plus(uuid, obj);
+        return map == maps[index] ? this : derive(index, map);
+    }
+
+    /**
+     * @return A snapshot without the object of a type with the specified
+     *         UUID.
+     */
+    TopologySnapshot without(Class<?> type, String uuid) {
+        int index = index(type);
+        PersistentMap<Object> map = maps[index].minus(uuid);
+        return map == maps[index] ? this : derive(index, map);
+    }
+
+    private TopologySnapshot derive(int index, PersistentMap<Object> map) {
+        PersistentMap<Object>[] derived = maps.clone();
+        derived[index] = map;
+        return new TopologySnapshot(derived, version + 1);
+    }
+
+    private static int index(Class<?> type) {
+        int index = TYPES.indexOf(type);
+        if (index < 0) {
+            throw new IllegalArgumentException("Not a Neutron topology type: " + type.getName());
+        }
+        return index;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import net.juniper.contrail.api.ApiConnector;
+import net.juniper.contrail.api.types.VirtualMachine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds or creates the VirtualMachine of a device once, however many ports of
+ * the device are created or updated at the same time. The first port of a
+ * device looks the VirtualMachine up and creates it if missing; the other
+ * ports wait for and share its result, which is kept for the ports that come
+ * later.
+ *
+ * At most plugin2oc.vm.cache VirtualMachines, 4096 by default, are kept. A
+ * VirtualMachine is dropped when it is deleted, or when it could not be
+ * found nor created so that the next port tries again. VirtualMachines are
+ * only handed out to the ApiConnector that found or created them.
+ */
+public class VirtualMachineRegistry {
+    /**
+     * Logger instance.
+     */
+    static final Logger LOGGER = LoggerFactory.getLogger(VirtualMachineRegistry.class);
+    static final int DEFAULT_CAPACITY = 4096;
+
+    private final ConcurrentMap<String, Future<VirtualMachine>> machines = new ConcurrentHashMap<String, Future<VirtualMachine>>();
+    private final int capacity;
+    private volatile ApiConnector connector;
+
+    public VirtualMachineRegistry() {
+        this(Integer.getInteger("plugin2oc.vm.cache", DEFAULT_CAPACITY));
+    }
+
+    VirtualMachineRegistry(int capacity) {
+        this.capacity = Math.max(0, capacity);
+    }
+
+    /**
+     * Invoked to get the VirtualMachine of a device, created if it does not
+     * exist.
+     *
+     * @return The VirtualMachine, or null if it could not be created.
+     */
+    public VirtualMachine get(final ApiConnector apiConnector, final String deviceUUID) throws IOException {
+        bind(apiConnector);
+        Future<VirtualMachine> machine = machines.get(deviceUUID);
+        if (machine == null) {
+            FutureTask<VirtualMachine> lookup = new FutureTask<VirtualMachine>(new Callable<VirtualMachine>() {
+                @Override
+                public VirtualMachine call() throws IOException {
+                    return findOrCreate(apiConnector, deviceUUID);
+                }
+            });
+            machine = machines.putIfAbsent(deviceUUID, lookup);
+            if (machine == null) {
+                machine = lookup;
+                lookup.run();
+            }
+        }
+        VirtualMachine virtualMachine = null;
+        try {
+            virtualMachine = machine.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            machines.remove(deviceUUID, machine);
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        if (virtualMachine == null || machines.size() > capacity) {
+            machines.remove(deviceUUID, machine);
+        }
+        return virtualMachine;
+    }
+
+    /**
+     * Invoked after the VirtualMachine of a device is deleted, or a port could
+     * not be bound to it.
+     */
+    public void forget(String deviceUUID) {
+        if (deviceUUID != null) {
+            machines.remove(deviceUUID);
+        }
+    }
+
+    public int size() {
+        return machines.size();
+    }
+
+    private static VirtualMachine findOrCreate(ApiConnector apiConnector, String deviceUUID) throws IOException {
+        VirtualMachine virtualMachine = (VirtualMachine) apiConnector.findById(VirtualMachine.class, deviceUUID);
+        LOGGER.debug("virtualMachine:   {}", virtualMachine);
+        if (virtualMachine != null) {
+            return virtualMachine;
+        }
+        virtualMachine = new VirtualMachine();
+        virtualMachine.setName(deviceUUID);
+        virtualMachine.setUuid(deviceUUID);
+        boolean virtualMachineCreated = apiConnector.create(virtualMachine);
+        LOGGER.debug("virtualMachineCreated: {}", virtualMachineCreated);
+        if (!virtualMachineCreated) {
+            // created meanwhile outside of the plugin?
+            virtualMachine = (VirtualMachine) apiConnector.findById(VirtualMachine.class, deviceUUID);
+            if (virtualMachine == null) {
+                LOGGER.warn("virtualMachine creation failed..");
+            }
+            return virtualMachine;
+        }
+        LOGGER.info("virtualMachine : {}  having UUID : {}  sucessfully created...", virtualMachine.getName(), virtualMachine.getUuid());
+        return virtualMachine;
+    }
+
+    /**
+     * Invoked to drop the VirtualMachines found or created through another
+     * ApiConnector.
+     */
+    private void bind(ApiConnector apiConnector) {
+        if (apiConnector != connector) {
+            synchronized (this) {
+                if (apiConnector != connector) {
+                    machines.clear();
+                    connector = apiConnector;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.juniper.contrail.api.ApiConnector;
+import net.juniper.contrail.api.ApiObjectBase;
+import net.juniper.contrail.api.types.Project;
+import net.juniper.contrail.api.types.VirtualNetwork;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the VirtualNetworks ports are created on, and the Projects of those
+ * ports, so that creating a port during a burst writes its
+ * VirtualMachineInterface and InstanceIps without reading them again.
+ *
+ * At most plugin2oc.port.warm.networks networks and as many projects are kept,
+ * 256 by default, 0 disabling the pool. Entries are re-read by
+ * {@link #refresh()}, which the Activator runs in the background, and dropped
+ * once they no longer exist, when the network is deleted, or when a port can
+ * not be created on it. Entries are only handed out for the ApiConnector that
+ * read them.
+ */
+public class WarmNetworks {
+    /**
+     * Logger instance.
+     */
+    static final Logger LOGGER = LoggerFactory.getLogger(WarmNetworks.class);
+    static final int DEFAULT_CAPACITY = 256;
+
+    private final ConcurrentMap<String, VirtualNetwork> networks = new ConcurrentHashMap<String, VirtualNetwork>();
+    private final ConcurrentMap<String, Project> projects = new ConcurrentHashMap<String, Project>();
+    private final int capacity;
+    private volatile ApiConnector connector;
+
+    public WarmNetworks() {
+        this(Integer.getInteger("plugin2oc.port.warm.networks", DEFAULT_CAPACITY));
+    }
+
+    WarmNetworks(int capacity) {
+        this.capacity = Math.max(0, capacity);
+    }
+
+    /**
+     * @return The VirtualNetwork, read from Contrail unless kept, or null if
+     *         it does not exist.
+     */
+    public VirtualNetwork network(ApiConnector apiConnector, String networkUUID) throws IOException {
+        return get(apiConnector, networks, VirtualNetwork.class, networkUUID);
+    }
+
+    /**
+     * @return The Project, read from Contrail unless kept, or null if it does
+     *         not exist.
+     */
+    public Project project(ApiConnector apiConnector, String projectUUID) throws IOException {
+        return get(apiConnector, projects, Project.class, projectUUID);
+    }
+
+    /**
+     * Invoked with a network just created, so that its first ports do not
+     * read it.
+     */
+    public void put(ApiConnector apiConnector, VirtualNetwork virtualNetwork) {
+        if (bind(apiConnector) && networks.size() < capacity) {
+            networks.put(virtualNetwork.getUuid(), virtualNetwork);
+        }
+    }
+
+    /**
+     * Invoked after a network is deleted, or a port could not be created on
+     * it.
+     */
+    public void forget(String networkUUID) {
+        networks.remove(networkUUID);
+    }
+
+    /**
+     * Invoked in the background to re-read the networks and projects kept.
+     */
+    void refresh() {
+        ApiConnector apiConnector = connector;
+        if (apiConnector == null) {
+            return;
+        }
+        try {
+            reload(apiConnector, networks, VirtualNetwork.class);
+            reload(apiConnector, projects, Project.class);
+        } catch (IOException e) {
+            LOGGER.warn("IOException :   " + e);
+        } catch (RuntimeException e) {
+            LOGGER.error("Exception :    " + e);
+        }
+    }
+
+    public int size() {
+        return networks.size() + projects.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends ApiObjectBase> T get(ApiConnector apiConnector, ConcurrentMap<String, T> cache, Class<T> cls, String uuid)
+            throws IOException {
+        boolean bound = bind(apiConnector);
+        T object = bound ? cache.get(uuid) : null;
+        if (object != null) {
+            return object;
+        }
+        object = (T) apiConnector.findById(cls, uuid);
+        if (object != null && bound && cache.size() < capacity) {
+            cache.put(uuid, object);
+        }
+        return object;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends ApiObjectBase> void reload(ApiConnector apiConnector, ConcurrentMap<String, T> cache, Class<T> cls) throws IOException {
+        for (Map.Entry<String, T> entry : cache.entrySet()) {
+            T object = (T) apiConnector.findById(cls, entry.getKey());
+            if (apiConnector != connector) {
+                return;
+            }
+            if (object == null) {
+                cache.remove(entry.getKey(), entry.getValue());
+            } else {
+                cache.replace(entry.getKey(), entry.getValue(), object);
+            }
+        }
+    }
+
+    /**
+     * Invoked to drop the entries read through another ApiConnector.
+     *
+     * @return False if the pool is disabled.
+     */
+    private boolean bind(ApiConnector apiConnector) {
+        if (capacity == 0 || apiConnector == null) {
+            return false;
+        }
+        if (apiConnector != connector) {
+            synchronized (this) {
+                if (apiConnector != connector) {
+                    networks.clear();
+                    projects.clear();
+                    connector = apiConnector;
+                }
+            }
+        }
+        return true;
+    }
+}
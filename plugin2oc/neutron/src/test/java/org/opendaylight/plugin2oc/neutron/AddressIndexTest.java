@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import net.juniper.contrail.api.ApiObjectBase;
+import net.juniper.contrail.api.types.InstanceIp;
+import net.juniper.contrail.api.types.MacAddressesType;
+import net.juniper.contrail.api.types.Project;
+import net.juniper.contrail.api.types.VirtualMachineInterface;
+import net.juniper.contrail.api.types.VirtualNetwork;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test Class for the Address Index.
+ */
+public class AddressIndexTest {
+    static final String PORT = "64a271fe-0216-46bc-a3e6-1ff582fbd324";
+    static final String OTHER_PORT = "74a271fe-0216-46bc-a3e6-1ff582fbd324";
+    static final String NETWORK = "54a271fe-0216-46bc-a3e6-1ff582fbd324";
+    static final String OTHER_NETWORK = "44a271fe-0216-46bc-a3e6-1ff582fbd324";
+    AddressIndex addressIndex;
+
+    @Before
+    public void beforeTest() {
+        addressIndex = new AddressIndex();
+    }
+
+    /* Test method to check a MAC address is owned by one port at a time */
+    @Test
+    public void testMac() {
+        assertNull(addressIndex.macOwner("02:70:72:93:4d:d6"));
+        assertTrue(addressIndex.claimMac("02:70:72:93:4d:d6", PORT));
+        assertTrue(addressIndex.claimMac("02:70:72:93:4D:D6", PORT));
+        assertFalse(addressIndex.claimMac("02-70-72-93-4d-d6", OTHER_PORT));
+        assertEquals(PORT, addressIndex.macOwner("02:70:72:93:4d:d6"));
+        addressIndex.releaseMac("02:70:72:93:4d:d6", OTHER_PORT);
+        assertEquals(PORT, addressIndex.macOwner("02:70:72:93:4d:d6"));
+        addressIndex.releaseMac("02:70:72:93:4d:d6", PORT);
+        assertNull(addressIndex.macOwner("02:70:72:93:4d:d6"));
+        assertTrue(addressIndex.claimMac("not a mac", PORT));
+        assertEquals(0, addressIndex.getMacCount());
+    }
+
+    /* Test method to check IP addresses are owned per network */
+    @Test
+    public void testIp() {
+        assertTrue(addressIndex.claimIp(NETWORK, "10.0.0.3", PORT));
+        assertFalse(addressIndex.claimIp(NETWORK, "10.0.0.3", OTHER_PORT));
+        assertTrue(addressIndex.claimIp(OTHER_NETWORK, "10.0.0.3", OTHER_PORT));
+        assertTrue(addressIndex.claimIp(NETWORK, "2001:db8::3", PORT));
+        assertEquals(PORT, addressIndex.ipOwner(NETWORK, "2001:0db8:0:0:0:0:0:3"));
+        assertNull(addressIndex.ipOwner(OTHER_NETWORK, "2001:db8::3"));
+        assertEquals(3, addressIndex.getIpCount());
+        addressIndex.releaseIp(NETWORK, "10.0.0.3", PORT);
+        assertTrue(addressIndex.claimIp(NETWORK, "10.0.0.3", OTHER_PORT));
+        assertNull(addressIndex.ipOwner(NETWORK, "10.0.0.256"));
+        assertNull(addressIndex.ipOwner(NETWORK, null));
+    }
+
+    /* Test method to check addresses released while the index is rebuilt are not loaded again */
+    @Test
+    public void testReleaseDuringRebuild() throws IOException {
+        InMemoryApiConnector store = new InMemoryApiConnector(true);
+        Project project = new Project();
+        project.setName("project");
+        project.setUuid("019570f5-3f4f-4a8b-a3e4-1a7f9b8c2d11");
+        assertTrue(store.create(project));
+        VirtualNetwork virtualNetwork = new VirtualNetwork();
+        virtualNetwork.setName("network");
+        virtualNetwork.setUuid(NETWORK);
+        virtualNetwork.setParent(project);
+        assertTrue(store.create(virtualNetwork));
+        for (String port : new String[] { PORT, OTHER_PORT }) {
+            VirtualMachineInterface virtualMachineInterface = new VirtualMachineInterface();
+            virtualMachineInterface.setName(port);
+            virtualMachineInterface.setUuid(port);
+            virtualMachineInterface.setParent(project);
+            virtualMachineInterface.addVirtualNetwork(virtualNetwork);
+            MacAddressesType macAddressesType = new MacAddressesType();
+            macAddressesType.addMacAddress(PORT.equals(port) ? "02:70:72:93:4d:d6" : "02:70:72:93:4d:d7");
+            virtualMachineInterface.setMacAddresses(macAddressesType);
+            assertTrue(store.create(virtualMachineInterface));
+            InstanceIp instanceIp = new InstanceIp();
+            instanceIp.setName(port);
+            instanceIp.setAddress(PORT.equals(port) ? "10.0.0.3" : "10.0.0.4");
+            instanceIp.setVirtualMachineInterface(virtualMachineInterface);
+            instanceIp.setVirtualNetwork(virtualNetwork);
+            assertTrue(store.create(instanceIp));
+        }
+
+        addressIndex.rebuild(new ForwardingApiConnector(store) {
+            @Override
+            public ApiObjectBase findById(Class<? extends ApiObjectBase> cls, String uuid) throws IOException {
+                ApiObjectBase object = super.findById(cls, uuid);
+                // the port is deleted by the handlers once read
+                if (PORT.equals(uuid)) {
+                    addressIndex.releaseMac("02:70:72:93:4d:d6", PORT);
+                    addressIndex.releaseIp(NETWORK, "10.0.0.3", PORT);
+                }
+                return object;
+            }
+        });
+        assertNull(addressIndex.macOwner("02:70:72:93:4d:d6"));
+        assertNull(addressIndex.ipOwner(NETWORK, "10.0.0.3"));
+        assertEquals(OTHER_PORT, addressIndex.macOwner("02:70:72:93:4d:d7"));
+        assertEquals(OTHER_PORT, addressIndex.ipOwner(NETWORK, "10.0.0.4"));
+
+        addressIndex.releaseMac("02:70:72:93:4d:d7", OTHER_PORT);
+        addressIndex.rebuild(store);
+        assertEquals(PORT, addressIndex.macOwner("02:70:72:93:4d:d6"));
+        assertEquals(OTHER_PORT, addressIndex.macOwner("02:70:72:93:4d:d7"));
+    }
+
+    /* Test method to check the table against a HashMap through growth and removals */
+    @Test
+    public void testTable() {
+        OffHeapOwnerTable table = new OffHeapOwnerTable(1, 16);
+        Map<Long, UUID> expected = new HashMap<Long, UUID>();
+        Random random = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            long key = random.nextInt(5000);
+            UUID owner = new UUID(1, random.nextInt(3) + 1);
+            if (random.nextInt(3) == 0) {
+                assertEquals(owner.equals(expected.get(key)), table.remove(owner, key));
+                if (owner.equals(expected.get(key))) {
+                    expected.remove(key);
+                }
+            } else {
+                assertEquals(expected.get(key), table.putIfAbsent(owner, key));
+                if (!expected.containsKey(key)) {
+                    expected.put(key, owner);
+                }
+            }
+        }
+        assertEquals(expected.size(), table.size());
+        for (long key = 0; key < 5000; key++) {
+            assertEquals(expected.get(key), table.get(key));
+        }
+    }
+}
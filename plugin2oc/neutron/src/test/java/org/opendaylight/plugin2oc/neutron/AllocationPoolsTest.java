@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.opendaylight.controller.networkconfig.neutron.NeutronSubnet;
+import org.opendaylight.controller.networkconfig.neutron.NeutronSubnet_IPAllocationPool;
+
+/**
+ * Test Class for the AllocationPools.
+ */
+public class AllocationPoolsTest {
+
+    static NeutronSubnet_IPAllocationPool pool(String start, String end) {
+        NeutronSubnet_IPAllocationPool pool = new NeutronSubnet_IPAllocationPool();
+        pool.setPoolStart(start);
+        pool.setPoolEnd(end);
+        return pool;
+    }
+
+    /* Test method to check Cidr membership and overlaps over fragmented, unsorted pools */
+    @Test
+    public void testFragmentedPools() {
+        List<NeutronSubnet_IPAllocationPool> pools = new ArrayList<NeutronSubnet_IPAllocationPool>();
+        for (int i = 250; i >= 2; i -= 4) {
+            pools.add(pool("10.0.0." + i, "10.0.0." + (i + 1)));
+        }
+        pools.add(pool("10.0.1.0", "10.0.1.255"));
+        AllocationPools index = new AllocationPools("10.0.0.0/23", pools);
+        assertFalse(index.isOverlapping());
+        assertFalse(index.isOutsideCidr());
+        for (int i = 0; i < 256; i++) {
+            assertTrue(index.inCidr("10.0.0." + i));
+        }
+        assertFalse(index.inCidr("10.0.2.0"));
+        assertFalse(index.inCidr("20.0.0.250"));
+        assertFalse(index.inCidr("::1"));
+        assertFalse(index.inCidr("not an address"));
+        assertFalse(index.inCidr(null));
+        pools.add(pool("10.0.0.4", "10.0.0.5"));
+        assertFalse(new AllocationPools("10.0.0.0/23", pools).isOverlapping());
+        pools.add(pool("10.0.0.5", "10.0.0.6"));
+        assertTrue(new AllocationPools("10.0.0.0/23", pools).isOverlapping());
+    }
+
+    /* Test method to check IPv6, overlapping and out of Cidr pools */
+    @Test
+    public void testValidation() {
+        List<NeutronSubnet_IPAllocationPool> pools = new ArrayList<NeutronSubnet_IPAllocationPool>();
+        pools.add(pool("2001:db8::10", "2001:db8::ffff"));
+        AllocationPools index = new AllocationPools("2001:db8::/64", pools);
+        assertTrue(index.inCidr("2001:db8::ffff:ffff:ffff:ffff"));
+        assertFalse(index.inCidr("2001:db8:0:1::"));
+        assertFalse(index.isOverlapping());
+        pools.add(pool("2001:db8::ff00", "2001:db8::1:0"));
+        assertTrue(new AllocationPools("2001:db8::/64", pools).isOverlapping());
+        pools.add(pool("2001:db8:0:1::", "2001:db8:0:1::1"));
+        assertTrue(new AllocationPools("2001:db8::/64", pools).isOutsideCidr());
+        assertFalse(new AllocationPools("10.0.0.0/24", null).isOverlapping());
+    }
+
+    /* Test method to check the index is cached per subnet until invalidated */
+    @Test
+    public void testCache() {
+        NeutronSubnet subnet = new NeutronSubnet();
+        subnet.setSubnetUUID("a5b20a4c-14bb-41ad-84c4-b7b6c5a4e2f1");
+        subnet.setCidr("10.0.0.0/24");
+        SubnetIndex subnetIndex = new SubnetIndex();
+        AllocationPools index = subnetIndex.of(subnet);
+        assertSame(index, subnetIndex.of(subnet));
+        subnet.setCidr("10.0.1.0/24");
+        subnetIndex.invalidate(subnet.getSubnetUUID());
+        assertTrue(subnetIndex.of(subnet).inCidr("10.0.1.1"));
+        subnetIndex.clear();
+        assertEquals(0, subnetIndex.size());
+    }
+
+    /* Test method to check the index of a subnet refused by the handler is not cached */
+    @Test
+    public void testRefusedNotCached() {
+        NeutronSubnet subnet = new NeutronSubnet();
+        subnet.setSubnetUUID("b5b20a4c-14bb-41ad-84c4-b7b6c5a4e2f1");
+        subnet.setCidr("10.0.0.0/24");
+        subnet.setGatewayIP("20.0.0.1");
+        int cached = Activator.subnetIndex.size();
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST, new SubnetHandler().canCreateSubnet(subnet));
+        assertEquals(cached, Activator.subnetIndex.size());
+    }
+}
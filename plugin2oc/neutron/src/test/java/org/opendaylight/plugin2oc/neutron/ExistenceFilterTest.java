@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import net.juniper.contrail.api.ApiConnector;
+import net.juniper.contrail.api.ApiObjectBase;
+import net.juniper.contrail.api.types.Project;
+import net.juniper.contrail.api.types.VirtualNetwork;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test Class for the Existence Filter.
+ */
+public class ExistenceFilterTest {
+    InMemoryApiConnector store;
+    CountingApiConnector apiConnector;
+    Project project;
+    ExistenceFilter existenceFilter;
+
+    /**
+     * Counts the lookups reaching the store.
+     */
+    static class CountingApiConnector extends ForwardingApiConnector {
+        int lookups;
+
+        CountingApiConnector(ApiConnector delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public ApiObjectBase findById(Class<? extends ApiObjectBase> cls, String uuid) throws IOException {
+            lookups++;
+            return super.findById(cls, uuid);
+        }
+    }
+
+    @Before
+    public void beforeTest() {
+        store = new InMemoryApiConnector();
+        apiConnector = new CountingApiConnector(store);
+        project = new Project();
+        project.setName("project");
+        project.setUuid("019570f5-3f4f-4a8b-a3e4-1a7f9b8c2d11");
+        assertTrue(store.create(project));
+        existenceFilter = new ExistenceFilter(VirtualNetwork.class, 1000, 0.01);
+    }
+
+    /* Test method to check lookups of missing objects skip the store once the filter is loaded */
+    @Test
+    public void testDefiniteMiss() throws IOException {
+        VirtualNetwork virtualNetwork = network("network");
+        String missing = UUID.randomUUID().toString();
+        assertNull(existenceFilter.findById(apiConnector, missing));
+        assertEquals(1, apiConnector.lookups);
+        existenceFilter.load(apiConnector);
+        assertTrue(existenceFilter.isLoaded());
+        assertNull(existenceFilter.findById(apiConnector, missing));
+        assertEquals(1, apiConnector.lookups);
+        assertNotNull(existenceFilter.findById(apiConnector, virtualNetwork.getUuid()));
+        assertEquals(2, apiConnector.lookups);
+        assertEquals(1, existenceFilter.getDefiniteMisses());
+        assertEquals(2, existenceFilter.getQueries());
+    }
+
+    /* Test method to check the filter follows the objects added and removed, and learns the others */
+    @Test
+    public void testAddRemove() throws IOException {
+        existenceFilter.load(apiConnector);
+        VirtualNetwork virtualNetwork = network("network");
+        assertFalse(existenceFilter.mightExist(virtualNetwork.getUuid()));
+        existenceFilter.add(virtualNetwork.getUuid());
+        assertTrue(existenceFilter.mightExist(virtualNetwork.getUuid()));
+        store.delete(virtualNetwork);
+        assertNull(existenceFilter.findById(apiConnector, virtualNetwork.getUuid()));
+        assertEquals(1, existenceFilter.getFalsePositives());
+        existenceFilter.remove(virtualNetwork.getUuid());
+        assertFalse(existenceFilter.mightExist(virtualNetwork.getUuid()));
+        assertEquals(0, existenceFilter.getEntries());
+        assertTrue(existenceFilter.mightExist("not a uuid"));
+    }
+
+    /* Test method to check deleting an object found through a false positive keeps the object it collides with */
+    @Test
+    public void testFalsePositiveFound() throws IOException {
+        existenceFilter = new ExistenceFilter(VirtualNetwork.class, 1, 0.5);
+        VirtualNetwork live = network("live");
+        existenceFilter.load(apiConnector);
+        String colliding = null;
+        for (long i = 0; colliding == null; i++) {
+            String candidate = new UUID(i, i).toString();
+            if (existenceFilter.mightExist(candidate) && !candidate.equals(live.getUuid())) {
+                colliding = candidate;
+            }
+        }
+        VirtualNetwork found = new VirtualNetwork();
+        found.setName("found");
+        found.setUuid(colliding);
+        found.setParent(project);
+        assertTrue(store.create(found));
+        assertNotNull(existenceFilter.findById(apiConnector, colliding));
+        store.delete(found);
+        existenceFilter.remove(colliding);
+        assertTrue(existenceFilter.mightExist(live.getUuid()));
+        assertNotNull(existenceFilter.findById(apiConnector, live.getUuid()));
+    }
+
+    /* Test method to check an object created while the objects are listed is kept by the load */
+    @Test
+    public void testCreateDuringLoad() throws IOException {
+        existenceFilter.load(apiConnector);
+        final String created = UUID.randomUUID().toString();
+        existenceFilter.load(new ForwardingApiConnector(store) {
+            @Override
+            public List<? extends ApiObjectBase> list(Class<? extends ApiObjectBase> cls, List<String> parent) throws IOException {
+                List<? extends ApiObjectBase> objects = super.list(cls, parent);
+                existenceFilter.add(created);
+                return objects;
+            }
+        });
+        assertTrue(existenceFilter.mightExist(created));
+        assertEquals(1, existenceFilter.getEntries());
+    }
+
+    /* Test method to check the false positive rate stays near the rate the filter is sized for */
+    @Test
+    public void testFalsePositiveRate() {
+        CountingBloomFilter filter = new CountingBloomFilter(10000, 0.01);
+        Random random = new Random(1);
+        List<UUID> added = new ArrayList<UUID>();
+        for (int i = 0; i < 10000; i++) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            filter.add(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            added.add(uuid);
+        }
+        for (UUID uuid : added) {
+            assertTrue(filter.mightContain(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()));
+        }
+        int positives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain(random.nextLong(), random.nextLong())) {
+                positives++;
+            }
+        }
+        assertTrue(positives < 2000);
+        assertTrue(filter.expectedFalsePositiveRate() < 0.02);
+        for (UUID uuid : added) {
+            filter.remove(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        }
+        assertEquals(0, filter.entries());
+    }
+
+    private VirtualNetwork network(String name) {
+        VirtualNetwork virtualNetwork = new VirtualNetwork();
+        virtualNetwork.setName(name);
+        virtualNetwork.setParent(project);
+        assertTrue(store.create(virtualNetwork));
+        return virtualNetwork;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import net.juniper.contrail.api.types.FloatingIp;
+import net.juniper.contrail.api.types.FloatingIpPool;
+import net.juniper.contrail.api.types.NetworkIpam;
+import net.juniper.contrail.api.types.Project;
+import net.juniper.contrail.api.types.SubnetType;
+import net.juniper.contrail.api.types.VirtualNetwork;
+import net.juniper.contrail.api.types.VnSubnetsType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test Class for the Floating IP Allocator.
+ */
+public class FloatingIpAllocatorTest {
+    static final String NETWORK = "54a271fe-0216-46bc-a3e6-1ff582fbd324";
+    static final String POOL = "44a271fe-0216-46bc-a3e6-1ff582fbd324";
+    InMemoryApiConnector apiConnector;
+    FloatingIpAllocator allocator;
+
+    @Before
+    public void beforeTest() throws IOException {
+        apiConnector = new InMemoryApiConnector(true);
+        allocator = new FloatingIpAllocator();
+        Project project = new Project();
+        project.setName("project");
+        project.setUuid("019570f5-3f4f-4a8b-a3e4-1a7f9b8c2d11");
+        assertTrue(apiConnector.create(project));
+        NetworkIpam ipam = new NetworkIpam();
+        ipam.setName("default-network-ipam");
+        ipam.setParent(project);
+        assertTrue(apiConnector.create(ipam));
+        VirtualNetwork virtualNetwork = new VirtualNetwork();
+        virtualNetwork.setName("public");
+        virtualNetwork.setUuid(NETWORK);
+        virtualNetwork.setParent(project);
+        virtualNetwork.setRouterExternal(true);
+        VnSubnetsType.IpamSubnetType subnet = new VnSubnetsType.IpamSubnetType();
+        // 8 addresses, less the network, broadcast and gateway addresses
+        subnet.setSubnet(new SubnetType("172.24.4.0", 29));
+        subnet.setDefaultGateway("172.24.4.1");
+        VnSubnetsType subnets = new VnSubnetsType();
+        subnets.addIpamSubnets(subnet);
+        virtualNetwork.addNetworkIpam(ipam, subnets);
+        assertTrue(apiConnector.create(virtualNetwork));
+        FloatingIpPool pool = new FloatingIpPool();
+        pool.setName("pool");
+        pool.setUuid(POOL);
+        pool.setParent(virtualNetwork);
+        assertTrue(apiConnector.create(pool));
+        FloatingIp floatingIp = new FloatingIp();
+        floatingIp.setName("fip");
+        floatingIp.setParent(pool);
+        floatingIp.setAddress("172.24.4.2");
+        assertTrue(apiConnector.create(floatingIp));
+    }
+
+    /* Test method to check addresses are allocated once, around the existing and reserved ones */
+    @Test
+    public void testAllocate() throws IOException {
+        allocator.rebuild(apiConnector);
+        assertEquals(4, allocator.free(NETWORK));
+        assertTrue(allocator.inUse(NETWORK, "172.24.4.2"));
+        assertNull(allocator.allocate(apiConnector, NETWORK, "172.24.4.2"));
+        assertEquals("172.24.4.5", allocator.allocate(apiConnector, NETWORK, "172.24.4.5"));
+        Set<String> allocated = new HashSet<String>();
+        for (int i = 0; i < 3; i++) {
+            allocated.add(allocator.allocate(apiConnector, NETWORK, null));
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("172.24.4.3", "172.24.4.4", "172.24.4.6")), allocated);
+        assertNull(allocator.allocate(apiConnector, NETWORK, null));
+        allocator.releaseInPool(POOL, "172.24.4.4");
+        allocator.release(NETWORK, "172.24.4.1");
+        assertEquals("172.24.4.4", allocator.allocate(apiConnector, NETWORK, null));
+        assertEquals("10.0.0.1", allocator.allocate(apiConnector, NETWORK, "10.0.0.1"));
+    }
+
+    /* Test method to check a network is loaded on first use and keeps its addresses when reloaded */
+    @Test
+    public void testLoadOnFirstUse() throws IOException {
+        assertEquals(-1, allocator.free(NETWORK));
+        assertFalse(allocator.inUse(NETWORK, "172.24.4.2"));
+        assertEquals("172.24.4.3", allocator.allocate(apiConnector, NETWORK, null));
+        allocator.invalidate(NETWORK);
+        assertEquals("172.24.4.4", allocator.allocate(apiConnector, NETWORK, null));
+        assertEquals(2, allocator.free(NETWORK));
+        allocator.forget(NETWORK);
+        assertEquals(-1, allocator.free(NETWORK));
+    }
+
+    /* Test method to check the bitmap of a large subnet */
+    @Test
+    public void testRange() {
+        FloatingIpAllocator.Range range = new FloatingIpAllocator.Range(FloatingIpAllocator.ipv4("10.0.0.0"), 16, FloatingIpAllocator.ipv4("10.0.0.1"));
+        assertEquals(65533, range.free);
+        for (int i = 0; i < 65533; i++) {
+            assertTrue(range.allocate() >= 0);
+        }
+        assertEquals(-1, range.allocate());
+        range.release(FloatingIpAllocator.ipv4("10.0.200.7"));
+        assertEquals("10.0.200.7", FloatingIpAllocator.ipv4(range.allocate()));
+        assertEquals(65533, range.allocated().size());
+    }
+}
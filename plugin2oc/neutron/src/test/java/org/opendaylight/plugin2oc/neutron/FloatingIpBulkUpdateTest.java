@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.juniper.contrail.api.types.FloatingIp;
+import net.juniper.contrail.api.types.FloatingIpPool;
+import net.juniper.contrail.api.types.Project;
+import net.juniper.contrail.api.types.VirtualMachineInterface;
+import net.juniper.contrail.api.types.VirtualNetwork;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.plugin2oc.neutron.ReferenceIndex.Relation;
+
+/**
+ * Test Class for the bulk update of Floating Ips.
+ */
+public class FloatingIpBulkUpdateTest {
+    static final String PORT = "111c67aa-0000-0000-818f-c3ab10e865cb";
+    static final String MISSING = "222c67aa-0000-0000-818f-c3ab10e865cb";
+    InMemoryApiConnector apiConnector;
+    FloatingIpHandler floatingIpHandler;
+    List<String> floatingIps = new ArrayList<String>();
+
+    @Before
+    public void beforeTest() throws IOException {
+        apiConnector = new InMemoryApiConnector(true);
+        Activator.apiConnector = apiConnector;
+        floatingIpHandler = new FloatingIpHandler();
+        Project project = new Project();
+        project.setName("project");
+        project.setUuid("019570f5-3f4f-4a8b-a3e4-1a7f9b8c2d11");
+        assertTrue(apiConnector.create(project));
+        VirtualNetwork virtualNetwork = new VirtualNetwork();
+        virtualNetwork.setName("public");
+        virtualNetwork.setParent(project);
+        assertTrue(apiConnector.create(virtualNetwork));
+        FloatingIpPool pool = new FloatingIpPool();
+        pool.setName("pool");
+        pool.setParent(virtualNetwork);
+        assertTrue(apiConnector.create(pool));
+        VirtualMachineInterface port = new VirtualMachineInterface();
+        port.setName(PORT);
+        port.setUuid(PORT);
+        port.setParent(project);
+        port.setVirtualNetwork(virtualNetwork);
+        assertTrue(apiConnector.create(port));
+        for (int i = 0; i < 40; i++) {
+            FloatingIp floatingIp = new FloatingIp();
+            floatingIp.setName("fip" + i);
+            floatingIp.setParent(pool);
+            floatingIp.setAddress("172.24.4." + (i + 2));
+            if (i % 2 == 1) {
+                floatingIp.setVirtualMachineInterface(port);
+            }
+            assertTrue(apiConnector.create(floatingIp));
+            floatingIps.add(floatingIp.getUuid());
+        }
+    }
+
+    @After
+    public void afterTest() {
+        for (String floatingIp : floatingIps) {
+            Activator.referenceIndex.removeSource(Relation.PORT_FLOATING_IPS, floatingIp);
+        }
+        Activator.apiConnector = null;
+    }
+
+    /* Test method to check every floating ip is associated or disassociated, and gets its own status */
+    @Test
+    public void testUpdateFloatingIPs() throws IOException {
+        Map<String, String> portsByFloatingIp = new LinkedHashMap<String, String>();
+        for (int i = 0; i < floatingIps.size(); i++) {
+            portsByFloatingIp.put(floatingIps.get(i), i % 2 == 0 ? PORT : null);
+        }
+        portsByFloatingIp.put(floatingIps.get(0), MISSING);
+        portsByFloatingIp.put("333c67aa-0000-0000-818f-c3ab10e865cb", PORT);
+        // through the proxy registered as the service
+        FloatingIpBulkUpdater updater = (FloatingIpBulkUpdater) InstrumentedHandler.wrap(floatingIpHandler, FloatingIpBulkUpdater.class);
+        Map<String, Integer> results = updater.updateFloatingIPs(portsByFloatingIp);
+        assertEquals(new ArrayList<String>(portsByFloatingIp.keySet()), new ArrayList<String>(results.keySet()));
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, (int) results.get(floatingIps.get(0)));
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, (int) results.get("333c67aa-0000-0000-818f-c3ab10e865cb"));
+        for (int i = 1; i < floatingIps.size(); i++) {
+            assertEquals(HttpURLConnection.HTTP_OK, (int) results.get(floatingIps.get(i)));
+            FloatingIp floatingIp = (FloatingIp) apiConnector.findById(FloatingIp.class, floatingIps.get(i));
+            if (i % 2 == 0) {
+                assertEquals(PORT, floatingIp.getVirtualMachineInterface().get(0).getUuid());
+                assertEquals(Collections.singleton(PORT), Activator.referenceIndex.targets(Relation.PORT_FLOATING_IPS, floatingIps.get(i)));
+            } else {
+                assertNull(floatingIp.getVirtualMachineInterface());
+                assertTrue(Activator.referenceIndex.targets(Relation.PORT_FLOATING_IPS, floatingIps.get(i)).isEmpty());
+            }
+        }
+    }
+}
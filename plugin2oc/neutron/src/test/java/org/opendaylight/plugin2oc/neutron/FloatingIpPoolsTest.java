@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+import net.juniper.contrail.api.ApiConnector;
+import net.juniper.contrail.api.ApiObjectBase;
+import net.juniper.contrail.api.types.FloatingIp;
+import net.juniper.contrail.api.types.FloatingIpPool;
+import net.juniper.contrail.api.types.Project;
+import net.juniper.contrail.api.types.VirtualNetwork;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.controller.networkconfig.neutron.NeutronFloatingIP;
+
+/**
+ * Test Class for the Floating IP Pools.
+ */
+public class FloatingIpPoolsTest {
+    static final String NETWORK = "54a271fe-0216-46bc-a3e6-1ff582fbd324";
+    InMemoryApiConnector apiConnector;
+    FloatingIpPools floatingIpPools;
+    VirtualNetwork virtualNetwork;
+
+    @Before
+    public void beforeTest() throws IOException {
+        apiConnector = new InMemoryApiConnector(true);
+        floatingIpPools = new FloatingIpPools(2, 2);
+        Project project = new Project();
+        project.setName("project");
+        project.setUuid("019570f5-3f4f-4a8b-a3e4-1a7f9b8c2d11");
+        assertTrue(apiConnector.create(project));
+        virtualNetwork = new VirtualNetwork();
+        virtualNetwork.setName("public");
+        virtualNetwork.setUuid(NETWORK);
+        virtualNetwork.setParent(project);
+        virtualNetwork.setRouterExternal(true);
+        assertTrue(apiConnector.create(virtualNetwork));
+    }
+
+    /* Test method to check floating IPs are spread over the pools, and a pool is added when they are full */
+    @Test
+    public void testSelect() throws IOException {
+        assertTrue(floatingIpPools.createPools(apiConnector, virtualNetwork));
+        assertEquals(2, floatingIpPools.poolCount(NETWORK));
+        FloatingIpPool first = floatingIpPools.select(apiConnector, NETWORK);
+        FloatingIpPool second = floatingIpPools.select(apiConnector, NETWORK);
+        assertFalse(first.getUuid().equals(second.getUuid()));
+        floatingIpPools.select(apiConnector, NETWORK);
+        floatingIpPools.select(apiConnector, NETWORK);
+        assertEquals(2, floatingIpPools.poolCount(NETWORK));
+        FloatingIpPool added = floatingIpPools.select(apiConnector, NETWORK);
+        assertEquals(3, floatingIpPools.poolCount(NETWORK));
+        assertEquals(3, ((VirtualNetwork) apiConnector.findById(VirtualNetwork.class, NETWORK)).getFloatingIpPools().size());
+        assertEquals(added.getUuid(), floatingIpPools.select(apiConnector, NETWORK).getUuid());
+        floatingIpPools.release(first.getUuid());
+        assertEquals(first.getUuid(), floatingIpPools.select(apiConnector, NETWORK).getUuid());
+        assertNull(floatingIpPools.select(apiConnector, "64a271fe-0216-46bc-a3e6-1ff582fbd324"));
+
+        assertTrue(floatingIpPools.deletePools(apiConnector, (VirtualNetwork) apiConnector.findById(VirtualNetwork.class, NETWORK)));
+        assertEquals(-1, floatingIpPools.poolCount(NETWORK));
+        assertNull(((VirtualNetwork) apiConnector.findById(VirtualNetwork.class, NETWORK)).getFloatingIpPools());
+    }
+
+    /* Test method to check the pools of a network are loaded with the number of their floating IPs */
+    @Test
+    public void testLoad() throws IOException {
+        assertTrue(new FloatingIpPools(2, 2).createPools(apiConnector, virtualNetwork));
+        VirtualNetwork created = (VirtualNetwork) apiConnector.findById(VirtualNetwork.class, NETWORK);
+        FloatingIpPool busy = (FloatingIpPool) apiConnector.findById(FloatingIpPool.class, created.getFloatingIpPools().get(0).getUuid());
+        FloatingIp floatingIp = new FloatingIp();
+        floatingIp.setName("fip");
+        floatingIp.setParent(busy);
+        assertTrue(apiConnector.create(floatingIp));
+        String idle = created.getFloatingIpPools().get(1).getUuid();
+        assertEquals(idle, floatingIpPools.select(apiConnector, NETWORK).getUuid());
+        assertEquals(2, floatingIpPools.poolCount(NETWORK));
+    }
+
+    /* Test method to check pools are provisioned in the background, in order, and waited for */
+    @Test
+    public void testProvision() throws Exception {
+        floatingIpPools.provision(apiConnector, NETWORK, true);
+        assertTrue(floatingIpPools.select(apiConnector, NETWORK) != null);
+        assertEquals(2, floatingIpPools.poolCount(NETWORK));
+        floatingIpPools.provision(apiConnector, NETWORK, true);
+        assertTrue(floatingIpPools.provision(apiConnector, NETWORK, false).get());
+        assertTrue(floatingIpPools.await(NETWORK));
+        assertEquals(-1, floatingIpPools.poolCount(NETWORK));
+        assertNull(((VirtualNetwork) apiConnector.findById(VirtualNetwork.class, NETWORK)).getFloatingIpPools());
+
+        String missing = "64a271fe-0216-46bc-a3e6-1ff582fbd324";
+        assertFalse(floatingIpPools.provision(apiConnector, missing, true).get());
+        assertFalse(floatingIpPools.await(missing));
+        floatingIpPools.forget(missing);
+        assertTrue(floatingIpPools.await(missing));
+    }
+
+    /* Test method to check making a network internal does not drop the provisioning queued after it */
+    @Test
+    public void testProvisionQueued() throws Exception {
+        assertTrue(floatingIpPools.createPools(apiConnector, virtualNetwork));
+        final CountDownLatch queued = new CountDownLatch(1);
+        Future<Boolean> internal = floatingIpPools.provision(new ForwardingApiConnector(apiConnector) {
+            @Override
+            public ApiObjectBase findById(Class<? extends ApiObjectBase> cls, String uuid) throws IOException {
+                try {
+                    queued.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.findById(cls, uuid);
+            }
+        }, NETWORK, false);
+        Future<Boolean> external = floatingIpPools.provision(new ForwardingApiConnector(apiConnector) {
+            @Override
+            public ApiObjectBase findById(Class<? extends ApiObjectBase> cls, String uuid) throws IOException {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.findById(cls, uuid);
+            }
+        }, NETWORK, true);
+        queued.countDown();
+        assertTrue(internal.get());
+        assertTrue(floatingIpPools.await(NETWORK));
+        assertTrue(external.isDone());
+        assertEquals(2, floatingIpPools.poolCount(NETWORK));
+    }
+
+    /* Test method to check a network whose pools could not be provisioned is not used */
+    @Test
+    public void testProvisionFailed() throws Exception {
+        assertTrue(floatingIpPools.createPools(apiConnector, virtualNetwork));
+        VirtualNetwork internal = (VirtualNetwork) apiConnector.findById(VirtualNetwork.class, NETWORK);
+        internal.setRouterExternal(false);
+        assertTrue(apiConnector.update(internal));
+        assertFalse(floatingIpPools.provision(new ForwardingApiConnector(apiConnector) {
+            @Override
+            public void delete(ApiObjectBase obj) {
+                // the pool stays
+            }
+        }, NETWORK, false).get());
+        assertNull(floatingIpPools.select(apiConnector, NETWORK));
+        assertNull(floatingIpPools.externalNetwork(apiConnector, NETWORK));
+        assertTrue(floatingIpPools.provision(apiConnector, NETWORK, false).get());
+        assertTrue(floatingIpPools.await(NETWORK));
+    }
+
+    /* Test method to check the pools of an external network whose provisioning failed are created again when needed */
+    @Test
+    public void testProvisionRetried() throws Exception {
+        assertFalse(floatingIpPools.provision(new ForwardingApiConnector(apiConnector) {
+            @Override
+            public boolean create(ApiObjectBase obj) throws IOException {
+                return !(obj instanceof FloatingIpPool) && super.create(obj);
+            }
+        }, NETWORK, true).get());
+        assertFalse(floatingIpPools.await(NETWORK));
+        assertTrue(floatingIpPools.externalNetwork(apiConnector, NETWORK) != null);
+        assertTrue(floatingIpPools.await(NETWORK));
+        assertEquals(2, floatingIpPools.poolCount(NETWORK));
+        assertTrue(floatingIpPools.select(apiConnector, NETWORK) != null);
+        assertEquals(2, ((VirtualNetwork) apiConnector.findById(VirtualNetwork.class, NETWORK)).getFloatingIpPools().size());
+    }
+
+    /* Test method to check a floating IP whose address could not be allocated gives its pool back */
+    @Test
+    public void testAllocateFailed() throws IOException {
+        assertTrue(Activator.floatingIpPools.createPools(apiConnector, virtualNetwork));
+        FloatingIpPool first = Activator.floatingIpPools.select(apiConnector, NETWORK);
+        Activator.floatingIpPools.release(first.getUuid());
+        ApiConnector previous = Activator.apiConnector;
+        Activator.apiConnector = new ForwardingApiConnector(apiConnector) {
+            @Override
+            public ApiObjectBase findById(Class<? extends ApiObjectBase> cls, String uuid) throws IOException {
+                if (cls == VirtualNetwork.class) {
+                    throw new IOException("network not readable");
+                }
+                return super.findById(cls, uuid);
+            }
+        };
+        try {
+            NeutronFloatingIP neutronFloatingIp = new NeutronFloatingIP();
+            neutronFloatingIp.setFloatingIPUUID("000570f2-0000-0000-0000-1b7f7778a29a");
+            neutronFloatingIp.setFloatingNetworkUUID(NETWORK);
+            neutronFloatingIp.setTenantUUID("019570f5-3f4f-4a8b-a3e4-1a7f9b8c2d11");
+            assertFalse(new FloatingIpHandler().addFloatingIP(neutronFloatingIp));
+            assertEquals(first.getUuid(), Activator.floatingIpPools.select(apiConnector, NETWORK).getUuid());
+        } finally {
+            Activator.apiConnector = previous;
+            Activator.floatingIpPools.forget(NETWORK);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import net.juniper.contrail.api.types.FloatingIpPool;
+import net.juniper.contrail.api.types.InstanceIp;
+import net.juniper.contrail.api.types.Project;
+import net.juniper.contrail.api.types.VirtualMachine;
+import net.juniper.contrail.api.types.VirtualMachineInterface;
+import net.juniper.contrail.api.types.VirtualNetwork;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test Class for the In-Memory Api Connector.
+ */
+public class InMemoryApiConnectorTest {
+    InMemoryApiConnector apiConnector;
+    Project project;
+    VirtualNetwork virtualNetwork;
+
+    @Before
+    public void beforeTest() {
+        apiConnector = new InMemoryApiConnector();
+        project = new Project();
+        project.setName("project");
+        project.setUuid("019570f5-3f4f-4a8b-a3e4-1a7f9b8c2d11");
+        assertTrue(apiConnector.create(project));
+        virtualNetwork = new VirtualNetwork();
+        virtualNetwork.setName("network");
+        virtualNetwork.setParent(project);
+        assertTrue(apiConnector.create(virtualNetwork));
+    }
+
+    /* Test method to check objects are found by UUID and name and returned as copies */
+    @Test
+    public void testCreateAndFind() {
+        assertNotNull(virtualNetwork.getUuid());
+        VirtualNetwork found = (VirtualNetwork) apiConnector.findById(VirtualNetwork.class, virtualNetwork.getUuid());
+        assertEquals("network", found.getName());
+        assertNotSame(found, apiConnector.findById(VirtualNetwork.class, virtualNetwork.getUuid()));
+        assertEquals(virtualNetwork.getUuid(), apiConnector.findByName(VirtualNetwork.class, project, "network"));
+        assertEquals(virtualNetwork.getUuid(), apiConnector.findByName(VirtualNetwork.class, found.getQualifiedName()));
+        assertEquals(1, apiConnector.list(VirtualNetwork.class, project.getQualifiedName()).size());
+    }
+
+    /* Test method to check an object can not be created twice */
+    @Test
+    public void testCreateDuplicate() {
+        VirtualNetwork duplicate = new VirtualNetwork();
+        duplicate.setName("network");
+        duplicate.setParent(project);
+        assertFalse(apiConnector.create(duplicate));
+        assertEquals(1, apiConnector.size(VirtualNetwork.class));
+    }
+
+    /* Test method to check children are listed on their parent */
+    @Test
+    public void testChildren() {
+        FloatingIpPool floatingIpPool = new FloatingIpPool();
+        floatingIpPool.setName("pool");
+        floatingIpPool.setParent(virtualNetwork);
+        assertTrue(apiConnector.create(floatingIpPool));
+        VirtualNetwork found = (VirtualNetwork) apiConnector.findById(VirtualNetwork.class, virtualNetwork.getUuid());
+        assertEquals(floatingIpPool.getUuid(), found.getFloatingIpPools().get(0).getUuid());
+        apiConnector.delete(FloatingIpPool.class, floatingIpPool.getUuid());
+        found = (VirtualNetwork) apiConnector.findById(VirtualNetwork.class, virtualNetwork.getUuid());
+        assertNull(found.getFloatingIpPools());
+    }
+
+    /* Test method to check back references follow the references on create, update and delete */
+    @Test
+    public void testBackReferences() {
+        VirtualMachine virtualMachine = new VirtualMachine();
+        virtualMachine.setName("vm");
+        assertTrue(apiConnector.create(virtualMachine));
+        VirtualMachineInterface virtualMachineInterface = new VirtualMachineInterface();
+        virtualMachineInterface.setName("vmi");
+        virtualMachineInterface.setParent(project);
+        virtualMachineInterface.setVirtualNetwork(virtualNetwork);
+        virtualMachineInterface.setVirtualMachine(virtualMachine);
+        assertTrue(apiConnector.create(virtualMachineInterface));
+        InstanceIp instanceIp = new InstanceIp();
+        instanceIp.setName("iip");
+        instanceIp.setVirtualMachineInterface(virtualMachineInterface);
+        assertTrue(apiConnector.create(instanceIp));
+
+        VirtualMachineInterface found = (VirtualMachineInterface) apiConnector.findById(VirtualMachineInterface.class,
+                virtualMachineInterface.getUuid());
+        assertEquals(instanceIp.getUuid(), found.getInstanceIpBackRefs().get(0).getUuid());
+        VirtualMachine foundVm = (VirtualMachine) apiConnector.findById(VirtualMachine.class, virtualMachine.getUuid());
+        assertEquals(virtualMachineInterface.getUuid(), foundVm.getVirtualMachineInterfaceBackRefs().get(0).getUuid());
+
+        instanceIp.clearVirtualMachineInterface();
+        assertTrue(apiConnector.update(instanceIp));
+        found = (VirtualMachineInterface) apiConnector.findById(VirtualMachineInterface.class, virtualMachineInterface.getUuid());
+        assertNull(found.getInstanceIpBackRefs());
+
+        apiConnector.delete(found);
+        foundVm = (VirtualMachine) apiConnector.findById(VirtualMachine.class, virtualMachine.getUuid());
+        assertNull(foundVm.getVirtualMachineInterfaceBackRefs());
+    }
+
+    /* Test method to check projects of unknown tenants are created only when synced */
+    @Test
+    public void testSyncProjects() {
+        String tenant = "4f0c2f6e-8d51-4b36-9d2a-6c1b7e5a9f30";
+        assertNull(apiConnector.findById(Project.class, tenant));
+        apiConnector = new InMemoryApiConnector(true);
+        Project found = (Project) apiConnector.findById(Project.class, tenant);
+        assertEquals(tenant, found.getUuid());
+        assertEquals(1, apiConnector.size(Project.class));
+    }
+}
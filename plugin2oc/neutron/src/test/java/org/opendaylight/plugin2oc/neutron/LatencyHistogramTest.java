@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test Class for Latency Histogram.
+ */
+public class LatencyHistogramTest {
+    LatencyHistogram histogram;
+
+    @Before
+    public void beforeTest() {
+        histogram = new LatencyHistogram();
+    }
+
+    /* Test method to check bucket indexes are contiguous and ordered */
+    @Test
+    public void testBucketBoundaries() {
+        for (int i = 1; i < LatencyHistogram.BUCKETS; i++) {
+            long low = LatencyHistogram.highestEquivalentValue(i - 1) + 1;
+            assertEquals(i, LatencyHistogram.index(low));
+            assertEquals(i, LatencyHistogram.index(LatencyHistogram.highestEquivalentValue(i)));
+        }
+    }
+
+    /* Test method to check an empty histogram reports zero */
+    @Test
+    public void testEmpty() {
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99.0));
+        assertEquals(0, histogram.getMeanNanos());
+    }
+
+    /* Test method to check percentiles stay within the bucket precision */
+    @Test
+    public void testPercentiles() {
+        for (long i = 1; i <= 10000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(10000, histogram.getCount());
+        assertEquals(10000000, histogram.getMaxNanos());
+        assertWithinPrecision(5000000, histogram.getValueAtPercentile(50.0));
+        assertWithinPrecision(9900000, histogram.getValueAtPercentile(99.0));
+        assertWithinPrecision(9990000, histogram.getValueAtPercentile(99.9));
+        assertEquals(5000500, histogram.getMeanNanos());
+    }
+
+    /* Test method to check out of range samples are clamped */
+    @Test
+    public void testClamp() {
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(2, histogram.getCount());
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.getMaxNanos());
+        assertEquals(0, histogram.getValueAtPercentile(50.0));
+    }
+
+    /* Test method to check reset clears all samples */
+    @Test
+    public void testReset() {
+        histogram.record(100);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+    }
+
+    void assertWithinPrecision(long expected, long actual) {
+        assertTrue("expected " + expected + " got " + actual, Math.abs(actual - expected) <= expected / 32);
+    }
+}
@@ -263,7 +263,7 @@ public class NetworkHandlerTest {
         assertEquals(false, networkHandler.updateNetwork(neutronNetwork.getNetworkUUID(), deltaNetwork));
     }
 
-    /* Test method to check neutron network updated floatingIP creation failed */
+    /* Test method to check neutron network is updated while its floatingIP pool creation fails in the background */
     @Test
     public void testupdateNetworkCreateFloatingIpPoolFailed() throws Exception {
         Activator.apiConnector = mockedApiConnector;
@@ -281,7 +281,9 @@ public class NetworkHandlerTest {
         floatingIpPool.setParent(mockedVirtualNetwork);
         when(mockedApiConnector.create(floatingIpPool)).thenReturn(false);
         PowerMock.replay(floatingIpPool, FloatingIpPool.class);
-        assertEquals(false, networkHandler.updateNetwork(neutronNetwork.getNetworkUUID(), deltaNetwork));
+        assertEquals(true, networkHandler.updateNetwork(neutronNetwork.getNetworkUUID(), deltaNetwork));
+        assertEquals(false, Activator.floatingIpPools.await(neutronNetwork.getNetworkUUID()));
+        Activator.floatingIpPools.forget(neutronNetwork.getNetworkUUID());
     }
     // /*
     // * Test method to check neutron network updated successfully after
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.juniper.contrail.api.types.InstanceIp;
+import net.juniper.contrail.api.types.VirtualNetwork;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test Class for Operation Trace and Call Accounting.
+ */
+public class OperationTraceTest {
+    OperationTrace trace;
+
+    @After
+    public void afterTest() {
+        OperationTrace.end(trace);
+        trace = null;
+    }
+
+    /* Test method to check calls are accounted per operation and object type */
+    @Test
+    public void testCallsAccounted() {
+        trace = OperationTrace.begin();
+        assertNotNull(trace);
+        OperationTrace.recordCall(ContrailOperation.FIND_BY_ID, VirtualNetwork.class, 1000);
+        OperationTrace.recordCall(ContrailOperation.FIND_BY_ID, VirtualNetwork.class, 1000);
+        OperationTrace.recordCall(ContrailOperation.CREATE, InstanceIp.class, 1000);
+        OperationTrace.end(trace);
+        OperationTrace.recordCall(ContrailOperation.CREATE, InstanceIp.class, 1000);
+        assertEquals(3, trace.getTotalCalls());
+        CallAccounting accounting = new CallAccounting("PortHandler", "createPort");
+        accounting.add(trace);
+        assertEquals(1, accounting.getOperations());
+        assertEquals(3, accounting.getMaxCallsPerOperation());
+        assertEquals(Long.valueOf(2), accounting.getCalls().get("findById VirtualNetwork"));
+        assertEquals(Long.valueOf(1), accounting.getCalls().get("create InstanceIp"));
+    }
+
+    /* Test method to check the next operation of a thread starts from an empty trace */
+    @Test
+    public void testReset() {
+        trace = OperationTrace.begin();
+        OperationTrace.recordCall(ContrailOperation.CREATE, InstanceIp.class, 1000);
+        OperationTrace.recordCall(ContrailOperation.FIND_BY_ID, VirtualNetwork.class, 2000);
+        assertEquals(2, trace.getUsedSlots());
+        assertTrue(trace.summary().startsWith("create InstanceIp x1"));
+        OperationTrace.end(trace);
+        trace = OperationTrace.begin();
+        assertEquals(0, trace.getTotalCalls());
+        assertEquals("no Contrail calls", trace.summary());
+        OperationTrace.recordCall(ContrailOperation.FIND_BY_ID, VirtualNetwork.class, 1000);
+        assertEquals(1, trace.getUsedSlots());
+        assertEquals(1, trace.getTotalCalls());
+    }
+
+    /* Test method to check a nested operation is accounted to the outer one */
+    @Test
+    public void testNestedOperation() {
+        trace = OperationTrace.begin();
+        assertNull(OperationTrace.begin());
+        assertSame(trace, OperationTrace.current());
+    }
+
+    /* Test method to check a worker thread can account calls to a trace */
+    @Test
+    public void testAttach() throws Exception {
+        trace = OperationTrace.begin();
+        final OperationTrace operationTrace = trace;
+        Thread worker = new Thread() {
+            @Override
+            public void run() {
+                OperationTrace previous = OperationTrace.attach(operationTrace);
+                try {
+                    OperationTrace.recordCall(ContrailOperation.READ, VirtualNetwork.class, 1000);
+                } finally {
+                    OperationTrace.detach(previous);
+                }
+            }
+        };
+        worker.start();
+        worker.join();
+        assertEquals(1, trace.getTotalCalls());
+    }
+
+    /* Test method to check a task handed to an executor accounts its calls to the operation submitting it */
+    @Test
+    public void testTraced() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            trace = OperationTrace.begin();
+            Callable<OperationTrace> task = OperationTrace.traced(new Callable<OperationTrace>() {
+                @Override
+                public OperationTrace call() {
+                    OperationTrace.recordCall(ContrailOperation.CREATE, InstanceIp.class, 1000);
+                    return OperationTrace.current();
+                }
+            });
+            assertSame(trace, executor.submit(task).get());
+            executor.submit(OperationTrace.traced(new Runnable() {
+                @Override
+                public void run() {
+                    OperationTrace.recordCall(ContrailOperation.DELETE, InstanceIp.class, 1000);
+                }
+            })).get();
+            assertEquals(2, trace.getTotalCalls());
+            assertNull(executor.submit(new Callable<OperationTrace>() {
+                @Override
+                public OperationTrace call() {
+                    return OperationTrace.current();
+                }
+            }).get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /* Test method to check steps, retries and lock waits are kept in order */
+    @Test
+    public void testSteps() throws Exception {
+        trace = OperationTrace.begin();
+        OperationTrace.recordCall(ContrailOperation.FIND_BY_ID, VirtualNetwork.class, 1000);
+        OperationTrace.sleepBeforeRetry(1);
+        OperationTrace.recordLockWait(1000);
+        assertEquals(1, trace.getRetries());
+        assertEquals(1, trace.getLockWaits());
+        StringBuilder steps = new StringBuilder();
+        trace.appendSteps(steps);
+        String[] lines = steps.toString().trim().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].endsWith("findById VirtualNetwork 0.001 ms"));
+        assertTrue(lines[1].contains("sleep before retry"));
+        assertTrue(lines[2].contains("wait for other request"));
+    }
+}
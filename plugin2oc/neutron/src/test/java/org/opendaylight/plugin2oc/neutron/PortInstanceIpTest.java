@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.juniper.contrail.api.ApiConnector;
+import net.juniper.contrail.api.ApiObjectBase;
+import net.juniper.contrail.api.ApiPropertyBase;
+import net.juniper.contrail.api.ObjectReference;
+import net.juniper.contrail.api.types.InstanceIp;
+import net.juniper.contrail.api.types.NetworkIpam;
+import net.juniper.contrail.api.types.Project;
+import net.juniper.contrail.api.types.SubnetType;
+import net.juniper.contrail.api.types.VirtualMachineInterface;
+import net.juniper.contrail.api.types.VirtualNetwork;
+import net.juniper.contrail.api.types.VnSubnetsType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.controller.networkconfig.neutron.NeutronPort;
+import org.opendaylight.controller.networkconfig.neutron.Neutron_IPs;
+
+/**
+ * Test Class for the InstanceIps of ports with several fixed IPs.
+ */
+public class PortInstanceIpTest {
+    static final String PROJECT = "019570f5-3f4f-4a8b-a3e4-1a7f9b8c2d11";
+    static final String NETWORK = "11111111-0000-0000-0000-000000000047";
+    static final String PORT = "33333333-0000-0000-0000-000000000047";
+    InMemoryApiConnector store;
+    FailingApiConnector apiConnector;
+    PortHandler portHandler;
+
+    /**
+     * Fails the creation of the InstanceIp of one address, and counts the
+     * InstanceIp updates and deletions.
+     */
+    static class FailingApiConnector extends ForwardingApiConnector {
+        volatile String failing;
+        final AtomicInteger updates = new AtomicInteger();
+        final AtomicInteger deletions = new AtomicInteger();
+
+        FailingApiConnector(ApiConnector delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public boolean create(ApiObjectBase obj) throws IOException {
+            if (obj instanceof InstanceIp && failing != null && failing.equals(((InstanceIp) obj).getAddress())) {
+                return false;
+            }
+            return super.create(obj);
+        }
+
+        @Override
+        public boolean update(ApiObjectBase obj) throws IOException {
+            if (obj instanceof InstanceIp) {
+                updates.incrementAndGet();
+            }
+            return super.update(obj);
+        }
+
+        @Override
+        public void delete(ApiObjectBase obj) throws IOException {
+            if (obj instanceof InstanceIp) {
+                deletions.incrementAndGet();
+            }
+            super.delete(obj);
+        }
+    }
+
+    @Before
+    public void beforeTest() throws IOException {
+        store = new InMemoryApiConnector(true);
+        apiConnector = new FailingApiConnector(store);
+        Activator.apiConnector = apiConnector;
+        portHandler = new PortHandler();
+        Project project = new Project();
+        project.setName("project");
+        project.setUuid(PROJECT);
+        assertTrue(store.create(project));
+        VirtualNetwork virtualNetwork = new VirtualNetwork();
+        virtualNetwork.setName("private");
+        virtualNetwork.setUuid(NETWORK);
+        virtualNetwork.setParent(project);
+        NetworkIpam ipam = new NetworkIpam();
+        ipam.setName("default-network-ipam");
+        ipam.setParent(project);
+        assertTrue(store.create(ipam));
+        VnSubnetsType subnets = new VnSubnetsType();
+        for (int i = 0; i < 3; i++) {
+            VnSubnetsType.IpamSubnetType subnet = new VnSubnetsType.IpamSubnetType();
+            subnet.setSubnet(new SubnetType("10.0." + i + ".0", 24));
+            subnet.setSubnetUuid("22222222-0000-0000-0000-00000000004" + i);
+            subnets.addIpamSubnets(subnet);
+        }
+        virtualNetwork.addNetworkIpam(ipam, subnets);
+        assertTrue(store.create(virtualNetwork));
+    }
+
+    @After
+    public void afterTest() {
+        portHandler.removePort(PORT);
+        Activator.apiConnector = null;
+    }
+
+    static NeutronPort port(String... addresses) {
+        NeutronPort port = new NeutronPort();
+        port.setID(PORT);
+        port.setPortUUID(PORT);
+        port.setNetworkUUID(NETWORK);
+        port.setTenantID(PROJECT);
+        port.setMacAddress("fa:16:3e:00:00:47");
+        port.setDeviceID("44444444-0000-0000-0000-000000000047");
+        List<Neutron_IPs> ips = new ArrayList<Neutron_IPs>();
+        for (int i = 0; i < addresses.length; i++) {
+            ips.add(ip(addresses[i], i));
+        }
+        port.setFixedIPs(ips);
+        return port;
+    }
+
+    static Neutron_IPs ip(String address, int subnet) {
+        Neutron_IPs ip = new Neutron_IPs();
+        ip.setIpAddress(address);
+        ip.setSubnetUUID("22222222-0000-0000-0000-00000000004" + subnet);
+        return ip;
+    }
+
+    /* Test method to check every fixed IP of a port gets its own InstanceIp */
+    @Test
+    public void testMultipleFixedIps() throws IOException {
+        String[] addresses = { "10.0.0.5", "10.0.1.5", "2001:db8::5", "10.0.2.5" };
+        assertTrue(portHandler.addPort(port(addresses)));
+        VirtualMachineInterface virtualMachineInterface = (VirtualMachineInterface) store.findById(VirtualMachineInterface.class, PORT);
+        Set<String> created = new HashSet<String>();
+        for (ObjectReference<ApiPropertyBase> ref : virtualMachineInterface.getInstanceIpBackRefs()) {
+            created.add(((InstanceIp) store.findById(InstanceIp.class, ref.getUuid())).getAddress());
+        }
+        assertEquals(new HashSet<String>(Arrays.asList(addresses)), created);
+    }
+
+    /* Test method to check an update keeps, moves and deletes only the InstanceIps it has to */
+    @Test
+    public void testUpdateFixedIps() throws IOException {
+        assertTrue(portHandler.addPort(port("10.0.0.5", "10.0.1.5")));
+        NeutronPort delta = new NeutronPort();
+        delta.setFixedIPs(Arrays.asList(ip("10.0.0.5", 0), ip("10.0.2.9", 2)));
+        assertTrue(portHandler.updatePort(PORT, delta));
+        assertEquals(1, apiConnector.updates.get());
+        assertEquals(0, apiConnector.deletions.get());
+        assertEquals(new HashSet<String>(Arrays.asList("10.0.0.5", "10.0.2.9")), addresses());
+        assertNull(Activator.addressIndex.ipOwner(NETWORK, "10.0.1.5"));
+        assertEquals(PORT, Activator.addressIndex.ipOwner(NETWORK, "10.0.2.9"));
+
+        delta.setFixedIPs(Arrays.asList(ip(null, 2)));
+        assertTrue(portHandler.updatePort(PORT, delta));
+        assertEquals(1, apiConnector.updates.get());
+        assertEquals(1, apiConnector.deletions.get());
+        assertEquals(Collections.singleton("10.0.2.9"), addresses());
+        assertNull(Activator.addressIndex.ipOwner(NETWORK, "10.0.0.5"));
+
+        delta.setFixedIPs(Arrays.asList(ip("10.0.3.5", 3)));
+        assertFalse(portHandler.updatePort(PORT, delta));
+        assertEquals(Collections.singleton("10.0.2.9"), addresses());
+    }
+
+    /* Test method to check the InstanceIps created are deleted again when one fails */
+    @Test
+    public void testRollback() throws IOException {
+        apiConnector.failing = "10.0.1.5";
+        assertFalse(portHandler.addPort(port("10.0.0.5", "10.0.1.5", "10.0.2.5")));
+        assertTrue(store.list(InstanceIp.class, null).isEmpty());
+        assertNull(Activator.addressIndex.ipOwner(NETWORK, "10.0.0.5"));
+        assertNull(store.findById(VirtualMachineInterface.class, PORT));
+        assertFalse(Activator.referenceIndex.inUse(ReferenceIndex.Relation.NETWORK_PORTS, NETWORK));
+        apiConnector.failing = null;
+        assertTrue(portHandler.addPort(port("10.0.0.5", "10.0.1.5", "10.0.2.5")));
+    }
+
+    /* Test method to check fixed IPs of a subnet without an address are left to Contrail to allocate */
+    @Test
+    public void testAllocatedFixedIps() throws IOException {
+        NeutronPort neutronPort = port();
+        neutronPort.setFixedIPs(Arrays.asList(ip(null, 0), ip(null, 0)));
+        assertTrue(portHandler.addPort(neutronPort));
+        List<? extends ApiObjectBase> instanceIps = store.list(InstanceIp.class, null);
+        assertEquals(2, instanceIps.size());
+        for (ApiObjectBase instanceIp : instanceIps) {
+            assertNull(((InstanceIp) instanceIp).getAddress());
+        }
+    }
+
+    private Set<String> addresses() throws IOException {
+        VirtualMachineInterface virtualMachineInterface = (VirtualMachineInterface) store.findById(VirtualMachineInterface.class, PORT);
+        Set<String> addresses = new HashSet<String>();
+        for (ObjectReference<ApiPropertyBase> ref : virtualMachineInterface.getInstanceIpBackRefs()) {
+            addresses.add(((InstanceIp) store.findById(InstanceIp.class, ref.getUuid())).getAddress());
+        }
+        return addresses;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import net.juniper.contrail.api.ApiObjectBase;
+import net.juniper.contrail.api.types.Project;
+import net.juniper.contrail.api.types.VirtualNetwork;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test Class for the Recording and Playback Api Connectors.
+ */
+public class RecordingApiConnectorTest {
+    ByteArrayOutputStream log;
+    RecordingApiConnector recorder;
+    Project project;
+
+    @Before
+    public void beforeTest() throws IOException {
+        log = new ByteArrayOutputStream();
+        recorder = new RecordingApiConnector(new InMemoryApiConnector(), log, 16);
+        project = new Project();
+        project.setName("project");
+        project.setUuid("019570f5-3f4f-4a8b-a3e4-1a7f9b8c2d11");
+        assertTrue(recorder.create(project));
+    }
+
+    private PlaybackApiConnector playback() throws IOException {
+        recorder.close();
+        return new PlaybackApiConnector(new ByteArrayInputStream(log.toByteArray()), false);
+    }
+
+    private VirtualNetwork network(String name) {
+        VirtualNetwork virtualNetwork = new VirtualNetwork();
+        virtualNetwork.setName(name);
+        virtualNetwork.setParent(project);
+        return virtualNetwork;
+    }
+
+    /* Test method to check recorded responses are served again in playback */
+    @Test
+    public void testPlayback() throws IOException {
+        VirtualNetwork virtualNetwork = network("network");
+        assertTrue(recorder.create(virtualNetwork));
+        VirtualNetwork found = (VirtualNetwork) recorder.findById(VirtualNetwork.class, virtualNetwork.getUuid());
+        assertEquals(virtualNetwork.getUuid(), recorder.findByName(VirtualNetwork.class, project, "network"));
+        assertEquals(1, recorder.list(VirtualNetwork.class, project.getQualifiedName()).size());
+        assertEquals(5, recorder.getRecorded());
+
+        PlaybackApiConnector playback = playback();
+        assertEquals(5, playback.size());
+        assertTrue(playback.create(project));
+        VirtualNetwork replayed = network("network");
+        assertTrue(playback.create(replayed));
+        assertEquals(virtualNetwork.getUuid(), replayed.getUuid());
+        VirtualNetwork foundAgain = (VirtualNetwork) playback.findById(VirtualNetwork.class, virtualNetwork.getUuid());
+        assertEquals(found.getName(), foundAgain.getName());
+        assertEquals(found.getQualifiedName(), foundAgain.getQualifiedName());
+        assertEquals(virtualNetwork.getUuid(), playback.findByName(VirtualNetwork.class, project, "network"));
+        assertEquals(virtualNetwork.getUuid(), playback.list(VirtualNetwork.class, project.getQualifiedName()).get(0).getUuid());
+        assertEquals(0, playback.getMisses());
+    }
+
+    /* Test method to check calls are served in the recorded order and unrecorded calls miss */
+    @Test
+    public void testOrderAndMisses() throws IOException {
+        VirtualNetwork virtualNetwork = network("network");
+        assertNull(recorder.findById(VirtualNetwork.class, "6d3d4e6c-2ad2-4fb1-9b8e-f0e0e3a1b2c3"));
+        virtualNetwork.setUuid("6d3d4e6c-2ad2-4fb1-9b8e-f0e0e3a1b2c3");
+        assertTrue(recorder.create(virtualNetwork));
+        assertTrue(recorder.findById(VirtualNetwork.class, virtualNetwork.getUuid()) != null);
+
+        PlaybackApiConnector playback = playback();
+        assertNull(playback.findById(VirtualNetwork.class, virtualNetwork.getUuid()));
+        assertEquals("network", playback.findById(VirtualNetwork.class, virtualNetwork.getUuid()).getName());
+        assertNull(playback.findById(VirtualNetwork.class, virtualNetwork.getUuid()));
+        assertFalse(playback.update(virtualNetwork));
+        assertEquals(2, playback.getMisses());
+    }
+
+    /* Test method to check exceptions are recorded and thrown again */
+    @Test
+    public void testException() throws IOException {
+        recorder.close();
+        log.reset();
+        recorder = new RecordingApiConnector(new InMemoryApiConnector() {
+            @Override
+            public ApiObjectBase findById(Class<? extends ApiObjectBase> cls, String uuid) {
+                throw new IllegalArgumentException("unreachable");
+            }
+        }, log, 16);
+        try {
+            recorder.findById(VirtualNetwork.class, "6d3d4e6c-2ad2-4fb1-9b8e-f0e0e3a1b2c3");
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("unreachable", e.getMessage());
+        }
+        PlaybackApiConnector playback = playback();
+        try {
+            playback.findById(VirtualNetwork.class, "6d3d4e6c-2ad2-4fb1-9b8e-f0e0e3a1b2c3");
+            fail("Exception expected");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().endsWith("unreachable"));
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.juniper.contrail.api.ApiObjectBase;
+
+import net.juniper.contrail.api.types.FloatingIp;
+import net.juniper.contrail.api.types.InstanceIp;
+import net.juniper.contrail.api.types.LogicalRouter;
+import net.juniper.contrail.api.types.NetworkIpam;
+import net.juniper.contrail.api.types.Project;
+import net.juniper.contrail.api.types.SubnetType;
+import net.juniper.contrail.api.types.VirtualMachineInterface;
+import net.juniper.contrail.api.types.VirtualNetwork;
+import net.juniper.contrail.api.types.VnSubnetsType;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.plugin2oc.neutron.ReferenceIndex.Relation;
+
+/**
+ * Test Class for the Reference Index.
+ */
+public class ReferenceIndexTest {
+    static final String NETWORK = "54a271fe-0216-46bc-a3e6-1ff582fbd324";
+    static final String SUBNET = "34a271fe-0216-46bc-a3e6-1ff582fbd324";
+    static final String PORT = "64a271fe-0216-46bc-a3e6-1ff582fbd324";
+    static final String OTHER_PORT = "74a271fe-0216-46bc-a3e6-1ff582fbd324";
+    ReferenceIndex referenceIndex;
+
+    @Before
+    public void beforeTest() {
+        referenceIndex = new ReferenceIndex();
+    }
+
+    /* Test method to check references are counted once and dropped with their source or target */
+    @Test
+    public void testReferences() {
+        referenceIndex.add(Relation.NETWORK_PORTS, NETWORK, PORT);
+        referenceIndex.add(Relation.NETWORK_PORTS, NETWORK, PORT);
+        referenceIndex.add(Relation.NETWORK_PORTS, NETWORK, OTHER_PORT);
+        referenceIndex.add(Relation.SUBNET_PORTS, SUBNET, PORT);
+        assertEquals(2, referenceIndex.count(Relation.NETWORK_PORTS, NETWORK));
+        assertFalse(referenceIndex.inUse(Relation.ROUTER_INTERFACES, NETWORK));
+        referenceIndex.removeSource(Relation.NETWORK_PORTS, PORT);
+        assertEquals(Collections.singleton(OTHER_PORT), referenceIndex.sources(Relation.NETWORK_PORTS, NETWORK));
+        assertTrue(referenceIndex.inUse(Relation.SUBNET_PORTS, SUBNET));
+        referenceIndex.remove(Relation.NETWORK_PORTS, NETWORK, OTHER_PORT);
+        assertFalse(referenceIndex.inUse(Relation.NETWORK_PORTS, NETWORK));
+        referenceIndex.setTargets(Relation.SUBNET_PORTS, PORT, Arrays.asList(NETWORK, SUBNET));
+        assertEquals(2, referenceIndex.targets(Relation.SUBNET_PORTS, PORT).size());
+        referenceIndex.removeTarget(Relation.SUBNET_PORTS, SUBNET);
+        assertEquals(Collections.singleton(NETWORK), referenceIndex.targets(Relation.SUBNET_PORTS, PORT));
+        assertEquals(1, referenceIndex.size());
+        assertFalse(referenceIndex.inUse(Relation.NETWORK_PORTS, null));
+    }
+
+    /* Test method to check the index is rebuilt from the objects in Contrail */
+    @Test
+    public void testRebuild() throws IOException {
+        InMemoryApiConnector apiConnector = new InMemoryApiConnector(true);
+        Project project = new Project();
+        project.setName("project");
+        project.setUuid("019570f5-3f4f-4a8b-a3e4-1a7f9b8c2d11");
+        assertTrue(apiConnector.create(project));
+        NetworkIpam ipam = new NetworkIpam();
+        ipam.setName("default-network-ipam");
+        ipam.setParent(project);
+        assertTrue(apiConnector.create(ipam));
+        VirtualNetwork virtualNetwork = new VirtualNetwork();
+        virtualNetwork.setName("network");
+        virtualNetwork.setUuid(NETWORK);
+        virtualNetwork.setParent(project);
+        VnSubnetsType.IpamSubnetType subnet = new VnSubnetsType.IpamSubnetType();
+        subnet.setSubnet(new SubnetType("10.0.0.0", 24));
+        subnet.setSubnetUuid(SUBNET);
+        VnSubnetsType subnets = new VnSubnetsType();
+        subnets.addIpamSubnets(subnet);
+        virtualNetwork.addNetworkIpam(ipam, subnets);
+        assertTrue(apiConnector.create(virtualNetwork));
+        VirtualMachineInterface virtualMachineInterface = new VirtualMachineInterface();
+        virtualMachineInterface.setName("port");
+        virtualMachineInterface.setUuid(PORT);
+        virtualMachineInterface.setParent(project);
+        virtualMachineInterface.addVirtualNetwork(virtualNetwork);
+        assertTrue(apiConnector.create(virtualMachineInterface));
+        InstanceIp instanceIp = new InstanceIp();
+        instanceIp.setName("ip");
+        instanceIp.setAddress("10.0.0.3");
+        instanceIp.setVirtualMachineInterface(virtualMachineInterface);
+        instanceIp.setVirtualNetwork(virtualNetwork);
+        assertTrue(apiConnector.create(instanceIp));
+        LogicalRouter logicalRouter = new LogicalRouter();
+        logicalRouter.setName("router");
+        logicalRouter.setParent(project);
+        logicalRouter.setVirtualMachineInterface(virtualMachineInterface);
+        assertTrue(apiConnector.create(logicalRouter));
+        FloatingIp floatingIp = new FloatingIp();
+        floatingIp.setName("fip");
+        floatingIp.setParent(project);
+        floatingIp.setVirtualMachineInterface(virtualMachineInterface);
+        assertTrue(apiConnector.create(floatingIp));
+
+        assertFalse(referenceIndex.isLoaded());
+        referenceIndex.rebuild(apiConnector);
+        assertTrue(referenceIndex.isLoaded());
+        assertEquals(Collections.singleton(PORT), referenceIndex.sources(Relation.NETWORK_PORTS, NETWORK));
+        assertEquals(Collections.singleton(PORT), referenceIndex.sources(Relation.SUBNET_PORTS, SUBNET));
+        assertEquals(Collections.singleton(PORT), referenceIndex.sources(Relation.ROUTER_INTERFACES, logicalRouter.getUuid()));
+        assertEquals(Collections.singleton(floatingIp.getUuid()), referenceIndex.sources(Relation.PORT_FLOATING_IPS, PORT));
+    }
+
+    /* Test method to check references removed while the index is rebuilt are not loaded again */
+    @Test
+    public void testRemoveDuringRebuild() throws IOException {
+        InMemoryApiConnector store = new InMemoryApiConnector(true);
+        Project project = new Project();
+        project.setName("project");
+        project.setUuid("019570f5-3f4f-4a8b-a3e4-1a7f9b8c2d11");
+        assertTrue(store.create(project));
+        VirtualNetwork virtualNetwork = new VirtualNetwork();
+        virtualNetwork.setName("network");
+        virtualNetwork.setUuid(NETWORK);
+        virtualNetwork.setParent(project);
+        assertTrue(store.create(virtualNetwork));
+        VirtualMachineInterface virtualMachineInterface = new VirtualMachineInterface();
+        virtualMachineInterface.setName("port");
+        virtualMachineInterface.setUuid(PORT);
+        virtualMachineInterface.setParent(project);
+        virtualMachineInterface.addVirtualNetwork(virtualNetwork);
+        assertTrue(store.create(virtualMachineInterface));
+        final LogicalRouter logicalRouter = new LogicalRouter();
+        logicalRouter.setName("router");
+        logicalRouter.setParent(project);
+        logicalRouter.setVirtualMachineInterface(virtualMachineInterface);
+        assertTrue(store.create(logicalRouter));
+
+        referenceIndex.add(Relation.NETWORK_PORTS, NETWORK, OTHER_PORT);
+        referenceIndex.rebuild(new ForwardingApiConnector(store) {
+            @Override
+            public ApiObjectBase findById(Class<? extends ApiObjectBase> cls, String uuid) throws IOException {
+                ApiObjectBase object = super.findById(cls, uuid);
+                // deleted by the handlers once read
+                if (cls == VirtualMachineInterface.class) {
+                    referenceIndex.removeSource(Relation.NETWORK_PORTS, uuid);
+                } else if (cls == LogicalRouter.class) {
+                    referenceIndex.remove(Relation.ROUTER_INTERFACES, uuid, PORT);
+                }
+                return object;
+            }
+
+            @Override
+            public List<? extends ApiObjectBase> list(Class<? extends ApiObjectBase> cls, List<String> parent) throws IOException {
+                List<? extends ApiObjectBase> objects = super.list(cls, parent);
+                if (cls == LogicalRouter.class) {
+                    referenceIndex.add(Relation.ROUTER_INTERFACES, logicalRouter.getUuid(), OTHER_PORT);
+                }
+                return objects;
+            }
+        });
+        assertTrue(referenceIndex.isLoaded());
+        assertEquals(Collections.singleton(OTHER_PORT), referenceIndex.sources(Relation.NETWORK_PORTS, NETWORK));
+        assertEquals(Collections.singleton(OTHER_PORT), referenceIndex.sources(Relation.ROUTER_INTERFACES, logicalRouter.getUuid()));
+
+        referenceIndex.add(Relation.ROUTER_INTERFACES, logicalRouter.getUuid(), PORT);
+        referenceIndex.remove(Relation.ROUTER_INTERFACES, logicalRouter.getUuid(), PORT);
+        referenceIndex.rebuild(store);
+        assertEquals(2, referenceIndex.count(Relation.ROUTER_INTERFACES, logicalRouter.getUuid()));
+    }
+}
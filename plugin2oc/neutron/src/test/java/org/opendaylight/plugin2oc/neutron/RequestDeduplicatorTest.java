@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test Class for Request Deduplicator.
+ */
+public class RequestDeduplicatorTest {
+    static final String PORT_UUID = "64a271fe-0216-46bc-a3e6-1ff582fbd324";
+    RequestDeduplicator requestDeduplicator;
+    AtomicInteger calls;
+
+    @Before
+    public void beforeTest() {
+        requestDeduplicator = new RequestDeduplicator(16, 60000);
+        calls = new AtomicInteger();
+    }
+
+    @After
+    public void afterTest() {
+        requestDeduplicator = null;
+    }
+
+    /* action counting its invocations */
+    Callable<Boolean> countingAction(final boolean result) {
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                calls.incrementAndGet();
+                return result;
+            }
+        };
+    }
+
+    /* Test method to check a successful outcome is answered from the table */
+    @Test
+    public void testDuplicateAnsweredFromTable() {
+        assertTrue(requestDeduplicator.execute(PORT_UUID, "addPort", countingAction(true)));
+        assertTrue(requestDeduplicator.execute(PORT_UUID, "addPort", countingAction(true)));
+        assertEquals(1, calls.get());
+    }
+
+    /* Test method to check a failed outcome is not remembered */
+    @Test
+    public void testFailureNotRemembered() {
+        assertFalse(requestDeduplicator.execute(PORT_UUID, "addPort", countingAction(false)));
+        assertTrue(requestDeduplicator.execute(PORT_UUID, "addPort", countingAction(true)));
+        assertEquals(2, calls.get());
+    }
+
+    /* Test method to check the operation is part of the key */
+    @Test
+    public void testDifferentOperationNotDeduplicated() {
+        requestDeduplicator.execute(PORT_UUID, "addPort", countingAction(true));
+        requestDeduplicator.execute(PORT_UUID, "addFloatingIP", countingAction(true));
+        assertEquals(2, calls.get());
+    }
+
+    /* Test method to check a forgotten outcome runs again */
+    @Test
+    public void testForget() {
+        requestDeduplicator.execute(PORT_UUID, "addPort", countingAction(true));
+        requestDeduplicator.forget(PORT_UUID, "addPort");
+        requestDeduplicator.execute(PORT_UUID, "addPort", countingAction(true));
+        assertEquals(2, calls.get());
+    }
+
+    /* Test method to check the table is bounded */
+    @Test
+    public void testCapacity() {
+        requestDeduplicator = new RequestDeduplicator(1, 60000);
+        requestDeduplicator.execute(PORT_UUID, "addPort", countingAction(true));
+        requestDeduplicator.execute("74a271fe-0216-46bc-a3e6-1ff582fbd324", "addPort", countingAction(true));
+        requestDeduplicator.execute(PORT_UUID, "addPort", countingAction(true));
+        assertEquals(3, calls.get());
+    }
+
+    /* Test method to check a late duplicate attaches to the request in flight */
+    @Test
+    public void testDuplicateAttachedToRequestInFlight() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Boolean> original = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return requestDeduplicator.execute(PORT_UUID, "addPort", new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() throws Exception {
+                            calls.incrementAndGet();
+                            started.countDown();
+                            release.await();
+                            return true;
+                        }
+                    });
+                }
+            });
+            started.await();
+            Future<Boolean> duplicate = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return requestDeduplicator.execute(PORT_UUID, "addPort", countingAction(false));
+                }
+            });
+            long deadline = System.currentTimeMillis() + 10000;
+            while (requestDeduplicator.waiting() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            // the duplicate waits for the original before it completes
+            assertEquals(1, requestDeduplicator.waiting());
+            release.countDown();
+            assertTrue(original.get(10, TimeUnit.SECONDS));
+            assertTrue(duplicate.get(10, TimeUnit.SECONDS));
+            assertEquals(1, calls.get());
+            assertEquals(0, requestDeduplicator.waiting());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
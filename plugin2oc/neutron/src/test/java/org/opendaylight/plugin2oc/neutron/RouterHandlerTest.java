@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+import net.juniper.contrail.api.types.LogicalRouter;
+import net.juniper.contrail.api.types.Project;
+import net.juniper.contrail.api.types.VirtualNetwork;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.controller.networkconfig.neutron.NeutronNetwork;
+import org.opendaylight.controller.networkconfig.neutron.NeutronRouter;
+import org.opendaylight.controller.networkconfig.neutron.NeutronRouter_NetworkReference;
+
+/**
+ * Test Class for the Router gateways.
+ */
+public class RouterHandlerTest {
+    static final String PROJECT = "019570f5-3f4f-4a8b-a3e4-1a7f9b8c2d11";
+    static final String ROUTER = "6b9570f2-17b1-4fc3-99ec-1b7f7778a29a";
+    static final String EXTERNAL = "54a271fe-0216-46bc-a3e6-1ff582fbd324";
+    static final String PRIVATE = "64a271fe-0216-46bc-a3e6-1ff582fbd324";
+    InMemoryApiConnector apiConnector;
+    RouterHandler routerHandler;
+
+    @Before
+    public void beforeTest() throws IOException {
+        apiConnector = new InMemoryApiConnector(true);
+        Activator.apiConnector = apiConnector;
+        routerHandler = new RouterHandler();
+        Project project = new Project();
+        project.setName("project");
+        project.setUuid(PROJECT);
+        assertTrue(apiConnector.create(project));
+        VirtualNetwork external = network(project, "public", EXTERNAL);
+        assertTrue(Activator.floatingIpPools.createPools(apiConnector, external));
+        network(project, "private", PRIVATE);
+    }
+
+    @After
+    public void afterTest() {
+        routerHandler.removeRouter(ROUTER);
+        Activator.floatingIpPools.forget(EXTERNAL);
+        Activator.floatingIpPools.forget(PRIVATE);
+        Activator.apiConnector = null;
+    }
+
+    VirtualNetwork network(Project project, String name, String uuid) throws IOException {
+        VirtualNetwork virtualNetwork = new VirtualNetwork();
+        virtualNetwork.setName(name);
+        virtualNetwork.setUuid(uuid);
+        virtualNetwork.setParent(project);
+        assertTrue(apiConnector.create(virtualNetwork));
+        return virtualNetwork;
+    }
+
+    static NeutronRouter router(String gateway) {
+        NeutronRouter router = new NeutronRouter();
+        router.setRouterUUID(ROUTER);
+        router.setName("router");
+        router.setTenantID(PROJECT);
+        NeutronRouter_NetworkReference gatewayInfo = new NeutronRouter_NetworkReference();
+        gatewayInfo.setNetworkID(gateway);
+        router.setExternalGatewayInfo(gatewayInfo);
+        return router;
+    }
+
+    /* Test method to check the gateway of a router is set, indexed and cleared */
+    @Test
+    public void testGateway() throws IOException {
+        NeutronRouter router = router(EXTERNAL);
+        assertEquals(HttpURLConnection.HTTP_OK, routerHandler.canCreateRouter(router));
+        assertTrue(routerHandler.addRouter(router));
+        LogicalRouter logicalRouter = (LogicalRouter) apiConnector.findById(LogicalRouter.class, ROUTER);
+        assertEquals(EXTERNAL, logicalRouter.getVirtualNetwork().get(0).getUuid());
+        // through the proxy registered as the service
+        RouterQueries routerQueries = (RouterQueries) InstrumentedHandler.wrap(routerHandler, RouterQueries.class);
+        assertEquals(EXTERNAL, routerQueries.getRouterGateway(ROUTER));
+        assertTrue(routerQueries.getRouterInterfaces(ROUTER).isEmpty());
+        NeutronNetwork network = new NeutronNetwork();
+        network.setNetworkUUID(EXTERNAL);
+        assertEquals(HttpURLConnection.HTTP_FORBIDDEN, new NetworkHandler().canDeleteNetwork(network));
+
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST, routerHandler.canUpdateRouter(router, router(PRIVATE)));
+        assertFalse(routerHandler.updateRouter(ROUTER, router(PRIVATE)));
+        assertTrue(routerHandler.updateRouter(ROUTER, router(null)));
+        assertNull(((LogicalRouter) apiConnector.findById(LogicalRouter.class, ROUTER)).getVirtualNetwork());
+        assertNull(routerQueries.getRouterGateway(ROUTER));
+        assertEquals(HttpURLConnection.HTTP_OK, new NetworkHandler().canDeleteNetwork(network));
+    }
+
+    /* Test method to check a router can not be created with a gateway to a network without pools */
+    @Test
+    public void testGatewayNotExternal() {
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST, routerHandler.canCreateRouter(router(PRIVATE)));
+        assertFalse(routerHandler.addRouter(router(PRIVATE)));
+        assertEquals(HttpURLConnection.HTTP_OK, routerHandler.canCreateRouter(router(null)));
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.juniper.contrail.api.ApiConnector;
+import net.juniper.contrail.api.ApiObjectBase;
+import net.juniper.contrail.api.ApiPropertyBase;
+import net.juniper.contrail.api.ObjectReference;
+import net.juniper.contrail.api.types.LogicalRouter;
+import net.juniper.contrail.api.types.Project;
+import net.juniper.contrail.api.types.VirtualMachineInterface;
+import net.juniper.contrail.api.types.VirtualNetwork;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.plugin2oc.neutron.ReferenceIndex.Relation;
+
+/**
+ * Test Class for the Router Interface Batcher.
+ */
+public class RouterInterfaceBatcherTest {
+    static final String ROUTER = "6b9570f2-17b1-4fc3-99ec-1b7f7778a29a";
+    static final String MISSING = "222c67aa-0000-0000-818f-c3ab10e865cb";
+    InMemoryApiConnector store;
+    CountingApiConnector apiConnector;
+    List<String> ports = new ArrayList<String>();
+
+    /**
+     * Counts the updates of routers reaching the store, and fails the updates
+     * of interfaces on request.
+     */
+    static class CountingApiConnector extends ForwardingApiConnector {
+        final AtomicInteger routerUpdates = new AtomicInteger();
+        volatile boolean failingInterfaces;
+
+        CountingApiConnector(ApiConnector delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public boolean update(ApiObjectBase obj) throws IOException {
+            if (obj instanceof LogicalRouter) {
+                routerUpdates.incrementAndGet();
+            }
+            if (obj instanceof VirtualMachineInterface && failingInterfaces) {
+                return false;
+            }
+            return super.update(obj);
+        }
+    }
+
+    @Before
+    public void beforeTest() throws IOException {
+        store = new InMemoryApiConnector(true);
+        apiConnector = new CountingApiConnector(store);
+        Project project = new Project();
+        project.setName("project");
+        project.setUuid("019570f5-3f4f-4a8b-a3e4-1a7f9b8c2d11");
+        assertTrue(store.create(project));
+        VirtualNetwork virtualNetwork = new VirtualNetwork();
+        virtualNetwork.setName("private");
+        virtualNetwork.setParent(project);
+        assertTrue(store.create(virtualNetwork));
+        for (int i = 0; i < 8; i++) {
+            VirtualMachineInterface port = new VirtualMachineInterface();
+            port.setName("port" + i);
+            port.setParent(project);
+            port.setVirtualNetwork(virtualNetwork);
+            assertTrue(store.create(port));
+            ports.add(port.getUuid());
+        }
+        LogicalRouter logicalRouter = new LogicalRouter();
+        logicalRouter.setName("router");
+        logicalRouter.setUuid(ROUTER);
+        logicalRouter.setParent(project);
+        assertTrue(store.create(logicalRouter));
+    }
+
+    @After
+    public void afterTest() {
+        Activator.referenceIndex.removeTarget(Relation.ROUTER_INTERFACES, ROUTER);
+    }
+
+    /* Test method to check concurrent attachments to a router are written with one router update */
+    @Test
+    public void testAttachInOneUpdate() throws Exception {
+        final RouterInterfaceBatcher batcher = new RouterInterfaceBatcher(200, 4);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger attached = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (final String port : ports) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (batcher.attach(apiConnector, ROUTER, port)) {
+                        attached.incrementAndGet();
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(ports.size(), attached.get());
+        assertEquals(1, apiConnector.routerUpdates.get());
+        assertEquals(new HashSet<String>(ports), interfaces());
+        assertEquals(new HashSet<String>(ports), Activator.referenceIndex.sources(Relation.ROUTER_INTERFACES, ROUTER));
+        for (String port : ports) {
+            VirtualMachineInterface virtualMachineInterface = (VirtualMachineInterface) store.findById(VirtualMachineInterface.class, port);
+            assertEquals(1, virtualMachineInterface.getVirtualMachine().size());
+        }
+        assertFalse(batcher.attach(apiConnector, ROUTER, MISSING));
+        assertFalse(batcher.attach(apiConnector, "7b9570f2-17b1-4fc3-99ec-1b7f7778a29a", ports.get(0)));
+    }
+
+    /* Test method to check detachments, and that the last request for an interface wins */
+    @Test
+    public void testDetach() throws IOException {
+        RouterInterfaceBatcher batcher = new RouterInterfaceBatcher(0, 2);
+        assertTrue(batcher.attach(apiConnector, ROUTER, ports.get(0)));
+        assertTrue(batcher.attach(apiConnector, ROUTER, ports.get(1)));
+        assertTrue(batcher.attach(apiConnector, ROUTER, ports.get(1)));
+        assertEquals(new HashSet<String>(ports.subList(0, 2)), interfaces());
+        assertTrue(batcher.detach(apiConnector, ROUTER, ports.get(0)));
+        assertTrue(batcher.detach(apiConnector, ROUTER, MISSING));
+        assertEquals(Collections.singleton(ports.get(1)), interfaces());
+        assertEquals(Collections.singleton(ports.get(1)), Activator.referenceIndex.sources(Relation.ROUTER_INTERFACES, ROUTER));
+        assertNull(((VirtualMachineInterface) store.findById(VirtualMachineInterface.class, ports.get(0))).getVirtualMachine());
+
+        apiConnector.failingInterfaces = true;
+        assertFalse(batcher.detach(apiConnector, ROUTER, ports.get(1)));
+        assertFalse(batcher.attach(apiConnector, ROUTER, ports.get(0)));
+        assertEquals(Collections.singleton(ports.get(1)), interfaces());
+        assertEquals(Collections.singleton(ports.get(1)), Activator.referenceIndex.sources(Relation.ROUTER_INTERFACES, ROUTER));
+    }
+
+    /* Test method to check a caller returns once its own request is applied, while others keep coming */
+    @Test(timeout = 10000)
+    public void testSteadyStream() throws Exception {
+        final RouterInterfaceBatcher batcher = new RouterInterfaceBatcher(1, 2);
+        final AtomicBoolean streaming = new AtomicBoolean(true);
+        final CountDownLatch started = new CountDownLatch(1);
+        Thread stream = new Thread() {
+            @Override
+            public void run() {
+                for (boolean attach = true; streaming.get(); attach = !attach) {
+                    if (attach) {
+                        batcher.attach(apiConnector, ROUTER, ports.get(1));
+                    } else {
+                        batcher.detach(apiConnector, ROUTER, ports.get(1));
+                    }
+                    started.countDown();
+                }
+            }
+        };
+        stream.start();
+        started.await();
+        try {
+            assertTrue(batcher.attach(apiConnector, ROUTER, ports.get(0)));
+            assertTrue(interfaces().contains(ports.get(0)));
+        } finally {
+            streaming.set(false);
+            stream.join();
+        }
+    }
+
+    private Set<String> interfaces() throws IOException {
+        Set<String> interfaces = new HashSet<String>();
+        LogicalRouter logicalRouter = (LogicalRouter) store.findById(LogicalRouter.class, ROUTER);
+        if (logicalRouter.getVirtualMachineInterface() != null) {
+            for (ObjectReference<ApiPropertyBase> ref : logicalRouter.getVirtualMachineInterface()) {
+                interfaces.add(ref.getUuid());
+            }
+        }
+        return interfaces;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.controller.networkconfig.neutron.NeutronNetwork;
+
+/**
+ * Test Class for the Topology.
+ */
+public class TopologyTest {
+    static final String NETWORK = "54a271fe-0216-46bc-a3e6-1ff582fbd324";
+    Topology topology;
+
+    @Before
+    public void beforeTest() {
+        topology = new Topology();
+    }
+
+    /* Test method to check the persistent map against a HashMap, with colliding keys */
+    @Test
+    public void testPersistentMap() {
+        PersistentMap<Integer> map = PersistentMap.empty();
+        Map<String, Integer> expected = new HashMap<String, Integer>();
+        Random random = new Random(1);
+        // "Aa" and "BB" have the same hash code, and so do their concatenations
+        String[] parts = { "Aa", "BB" };
+        for (int i = 0; i < 20000; i++) {
+            String key = random.nextBoolean() ? String.valueOf(random.nextInt(3000)) : parts[random.nextInt(2)] + parts[random.nextInt(2)]
+                    + parts[random.nextInt(2)];
+            PersistentMap<Integer> previous = map;
+            int previousSize = previous.size();
+            if (random.nextInt(3) == 0) {
+                map = map.minus(key);
+                expected.remove(key);
+            } else {
+                map = map.plus(key, i);
+                expected.put(key, i);
+            }
+            assertEquals(previousSize, previous.size());
+            assertEquals(expected.size(), map.size());
+        }
+        for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        assertEquals(new HashSet<Integer>(expected.values()), new HashSet<Integer>(map.values()));
+        assertNull(map.get("missing"));
+    }
+
+    /* Test method to check objects are copied in and out and updated with the properties set */
+    @Test
+    public void testUpdate() {
+        NeutronNetwork network = new NeutronNetwork();
+        network.setNetworkUUID(NETWORK);
+        network.setNetworkName("network");
+        network.setShared(false);
+        topology.put(NeutronNetwork.class, NETWORK, network);
+        network.setNetworkName("changed");
+        TopologySnapshot before = topology.snapshot();
+        NeutronNetwork delta = new NeutronNetwork();
+        delta.setShared(true);
+        assertTrue(topology.update(NeutronNetwork.class, NETWORK, delta));
+        NeutronNetwork found = topology.get(NeutronNetwork.class, NETWORK);
+        assertEquals("network", found.getNetworkName());
+        assertTrue(found.getShared());
+        assertNotSame(found, topology.get(NeutronNetwork.class, NETWORK));
+        assertFalse(before.get(NeutronNetwork.class, NETWORK).getShared());
+        assertEquals(before.getVersion() + 1, topology.snapshot().getVersion());
+        assertFalse(topology.update(NeutronNetwork.class, "missing", delta));
+        topology.remove(NeutronNetwork.class, NETWORK);
+        assertFalse(topology.contains(NeutronNetwork.class, NETWORK));
+        assertTrue(before.contains(NeutronNetwork.class, NETWORK));
+        assertTrue(topology.list(NeutronNetwork.class).isEmpty());
+    }
+
+    /* Test method to check no change is lost when writers race */
+    @Test
+    public void testConcurrentWriters() throws InterruptedException {
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            final int offset = t * 1000;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 1000; i++) {
+                        NeutronNetwork network = new NeutronNetwork();
+                        network.setNetworkName(String.valueOf(offset + i));
+                        topology.put(NeutronNetwork.class, String.valueOf(offset + i), network);
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(4000, topology.snapshot().size(NeutronNetwork.class));
+        assertEquals(4000, topology.snapshot().getVersion());
+    }
+}
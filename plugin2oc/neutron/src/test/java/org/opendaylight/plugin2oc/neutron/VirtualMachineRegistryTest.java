@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.juniper.contrail.api.ApiConnector;
+import net.juniper.contrail.api.ApiObjectBase;
+import net.juniper.contrail.api.types.VirtualMachine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test Class for the VirtualMachine Registry.
+ */
+public class VirtualMachineRegistryTest {
+    static final String DEVICE = "44444444-0000-0000-0000-000000000050";
+    InMemoryApiConnector store;
+    SlowApiConnector apiConnector;
+
+    /**
+     * Counts the VirtualMachine creations, slowed down so that concurrent
+     * lookups overlap, and fails them on request.
+     */
+    static class SlowApiConnector extends ForwardingApiConnector {
+        final AtomicInteger creates = new AtomicInteger();
+        volatile boolean failing;
+
+        SlowApiConnector(ApiConnector delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public boolean create(ApiObjectBase obj) throws IOException {
+            if (obj instanceof VirtualMachine) {
+                creates.incrementAndGet();
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (failing) {
+                    return false;
+                }
+            }
+            return super.create(obj);
+        }
+    }
+
+    @Before
+    public void beforeTest() {
+        store = new InMemoryApiConnector(true);
+        apiConnector = new SlowApiConnector(store);
+    }
+
+    /* Test method to check the ports of a device booting at once create its VirtualMachine once */
+    @Test
+    public void testCreateOnce() throws Exception {
+        final VirtualMachineRegistry registry = new VirtualMachineRegistry(16);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReferenceArray<VirtualMachine> machines = new AtomicReferenceArray<VirtualMachine>(8);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < machines.length(); i++) {
+            final int nic = i;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        machines.set(nic, registry.get(apiConnector, DEVICE));
+                    } catch (InterruptedException | IOException e) {
+                        return;
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1, apiConnector.creates.get());
+        assertNotNull(machines.get(0));
+        for (int i = 0; i < machines.length(); i++) {
+            assertSame(machines.get(0), machines.get(i));
+        }
+        assertNotNull(store.findById(VirtualMachine.class, DEVICE));
+        assertSame(machines.get(0), registry.get(apiConnector, DEVICE));
+        assertEquals(1, apiConnector.creates.get());
+    }
+
+    /* Test method to check a failed creation is not kept, and is tried again */
+    @Test
+    public void testCreateFailed() throws IOException {
+        VirtualMachineRegistry registry = new VirtualMachineRegistry(16);
+        apiConnector.failing = true;
+        assertNull(registry.get(apiConnector, DEVICE));
+        assertEquals(0, registry.size());
+        apiConnector.failing = false;
+        assertNotNull(registry.get(apiConnector, DEVICE));
+        assertEquals(2, apiConnector.creates.get());
+        registry.forget(DEVICE);
+        assertNotNull(registry.get(apiConnector, DEVICE));
+        assertEquals(2, apiConnector.creates.get());
+    }
+}
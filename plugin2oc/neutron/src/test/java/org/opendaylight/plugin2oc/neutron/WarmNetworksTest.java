@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2014 Juniper Networks, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package org.opendaylight.plugin2oc.neutron;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.juniper.contrail.api.ApiConnector;
+import net.juniper.contrail.api.ApiObjectBase;
+import net.juniper.contrail.api.types.Project;
+import net.juniper.contrail.api.types.VirtualNetwork;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test Class for the Warm Networks.
+ */
+public class WarmNetworksTest {
+    static final String PROJECT = "019570f5-3f4f-4a8b-a3e4-1a7f9b8c2d11";
+    static final String NETWORK = "11111111-0000-0000-0000-000000000049";
+    InMemoryApiConnector store;
+    CountingApiConnector apiConnector;
+    VirtualNetwork virtualNetwork;
+
+    /**
+     * Counts the reads reaching the store.
+     */
+    static class CountingApiConnector extends ForwardingApiConnector {
+        final AtomicInteger reads = new AtomicInteger();
+
+        CountingApiConnector(ApiConnector delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public ApiObjectBase findById(Class<? extends ApiObjectBase> cls, String uuid) throws IOException {
+            reads.incrementAndGet();
+            return super.findById(cls, uuid);
+        }
+    }
+
+    @Before
+    public void beforeTest() throws IOException {
+        store = new InMemoryApiConnector(true);
+        apiConnector = new CountingApiConnector(store);
+        Project project = new Project();
+        project.setName("project");
+        project.setUuid(PROJECT);
+        assertTrue(store.create(project));
+        virtualNetwork = new VirtualNetwork();
+        virtualNetwork.setName("private");
+        virtualNetwork.setUuid(NETWORK);
+        virtualNetwork.setParent(project);
+        assertTrue(store.create(virtualNetwork));
+    }
+
+    /* Test method to check networks and projects are read once, until forgotten */
+    @Test
+    public void testReadOnce() throws IOException {
+        WarmNetworks warmNetworks = new WarmNetworks(16);
+        VirtualNetwork network = warmNetworks.network(apiConnector, NETWORK);
+        assertSame(network, warmNetworks.network(apiConnector, NETWORK));
+        assertSame(warmNetworks.project(apiConnector, PROJECT), warmNetworks.project(apiConnector, PROJECT));
+        assertEquals(2, apiConnector.reads.get());
+        warmNetworks.forget(NETWORK);
+        warmNetworks.network(apiConnector, NETWORK);
+        assertEquals(3, apiConnector.reads.get());
+        warmNetworks.network(new CountingApiConnector(store), NETWORK);
+        warmNetworks.network(apiConnector, NETWORK);
+        assertEquals(4, apiConnector.reads.get());
+        assertNull(warmNetworks.network(apiConnector, "11111111-0000-0000-0000-000000000050"));
+        assertEquals(1, warmNetworks.size());
+    }
+
+    /* Test method to check the refresh drops networks deleted, and that a disabled pool keeps nothing */
+    @Test
+    public void testRefresh() throws IOException {
+        WarmNetworks warmNetworks = new WarmNetworks(16);
+        warmNetworks.put(apiConnector, virtualNetwork);
+        assertSame(virtualNetwork, warmNetworks.network(apiConnector, NETWORK));
+        assertEquals(0, apiConnector.reads.get());
+        store.delete(virtualNetwork);
+        warmNetworks.refresh();
+        assertNull(warmNetworks.network(apiConnector, NETWORK));
+        assertEquals(0, warmNetworks.size());
+
+        WarmNetworks disabled = new WarmNetworks(0);
+        disabled.put(apiConnector, virtualNetwork);
+        disabled.project(apiConnector, PROJECT);
+        assertEquals(0, disabled.size());
+    }
+}